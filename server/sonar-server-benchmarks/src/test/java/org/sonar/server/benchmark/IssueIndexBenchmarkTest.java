@@ -37,8 +37,10 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.System2;
 import org.sonar.core.util.Uuids;
 import org.sonar.server.es.EsClient;
 import org.sonar.server.es.SearchOptions;
@@ -47,6 +49,7 @@ import org.sonar.server.issue.IssueQuery;
 import org.sonar.server.issue.index.IssueAuthorizationDao;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
 import org.sonar.server.issue.index.IssueDoc;
+import org.sonar.server.issue.index.IssueFacetCache;
 import org.sonar.server.issue.index.IssueIndex;
 import org.sonar.server.issue.index.IssueIndexer;
 import org.sonar.server.tester.ServerTester;
@@ -125,10 +128,19 @@ public class IssueIndexBenchmarkTest {
 
   private void benchmarkQueries() {
     userSessionRule.setUserGroups("sonar-users");
-    benchmarkQuery("all issues", IssueQuery.builder(userSessionRule).build());
-    benchmarkQuery("project issues", IssueQuery.builder(userSessionRule).projectUuids(Arrays.asList("PROJECT33")).build());
-    benchmarkQuery("file issues", IssueQuery.builder(userSessionRule).componentUuids(Arrays.asList("FILE333")).build());
-    benchmarkQuery("various", IssueQuery.builder(userSessionRule)
+    // authorization filtered on the groups and users copied to issues
+    benchmarkQueries("authorization terms", tester.get(IssueIndex.class));
+    // authorization filtered by joining parent documents
+    Settings settings = new Settings().setProperty(IssueIndex.AUTHORIZATION_JOIN_PROPERTY, true);
+    benchmarkQueries("authorization join",
+      new IssueIndex(tester.get(EsClient.class), System2.INSTANCE, userSessionRule, IssueFacetCache.disabled(), settings));
+  }
+
+  private void benchmarkQueries(String authorizationLabel, IssueIndex index) {
+    benchmarkQuery(authorizationLabel, "all issues", index, IssueQuery.builder(userSessionRule).build());
+    benchmarkQuery(authorizationLabel, "project issues", index, IssueQuery.builder(userSessionRule).projectUuids(Arrays.asList("PROJECT33")).build());
+    benchmarkQuery(authorizationLabel, "file issues", index, IssueQuery.builder(userSessionRule).componentUuids(Arrays.asList("FILE333")).build());
+    benchmarkQuery(authorizationLabel, "various", index, IssueQuery.builder(userSessionRule)
       .resolutions(Arrays.asList(Issue.RESOLUTION_FIXED))
       .assigned(true)
       .build());
@@ -136,14 +148,16 @@ public class IssueIndexBenchmarkTest {
     // TODO assertions
   }
 
-  private void benchmarkQuery(String label, IssueQuery query) {
-    IssueIndex index = tester.get(IssueIndex.class);
+  private void benchmarkQuery(String authorizationLabel, String label, IssueIndex index, IssueQuery query) {
+    long totalPeriod = 0L;
     for (int i = 0; i < 10; i++) {
       long start = System.currentTimeMillis();
       SearchResult<IssueDoc> result = index.search(query, new SearchOptions());
-      long end = System.currentTimeMillis();
-      LOGGER.info("Request (" + label + "): {} docs in {} ms", result.getTotal(), end - start);
+      long period = System.currentTimeMillis() - start;
+      totalPeriod += period;
+      LOGGER.info("Request (" + label + ", " + authorizationLabel + "): {} docs in {} ms", result.getTotal(), period);
     }
+    LOGGER.info("Request (" + label + ", " + authorizationLabel + "): {} ms on average", totalPeriod / 10);
   }
 
   private static class IssueIterator implements Iterator<IssueDoc> {
@@ -33,6 +33,7 @@ import org.sonar.db.metric.MetricDto;
 import org.sonar.db.property.PropertiesDao;
 import org.sonar.db.property.PropertyDto;
 import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.rule.RegisterRules;
 import org.sonarqube.ws.MediaTypes;
 import org.sonar.server.user.UserSession;
 
@@ -107,6 +108,10 @@ public class GlobalAction implements BatchWsAction {
   }
 
   private static boolean isPropertyAllowed(String key, boolean hasScanPerm, boolean hasPreviewPerm) {
+    if (key.startsWith(RegisterRules.FINGERPRINT_PROPERTY_PREFIX)) {
+      // internal state of server, not a setting
+      return false;
+    }
     return !key.contains(".secured") || hasScanPerm || (key.contains(".license") && hasPreviewPerm);
   }
 
@@ -0,0 +1,116 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.batch;
+
+import com.google.common.base.Function;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.api.web.UserRole;
+import org.sonar.batch.protocol.input.BatchInput;
+import org.sonar.core.permission.GlobalPermissions;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.MyBatis;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.source.FileSourceDao;
+import org.sonar.server.component.ComponentFinder;
+import org.sonar.server.user.UserSession;
+import org.sonarqube.ws.MediaTypes;
+
+/**
+ * Line hashes of all the files of a project, so that the batch does not request them file by file
+ * when tracking issues.
+ */
+public class LineHashesAction implements BatchWsAction {
+
+  private static final String PARAM_KEY = "key";
+
+  private final DbClient dbClient;
+  private final UserSession userSession;
+  private final ComponentFinder componentFinder;
+
+  public LineHashesAction(DbClient dbClient, UserSession userSession, ComponentFinder componentFinder) {
+    this.dbClient = dbClient;
+    this.userSession = userSession;
+    this.componentFinder = componentFinder;
+  }
+
+  @Override
+  public void define(WebService.NewController controller) {
+    WebService.NewAction action = controller.createAction("line_hashes")
+      .setDescription("Return line hashes of all the files of a project. Require Execute Preview Analysis permission and See Source Code permission on the project")
+      .setResponseExample(getClass().getResource("line_hashes-example.proto"))
+      .setSince("5.3")
+      .setInternal(true)
+      .setHandler(this);
+
+    action
+      .createParam(PARAM_KEY)
+      .setRequired(true)
+      .setDescription("Project key")
+      .setExampleValue("org.codehaus.sonar:sonar");
+  }
+
+  @Override
+  public void handle(Request request, Response response) throws Exception {
+    userSession.checkGlobalPermission(GlobalPermissions.PREVIEW_EXECUTION);
+    String projectKey = request.mandatoryParam(PARAM_KEY);
+
+    DbSession session = dbClient.openSession(false);
+    try {
+      ComponentDto component = componentFinder.getByKey(session, projectKey);
+      userSession.checkProjectUuidPermission(UserRole.CODEVIEWER, component.projectUuid());
+
+      response.stream().setMediaType(MediaTypes.PROTOBUF);
+      dbClient.fileSourceDao().readLineHashesOfProject(session, component.projectUuid(), new LineHashesWriter(response.stream().output()));
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  private static class LineHashesWriter implements Function<FileSourceDao.FileLineHashes, Void> {
+    private final OutputStream output;
+    private final BatchInput.FileLineHashes.Builder builder = BatchInput.FileLineHashes.newBuilder();
+
+    LineHashesWriter(OutputStream output) {
+      this.output = output;
+    }
+
+    @Override
+    public Void apply(FileSourceDao.FileLineHashes input) {
+      String lineHashes = input.lineHashes();
+      if (lineHashes == null) {
+        return null;
+      }
+      builder.clear();
+      builder.setFileKey(input.fileKey());
+      builder.setLineHashes(lineHashes);
+      try {
+        builder.build().writeDelimitedTo(output);
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to serialize line hashes of " + input.fileKey(), e);
+      }
+      return null;
+    }
+  }
+}
@@ -30,9 +30,12 @@ public class IndexIssuesStep implements ComputationStep {
     this.indexer = indexer;
   }
 
+  /**
+   * Issues are not read from the index by the next steps, so the analysis does not wait for indexing
+   */
   @Override
   public void execute() {
-    indexer.index();
+    indexer.indexAsync();
   }
 
   @Override
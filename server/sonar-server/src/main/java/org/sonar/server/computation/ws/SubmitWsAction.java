@@ -73,7 +73,8 @@ public class SubmitWsAction implements CeWsAction {
     action
       .createParam(PARAM_REPORT_DATA)
       .setRequired(true)
-      .setDescription("Report file. Format is not an API, it changes among SonarQube versions.");
+      .setDescription("Report file. Format is not an API, it changes among SonarQube versions. " +
+        "It can also be sent as the body of the request, with the content type application/octet-stream.");
   }
 
   @Override
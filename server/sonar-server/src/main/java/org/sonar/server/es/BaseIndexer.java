@@ -20,12 +20,19 @@
 package org.sonar.server.es;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.picocontainer.Startable;
 import org.sonar.api.server.ServerSide;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -33,13 +40,30 @@ import java.util.concurrent.TimeUnit;
 @ServerSide
 public abstract class BaseIndexer implements Startable {
 
+  private static final Logger LOG = Loggers.get(BaseIndexer.class);
+
   private final ThreadPoolExecutor executor;
+  private final boolean sharedExecutor;
   private final String indexName;
   private final String typeName;
   private final String dateFieldName;
   protected final EsClient esClient;
   private volatile long lastUpdatedAt = -1L;
 
+  /**
+   * Run of {@link #doIndex(long)} that is queued but not started yet. New requests are merged into it.
+   * Guarded by this.
+   */
+  private FutureTask<Void> pendingRun = null;
+  private long pendingRequestedAt = 0L;
+  private long pendingSince = 0L;
+  private long runningSince = 0L;
+
+  /**
+   * Request dates of the calls to {@link #index(IndexerTask)} that are not completed yet. Guarded by this.
+   */
+  private final Deque<Long> taskRequests = new ArrayDeque<>();
+
   /**
    * Indexers are disabled during server startup, to avoid too many consecutive refreshes of the same index
    * An example is RegisterQualityProfiles. If {@link org.sonar.server.activity.index.ActivityIndexer} is enabled by
@@ -49,49 +73,148 @@ public abstract class BaseIndexer implements Startable {
    * Indices are populated and refreshed when all startup components have been executed. See
    * {@link org.sonar.server.search.IndexSynchronizer}
    */
-  private boolean enabled = false;
+  private volatile boolean enabled = false;
 
   protected BaseIndexer(EsClient client, long threadKeepAliveSeconds, String indexName, String typeName,
+    String dateFieldName) {
+    this(client, new ThreadPoolExecutor(0, 1, threadKeepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()), false,
+      indexName, typeName, dateFieldName);
+  }
+
+  /**
+   * Indexer executed by the thread of another indexer, so that the two never index concurrently. The thread
+   * is stopped by its owner.
+   */
+  protected BaseIndexer(EsClient client, BaseIndexer threadOwner, String indexName, String typeName, String dateFieldName) {
+    this(client, threadOwner.executor, true, indexName, typeName, dateFieldName);
+  }
+
+  private BaseIndexer(EsClient client, ThreadPoolExecutor executor, boolean sharedExecutor, String indexName, String typeName,
     String dateFieldName) {
     this.indexName = indexName;
     this.typeName = typeName;
     this.dateFieldName = dateFieldName;
     this.esClient = client;
-    this.executor = new ThreadPoolExecutor(0, 1,
-      threadKeepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    this.executor = executor;
+    this.sharedExecutor = sharedExecutor;
   }
 
   public void index(final IndexerTask task) {
     if (enabled) {
       final long requestedAt = System.currentTimeMillis();
-      Future submit = executor.submit(new Runnable() {
-        @Override
-        public void run() {
-          if (lastUpdatedAt == -1L) {
-            lastUpdatedAt = esClient.getMaxFieldValue(indexName, typeName, dateFieldName);
+      addTaskRequest(requestedAt);
+      try {
+        Future submit = executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            execute(task, requestedAt);
           }
-          if (requestedAt > lastUpdatedAt) {
-            long l = task.index(lastUpdatedAt);
-            // l can be 0 if no documents were indexed
-            lastUpdatedAt = Math.max(l, lastUpdatedAt);
+        });
+        waitFor(submit);
+      } finally {
+        removeTaskRequest(requestedAt);
+      }
+    }
+  }
+
+  /**
+   * Indexes the database rows updated since the last indexing, and waits for completion.
+   */
+  public void index() {
+    waitFor(indexAsync());
+  }
+
+  /**
+   * Requests the indexing of the database rows updated since the last indexing, without waiting for completion.
+   * Requests received while a previous one is still queued are merged into it, so that rows are scanned only once.
+   * The returned future must be waited for when the caller needs to read its own changes from the index, else
+   * {@link #index()} should be used. Failures are logged.
+   * <p/>
+   * Used for example by the Compute Engine to index the issues of an analysis, as no later step reads them from
+   * the index.
+   */
+  public synchronized Future<?> indexAsync() {
+    if (!enabled) {
+      return Futures.immediateFuture(null);
+    }
+    long now = System.currentTimeMillis();
+    pendingRequestedAt = now;
+    if (pendingRun == null) {
+      pendingSince = now;
+      pendingRun = new FutureTask<>(new Callable<Void>() {
+        @Override
+        public Void call() {
+          long requestedAt = startPendingRun();
+          try {
+            execute(new IndexerTask() {
+              @Override
+              public long index(long lastUpdatedAt) {
+                return doIndex(lastUpdatedAt);
+              }
+            }, requestedAt);
+          } catch (RuntimeException e) {
+            LOG.error(String.format("Fail to index %s/%s", indexName, typeName), e);
+            throw e;
+          } finally {
+            stopRun();
           }
+          return null;
         }
       });
-      try {
-        Uninterruptibles.getUninterruptibly(submit);
-      } catch (ExecutionException e) {
-        Throwables.propagate(e);
-      }
+      executor.execute(pendingRun);
     }
+    return pendingRun;
   }
 
-  public void index() {
-    index(new IndexerTask() {
-      @Override
-      public long index(long lastUpdatedAt) {
-        return doIndex(lastUpdatedAt);
+  /**
+   * Milliseconds since the oldest request of indexing that is not completed yet, or 0 if index is up-to-date.
+   */
+  public synchronized long getIndexingLag() {
+    long oldestRequest = runningSince > 0L ? runningSince : pendingSince;
+    for (long taskRequest : taskRequests) {
+      if (oldestRequest == 0L || taskRequest < oldestRequest) {
+        oldestRequest = taskRequest;
       }
-    });
+    }
+    return oldestRequest > 0L ? (System.currentTimeMillis() - oldestRequest) : 0L;
+  }
+
+  private synchronized void addTaskRequest(long requestedAt) {
+    taskRequests.add(requestedAt);
+  }
+
+  private synchronized void removeTaskRequest(long requestedAt) {
+    taskRequests.removeFirstOccurrence(requestedAt);
+  }
+
+  private synchronized long startPendingRun() {
+    pendingRun = null;
+    runningSince = pendingSince;
+    pendingSince = 0L;
+    return pendingRequestedAt;
+  }
+
+  private synchronized void stopRun() {
+    runningSince = 0L;
+  }
+
+  private void execute(IndexerTask task, long requestedAt) {
+    if (lastUpdatedAt == -1L) {
+      lastUpdatedAt = esClient.getMaxFieldValue(indexName, typeName, dateFieldName);
+    }
+    if (requestedAt > lastUpdatedAt) {
+      long l = task.index(lastUpdatedAt);
+      // l can be 0 if no documents were indexed
+      lastUpdatedAt = Math.max(l, lastUpdatedAt);
+    }
+  }
+
+  private static void waitFor(Future<?> future) {
+    try {
+      Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      Throwables.propagate(e);
+    }
   }
 
   protected abstract long doIndex(long lastUpdatedAt);
@@ -108,7 +231,9 @@ public abstract class BaseIndexer implements Startable {
 
   @Override
   public void stop() {
-    executor.shutdown();
+    if (!sharedExecutor) {
+      executor.shutdown();
+    }
   }
 
   public interface IndexerTask {
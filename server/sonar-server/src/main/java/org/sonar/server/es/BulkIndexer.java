@@ -19,15 +19,20 @@
  */
 package org.sonar.server.es;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ListenableActionFuture;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
 import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequestBuilder;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
@@ -35,23 +40,35 @@ import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.picocontainer.Startable;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.util.ProgressLogger;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 
 import static java.lang.String.format;
 
 /**
  * Helper to bulk requests in an efficient way :
  * <ul>
- *   <li>bulk request is sent on the wire when its size is higher than 5Mb</li>
+ *   <li>bulk request is sent on the wire when its size is higher than a threshold. The threshold starts at 1Mb
+ *   and is adapted to the time taken by Elasticsearch to execute the previous bulk requests</li>
+ *   <li>when Elasticsearch is overloaded, the next bulk requests are delayed by an exponential backoff. Rejected
+ *   requests are sent again only in ordered mode (see {@link #setOrdered(boolean)}), otherwise a retry could overwrite
+ *   a more recent request on the same document which was executed meanwhile</li>
  *   <li>on large table indexing, replicas and automatic refresh can be temporarily disabled</li>
  *   <li>index refresh is optional (enabled by default)</li>
  * </ul>
@@ -60,20 +77,36 @@ public class BulkIndexer implements Startable {
 
   private static final Logger LOGGER = Loggers.get(BulkIndexer.class);
   private static final long FLUSH_BYTE_SIZE = new ByteSizeValue(1, ByteSizeUnit.MB).bytes();
+  private static final long MIN_FLUSH_BYTE_SIZE = new ByteSizeValue(256, ByteSizeUnit.KB).bytes();
+  private static final long MAX_FLUSH_BYTE_SIZE = new ByteSizeValue(16, ByteSizeUnit.MB).bytes();
+  private static final long FAST_BULK_MS = 1_000L;
+  private static final long SLOW_BULK_MS = 5_000L;
+  private static final int MAX_RETRIES = 5;
+  private static final long INITIAL_BACKOFF_MS = 100L;
+  private static final long MAX_BACKOFF_MS = 10_000L;
   private static final String REFRESH_INTERVAL_SETTING = "index.refresh_interval";
   private static final String ALREADY_STARTED_MESSAGE = "Bulk indexing is already started";
+  private static final int DELETION_PAGE_SIZE = 1_000;
+  private static final long SCROLL_MINUTES = 5L;
 
   private final EsClient client;
   private final String indexName;
   private boolean large = false;
-  private long flushByteSize = FLUSH_BYTE_SIZE;
+  private volatile long flushByteSize = FLUSH_BYTE_SIZE;
+  private boolean adaptiveFlushByteSize = true;
   private boolean disableRefresh = false;
+  private boolean ordered = false;
   private BulkRequestBuilder bulkRequest = null;
   private Map<String, Object> largeInitialSettings = null;
   private final AtomicLong counter = new AtomicLong(0L);
   private final int concurrentRequests;
   private final Semaphore semaphore;
   private final ProgressLogger progress;
+  private final Queue<ActionRequest> retries = new ConcurrentLinkedQueue<>();
+  private final Map<ActionRequest, Integer> retriesByRequest = Collections.synchronizedMap(new IdentityHashMap<ActionRequest, Integer>());
+  private final AtomicLong failures = new AtomicLong(0L);
+  private volatile long backoffMs = 0L;
+  private long startedAt;
 
   public BulkIndexer(EsClient client, String indexName) {
     this.client = client;
@@ -95,8 +128,12 @@ public class BulkIndexer implements Startable {
     return this;
   }
 
+  /**
+   * Fixed size of bulk requests. By default the size is adapted to the latency of Elasticsearch.
+   */
   public BulkIndexer setFlushByteSize(long flushByteSize) {
     this.flushByteSize = flushByteSize;
+    this.adaptiveFlushByteSize = false;
     return this;
   }
 
@@ -109,6 +146,18 @@ public class BulkIndexer implements Startable {
     return this;
   }
 
+  /**
+   * By default several bulk requests are executed concurrently and rejected requests are counted as failures.
+   * Set to true to execute a bulk request only once the previous one is executed, including the retries of its
+   * rejected requests. When indexing is interrupted, the index then contains all the requests added before the
+   * last executed one.
+   */
+  public BulkIndexer setOrdered(boolean b) {
+    Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
+    this.ordered = b;
+    return this;
+  }
+
   @Override
   public void start() {
     Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
@@ -133,6 +182,8 @@ public class BulkIndexer implements Startable {
     }
     bulkRequest = client.prepareBulk().setRefresh(false);
     counter.set(0L);
+    failures.set(0L);
+    startedAt = System.currentTimeMillis();
     progress.start();
   }
 
@@ -144,41 +195,66 @@ public class BulkIndexer implements Startable {
   }
 
   public void addDeletion(SearchRequestBuilder searchRequest) {
+    addDeletion(searchRequest, null);
+  }
+
+  /**
+   * Delete the documents matching the search request. When routing is defined, for example the
+   * project uuid, only the related shard is scrolled and the deletions are not broadcast to all shards.
+   * <p/>
+   * The next page of ids is loaded while the deletions of the current page are sent.
+   */
+  public void addDeletion(SearchRequestBuilder searchRequest, @Nullable String routing) {
     searchRequest
-      .setScroll(TimeValue.timeValueMinutes(5))
+      .setScroll(TimeValue.timeValueMinutes(SCROLL_MINUTES))
       .setSearchType(SearchType.SCAN)
-      .setSize(100)
+      .setSize(DELETION_PAGE_SIZE)
       // load only doc ids, not _source fields
       .setFetchSource(false);
+    if (routing != null) {
+      searchRequest.setRouting(routing);
+    }
 
-    // this search is synchronous. An optimization would be to be non-blocking,
-    // but it requires to tracking pending requests in close().
-    // Same semaphore can't be reused because of potential deadlock (requires to acquire
-    // two locks)
+    // scrolling is asynchronous but bulk requests are added by the calling thread only. Same semaphore can't
+    // be used for searches because of potential deadlock (requires to acquire two locks)
     SearchResponse searchResponse = searchRequest.get();
-
+    ListenableActionFuture<SearchResponse> nextPage = scroll(searchResponse.getScrollId());
     while (true) {
-      searchResponse = client.prepareSearchScroll(searchResponse.getScrollId())
-        .setScroll(TimeValue.timeValueMinutes(5))
-        .get();
+      searchResponse = nextPage.actionGet();
       SearchHit[] hits = searchResponse.getHits().getHits();
-      for (SearchHit hit : hits) {
-        add(client.prepareDelete(hit.index(), hit.type(), hit.getId()).request());
-      }
       if (hits.length == 0) {
         break;
       }
+      nextPage = scroll(searchResponse.getScrollId());
+      for (SearchHit hit : hits) {
+        add(new DeleteRequest(hit.index(), hit.type(), hit.getId()).routing(routing));
+      }
     }
   }
 
+  private ListenableActionFuture<SearchResponse> scroll(String scrollId) {
+    // proxy of EsClient does not support asynchronous requests
+    return client.nativeClient().prepareSearchScroll(scrollId)
+      .setScroll(TimeValue.timeValueMinutes(SCROLL_MINUTES))
+      .execute();
+  }
+
   /**
    * Delete all the documents matching the given search request. This method is blocking.
    * Index is refreshed, so docs are not searchable as soon as method is executed.
    */
   public static void delete(EsClient client, String indexName, SearchRequestBuilder searchRequest) {
+    delete(client, indexName, searchRequest, null);
+  }
+
+  /**
+   * Same as {@link #delete(EsClient, String, SearchRequestBuilder)} but limited to the shard
+   * of the given routing.
+   */
+  public static void delete(EsClient client, String indexName, SearchRequestBuilder searchRequest, @Nullable String routing) {
     BulkIndexer bulk = new BulkIndexer(client, indexName);
     bulk.start();
-    bulk.addDeletion(searchRequest);
+    bulk.addDeletion(searchRequest, routing);
     bulk.stop();
   }
 
@@ -187,14 +263,14 @@ public class BulkIndexer implements Startable {
     if (bulkRequest.numberOfActions() > 0) {
       executeBulk();
     }
-    try {
-      if (semaphore.tryAcquire(concurrentRequests, 10, TimeUnit.MINUTES)) {
-        semaphore.release(concurrentRequests);
-      }
-    } catch (InterruptedException e) {
-      throw new IllegalStateException("Elasticsearch bulk requests still being executed after 10 minutes", e);
+    waitForPendingRequests();
+    // rejected requests are queued for retry when the responses of pending bulk requests are received
+    while (!retries.isEmpty()) {
+      executeBulk();
+      waitForPendingRequests();
     }
     progress.stop();
+    logSummary();
 
     if (!disableRefresh) {
       client.prepareRefresh(indexName).get();
@@ -216,36 +292,151 @@ public class BulkIndexer implements Startable {
     req.get();
   }
 
+  @VisibleForTesting
+  long getFlushByteSize() {
+    return flushByteSize;
+  }
+
+  /**
+   * Number of requests that could not be executed, even after retries. Reset by {@link #start()}.
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  private void waitForPendingRequests() {
+    try {
+      if (semaphore.tryAcquire(concurrentRequests, 10, TimeUnit.MINUTES)) {
+        semaphore.release(concurrentRequests);
+      }
+    } catch (InterruptedException e) {
+      throw new IllegalStateException("Elasticsearch bulk requests still being executed after 10 minutes", e);
+    }
+  }
+
+  private void logSummary() {
+    long durationMs = System.currentTimeMillis() - startedAt;
+    long processed = counter.get();
+    if (failures.get() > 0L) {
+      LOGGER.error("{} requests failed on index {}", failures.get(), indexName);
+    }
+    if (processed > 0L) {
+      LOGGER.info("{} requests processed on index {} in {} ms ({} requests/sec)", processed, indexName, durationMs, 1000L * processed / Math.max(1L, durationMs));
+    }
+  }
+
   private void executeBulk() {
+    sendBulk();
+    if (ordered) {
+      waitForPendingRequests();
+      // rejected requests are executed before the next ones
+      while (!retries.isEmpty()) {
+        sendBulk();
+        waitForPendingRequests();
+      }
+    }
+  }
+
+  private void sendBulk() {
+    for (ActionRequest retry = retries.poll(); retry != null; retry = retries.poll()) {
+      bulkRequest.request().add(retry);
+    }
     final BulkRequestBuilder req = this.bulkRequest;
     this.bulkRequest = client.prepareBulk().setRefresh(false);
+    if (backoffMs > 0L) {
+      // Elasticsearch is overloaded
+      Uninterruptibles.sleepUninterruptibly(backoffMs, TimeUnit.MILLISECONDS);
+    }
     semaphore.acquireUninterruptibly();
-    req.execute(new BulkResponseActionListener(req));
+    req.execute(new BulkResponseActionListener(req, System.currentTimeMillis()));
+  }
+
+  private void retryOrFail(ActionRequest request) {
+    Integer previousRetries = retriesByRequest.get(request);
+    int retryCount = previousRetries == null ? 1 : (previousRetries + 1);
+    if (!ordered || retryCount > MAX_RETRIES) {
+      retriesByRequest.remove(request);
+      failures.incrementAndGet();
+      counter.incrementAndGet();
+    } else {
+      retriesByRequest.put(request, retryCount);
+      retries.add(request);
+    }
+  }
+
+  private void adapt(long latencyMs, boolean rejected) {
+    if (rejected) {
+      backoffMs = Math.min(MAX_BACKOFF_MS, Math.max(INITIAL_BACKOFF_MS, 2 * backoffMs));
+    } else {
+      backoffMs = 0L;
+    }
+    if (adaptiveFlushByteSize) {
+      if (rejected || latencyMs > SLOW_BULK_MS) {
+        flushByteSize = Math.max(MIN_FLUSH_BYTE_SIZE, flushByteSize / 2);
+      } else if (latencyMs < FAST_BULK_MS) {
+        flushByteSize = Math.min(MAX_FLUSH_BYTE_SIZE, flushByteSize * 2);
+      }
+    }
+  }
+
+  private static boolean isRejection(BulkItemResponse item) {
+    return item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS;
   }
 
   private class BulkResponseActionListener implements ActionListener<BulkResponse> {
     private final BulkRequestBuilder req;
+    private final long sentAt;
 
-    public BulkResponseActionListener(BulkRequestBuilder req) {
+    public BulkResponseActionListener(BulkRequestBuilder req, long sentAt) {
       this.req = req;
+      this.sentAt = sentAt;
     }
 
     @Override
     public void onResponse(BulkResponse response) {
-      semaphore.release();
-      counter.addAndGet(response.getItems().length);
-
-      for (BulkItemResponse item : response.getItems()) {
-        if (item.isFailed()) {
-          LOGGER.error("index [{}], type [{}], id [{}], message [{}]", item.getIndex(), item.getType(), item.getId(), item.getFailureMessage());
+      try {
+        List<ActionRequest> requests = req.request().requests();
+        boolean rejected = false;
+        for (BulkItemResponse item : response.getItems()) {
+          if (!item.isFailed()) {
+            retriesByRequest.remove(requests.get(item.getItemId()));
+            counter.incrementAndGet();
+          } else if (isRejection(item)) {
+            rejected = true;
+            retryOrFail(requests.get(item.getItemId()));
+          } else {
+            LOGGER.error("index [{}], type [{}], id [{}], message [{}]", item.getIndex(), item.getType(), item.getId(), item.getFailureMessage());
+            retriesByRequest.remove(requests.get(item.getItemId()));
+            failures.incrementAndGet();
+            counter.incrementAndGet();
+          }
         }
+        adapt(System.currentTimeMillis() - sentAt, rejected);
+      } finally {
+        // released last, so that stop() does not miss the requests to be retried. Always released,
+        // otherwise stop() would be blocked.
+        semaphore.release();
       }
     }
 
     @Override
     public void onFailure(Throwable e) {
-      semaphore.release();
-      LOGGER.error("Fail to execute bulk index request: " + req, e);
+      try {
+        if (ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException) {
+          for (ActionRequest request : req.request().requests()) {
+            retryOrFail(request);
+          }
+          adapt(System.currentTimeMillis() - sentAt, true);
+        } else {
+          LOGGER.error("Fail to execute bulk index request: " + req, e);
+          for (ActionRequest request : req.request().requests()) {
+            retriesByRequest.remove(request);
+          }
+          failures.addAndGet(req.request().numberOfActions());
+        }
+      } finally {
+        semaphore.release();
+      }
     }
   }
 }
@@ -34,7 +34,14 @@ public class SearchResult<DOC extends BaseDoc> {
   private final long total;
 
   public SearchResult(SearchResponse response, Function<Map<String, Object>, DOC> converter) {
-    this.facets = new Facets(response);
+    this(response, converter, new Facets(response));
+  }
+
+  /**
+   * Facets are given when they are not computed by the request, for example when they are cached.
+   */
+  public SearchResult(SearchResponse response, Function<Map<String, Object>, DOC> converter, Facets facets) {
+    this.facets = facets;
     this.total = response.getHits().totalHits();
     this.docs = EsUtils.convertToDocs(response.getHits(), converter);
   }
@@ -22,12 +22,19 @@ package org.sonar.server.issue.index;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbClient;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.EsUtils;
 
 import java.util.Collection;
 import java.util.Date;
@@ -43,10 +50,16 @@ import java.util.Map;
 public class IssueAuthorizationIndexer extends BaseIndexer {
 
   private final DbClient dbClient;
+  private final IssueFacetCache facetCache;
 
-  public IssueAuthorizationIndexer(DbClient dbClient, EsClient esClient) {
+  public IssueAuthorizationIndexer(DbClient dbClient, EsClient esClient, IssueFacetCache facetCache) {
     super(esClient, 0L, IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_AUTHORIZATION, IssueIndexDefinition.FIELD_ISSUE_TECHNICAL_UPDATED_AT);
     this.dbClient = dbClient;
+    this.facetCache = facetCache;
+  }
+
+  public IssueAuthorizationIndexer(DbClient dbClient, EsClient esClient) {
+    this(dbClient, esClient, IssueFacetCache.disabled());
   }
 
   @Override
@@ -75,11 +88,19 @@ public class IssueAuthorizationIndexer extends BaseIndexer {
   private long doIndex(BulkIndexer bulk, Collection<IssueAuthorizationDao.Dto> authorizations) {
     long maxDate = 0L;
     bulk.start();
+    // count and scroll do not see the issues that are not refreshed yet
+    esClient.prepareRefresh(IssueIndexDefinition.INDEX).get();
+    // no need to search for the issues of each project when type "issue" is empty, for example on first startup
+    boolean hasIssues = esClient.prepareCount(IssueIndexDefinition.INDEX).setTypes(IssueIndexDefinition.TYPE_ISSUE).get().getCount() > 0L;
     for (IssueAuthorizationDao.Dto authorization : authorizations) {
       bulk.add(newUpdateRequest(authorization));
+      if (hasIssues) {
+        addIssueUpdates(bulk, authorization);
+      }
       maxDate = Math.max(maxDate, authorization.getUpdatedAt());
     }
     bulk.stop();
+    facetCache.invalidate();
     return maxDate;
   }
 
@@ -88,6 +109,46 @@ public class IssueAuthorizationIndexer extends BaseIndexer {
       .prepareDelete(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_AUTHORIZATION, uuid)
       .setRefresh(refresh)
       .get();
+    facetCache.invalidate();
+  }
+
+  /**
+   * Copies groups and users to the issues of the project. Elasticsearch 1.x does not support
+   * update-by-query, so issues are scrolled.
+   * @see IssueIndexDefinition#FIELD_ISSUE_AUTHORIZATION_GROUPS
+   */
+  private void addIssueUpdates(BulkIndexer bulk, IssueAuthorizationDao.Dto dto) {
+    String projectUuid = dto.getProjectUuid();
+    Map<String, Object> doc = ImmutableMap.<String, Object>of(
+      IssueIndexDefinition.FIELD_ISSUE_AUTHORIZATION_GROUPS, dto.getGroups(),
+      IssueIndexDefinition.FIELD_ISSUE_AUTHORIZATION_USERS, dto.getUsers());
+    SearchResponse searchResponse = esClient.prepareSearch(IssueIndexDefinition.INDEX)
+      .setTypes(IssueIndexDefinition.TYPE_ISSUE)
+      .setRouting(projectUuid)
+      .setQuery(QueryBuilders.filteredQuery(
+        QueryBuilders.matchAllQuery(),
+        FilterBuilders.termFilter(IssueIndexDefinition.FIELD_ISSUE_PROJECT_UUID, projectUuid)))
+      .setScroll(TimeValue.timeValueMinutes(EsUtils.SCROLL_TIME_IN_MINUTES))
+      .setSearchType(SearchType.SCAN)
+      .setSize(100)
+      // load only doc ids, not _source fields
+      .setFetchSource(false)
+      .get();
+    while (true) {
+      searchResponse = esClient.prepareSearchScroll(searchResponse.getScrollId())
+        .setScroll(TimeValue.timeValueMinutes(EsUtils.SCROLL_TIME_IN_MINUTES))
+        .get();
+      SearchHit[] hits = searchResponse.getHits().getHits();
+      if (hits.length == 0) {
+        break;
+      }
+      for (SearchHit hit : hits) {
+        bulk.add(new UpdateRequest(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE, hit.getId())
+          .routing(projectUuid)
+          .parent(projectUuid)
+          .doc(doc));
+      }
+    }
   }
 
   private ActionRequest newUpdateRequest(IssueAuthorizationDao.Dto dto) {
@@ -20,6 +20,7 @@
 package org.sonar.server.issue.index;
 
 import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -222,6 +223,15 @@ public class IssueDoc extends BaseDoc implements Issue {
     return getNullableField(IssueIndexDefinition.FIELD_ISSUE_DIRECTORY_PATH);
   }
 
+  /**
+   * Serialized protobuf {@link org.sonar.db.protobuf.DbIssues.Locations}, as stored in db
+   */
+  @CheckForNull
+  public byte[] locations() {
+    String data = getNullableField(IssueIndexDefinition.FIELD_ISSUE_LOCATIONS);
+    return data == null ? null : BaseEncoding.base64().decode(data);
+  }
+
   public IssueDoc setKey(@Nullable String s) {
     setField(IssueIndexDefinition.FIELD_ISSUE_KEY, s);
     return this;
@@ -357,6 +367,21 @@ public class IssueDoc extends BaseDoc implements Issue {
     return this;
   }
 
+  public IssueDoc setAuthorizationGroups(@Nullable Collection<String> groups) {
+    setField(IssueIndexDefinition.FIELD_ISSUE_AUTHORIZATION_GROUPS, groups);
+    return this;
+  }
+
+  public IssueDoc setAuthorizationUsers(@Nullable Collection<String> users) {
+    setField(IssueIndexDefinition.FIELD_ISSUE_AUTHORIZATION_USERS, users);
+    return this;
+  }
+
+  public IssueDoc setLocations(@Nullable byte[] b) {
+    setField(IssueIndexDefinition.FIELD_ISSUE_LOCATIONS, b == null ? null : BaseEncoding.base64().encode(b));
+    return this;
+  }
+
   public IssueDoc setModuleUuidPath(@Nullable String s) {
     setField(IssueIndexDefinition.FIELD_ISSUE_MODULE_PATH, s);
     return this;
@@ -0,0 +1,123 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.issue.index;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+import org.sonar.server.es.Facets;
+
+/**
+ * Cache of the facets computed by {@link IssueIndex#search(IssueQuery, org.sonar.server.es.SearchOptions)}.
+ * <p/>
+ * Entries are keyed by the canonical form of the search filters, including the authorization filter of the
+ * user. The indexers of issues, authorizations and views increase the generation of the cache as soon
+ * as their changes are visible, so that facets computed before are not served anymore.
+ */
+public class IssueFacetCache {
+
+  private static final int DEFAULT_MAX_SIZE = 1_000;
+
+  private final AtomicLong generation = new AtomicLong();
+  private final Cache<String, Entry> cache;
+
+  public IssueFacetCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  @VisibleForTesting
+  IssueFacetCache(int maxSize) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .recordStats()
+      .build();
+  }
+
+  /**
+   * Cache that never keeps facets. Used when indexers and index are not shared by a container.
+   */
+  public static IssueFacetCache disabled() {
+    return new IssueFacetCache(0);
+  }
+
+  /**
+   * Must be read before executing the request which facets are then given to {@link #put(String, long, Facets)}
+   */
+  long generation() {
+    return generation.get();
+  }
+
+  /**
+   * Drops all the facets. To be called once changes of the index are visible to searches.
+   */
+  public void invalidate() {
+    generation.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  @CheckForNull
+  Facets get(String key) {
+    Entry entry = cache.getIfPresent(key);
+    if (entry == null || entry.generation != generation.get()) {
+      return null;
+    }
+    return copy(entry.facets);
+  }
+
+  void put(String key, long facetsGeneration, Facets facets) {
+    if (facetsGeneration == generation.get()) {
+      cache.put(key, new Entry(facetsGeneration, copy(facets)));
+    }
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  /**
+   * Facets are completed by web services, so they must not be shared.
+   */
+  private static Facets copy(Facets facets) {
+    LinkedHashMap<String, LinkedHashMap<String, Long>> copy = new LinkedHashMap<>();
+    for (Map.Entry<String, LinkedHashMap<String, Long>> facet : facets.getAll().entrySet()) {
+      copy.put(facet.getKey(), new LinkedHashMap<>(facet.getValue()));
+    }
+    return new Facets(copy);
+  }
+
+  private static class Entry {
+    private final long generation;
+    private final Facets facets;
+
+    private Entry(long generation, Facets facets) {
+      this.generation = generation;
+      this.facets = facets;
+    }
+  }
+}
@@ -35,6 +35,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.regex.Pattern;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
@@ -62,6 +64,7 @@ import org.elasticsearch.search.aggregations.bucket.terms.TermsBuilder;
 import org.elasticsearch.search.aggregations.metrics.min.Min;
 import org.elasticsearch.search.aggregations.metrics.sum.SumBuilder;
 import org.joda.time.Duration;
+import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.resources.Scopes;
 import org.sonar.api.utils.DateUtils;
@@ -71,6 +74,7 @@ import org.sonar.db.component.ComponentDto;
 import org.sonar.server.es.BaseIndex;
 import org.sonar.server.es.EsClient;
 import org.sonar.server.es.EsUtils;
+import org.sonar.server.es.Facets;
 import org.sonar.server.es.SearchOptions;
 import org.sonar.server.es.SearchResult;
 import org.sonar.server.es.Sorting;
@@ -117,6 +121,12 @@ public class IssueIndex extends BaseIndex {
 
   private static final String IS_ASSIGNED_FILTER = "__isAssigned";
 
+  /**
+   * Issues are filtered by default on the groups and users copied to each issue. When this property is true,
+   * the parent documents of type "authorization" are joined instead. Kept for comparison in benchmarks.
+   */
+  public static final String AUTHORIZATION_JOIN_PROPERTY = "sonar.search.issues.authorizationJoin";
+
   public static final String DEBT_AGGREGATION_NAME = "debt";
   private static final SumBuilder DEBT_AGGREGATION = AggregationBuilders.sum(DEBT_AGGREGATION_NAME).field(IssueIndexDefinition.FIELD_ISSUE_DEBT);
   private static final Order DEBT_AGGREGATION_ORDER = Order.aggregation(DEBT_AGGREGATION_NAME, false);
@@ -140,12 +150,16 @@ public class IssueIndex extends BaseIndex {
   private final Sorting sorting;
   private final System2 system;
   private final UserSession userSession;
+  private final IssueFacetCache facetCache;
+  private final boolean authorizationJoin;
 
-  public IssueIndex(EsClient client, System2 system, UserSession userSession) {
+  public IssueIndex(EsClient client, System2 system, UserSession userSession, IssueFacetCache facetCache, Settings settings) {
     super(client);
 
     this.system = system;
     this.userSession = userSession;
+    this.facetCache = facetCache;
+    this.authorizationJoin = settings.getBoolean(AUTHORIZATION_JOIN_PROPERTY);
     this.sorting = new Sorting();
     this.sorting.add(IssueQuery.SORT_BY_ASSIGNEE, IssueIndexDefinition.FIELD_ISSUE_ASSIGNEE);
     this.sorting.add(IssueQuery.SORT_BY_STATUS, IssueIndexDefinition.FIELD_ISSUE_STATUS);
@@ -164,6 +178,10 @@ public class IssueIndex extends BaseIndex {
     this.sorting.addDefault(IssueIndexDefinition.FIELD_ISSUE_KEY);
   }
 
+  public IssueIndex(EsClient client, System2 system, UserSession userSession) {
+    this(client, system, userSession, IssueFacetCache.disabled(), new Settings());
+  }
+
   /**
    * Warning, this method is not efficient as routing (the project uuid) is not known.
    * All the ES cluster nodes are involved.
@@ -211,8 +229,39 @@ public class IssueIndex extends BaseIndex {
       requestBuilder.setQuery(esQuery);
     }
 
+    String facetCacheKey = facetCacheKey(query, options, filters);
+    long facetCacheGeneration = facetCache.generation();
+    Facets cachedFacets = facetCacheKey == null ? null : facetCache.get(facetCacheKey);
+    if (cachedFacets != null) {
+      return new SearchResult<>(requestBuilder.get(), DOC_CONVERTER, cachedFacets);
+    }
+
     configureStickyFacets(query, options, filters, esQuery, requestBuilder);
-    return new SearchResult<>(requestBuilder.get(), DOC_CONVERTER);
+    SearchResult<IssueDoc> result = new SearchResult<>(requestBuilder.get(), DOC_CONVERTER);
+    if (facetCacheKey != null) {
+      facetCache.put(facetCacheKey, facetCacheGeneration, result.getFacets());
+    }
+    return result;
+  }
+
+  /**
+   * Canonical form of the request for the facets, or null if facets must not be cached.
+   */
+  @CheckForNull
+  private String facetCacheKey(IssueQuery query, SearchOptions options, Map<String, FilterBuilder> filters) {
+    boolean debtMode = IssueFilterParameters.FACET_MODE_DEBT.equals(query.facetMode());
+    if ((options.getFacets().isEmpty() && !debtMode) || options.getFacets().contains(IssueFilterParameters.CREATED_AT)) {
+      // histogram of creation dates depends on current date
+      return null;
+    }
+    StringBuilder key = new StringBuilder();
+    key.append(query.facetMode()).append('|').append(userSession.getLogin()).append('|').append(new TreeSet<>(options.getFacets()));
+    for (Map.Entry<String, FilterBuilder> filter : new TreeMap<>(filters).entrySet()) {
+      if (filter.getValue() != null) {
+        key.append('|').append(filter.getKey()).append('=').append(filter.getValue());
+      }
+    }
+    return key.toString();
   }
 
   private void configureSorting(IssueQuery query, SearchRequestBuilder esRequest) {
@@ -324,24 +373,32 @@ public class IssueIndex extends BaseIndex {
     return String.format("%s%s%s", IssueIndexDefinition.TYPE_ISSUE, viewUuid, ViewIndexDefinition.TYPE_VIEW);
   }
 
-  private static FilterBuilder createAuthorizationFilter(boolean checkAuthorization, @Nullable String userLogin, Set<String> userGroups) {
-    if (checkAuthorization) {
-      OrFilterBuilder groupsAndUser = FilterBuilders.orFilter();
-      if (userLogin != null) {
-        groupsAndUser.add(FilterBuilders.termFilter(IssueIndexDefinition.FIELD_AUTHORIZATION_USERS, userLogin));
-      }
-      for (String group : userGroups) {
-        groupsAndUser.add(FilterBuilders.termFilter(IssueIndexDefinition.FIELD_AUTHORIZATION_GROUPS, group));
-      }
+  private FilterBuilder createAuthorizationFilter(boolean checkAuthorization, @Nullable String userLogin, Set<String> userGroups) {
+    if (!checkAuthorization) {
+      return FilterBuilders.matchAllFilter();
+    }
+    if (authorizationJoin) {
       return FilterBuilders.hasParentFilter(IssueIndexDefinition.TYPE_AUTHORIZATION,
         QueryBuilders.filteredQuery(
           QueryBuilders.matchAllQuery(),
           FilterBuilders.boolFilter()
-            .must(groupsAndUser)
+            .must(createGroupsAndUserFilter(IssueIndexDefinition.FIELD_AUTHORIZATION_GROUPS, IssueIndexDefinition.FIELD_AUTHORIZATION_USERS, userLogin, userGroups))
             .cache(true)));
-    } else {
-      return FilterBuilders.matchAllFilter();
     }
+    return FilterBuilders.boolFilter()
+      .must(createGroupsAndUserFilter(IssueIndexDefinition.FIELD_ISSUE_AUTHORIZATION_GROUPS, IssueIndexDefinition.FIELD_ISSUE_AUTHORIZATION_USERS, userLogin, userGroups))
+      .cache(true);
+  }
+
+  private static OrFilterBuilder createGroupsAndUserFilter(String groupsField, String usersField, @Nullable String userLogin, Set<String> userGroups) {
+    OrFilterBuilder groupsAndUser = FilterBuilders.orFilter();
+    if (userLogin != null) {
+      groupsAndUser.add(FilterBuilders.termFilter(usersField, userLogin));
+    }
+    for (String group : userGroups) {
+      groupsAndUser.add(FilterBuilders.termFilter(groupsField, group));
+    }
+    return groupsAndUser;
   }
 
   private void addDatesFilter(Map<String, FilterBuilder> filters, IssueQuery query) {
@@ -708,6 +765,7 @@ public class IssueIndex extends BaseIndex {
       FilterBuilders.andFilter(projectFilter, dateFilter));
 
     getClient().prepareDeleteByQuery(IssueIndexDefinition.INDEX).setQuery(queryBuilder).get();
+    facetCache.invalidate();
   }
 
   private BoolFilterBuilder createBoolFilter(IssueQuery query) {
@@ -43,6 +43,15 @@ public class IssueIndexDefinition implements IndexDefinition {
   public static final String FIELD_ISSUE_ASSIGNEE = "assignee";
   public static final String FIELD_ISSUE_ATTRIBUTES = "attributes";
   public static final String FIELD_ISSUE_AUTHOR_LOGIN = "authorLogin";
+  /**
+   * Copy of the groups of the parent document of type "authorization", so that issues
+   * can be filtered without joining the parent document.
+   */
+  public static final String FIELD_ISSUE_AUTHORIZATION_GROUPS = "authGroups";
+  /**
+   * Copy of the users of the parent document of type "authorization"
+   */
+  public static final String FIELD_ISSUE_AUTHORIZATION_USERS = "authUsers";
   public static final String FIELD_ISSUE_COMPONENT_UUID = "component";
   public static final String FIELD_ISSUE_DEBT = "debt";
   public static final String FIELD_ISSUE_EFFORT = "effort";
@@ -62,6 +71,11 @@ public class IssueIndexDefinition implements IndexDefinition {
   public static final String FIELD_ISSUE_KEY = "key";
   public static final String FIELD_ISSUE_LANGUAGE = "language";
   public static final String FIELD_ISSUE_LINE = "line";
+  /**
+   * Base64 encoding of the protobuf {@link org.sonar.db.protobuf.DbIssues.Locations}. Not searchable,
+   * it is only stored so that issues can be returned without reloading them from db.
+   */
+  public static final String FIELD_ISSUE_LOCATIONS = "locations";
   public static final String FIELD_ISSUE_MESSAGE = "message";
   public static final String FIELD_ISSUE_MODULE_UUID = "module";
   public static final String FIELD_ISSUE_MODULE_PATH = "modulePath";
@@ -111,6 +125,8 @@ public class IssueIndexDefinition implements IndexDefinition {
     issueMapping.stringFieldBuilder(FIELD_ISSUE_ASSIGNEE).enableSorting().build();
     issueMapping.stringFieldBuilder(FIELD_ISSUE_ATTRIBUTES).docValues().disableSearch().build();
     issueMapping.stringFieldBuilder(FIELD_ISSUE_AUTHOR_LOGIN).docValues().build();
+    issueMapping.stringFieldBuilder(FIELD_ISSUE_AUTHORIZATION_GROUPS).build();
+    issueMapping.stringFieldBuilder(FIELD_ISSUE_AUTHORIZATION_USERS).build();
     issueMapping.stringFieldBuilder(FIELD_ISSUE_COMPONENT_UUID).docValues().build();
     issueMapping.createLongField(FIELD_ISSUE_DEBT);
     issueMapping.createDoubleField(FIELD_ISSUE_EFFORT);
@@ -121,6 +137,7 @@ public class IssueIndexDefinition implements IndexDefinition {
     issueMapping.stringFieldBuilder(FIELD_ISSUE_KEY).enableSorting().build();
     issueMapping.stringFieldBuilder(FIELD_ISSUE_LANGUAGE).build();
     issueMapping.createIntegerField(FIELD_ISSUE_LINE);
+    issueMapping.stringFieldBuilder(FIELD_ISSUE_LOCATIONS).disableSearch().build();
     issueMapping.stringFieldBuilder(FIELD_ISSUE_MESSAGE).docValues().build();
     issueMapping.stringFieldBuilder(FIELD_ISSUE_MODULE_UUID).docValues().build();
     issueMapping.createUuidPathField(FIELD_ISSUE_MODULE_PATH);
@@ -19,7 +19,16 @@
  */
 package org.sonar.server.issue.index;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.index.query.FilterBuilders;
@@ -33,15 +42,37 @@ import org.sonar.server.es.EsClient;
 public class IssueIndexer extends BaseIndexer {
 
   private final DbClient dbClient;
+  private final IssueFacetCache facetCache;
 
-  public IssueIndexer(DbClient dbClient, EsClient esClient) {
+  /**
+   * Issues are indexed by the thread of {@link IssueAuthorizationIndexer}. Otherwise an issue could be indexed with
+   * the permissions read before a concurrent indexing of authorization, but after this indexing searched
+   * for the issues to be updated.
+   */
+  public IssueIndexer(DbClient dbClient, EsClient esClient, IssueFacetCache facetCache, IssueAuthorizationIndexer authorizationIndexer) {
+    super(esClient, authorizationIndexer, IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE, IssueIndexDefinition.FIELD_ISSUE_TECHNICAL_UPDATED_AT);
+    this.dbClient = dbClient;
+    this.facetCache = facetCache;
+  }
+
+  public IssueIndexer(DbClient dbClient, EsClient esClient, IssueFacetCache facetCache) {
     super(esClient, 300, IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE, IssueIndexDefinition.FIELD_ISSUE_TECHNICAL_UPDATED_AT);
     this.dbClient = dbClient;
+    this.facetCache = facetCache;
   }
 
+  public IssueIndexer(DbClient dbClient, EsClient esClient) {
+    this(dbClient, esClient, IssueFacetCache.disabled());
+  }
+
+  /**
+   * Issues are indexed in the order of their update date and bulk requests are executed in order, so the index always
+   * contains all the issues updated before its most recent update date. An indexing interrupted, for example
+   * by a server restart during the initial population of the index, is then resumed from this date.
+   */
   @Override
   protected long doIndex(long lastUpdatedAt) {
-    return doIndex(createBulkIndexer(false), lastUpdatedAt);
+    return doIndex(createBulkIndexer(false).setOrdered(true), lastUpdatedAt);
   }
 
   public void indexAll() {
@@ -71,14 +102,16 @@ public class IssueIndexer extends BaseIndexer {
   private long doIndex(BulkIndexer bulk, Iterator<IssueDoc> issues) {
     bulk.start();
     long maxDate = 0L;
+    Map<String, ProjectAuthorization> authorizationsByProjectUuid = new HashMap<>();
     while (issues.hasNext()) {
       IssueDoc issue = issues.next();
+      completeAuthorization(issue, authorizationsByProjectUuid);
       bulk.add(newUpsertRequest(issue));
 
-      // it's more efficient to sort programmatically than in SQL on some databases (MySQL for instance)
       maxDate = Math.max(maxDate, issue.getTechnicalUpdateDate().getTime());
     }
     bulk.stop();
+    facetCache.invalidate();
     return maxDate;
   }
 
@@ -87,13 +120,32 @@ public class IssueIndexer extends BaseIndexer {
     bulk.setDisableRefresh(!refresh);
     bulk.start();
     SearchRequestBuilder search = esClient.prepareSearch(IssueIndexDefinition.INDEX)
-      .setRouting(uuid)
       .setQuery(QueryBuilders.filteredQuery(
         QueryBuilders.matchAllQuery(),
         FilterBuilders.boolFilter().must(FilterBuilders.termsFilter(IssueIndexDefinition.FIELD_ISSUE_PROJECT_UUID, uuid))
         ));
-    bulk.addDeletion(search);
+    // documents of project are routed by its uuid
+    bulk.addDeletion(search, uuid);
     bulk.stop();
+    facetCache.invalidate();
+  }
+
+  /**
+   * Copies the groups and users of the project authorization indexed by {@link IssueAuthorizationIndexer}.
+   * Issues of projects that are not indexed yet are updated when authorization is indexed.
+   */
+  private void completeAuthorization(IssueDoc issue, Map<String, ProjectAuthorization> authorizationsByProjectUuid) {
+    String projectUuid = issue.projectUuid();
+    ProjectAuthorization authorization = authorizationsByProjectUuid.get(projectUuid);
+    if (authorization == null) {
+      GetResponse response = esClient.prepareGet(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_AUTHORIZATION, projectUuid)
+        .setRouting(projectUuid)
+        .get();
+      authorization = new ProjectAuthorization(response.isExists() ? response.getSourceAsMap() : Collections.<String, Object>emptyMap());
+      authorizationsByProjectUuid.put(projectUuid, authorization);
+    }
+    issue.setAuthorizationGroups(authorization.groups);
+    issue.setAuthorizationUsers(authorization.users);
   }
 
   BulkIndexer createBulkIndexer(boolean large) {
@@ -115,4 +167,31 @@ public class IssueIndexer extends BaseIndexer {
       .upsert(issue.getFields());
   }
 
+  private static class ProjectAuthorization {
+    @Nullable
+    private final List<String> groups;
+    @Nullable
+    private final List<String> users;
+
+    ProjectAuthorization(Map<String, Object> source) {
+      this.groups = toStrings(source.get(IssueIndexDefinition.FIELD_AUTHORIZATION_GROUPS));
+      this.users = toStrings(source.get(IssueIndexDefinition.FIELD_AUTHORIZATION_USERS));
+    }
+
+    @CheckForNull
+    private static List<String> toStrings(@Nullable Object values) {
+      if (values == null) {
+        return null;
+      }
+      if (!(values instanceof Collection)) {
+        throw new IllegalStateException("Authorization field must be an array: " + values);
+      }
+      List<String> strings = new ArrayList<>();
+      for (Object value : (Collection<?>) values) {
+        strings.add(String.valueOf(value));
+      }
+      return strings;
+    }
+  }
+
 }
@@ -80,7 +80,8 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
     "p.module_uuid_path",
     "p.path",
     "p.scope",
-    "i.tags"
+    "i.tags",
+    "i.locations"
   };
 
   private static final String SQL_ALL = "select " + StringUtils.join(FIELDS, ",") + " from issues i " +
@@ -88,7 +89,14 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
     "inner join projects p on p.uuid=i.component_uuid " +
     "inner join projects root on root.uuid=i.project_uuid";
 
-  private static final String SQL_AFTER_DATE = SQL_ALL + " where i.updated_at>?";
+  private static final String SQL_AFTER_DATE = SQL_ALL + " where i.updated_at>=?";
+
+  /**
+   * Rows are sorted by update date, so that an interrupted indexing can be resumed from the most recent update date
+   * of the index, see {@link IssueIndexer}. Rows updated at this date are indexed again. Key is only a tie-break
+   * that keeps order deterministic. The index issues_updated_at_kee avoids sorting the table.
+   */
+  private static final String SQL_ORDER = " order by i.updated_at, i.kee";
 
   private static final Splitter TAGS_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
 
@@ -100,7 +108,7 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
 
   static IssueResultSetIterator create(DbClient dbClient, DbSession session, long afterDate) {
     try {
-      String sql = afterDate > 0L ? SQL_AFTER_DATE : SQL_ALL;
+      String sql = (afterDate > 0L ? SQL_AFTER_DATE : SQL_ALL) + SQL_ORDER;
       PreparedStatement stmt = dbClient.getMyBatis().newScrollingSelectStatement(session, sql);
       if (afterDate > 0L) {
         stmt.setLong(1, afterDate);
@@ -183,6 +191,7 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
     doc.setDirectoryPath(extractDirPath(doc.filePath(), scope));
     String tags = rs.getString(28);
     doc.setTags(ImmutableList.copyOf(TAGS_SPLITTER.split(tags == null ? "" : tags)));
+    doc.setLocations(rs.getBytes(29));
     return doc;
   }
 }
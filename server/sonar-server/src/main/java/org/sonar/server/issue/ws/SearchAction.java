@@ -289,7 +289,7 @@ public class SearchAction implements IssuesWsAction {
       completeFacets(facets, request, wsRequest);
       collectFacets(collector, facets);
     }
-    SearchResponseData data = searchResponseLoader.load(collector, facets);
+    SearchResponseData data = searchResponseLoader.load(collector, result.getDocs(), facets);
 
     // format response
 
@@ -21,14 +21,18 @@ package org.sonar.server.issue.ws;
 
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.SetMultimap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nullable;
 import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.Duration;
+import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.core.issue.DefaultIssue;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
@@ -40,6 +44,7 @@ import org.sonar.server.es.Facets;
 import org.sonar.server.issue.ActionService;
 import org.sonar.server.issue.IssueCommentService;
 import org.sonar.server.issue.IssueService;
+import org.sonar.server.issue.index.IssueDoc;
 import org.sonar.server.issue.index.IssueIndex;
 
 import static com.google.common.collect.Lists.newArrayList;
@@ -73,24 +78,48 @@ public class SearchResponseLoader {
   public SearchResponseData load(Collector collector, @Nullable Facets facets) {
     DbSession dbSession = dbClient.openSession(false);
     try {
-      SearchResponseData result = new SearchResponseData(dbClient.issueDao().selectByOrderedKeys(dbSession, collector.getIssueKeys()));
-      collector.collect(result.getIssues());
-
-      loadRules(collector, dbSession, result);
-      // order is important - loading of comments complete the list of users: loadComments() is
-      // before loadUsers()
-      loadComments(collector, dbSession, result);
-      loadUsers(collector, dbSession, result);
-      loadActionPlans(collector, dbSession, result);
-      loadComponents(collector, dbSession, result);
-      loadActionsAndTransitions(collector, result);
-      completeTotalDebtFromFacet(facets, result);
+      SearchResponseData result = new SearchResponseData(new ArrayList<>(dbClient.issueDao().selectByOrderedKeys(dbSession, collector.getIssueKeys())));
+      load(collector, dbSession, result, facets);
       return result;
     } finally {
       dbClient.closeSession(dbSession);
     }
   }
 
+  /**
+   * Issues are built from the documents returned by Elasticsearch, so they are not reloaded from db.
+   * Only the additional data (components, rules, users, ...) is loaded from db.
+   */
+  public SearchResponseData load(Collector collector, List<IssueDoc> issueDocs, @Nullable Facets facets) {
+    List<IssueDto> issues = new ArrayList<>(issueDocs.size());
+    for (IssueDoc issueDoc : issueDocs) {
+      issues.add(toIssueDto(issueDoc));
+    }
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      SearchResponseData result = new SearchResponseData(issues);
+      load(collector, dbSession, result, facets);
+      return result;
+    } finally {
+      dbClient.closeSession(dbSession);
+    }
+  }
+
+  private void load(Collector collector, DbSession dbSession, SearchResponseData result, @Nullable Facets facets) {
+    collector.collect(result.getIssues());
+
+    loadRules(collector, dbSession, result);
+    // order is important - loading of comments complete the list of users: loadComments() is
+    // before loadUsers()
+    loadComments(collector, dbSession, result);
+    loadUsers(collector, dbSession, result);
+    loadActionPlans(collector, dbSession, result);
+    loadComponents(collector, dbSession, result);
+    completeComponentKeys(result);
+    loadActionsAndTransitions(collector, result);
+    completeTotalDebtFromFacet(facets, result);
+  }
+
   private void loadUsers(Collector collector, DbSession dbSession, SearchResponseData result) {
     if (collector.contains(USERS)) {
       result.setUsers(dbClient.userDao().selectByLogins(dbSession, collector.<String>get(USERS)));
@@ -130,20 +159,46 @@ public class SearchResponseLoader {
     for (ComponentDto component : result.getComponents()) {
       collector.addProjectUuid(component.projectUuid());
     }
-    List<ComponentDto> projects = dbClient.componentDao().selectByUuids(dbSession, collector.getProjectUuids());
-    result.addComponents(projects);
+    Set<String> missingProjectUuids = new HashSet<>(collector.getProjectUuids());
+    for (ComponentDto component : result.getComponents()) {
+      missingProjectUuids.remove(component.uuid());
+    }
+    if (!missingProjectUuids.isEmpty()) {
+      result.addComponents(dbClient.componentDao().selectByUuids(dbSession, missingProjectUuids));
+    }
+  }
+
+  /**
+   * Component keys are not indexed. They are set from the loaded components, so that
+   * {@link IssueDto#toDefaultIssue()} behaves as if the issues were loaded from db.
+   * <p/>
+   * The index can still reference components that have just been deleted from db. Such issues
+   * can't be formatted, so they are removed from response.
+   */
+  private static void completeComponentKeys(SearchResponseData result) {
+    Iterator<IssueDto> issues = result.getIssues().iterator();
+    while (issues.hasNext()) {
+      IssueDto issue = issues.next();
+      ComponentDto component = result.getComponentByUuid(issue.getComponentUuid());
+      ComponentDto project = result.getComponentByUuid(issue.getProjectUuid());
+      if (component == null || project == null) {
+        issues.remove();
+      } else {
+        issue.setComponentKey(component.key());
+        issue.setProjectKey(project.key());
+      }
+    }
   }
 
   private void loadActionsAndTransitions(Collector collector, SearchResponseData result) {
     if (collector.contains(ACTIONS) || collector.contains(TRANSITIONS)) {
       for (IssueDto dto : result.getIssues()) {
-        // so that IssueDto can be used.
+        // TODO workflow and action engines must not depend on org.sonar.api.issue.Issue but on a generic interface
+        DefaultIssue issue = dto.toDefaultIssue();
         if (collector.contains(ACTIONS)) {
-          result.addActions(dto.getKey(), actionService.listAvailableActions(dto.toDefaultIssue()));
+          result.addActions(issue.key(), actionService.listAvailableActions(issue));
         }
         if (collector.contains(TRANSITIONS)) {
-          // TODO workflow and action engines must not depend on org.sonar.api.issue.Issue but on a generic interface
-          DefaultIssue issue = dto.toDefaultIssue();
           result.addTransitions(issue.key(), issueService.listTransitions(issue));
         }
       }
@@ -159,6 +214,39 @@ public class SearchResponseLoader {
     }
   }
 
+  private static IssueDto toIssueDto(IssueDoc doc) {
+    RuleKey ruleKey = doc.ruleKey();
+    Duration debt = doc.debt();
+    Map<String, String> attributes = doc.attributes();
+    return new IssueDto()
+      .setKee(doc.key())
+      .setComponentUuid(doc.componentUuid())
+      .setModuleUuid(doc.moduleUuid())
+      .setModuleUuidPath(doc.modulePath())
+      .setProjectUuid(doc.projectUuid())
+      .setRuleKey(ruleKey.repository(), ruleKey.rule())
+      .setLanguage(doc.language())
+      .setSeverity(doc.severity())
+      .setManualSeverity(doc.isManualSeverity())
+      .setMessage(doc.message())
+      .setLine(doc.line())
+      .setLocations(doc.locations())
+      .setEffortToFix(doc.effortToFix())
+      .setDebt(debt == null ? null : debt.toMinutes())
+      .setStatus(doc.status())
+      .setResolution(doc.resolution())
+      .setChecksum(doc.checksum())
+      .setReporter(doc.reporter())
+      .setAssignee(doc.assignee())
+      .setAuthorLogin(doc.authorLogin())
+      .setActionPlanKey(doc.actionPlanKey())
+      .setIssueAttributes(attributes.isEmpty() ? null : KeyValueFormat.format(attributes))
+      .setTags(doc.tags())
+      .setIssueCreationDate(doc.creationDate())
+      .setIssueUpdateDate(doc.updateDate())
+      .setIssueCloseDate(doc.closeDate());
+  }
+
   /**
    * Collects the keys of all the data to be loaded (users, rules, ...)
    */
@@ -30,6 +30,7 @@ import org.sonar.db.DbSession;
 import org.sonar.db.MyBatis;
 import org.sonar.db.version.DatabaseVersion;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.issue.index.IssueFacetCache;
 import org.sonar.server.issue.index.IssueIndexDefinition;
 import org.sonar.server.search.IndexDefinition;
 import org.sonar.server.view.index.ViewIndexDefinition;
@@ -47,10 +48,16 @@ public class BackendCleanup {
   };
   private final EsClient esClient;
   private final MyBatis myBatis;
+  private final IssueFacetCache issueFacetCache;
 
-  public BackendCleanup(EsClient esClient, MyBatis myBatis) {
+  public BackendCleanup(EsClient esClient, MyBatis myBatis, IssueFacetCache issueFacetCache) {
     this.esClient = esClient;
     this.myBatis = myBatis;
+    this.issueFacetCache = issueFacetCache;
+  }
+
+  public BackendCleanup(EsClient esClient, MyBatis myBatis) {
+    this(esClient, myBatis, IssueFacetCache.disabled());
   }
 
   public void clearAll() {
@@ -93,6 +100,7 @@ public class BackendCleanup {
       esClient.prepareFlush(esClient.prepareState().get()
         .getState().getMetaData().concreteAllIndices())
         .get();
+      issueFacetCache.invalidate();
     } catch (Exception e) {
       throw new IllegalStateException("Unable to clear indexes", e);
     }
@@ -162,6 +170,7 @@ public class BackendCleanup {
       .getState().getMetaData().concreteIndices(IndicesOptions.strictExpand(), indexName))
       .setQuery(QueryBuilders.matchAllQuery())
       .get();
+    issueFacetCache.invalidate();
   }
 
   /**
@@ -172,5 +181,6 @@ public class BackendCleanup {
       .getState().getMetaData().concreteIndices(IndicesOptions.strictExpand(), indexDefinition.getIndexName())).setTypes(indexDefinition.getIndexType())
       .setQuery(QueryBuilders.matchAllQuery())
       .get();
+    issueFacetCache.invalidate();
   }
 }
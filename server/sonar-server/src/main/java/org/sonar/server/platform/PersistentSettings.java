@@ -24,6 +24,7 @@ import org.picocontainer.Startable;
 import org.sonar.api.config.Settings;
 import org.sonar.db.property.PropertiesDao;
 import org.sonar.db.property.PropertyDto;
+import org.sonar.server.rule.RegisterRules;
 
 import javax.annotation.Nullable;
 import java.util.List;
@@ -45,7 +46,10 @@ public class PersistentSettings implements Startable {
   public void start() {
     Map<String, String> databaseProperties = Maps.newHashMap();
     for (PropertyDto property : getGlobalProperties()) {
-      databaseProperties.put(property.getKey(), property.getValue());
+      // internal state of server, not a setting
+      if (!property.getKey().startsWith(RegisterRules.FINGERPRINT_PROPERTY_PREFIX)) {
+        databaseProperties.put(property.getKey(), property.getValue());
+      }
     }
     settings.activateDatabaseSettings(databaseProperties);
   }
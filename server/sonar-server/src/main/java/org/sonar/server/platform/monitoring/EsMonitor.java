@@ -20,6 +20,7 @@
 
 package org.sonar.server.platform.monitoring;
 
+import com.google.common.cache.CacheStats;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
@@ -29,16 +30,26 @@ import org.elasticsearch.action.admin.cluster.stats.ClusterStatsResponse;
 import org.elasticsearch.action.admin.indices.stats.IndexStats;
 import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
 import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.issue.index.IssueFacetCache;
 
 import static org.apache.commons.io.FileUtils.byteCountToDisplaySize;
 
 public class EsMonitor extends BaseMonitorMBean implements EsMonitorMBean {
 
   private final EsClient esClient;
+  private final BaseIndexer[] indexers;
+  private final IssueFacetCache issueFacetCache;
 
-  public EsMonitor(EsClient esClient) {
+  public EsMonitor(EsClient esClient, BaseIndexer[] indexers, IssueFacetCache issueFacetCache) {
     this.esClient = esClient;
+    this.indexers = indexers;
+    this.issueFacetCache = issueFacetCache;
+  }
+
+  public EsMonitor(EsClient esClient) {
+    this(esClient, new BaseIndexer[0], IssueFacetCache.disabled());
   }
 
   @Override
@@ -71,9 +82,32 @@ public class EsMonitor extends BaseMonitorMBean implements EsMonitorMBean {
     attributes.put("Indices", indexAttributes());
     attributes.put("Number of Nodes", getNumberOfNodes());
     attributes.put("Nodes", nodeAttributes());
+    attributes.put("Indexing Lag", indexingLagAttributes());
+    attributes.put("Issue Facet Cache", issueFacetCacheAttributes());
     return attributes;
   }
 
+  private LinkedHashMap<String, Object> issueFacetCacheAttributes() {
+    CacheStats stats = issueFacetCache.stats();
+    LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
+    attributes.put("Size", issueFacetCache.size());
+    attributes.put("Hits", stats.hitCount());
+    attributes.put("Misses", stats.missCount());
+    attributes.put("Hit Rate", String.format("%.1f%%", 100 * stats.hitRate()));
+    return attributes;
+  }
+
+  /**
+   * map of {indexer name -> milliseconds since the oldest request of indexing that is not completed}
+   */
+  private LinkedHashMap<String, Object> indexingLagAttributes() {
+    LinkedHashMap<String, Object> lags = new LinkedHashMap<>();
+    for (BaseIndexer indexer : indexers) {
+      lags.put(indexer.getClass().getSimpleName(), indexer.getIndexingLag());
+    }
+    return lags;
+  }
+
   private LinkedHashMap<String, LinkedHashMap<String, Object>> indexAttributes() {
     LinkedHashMap<String, LinkedHashMap<String, Object>> indices = new LinkedHashMap<>();
     IndicesStatsResponse indicesStats = esClient.prepareStats().all().get();
@@ -21,12 +21,14 @@ package org.sonar.server.qualityprofile;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+import org.sonar.api.rule.RuleKey;
 import org.sonar.api.server.ServerSide;
 import org.sonar.api.server.rule.RuleParamType;
 import org.sonar.db.DbSession;
@@ -58,6 +60,11 @@ import static com.google.common.collect.Lists.newArrayList;
 @ServerSide
 public class RuleActivator {
 
+  /**
+   * Number of rules activated or deactivated between two commits of bulk changes
+   */
+  static final int BULK_BATCH_SIZE = 100;
+
   private final DbClient db;
   private final TypeValidations typeValidations;
   private final RuleActivatorContextFactory contextFactory;
@@ -78,20 +85,25 @@ public class RuleActivator {
 
   public List<ActiveRuleChange> activate(DbSession dbSession, RuleActivation activation, String profileKey) {
     RuleActivatorContext context = contextFactory.create(profileKey, activation.getRuleKey(), dbSession);
-    return doActivate(dbSession, activation, context);
+    return doActivate(dbSession, activation, context, null);
   }
 
   public List<ActiveRuleChange> activate(DbSession dbSession, RuleActivation activation, QProfileName profileName) {
     RuleActivatorContext context = contextFactory.create(profileName, activation.getRuleKey(), dbSession);
-    return doActivate(dbSession, activation, context);
+    return doActivate(dbSession, activation, context, null);
   }
 
   List<ActiveRuleChange> activate(DbSession dbSession, RuleActivation activation, QualityProfileDto profileDto) {
     RuleActivatorContext context = contextFactory.create(profileDto, activation.getRuleKey(), dbSession);
-    return doActivate(dbSession, activation, context);
+    return doActivate(dbSession, activation, context, null);
   }
 
-  private List<ActiveRuleChange> doActivate(DbSession dbSession, RuleActivation activation, RuleActivatorContext context) {
+  /**
+   * @param cache if not null, then the state of profiles is read from cache instead of db, and profile
+   * dates are not persisted (see {@link #flushUpdatedProfiles(DbSession, RuleActivatorCache)})
+   */
+  private List<ActiveRuleChange> doActivate(DbSession dbSession, RuleActivation activation, RuleActivatorContext context,
+    @Nullable RuleActivatorCache cache) {
     context.verifyForActivation();
     List<ActiveRuleChange> changes = Lists.newArrayList();
     ActiveRuleChange change;
@@ -136,22 +148,32 @@ public class RuleActivator {
 
     if (change != null) {
       changes.add(change);
-      persist(change, context, dbSession);
+      persist(change, context, dbSession, cache);
     }
 
     if (!stopPropagation) {
-      changes.addAll(cascadeActivation(dbSession, activation, context.profile().getKey()));
+      changes.addAll(cascadeActivation(dbSession, activation, context.profile().getKey(), cache));
     }
 
     if (!changes.isEmpty()) {
-      updateProfileDate(dbSession, context);
+      updateProfileDate(dbSession, context, cache);
     }
     return changes;
   }
 
-  private void updateProfileDate(DbSession dbSession, RuleActivatorContext context) {
-    context.profile().setRulesUpdatedAtAsDate(context.getInitDate());
-    db.qualityProfileDao().update(dbSession, context.profile());
+  private void updateProfileDate(DbSession dbSession, RuleActivatorContext context, @Nullable RuleActivatorCache cache) {
+    if (cache == null) {
+      context.profile().setRulesUpdatedAtAsDate(context.getInitDate());
+      db.qualityProfileDao().update(dbSession, context.profile());
+    } else {
+      cache.markAsUpdated(context.profile(), context.getInitDate());
+    }
+  }
+
+  private void flushUpdatedProfiles(DbSession dbSession, RuleActivatorCache cache) {
+    for (QualityProfileDto profile : cache.pollUpdatedProfiles()) {
+      db.qualityProfileDao().update(dbSession, profile);
+    }
   }
 
   /**
@@ -217,35 +239,43 @@ public class RuleActivator {
     return null;
   }
 
-  private List<ActiveRuleChange> cascadeActivation(DbSession session, RuleActivation activation, String profileKey) {
+  private List<ActiveRuleChange> cascadeActivation(DbSession session, RuleActivation activation, String profileKey, @Nullable RuleActivatorCache cache) {
     List<ActiveRuleChange> changes = Lists.newArrayList();
 
     // get all inherited profiles
-    List<QualityProfileDto> children = db.qualityProfileDao().selectChildren(session, profileKey);
+    List<QualityProfileDto> children = cache == null ? db.qualityProfileDao().selectChildren(session, profileKey) : cache.children(profileKey);
     for (QualityProfileDto child : children) {
       RuleActivation childActivation = new RuleActivation(activation).setCascade(true);
-      changes.addAll(activate(session, childActivation, child.getKey()));
+      if (cache == null) {
+        changes.addAll(activate(session, childActivation, child.getKey()));
+      } else {
+        RuleActivatorContext childContext = contextFactory.create(cache, child.getKey(), childActivation.getRuleKey());
+        changes.addAll(doActivate(session, childActivation, childContext, cache));
+      }
     }
     return changes;
   }
 
-  private ActiveRuleDto persist(ActiveRuleChange change, RuleActivatorContext context, DbSession dbSession) {
+  private ActiveRuleDto persist(ActiveRuleChange change, RuleActivatorContext context, DbSession dbSession, @Nullable RuleActivatorCache cache) {
     ActiveRuleDto activeRule = null;
     if (change.getType() == ActiveRuleChange.Type.ACTIVATED) {
-      activeRule = doInsert(change, context, dbSession);
+      activeRule = doInsert(change, context, dbSession, cache);
 
     } else if (change.getType() == ActiveRuleChange.Type.DEACTIVATED) {
       ActiveRuleDao dao = db.activeRuleDao();
       dao.deleteByKey(dbSession, change.getKey());
+      if (cache != null) {
+        cache.removeActiveRule(change.getKey());
+      }
 
     } else if (change.getType() == ActiveRuleChange.Type.UPDATED) {
-      activeRule = doUpdate(change, context, dbSession);
+      activeRule = doUpdate(change, context, dbSession, cache);
     }
     activityService.save(change.toActivity());
     return activeRule;
   }
 
-  private ActiveRuleDto doInsert(ActiveRuleChange change, RuleActivatorContext context, DbSession dbSession) {
+  private ActiveRuleDto doInsert(ActiveRuleChange change, RuleActivatorContext context, DbSession dbSession, @Nullable RuleActivatorCache cache) {
     ActiveRuleDto activeRule;
     ActiveRuleDao dao = db.activeRuleDao();
     activeRule = ActiveRuleDto.createFor(context.profile(), context.rule());
@@ -258,17 +288,22 @@ public class RuleActivator {
       activeRule.setInheritance(inheritance.name());
     }
     dao.insert(dbSession, activeRule);
+    List<ActiveRuleParamDto> params = Lists.newArrayList();
     for (Map.Entry<String, String> param : change.getParameters().entrySet()) {
       if (param.getValue() != null) {
         ActiveRuleParamDto paramDto = ActiveRuleParamDto.createFor(context.ruleParamsByKeys().get(param.getKey()));
         paramDto.setValue(param.getValue());
         dao.insertParam(dbSession, activeRule, paramDto);
+        params.add(paramDto);
       }
     }
+    if (cache != null) {
+      cache.putActiveRule(activeRule, params);
+    }
     return activeRule;
   }
 
-  private ActiveRuleDto doUpdate(ActiveRuleChange change, RuleActivatorContext context, DbSession dbSession) {
+  private ActiveRuleDto doUpdate(ActiveRuleChange change, RuleActivatorContext context, DbSession dbSession, @Nullable RuleActivatorCache cache) {
     ActiveRuleDao dao = db.activeRuleDao();
     ActiveRuleDto activeRule = context.activeRule();
     if (activeRule != null) {
@@ -282,6 +317,7 @@ public class RuleActivator {
       }
       dao.update(dbSession, activeRule);
 
+      Map<String, ActiveRuleParamDto> params = Maps.newHashMap(context.activeRuleParamsAsMap());
       for (Map.Entry<String, String> param : change.getParameters().entrySet()) {
         ActiveRuleParamDto activeRuleParamDto = context.activeRuleParamsAsMap().get(param.getKey());
         if (activeRuleParamDto == null) {
@@ -290,6 +326,7 @@ public class RuleActivator {
             activeRuleParamDto = ActiveRuleParamDto.createFor(context.ruleParamsByKeys().get(param.getKey()));
             activeRuleParamDto.setValue(param.getValue());
             dao.insertParam(dbSession, activeRule, activeRuleParamDto);
+            params.put(param.getKey(), activeRuleParamDto);
           }
         } else {
           if (param.getValue() != null) {
@@ -297,9 +334,13 @@ public class RuleActivator {
             dao.updateParam(dbSession, activeRule, activeRuleParamDto);
           } else {
             dao.deleteParam(dbSession, activeRule, activeRuleParamDto);
+            params.remove(param.getKey());
           }
         }
       }
+      if (cache != null) {
+        cache.putActiveRule(activeRule, params.values());
+      }
     }
     return activeRule;
   }
@@ -342,12 +383,14 @@ public class RuleActivator {
    * @param force if true then inherited rules are deactivated
    */
   public List<ActiveRuleChange> deactivate(DbSession dbSession, ActiveRuleKey key, boolean force) {
-    return cascadeDeactivation(key, dbSession, false, force);
+    return cascadeDeactivation(key, dbSession, false, force, null);
   }
 
-  private List<ActiveRuleChange> cascadeDeactivation(ActiveRuleKey key, DbSession dbSession, boolean isCascade, boolean force) {
+  private List<ActiveRuleChange> cascadeDeactivation(ActiveRuleKey key, DbSession dbSession, boolean isCascade, boolean force,
+    @Nullable RuleActivatorCache cache) {
     List<ActiveRuleChange> changes = Lists.newArrayList();
-    RuleActivatorContext context = contextFactory.create(key.qProfile(), key.ruleKey(), dbSession);
+    RuleActivatorContext context = cache == null ? contextFactory.create(key.qProfile(), key.ruleKey(), dbSession) : contextFactory.create(cache, key.qProfile(),
+      key.ruleKey());
     ActiveRuleChange change;
     ActiveRuleDto activeRuleDto = context.activeRule();
     if (activeRuleDto == null) {
@@ -358,18 +401,18 @@ public class RuleActivator {
     }
     change = ActiveRuleChange.createFor(ActiveRuleChange.Type.DEACTIVATED, key);
     changes.add(change);
-    persist(change, context, dbSession);
+    persist(change, context, dbSession, cache);
 
     // get all inherited profiles
-    List<QualityProfileDto> profiles = db.qualityProfileDao().selectChildren(dbSession, key.qProfile());
+    List<QualityProfileDto> profiles = cache == null ? db.qualityProfileDao().selectChildren(dbSession, key.qProfile()) : cache.children(key.qProfile());
 
     for (QualityProfileDto profile : profiles) {
       ActiveRuleKey activeRuleKey = ActiveRuleKey.of(profile.getKey(), key.ruleKey());
-      changes.addAll(cascadeDeactivation(activeRuleKey, dbSession, true, force));
+      changes.addAll(cascadeDeactivation(activeRuleKey, dbSession, true, force, cache));
     }
 
     if (!changes.isEmpty()) {
-      updateProfileDate(dbSession, context);
+      updateProfileDate(dbSession, context, cache);
     }
 
     return changes;
@@ -390,31 +433,47 @@ public class RuleActivator {
   }
 
   BulkChangeResult bulkActivate(RuleQuery ruleQuery, String profileKey, @Nullable String severity) {
+    List<RuleActivation> activations = Lists.newArrayList();
+    for (RuleKey ruleKey : searchRuleKeys(ruleQuery)) {
+      activations.add(new RuleActivation(ruleKey).setSeverity(severity));
+    }
+    return bulkActivate(activations, profileKey);
+  }
+
+  /**
+   * Activates a set of rules on a profile and on its descendants. Profiles, rules and active rules are
+   * loaded once, then changes are persisted and committed by batches of {@link #BULK_BATCH_SIZE} activations.
+   * Errors on a rule (for example different languages) do not stop the bulk change.
+   */
+  BulkChangeResult bulkActivate(List<RuleActivation> activations, String profileKey) {
     BulkChangeResult result = new BulkChangeResult();
-    RuleIndex ruleIndex = index.get(RuleIndex.class);
     DbSession dbSession = db.openSession(false);
     try {
-      Result<Rule> ruleSearchResult = ruleIndex.search(ruleQuery, new QueryContext(userSession).setScroll(true)
-        .setFieldsToReturn(Arrays.asList(RuleNormalizer.RuleField.KEY.field())));
-      Iterator<Rule> rules = ruleSearchResult.scroll();
-      while (rules.hasNext()) {
-        Rule rule = rules.next();
-        try {
-          RuleActivation activation = new RuleActivation(rule.key());
-          activation.setSeverity(severity);
-          List<ActiveRuleChange> changes = activate(dbSession, activation, profileKey);
-          result.addChanges(changes);
-          if (!changes.isEmpty()) {
-            result.incrementSucceeded();
+      RuleActivatorCache cache = contextFactory.createCache(profileKey, dbSession);
+      for (List<RuleActivation> batch : Lists.partition(activations, BULK_BATCH_SIZE)) {
+        List<RuleKey> ruleKeys = Lists.newArrayList();
+        for (RuleActivation activation : batch) {
+          ruleKeys.add(activation.getRuleKey());
+        }
+        contextFactory.loadRules(dbSession, cache, ruleKeys);
+        for (RuleActivation activation : batch) {
+          try {
+            RuleActivatorContext context = contextFactory.create(cache, profileKey, activation.getRuleKey());
+            List<ActiveRuleChange> changes = doActivate(dbSession, activation, context, cache);
+            result.addChanges(changes);
+            if (!changes.isEmpty()) {
+              result.incrementSucceeded();
+            }
+
+          } catch (BadRequestException e) {
+            // other exceptions stop the bulk activation
+            result.incrementFailed();
+            result.getErrors().add(e.errors());
           }
-
-        } catch (BadRequestException e) {
-          // other exceptions stop the bulk activation
-          result.incrementFailed();
-          result.getErrors().add(e.errors());
         }
+        flushUpdatedProfiles(dbSession, cache);
+        dbSession.commit();
       }
-      dbSession.commit();
     } finally {
       dbSession.close();
     }
@@ -422,35 +481,50 @@ public class RuleActivator {
   }
 
   BulkChangeResult bulkDeactivate(RuleQuery ruleQuery, String profile) {
+    List<RuleKey> ruleKeys = searchRuleKeys(ruleQuery);
+    BulkChangeResult result = new BulkChangeResult();
     DbSession dbSession = db.openSession(false);
     try {
-      RuleIndex ruleIndex = index.get(RuleIndex.class);
-      BulkChangeResult result = new BulkChangeResult();
-      Result<Rule> ruleSearchResult = ruleIndex.search(ruleQuery, new QueryContext(userSession).setScroll(true)
-        .setFieldsToReturn(Arrays.asList(RuleNormalizer.RuleField.KEY.field())));
-      Iterator<Rule> rules = ruleSearchResult.scroll();
-      while (rules.hasNext()) {
-        try {
-          Rule rule = rules.next();
-          ActiveRuleKey key = ActiveRuleKey.of(profile, rule.key());
-          List<ActiveRuleChange> changes = deactivate(dbSession, key);
-          result.addChanges(changes);
-          if (!changes.isEmpty()) {
-            result.incrementSucceeded();
+      RuleActivatorCache cache = contextFactory.createCache(profile, dbSession);
+      for (List<RuleKey> batch : Lists.partition(ruleKeys, BULK_BATCH_SIZE)) {
+        contextFactory.loadRules(dbSession, cache, batch);
+        for (RuleKey ruleKey : batch) {
+          try {
+            List<ActiveRuleChange> changes = cascadeDeactivation(ActiveRuleKey.of(profile, ruleKey), dbSession, false, false, cache);
+            result.addChanges(changes);
+            if (!changes.isEmpty()) {
+              result.incrementSucceeded();
+            }
+          } catch (BadRequestException e) {
+            // other exceptions stop the bulk activation
+            result.incrementFailed();
+            result.getErrors().add(e.errors());
           }
-        } catch (BadRequestException e) {
-          // other exceptions stop the bulk activation
-          result.incrementFailed();
-          result.getErrors().add(e.errors());
         }
+        flushUpdatedProfiles(dbSession, cache);
+        dbSession.commit();
       }
-      dbSession.commit();
       return result;
     } finally {
       dbSession.close();
     }
   }
 
+  /**
+   * Rule keys are loaded before any change, as changes are committed while iterating
+   */
+  private List<RuleKey> searchRuleKeys(RuleQuery ruleQuery) {
+    RuleIndex ruleIndex = index.get(RuleIndex.class);
+    Result<Rule> ruleSearchResult = ruleIndex.search(ruleQuery, new QueryContext(userSession).setScroll(true)
+      .setFieldsToReturn(Arrays.asList(RuleNormalizer.RuleField.KEY.field())));
+    List<RuleKey> ruleKeys = Lists.newArrayList();
+    Iterator<Rule> rules = ruleSearchResult.scroll();
+    while (rules.hasNext()) {
+      ruleKeys.add(rules.next().key());
+    }
+    return ruleKeys;
+  }
+
   public void setParent(String key, @Nullable String parentKey) {
     DbSession dbSession = db.openSession(false);
     try {
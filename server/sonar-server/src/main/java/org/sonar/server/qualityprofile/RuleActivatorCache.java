@@ -0,0 +1,133 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.qualityprofile;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.db.qualityprofile.ActiveRuleDto;
+import org.sonar.db.qualityprofile.ActiveRuleKey;
+import org.sonar.db.qualityprofile.ActiveRuleParamDto;
+import org.sonar.db.qualityprofile.QualityProfileDto;
+import org.sonar.db.rule.RuleDto;
+import org.sonar.db.rule.RuleParamDto;
+
+/**
+ * In-memory state of a tree of profiles (a profile, its parent and its descendants) used by
+ * bulk changes of {@link RuleActivator}. It is loaded once by {@link RuleActivatorContextFactory}
+ * then kept up-to-date by the activator when changes are persisted, so that rule activations
+ * do not request db for each rule and each profile.
+ */
+class RuleActivatorCache {
+
+  private final Map<String, QualityProfileDto> profilesByKey = new HashMap<>();
+  private final ListMultimap<String, QualityProfileDto> childrenByParentKey = ArrayListMultimap.create();
+  private final Map<RuleKey, RuleDto> rulesByKey = new HashMap<>();
+  private final ListMultimap<Integer, RuleParamDto> ruleParamsByRuleId = ArrayListMultimap.create();
+  private final Map<ActiveRuleKey, ActiveRuleDto> activeRulesByKey = new HashMap<>();
+  private final ListMultimap<ActiveRuleKey, ActiveRuleParamDto> activeRuleParamsByKey = ArrayListMultimap.create();
+  private final Map<String, QualityProfileDto> updatedProfilesByKey = new LinkedHashMap<>();
+
+  void addProfile(QualityProfileDto profile) {
+    profilesByKey.put(profile.getKey(), profile);
+  }
+
+  void addChild(String parentKey, QualityProfileDto child) {
+    childrenByParentKey.put(parentKey, child);
+  }
+
+  @CheckForNull
+  QualityProfileDto profile(String profileKey) {
+    return profilesByKey.get(profileKey);
+  }
+
+  List<QualityProfileDto> children(String profileKey) {
+    return childrenByParentKey.get(profileKey);
+  }
+
+  void addRule(RuleDto rule) {
+    rulesByKey.put(rule.getKey(), rule);
+  }
+
+  void addRuleParam(RuleParamDto ruleParam) {
+    ruleParamsByRuleId.put(ruleParam.getRuleId(), ruleParam);
+  }
+
+  boolean containsRule(RuleKey ruleKey) {
+    return rulesByKey.containsKey(ruleKey);
+  }
+
+  @CheckForNull
+  RuleDto rule(RuleKey ruleKey) {
+    return rulesByKey.get(ruleKey);
+  }
+
+  List<RuleParamDto> ruleParams(RuleDto rule) {
+    return ruleParamsByRuleId.get(rule.getId());
+  }
+
+  /**
+   * Registers the active rule with its parameters, replacing the previous ones if any.
+   */
+  void putActiveRule(ActiveRuleDto activeRule, Collection<ActiveRuleParamDto> params) {
+    activeRulesByKey.put(activeRule.getKey(), activeRule);
+    activeRuleParamsByKey.replaceValues(activeRule.getKey(), params);
+  }
+
+  void addActiveRuleParam(ActiveRuleKey key, ActiveRuleParamDto param) {
+    activeRuleParamsByKey.put(key, param);
+  }
+
+  void removeActiveRule(ActiveRuleKey key) {
+    activeRulesByKey.remove(key);
+    activeRuleParamsByKey.removeAll(key);
+  }
+
+  @CheckForNull
+  ActiveRuleDto activeRule(ActiveRuleKey key) {
+    return activeRulesByKey.get(key);
+  }
+
+  List<ActiveRuleParamDto> activeRuleParams(ActiveRuleKey key) {
+    return activeRuleParamsByKey.get(key);
+  }
+
+  /**
+   * Profile is persisted by {@link #pollUpdatedProfiles()}, once for all the changes of a batch
+   */
+  void markAsUpdated(QualityProfileDto profile, Date date) {
+    profile.setRulesUpdatedAtAsDate(date);
+    updatedProfilesByKey.put(profile.getKey(), profile);
+  }
+
+  Collection<QualityProfileDto> pollUpdatedProfiles() {
+    List<QualityProfileDto> profiles = new ArrayList<>(updatedProfilesByKey.values());
+    updatedProfilesByKey.clear();
+    return profiles;
+  }
+}
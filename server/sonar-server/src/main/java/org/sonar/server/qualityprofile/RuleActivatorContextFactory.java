@@ -27,10 +27,16 @@ import org.sonar.db.qualityprofile.ActiveRuleKey;
 import org.sonar.db.qualityprofile.ActiveRuleParamDto;
 import org.sonar.db.qualityprofile.QualityProfileDto;
 import org.sonar.db.rule.RuleDto;
+import org.sonar.db.rule.RuleParamDto;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.exceptions.BadRequestException;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @ServerSide
 public class RuleActivatorContextFactory {
@@ -65,6 +71,98 @@ public class RuleActivatorContextFactory {
     return create(ruleKey, session, new RuleActivatorContext().setProfile(profile));
   }
 
+  /**
+   * Loads the profile, its parent and all its descendants, with their active rules and parameters.
+   * Rules must then be loaded with {@link #loadRules(DbSession, RuleActivatorCache, Collection)}.
+   */
+  RuleActivatorCache createCache(String profileKey, DbSession session) {
+    RuleActivatorCache cache = new RuleActivatorCache();
+    QualityProfileDto profile = db.qualityProfileDao().selectByKey(session, profileKey);
+    if (profile == null) {
+      throw new BadRequestException("Quality profile not found: " + profileKey);
+    }
+    String parentKee = profile.getParentKee();
+    if (parentKee != null) {
+      QualityProfileDto parent = db.qualityProfileDao().selectByKey(session, parentKee);
+      if (parent != null) {
+        loadProfile(parent, cache, session);
+      }
+    }
+    loadProfileAndDescendants(profile, cache, session);
+    return cache;
+  }
+
+  private void loadProfileAndDescendants(QualityProfileDto profile, RuleActivatorCache cache, DbSession session) {
+    loadProfile(profile, cache, session);
+    for (QualityProfileDto child : db.qualityProfileDao().selectChildren(session, profile.getKey())) {
+      cache.addChild(profile.getKey(), child);
+      loadProfileAndDescendants(child, cache, session);
+    }
+  }
+
+  private void loadProfile(QualityProfileDto profile, RuleActivatorCache cache, DbSession session) {
+    cache.addProfile(profile);
+    Map<Integer, ActiveRuleKey> keysById = new HashMap<>();
+    for (ActiveRuleDto activeRule : db.activeRuleDao().selectByProfileKey(session, profile.getKey())) {
+      cache.putActiveRule(activeRule, Collections.<ActiveRuleParamDto>emptyList());
+      keysById.put(activeRule.getId(), activeRule.getKey());
+    }
+    for (ActiveRuleParamDto param : db.activeRuleDao().selectParamsByProfileKey(session, profile.getKey())) {
+      ActiveRuleKey key = keysById.get(param.getActiveRuleId());
+      if (key != null) {
+        cache.addActiveRuleParam(key, param);
+      }
+    }
+  }
+
+  /**
+   * Loads the rules that are not already in cache, with their parameters. Unknown keys are ignored.
+   */
+  void loadRules(DbSession session, RuleActivatorCache cache, Collection<RuleKey> ruleKeys) {
+    List<RuleKey> missingKeys = new ArrayList<>();
+    for (RuleKey ruleKey : ruleKeys) {
+      if (!cache.containsRule(ruleKey)) {
+        missingKeys.add(ruleKey);
+      }
+    }
+    List<Integer> ruleIds = new ArrayList<>();
+    for (RuleDto rule : db.ruleDao().selectByKeys(session, missingKeys)) {
+      cache.addRule(rule);
+      ruleIds.add(rule.getId());
+    }
+    for (RuleParamDto ruleParam : db.ruleDao().selectRuleParamsByRuleIds(session, ruleIds)) {
+      cache.addRuleParam(ruleParam);
+    }
+  }
+
+  /**
+   * Same as {@link #create(String, RuleKey, DbSession)} but without any db request
+   */
+  RuleActivatorContext create(RuleActivatorCache cache, String profileKey, RuleKey ruleKey) {
+    QualityProfileDto profile = cache.profile(profileKey);
+    if (profile == null) {
+      throw new BadRequestException("Quality profile not found: " + profileKey);
+    }
+    RuleDto rule = cache.rule(ruleKey);
+    if (rule == null) {
+      throw new BadRequestException("Rule not found: " + ruleKey);
+    }
+    RuleActivatorContext context = new RuleActivatorContext()
+      .setProfile(profile)
+      .setRule(rule)
+      .setRuleParams(cache.ruleParams(rule));
+    ActiveRuleKey key = ActiveRuleKey.of(profileKey, ruleKey);
+    context.setActiveRule(cache.activeRule(key));
+    context.setActiveRuleParams(cache.activeRuleParams(key));
+    String parentKee = profile.getParentKee();
+    if (parentKee != null) {
+      ActiveRuleKey parentKey = ActiveRuleKey.of(parentKee, ruleKey);
+      context.setParentActiveRule(cache.activeRule(parentKey));
+      context.setParentActiveRuleParams(cache.activeRuleParams(parentKey));
+    }
+    return context;
+  }
+
   private RuleActivatorContext create(RuleKey ruleKey, DbSession session, RuleActivatorContext context) {
     initRule(ruleKey, context, session);
     initActiveRules(context.profile().getKey(), ruleKey, context, session, false);
@@ -188,6 +188,10 @@ public class ActiveRuleDao extends BaseDao<ActiveRuleMapper, ActiveRuleDto, Acti
     return mapper(session).selectParamsByActiveRuleId(activeRule.getId());
   }
 
+  public List<ActiveRuleParamDto> selectParamsByProfileKey(DbSession session, String profileKey) {
+    return mapper(session).selectParamsByProfileKey(profileKey);
+  }
+
   @CheckForNull
   public ActiveRuleParamDto selectParamByKeyAndName(ActiveRuleKey key, String name, DbSession session) {
     Preconditions.checkNotNull(key, ACTIVE_RULE_KEY_CANNOT_BE_NULL);
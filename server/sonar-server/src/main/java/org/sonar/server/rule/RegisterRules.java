@@ -21,14 +21,22 @@ package org.sonar.server.rule;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.CheckForNull;
@@ -36,6 +44,7 @@ import javax.annotation.Nullable;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.picocontainer.Startable;
+import org.sonar.api.platform.Server;
 import org.sonar.api.resources.Languages;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rule.RuleStatus;
@@ -53,6 +62,8 @@ import org.sonar.db.rule.RuleDto.Format;
 import org.sonar.db.rule.RuleParamDto;
 import org.sonar.db.debt.CharacteristicDao;
 import org.sonar.db.debt.CharacteristicDto;
+import org.sonar.db.property.PropertyDto;
+import org.sonar.db.version.DatabaseVersion;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.qualityprofile.RuleActivator;
 import org.sonar.server.startup.RegisterDebtModel;
@@ -66,27 +77,45 @@ public class RegisterRules implements Startable {
 
   private static final Logger LOG = Loggers.get(RegisterRules.class);
 
+  /**
+   * Prefix of the internal global properties storing the fingerprint of each repository definition,
+   * as registered during the last startup. These properties are not exposed as settings.
+   */
+  public static final String FINGERPRINT_PROPERTY_PREFIX = "sonar.core.rules.fingerprint.";
+
+  /**
+   * Number of registered rules between two commits
+   */
+  private static final int BATCH_SIZE = 500;
+
   private final RuleDefinitionsLoader defLoader;
   private final RuleActivator ruleActivator;
   private final DbClient dbClient;
   private final Languages languages;
   private final CharacteristicDao characteristicDao;
+  private final String platformVersion;
 
   /**
    * @param registerDebtModel used only to be started after init of the technical debt model
    */
-  public RegisterRules(RuleDefinitionsLoader defLoader, RuleActivator ruleActivator, DbClient dbClient, Languages languages, RegisterDebtModel registerDebtModel) {
-    this(defLoader, ruleActivator, dbClient, languages);
+  public RegisterRules(RuleDefinitionsLoader defLoader, RuleActivator ruleActivator, DbClient dbClient, Languages languages, Server server,
+    DatabaseVersion databaseVersion, RegisterDebtModel registerDebtModel) {
+    this(defLoader, ruleActivator, dbClient, languages, server.getVersion() + "/" + databaseVersion.getVersion());
   }
 
+  /**
+   * @param platformVersion versions of server and of db schema. Their upgrade may change how definitions are merged into db,
+   *                        so all the repositories are then registered again.
+   */
   @VisibleForTesting
   RegisterRules(RuleDefinitionsLoader defLoader, RuleActivator ruleActivator,
-    DbClient dbClient, Languages languages) {
+    DbClient dbClient, Languages languages, String platformVersion) {
     this.defLoader = defLoader;
     this.ruleActivator = ruleActivator;
     this.dbClient = dbClient;
     this.languages = languages;
     this.characteristicDao = dbClient.debtCharacteristicDao();
+    this.platformVersion = platformVersion;
   }
 
   @Override
@@ -96,16 +125,28 @@ public class RegisterRules implements Startable {
     try {
       Map<RuleKey, RuleDto> allRules = loadRules(session);
       Map<String, CharacteristicDto> allCharacteristics = loadCharacteristics(session);
+      Map<String, String> fingerprintsByRepositoryKey = loadFingerprints(session);
+      ListMultimap<Integer, RuleParamDto> allRuleParams = null;
 
       RulesDefinition.Context context = defLoader.load();
-      for (RulesDefinition.ExtendedRepository repoDef : getRepositories(context)) {
-        if (languages.get(repoDef.language()) != null) {
-          for (RulesDefinition.Rule ruleDef : repoDef.rules()) {
-            registerRule(ruleDef, allRules, allCharacteristics, session);
+      Map<String, List<RulesDefinition.ExtendedRepository>> repositoriesByKey = getRepositoriesByKey(context);
+      for (Map.Entry<String, List<RulesDefinition.ExtendedRepository>> entry : repositoriesByKey.entrySet()) {
+        String repositoryKey = entry.getKey();
+        String fingerprint = fingerprint(platformVersion, entry.getValue(), allCharacteristics);
+        if (fingerprint.equals(fingerprintsByRepositoryKey.get(repositoryKey))) {
+          // definition did not change since last registration. Its rules are up-to-date in db.
+          skipRepository(entry.getValue(), allRules);
+        } else {
+          if (allRuleParams == null) {
+            // loaded only if at least one repository changed
+            allRuleParams = loadRuleParams(session);
           }
+          registerRepository(entry.getValue(), allRules, allCharacteristics, allRuleParams, session);
+          dbClient.propertiesDao().insertProperty(session, new PropertyDto().setKey(FINGERPRINT_PROPERTY_PREFIX + repositoryKey).setValue(fingerprint));
           session.commit();
         }
       }
+      deleteFingerprintsOfUnregisteredRepositories(session, fingerprintsByRepositoryKey.keySet(), repositoriesByKey.keySet());
       List<RuleDto> activeRules = processRemainingDbRules(allRules.values(), session);
       removeActiveRulesOnStillExistingRepositories(session, activeRules, context);
       session.commit();
@@ -120,7 +161,8 @@ public class RegisterRules implements Startable {
     // nothing
   }
 
-  private void registerRule(RulesDefinition.Rule ruleDef, Map<RuleKey, RuleDto> allRules, Map<String, CharacteristicDto> allCharacteristics, DbSession session) {
+  private void registerRule(RulesDefinition.Rule ruleDef, Map<RuleKey, RuleDto> allRules, Map<String, CharacteristicDto> allCharacteristics,
+    ListMultimap<Integer, RuleParamDto> allRuleParams, DbSession session) {
     RuleKey ruleKey = RuleKey.of(ruleDef.repository().key(), ruleDef.key());
 
     RuleDto rule = allRules.containsKey(ruleKey) ? allRules.remove(ruleKey) : createRuleDto(ruleDef, session);
@@ -143,7 +185,29 @@ public class RegisterRules implements Startable {
       dbClient.deprecatedRuleDao().update(session, rule);
     }
 
-    mergeParams(ruleDef, rule, session);
+    mergeParams(ruleDef, rule, allRuleParams.get(rule.getId()), session);
+  }
+
+  private void registerRepository(List<RulesDefinition.ExtendedRepository> repoDefs, Map<RuleKey, RuleDto> allRules, Map<String, CharacteristicDto> allCharacteristics,
+    ListMultimap<Integer, RuleParamDto> allRuleParams, DbSession session) {
+    int count = 0;
+    for (RulesDefinition.ExtendedRepository repoDef : repoDefs) {
+      for (RulesDefinition.Rule ruleDef : repoDef.rules()) {
+        registerRule(ruleDef, allRules, allCharacteristics, allRuleParams, session);
+        count++;
+        if (count % BATCH_SIZE == 0) {
+          session.commit();
+        }
+      }
+    }
+  }
+
+  private static void skipRepository(List<RulesDefinition.ExtendedRepository> repoDefs, Map<RuleKey, RuleDto> allRules) {
+    for (RulesDefinition.ExtendedRepository repoDef : repoDefs) {
+      for (RulesDefinition.Rule ruleDef : repoDef.rules()) {
+        allRules.remove(RuleKey.of(ruleDef.repository().key(), ruleDef.key()));
+      }
+    }
   }
 
   private Map<RuleKey, RuleDto> loadRules(DbSession session) {
@@ -154,6 +218,101 @@ public class RegisterRules implements Startable {
     return rules;
   }
 
+  private ListMultimap<Integer, RuleParamDto> loadRuleParams(DbSession session) {
+    ListMultimap<Integer, RuleParamDto> params = ArrayListMultimap.create();
+    for (RuleParamDto param : dbClient.deprecatedRuleDao().selectAllRuleParams(session)) {
+      params.put(param.getRuleId(), param);
+    }
+    return params;
+  }
+
+  private Map<String, String> loadFingerprints(DbSession session) {
+    Map<String, String> fingerprints = new HashMap<>();
+    for (PropertyDto property : dbClient.propertiesDao().selectGlobalProperties(session)) {
+      if (property.getKey().startsWith(FINGERPRINT_PROPERTY_PREFIX)) {
+        fingerprints.put(property.getKey().substring(FINGERPRINT_PROPERTY_PREFIX.length()), property.getValue());
+      }
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Fingerprints of repositories that are not registered anymore (plugin or language uninstalled) are removed, so that
+   * their rules, which are now disabled, are registered again if the repositories come back.
+   */
+  private void deleteFingerprintsOfUnregisteredRepositories(DbSession session, Collection<String> fingerprintedRepositoryKeys, Collection<String> registeredRepositoryKeys) {
+    for (String repositoryKey : fingerprintedRepositoryKeys) {
+      if (!registeredRepositoryKeys.contains(repositoryKey)) {
+        dbClient.propertiesDao().deleteGlobalProperty(FINGERPRINT_PROPERTY_PREFIX + repositoryKey, session);
+      }
+    }
+    session.commit();
+  }
+
+  /**
+   * Hash of all the attributes of rule definitions that are merged into db, including the
+   * debt characteristics they are linked to, and of the version of the platform that merges them.
+   */
+  @VisibleForTesting
+  static String fingerprint(String platformVersion, List<RulesDefinition.ExtendedRepository> repoDefs, Map<String, CharacteristicDto> allCharacteristics) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    putField(hasher, platformVersion);
+    for (RulesDefinition.ExtendedRepository repoDef : repoDefs) {
+      putField(hasher, repoDef.key());
+      putField(hasher, repoDef.language());
+      List<RulesDefinition.Rule> ruleDefs = new ArrayList<>(repoDef.rules());
+      Collections.sort(ruleDefs, RuleDefinitionByKey.INSTANCE);
+      for (RulesDefinition.Rule ruleDef : ruleDefs) {
+        putField(hasher, ruleDef.key());
+        putField(hasher, ruleDef.name());
+        putField(hasher, ruleDef.htmlDescription());
+        putField(hasher, ruleDef.markdownDescription());
+        putField(hasher, ruleDef.internalKey());
+        putField(hasher, ruleDef.severity());
+        putField(hasher, String.valueOf(ruleDef.template()));
+        putField(hasher, ruleDef.status().name());
+        putField(hasher, Ordering.natural().sortedCopy(ruleDef.tags()).toString());
+        putField(hasher, ruleDef.effortToFixDescription());
+        String subCharacteristic = ruleDef.debtSubCharacteristic();
+        putField(hasher, subCharacteristic);
+        CharacteristicDto characteristicDto = subCharacteristic == null ? null : allCharacteristics.get(subCharacteristic);
+        putField(hasher, characteristicDto == null ? null : String.valueOf(characteristicDto.getId()));
+        DebtRemediationFunction function = ruleDef.debtRemediationFunction();
+        if (function != null) {
+          putField(hasher, function.type().name());
+          putField(hasher, function.coefficient());
+          putField(hasher, function.offset());
+        }
+        for (RulesDefinition.Param paramDef : ruleDef.params()) {
+          putField(hasher, paramDef.key());
+          putField(hasher, paramDef.type().toString());
+          putField(hasher, paramDef.defaultValue());
+          putField(hasher, paramDef.description());
+        }
+        // end of rule
+        putField(hasher, null);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private static void putField(Hasher hasher, @Nullable String value) {
+    if (value == null) {
+      hasher.putInt(-1);
+    } else {
+      hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+    }
+  }
+
+  private enum RuleDefinitionByKey implements Comparator<RulesDefinition.Rule> {
+    INSTANCE;
+
+    @Override
+    public int compare(RulesDefinition.Rule r1, RulesDefinition.Rule r2) {
+      return r1.key().compareTo(r2.key());
+    }
+  }
+
   private Map<String, CharacteristicDto> loadCharacteristics(DbSession session) {
     Map<String, CharacteristicDto> characteristics = new HashMap<>();
     for (CharacteristicDto characteristicDto : characteristicDao.selectEnabledCharacteristics(session)) {
@@ -184,21 +343,36 @@ public class RegisterRules implements Startable {
     return characteristicDto;
   }
 
-  private List<RulesDefinition.ExtendedRepository> getRepositories(RulesDefinition.Context context) {
-    List<RulesDefinition.ExtendedRepository> repositories = new ArrayList<>();
+  /**
+   * Repositories and their extensions, grouped by repository key. Repositories of languages
+   * that are not installed are ignored.
+   */
+  private Map<String, List<RulesDefinition.ExtendedRepository>> getRepositoriesByKey(RulesDefinition.Context context) {
+    Map<String, List<RulesDefinition.ExtendedRepository>> repositories = new LinkedHashMap<>();
     for (RulesDefinition.Repository repoDef : context.repositories()) {
-      repositories.add(repoDef);
+      addRepository(repositories, repoDef);
     }
     for (RulesDefinition.ExtendedRepository extendedRepoDef : context.extendedRepositories()) {
       if (context.repository(extendedRepoDef.key()) == null) {
         LOG.warn(String.format("Extension is ignored, repository %s does not exist", extendedRepoDef.key()));
       } else {
-        repositories.add(extendedRepoDef);
+        addRepository(repositories, extendedRepoDef);
       }
     }
     return repositories;
   }
 
+  private void addRepository(Map<String, List<RulesDefinition.ExtendedRepository>> repositories, RulesDefinition.ExtendedRepository repoDef) {
+    if (languages.get(repoDef.language()) != null) {
+      List<RulesDefinition.ExtendedRepository> repoDefs = repositories.get(repoDef.key());
+      if (repoDefs == null) {
+        repoDefs = new ArrayList<>();
+        repositories.put(repoDef.key(), repoDefs);
+      }
+      repoDefs.add(repoDef);
+    }
+  }
+
   private RuleDto createRuleDto(RulesDefinition.Rule ruleDef, DbSession session) {
     RuleDto ruleDto = RuleDto.createFor(RuleKey.of(ruleDef.repository().key(), ruleDef.key()))
       .setIsTemplate(ruleDef.template())
@@ -315,8 +489,10 @@ public class RegisterRules implements Startable {
     return changed;
   }
 
-  private void mergeParams(RulesDefinition.Rule ruleDef, RuleDto rule, DbSession session) {
-    List<RuleParamDto> paramDtos = dbClient.deprecatedRuleDao().selectRuleParamsByRuleKey(session, rule.getKey());
+  /**
+   * @param paramDtos parameters of the rule in db, loaded before registration
+   */
+  private void mergeParams(RulesDefinition.Rule ruleDef, RuleDto rule, List<RuleParamDto> paramDtos, DbSession session) {
     Map<String, RuleParamDto> existingParamsByName = Maps.newHashMap();
 
     for (RuleParamDto paramDto : paramDtos) {
@@ -19,15 +19,17 @@
  */
 package org.sonar.server.search;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
-import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
 import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.action.update.UpdateRequest;
+import org.picocontainer.Startable;
 import org.sonar.api.server.ServerSide;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -35,29 +37,56 @@ import org.sonar.db.deprecated.WorkQueue;
 import org.sonar.core.platform.ComponentContainer;
 import org.sonar.server.search.action.IndexAction;
 
+import javax.annotation.CheckForNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @ServerSide
-public class IndexQueue implements WorkQueue<IndexAction<?>> {
-
-  private final SearchClient searchClient;
-  private final ComponentContainer container;
+public class IndexQueue implements WorkQueue<IndexAction<?>>, Startable {
 
   private static final Logger LOGGER = Loggers.get(IndexQueue.class);
 
-  private static final Integer CONCURRENT_NORMALIZATION_FACTOR = 1;
+  private static final long NORMALIZATION_TIMEOUT_MINUTES = 20L;
+
+  /**
+   * Max number of requests sent in a single bulk. Next bulk is prepared while the previous one
+   * is being executed.
+   */
+  static final int BULK_SIZE = 1_000;
+
+  private final SearchClient searchClient;
+  private final ComponentContainer container;
+  private final ExecutorService normalizationExecutor;
+  private final ConcurrentMap<String, IndexRefresh> refreshes = new ConcurrentHashMap<>();
 
   public IndexQueue(SearchClient searchClient, ComponentContainer container) {
     this.searchClient = searchClient;
     this.container = container;
+    this.normalizationExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+      new ThreadFactoryBuilder().setNameFormat("IndexQueue-%d").setDaemon(true).build());
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  @Override
+  public void stop() {
+    normalizationExecutor.shutdownNow();
   }
 
   @Override
@@ -65,78 +94,115 @@ public class IndexQueue implements WorkQueue<IndexAction<?>> {
     if (actions.isEmpty()) {
       return;
     }
-    boolean refreshRequired = false;
-
     Map<String, Index> indexes = getIndexMap();
-    Set<String> indices = new HashSet<>();
+    Set<String> indicesToRefresh = new HashSet<>();
     for (IndexAction action : actions) {
       Index index = indexes.get(action.getIndexType());
       action.setIndex(index);
       if (action.needsRefresh()) {
-        refreshRequired = true;
-        indices.add(index.getIndexName());
+        indicesToRefresh.add(index.getIndexName());
       }
     }
 
-    BulkRequestBuilder bulkRequestBuilder = searchClient.prepareBulk();
-
-    processActionsIntoQueries(bulkRequestBuilder, actions);
+    processActionsIntoBulks(actions, indicesToRefresh);
 
-    if (bulkRequestBuilder.numberOfActions() > 0) {
-      // execute the request
-      BulkResponse response = bulkRequestBuilder.setRefresh(false).get();
+    for (String index : indicesToRefresh) {
+      refresh(index);
+    }
+  }
 
-      if (refreshRequired) {
-        this.refreshRequiredIndex(indices);
+  /**
+   * Normalization of actions is executed by the shared pool. Normalized requests are sent
+   * by bulks of {@link #BULK_SIZE}, in the same order as actions. A bulk is executed asynchronously
+   * while the following one is being prepared, but never concurrently with it.
+   * <p/>
+   * Indexing is not atomic. On the first failure of normalization or of a bulk, the following bulks
+   * are not sent and indices are not refreshed, but the bulks already executed are not reverted.
+   * An {@link IllegalStateException} is then raised.
+   */
+  private void processActionsIntoBulks(List<IndexAction<?>> actions, Set<String> indicesToRefresh) {
+    List<Future<List<? extends ActionRequest>>> normalizations = new ArrayList<>(actions.size());
+    PlainActionFuture<BulkResponse> pendingBulk = null;
+    try {
+      for (IndexAction<?> action : actions) {
+        normalizations.add((Future) normalizationExecutor.submit(action));
       }
-
-      if (response.hasFailures()) {
-        throw new IllegalStateException("Errors while indexing stack: " + response.buildFailureMessage());
+      long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(NORMALIZATION_TIMEOUT_MINUTES);
+      BulkRequestBuilder bulk = searchClient.prepareBulk();
+      for (Future<List<? extends ActionRequest>> normalization : normalizations) {
+        List<? extends ActionRequest> requests = normalization.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        for (ActionRequest request : requests) {
+          addToBulk(bulk, request, indicesToRefresh);
+        }
+        if (bulk.numberOfActions() >= BULK_SIZE) {
+          waitFor(pendingBulk);
+          pendingBulk = submit(bulk);
+          bulk = searchClient.prepareBulk();
+        }
+      }
+      waitFor(pendingBulk);
+      pendingBulk = null;
+      if (bulk.numberOfActions() > 0) {
+        waitFor(submit(bulk));
+      }
+    } catch (IllegalStateException e) {
+      throw e;
+    } catch (Exception e) {
+      LOGGER.error("Could not execute normalization for stack", e);
+      throw new IllegalStateException("Could not execute normalization for stack", e);
+    } finally {
+      for (Future<?> normalization : normalizations) {
+        normalization.cancel(true);
+      }
+      if (pendingBulk != null) {
+        // do not leave a bulk running in background when normalization failed. Its own
+        // failure, if any, is less relevant than the one being thrown.
+        try {
+          pendingBulk.actionGet();
+        } catch (Exception e) {
+          LOGGER.debug("Bulk failed after normalization error", e);
+        }
       }
     }
   }
 
-  private void refreshRequiredIndex(Set<String> indices) {
-    if (!indices.isEmpty()) {
-      RefreshRequestBuilder refreshRequest = searchClient.prepareRefresh(indices.toArray(new String[indices.size()]))
-        .setForce(false);
+  private static void addToBulk(BulkRequestBuilder bulk, ActionRequest request, Set<String> indicesToRefresh) {
+    if (IndexRequest.class.isAssignableFrom(request.getClass())) {
+      bulk.add((IndexRequest) request);
+    } else if (UpdateRequest.class.isAssignableFrom(request.getClass())) {
+      bulk.add((UpdateRequest) request);
+    } else if (DeleteRequest.class.isAssignableFrom(request.getClass())) {
+      bulk.add((DeleteRequest) request);
+    } else if (RefreshRequest.class.isAssignableFrom(request.getClass())) {
+      // refresh is executed once all bulks are done, instead of refreshing in every bulk
+      indicesToRefresh.addAll(Arrays.asList(((RefreshRequest) request).indices()));
+    } else {
+      throw new IllegalStateException("Un-managed request type: " + request.getClass());
+    }
+  }
 
-      RefreshResponse refreshResponse = refreshRequest.get();
+  private static PlainActionFuture<BulkResponse> submit(BulkRequestBuilder bulk) {
+    PlainActionFuture<BulkResponse> future = PlainActionFuture.newFuture();
+    bulk.setRefresh(false).execute(future);
+    return future;
+  }
 
-      if (refreshResponse.getFailedShards() > 0) {
-        LOGGER.warn("{} Shard(s) did not refresh", refreshResponse.getFailedShards());
+  private static void waitFor(@CheckForNull PlainActionFuture<BulkResponse> bulk) {
+    if (bulk != null) {
+      BulkResponse response = bulk.actionGet();
+      if (response.hasFailures()) {
+        throw new IllegalStateException("Errors while indexing stack: " + response.buildFailureMessage());
       }
     }
   }
 
-  private void processActionsIntoQueries(BulkRequestBuilder bulkRequestBuilder, List<IndexAction<?>> actions) {
-    try {
-      boolean hasInlineRefreshRequest = false;
-      ExecutorService executorService = Executors.newFixedThreadPool(CONCURRENT_NORMALIZATION_FACTOR);
-      // invokeAll() blocks until ALL tasks submitted to executor complete
-      List<Future<List<? extends ActionRequest>>> requests = (List) executorService.invokeAll(actions, 20, TimeUnit.MINUTES);
-      for (Future<List<? extends ActionRequest>> updates : requests) {
-        for (ActionRequest update : updates.get()) {
-
-          if (IndexRequest.class.isAssignableFrom(update.getClass())) {
-            bulkRequestBuilder.add((IndexRequest) update);
-          } else if (UpdateRequest.class.isAssignableFrom(update.getClass())) {
-            bulkRequestBuilder.add((UpdateRequest) update);
-          } else if (DeleteRequest.class.isAssignableFrom(update.getClass())) {
-            bulkRequestBuilder.add((DeleteRequest) update);
-          } else if (RefreshRequest.class.isAssignableFrom(update.getClass())) {
-            hasInlineRefreshRequest = true;
-          } else {
-            throw new IllegalStateException("Un-managed request type: " + update.getClass());
-          }
-        }
-      }
-      executorService.shutdown();
-      bulkRequestBuilder.setRefresh(hasInlineRefreshRequest);
-    } catch (Exception e) {
-      LOGGER.error("Could not execute normalization for stack", e);
-      throw new IllegalStateException("Could not execute normalization for stack", e);
+  private void refresh(String index) {
+    IndexRefresh refresh = refreshes.get(index);
+    if (refresh == null) {
+      refreshes.putIfAbsent(index, new IndexRefresh(index));
+      refresh = refreshes.get(index);
     }
+    refresh.execute();
   }
 
   private Map<String, Index> getIndexMap() {
@@ -146,4 +212,35 @@ public class IndexQueue implements WorkQueue<IndexAction<?>> {
     }
     return indexes;
   }
+
+  /**
+   * Coalesces the refreshes requested concurrently on an index. A caller waits for the refresh in progress,
+   * then triggers a new one only if no refresh started since its own request. The refresh that starts
+   * next serves all the callers that are waiting.
+   */
+  private class IndexRefresh {
+    private final String index;
+    private final AtomicLong requested = new AtomicLong();
+    // guarded by this
+    private long done = 0L;
+
+    IndexRefresh(String index) {
+      this.index = index;
+    }
+
+    void execute() {
+      long ticket = requested.incrementAndGet();
+      synchronized (this) {
+        if (done >= ticket) {
+          return;
+        }
+        long target = requested.get();
+        RefreshResponse response = searchClient.prepareRefresh(index).setForce(false).get();
+        if (response.getFailedShards() > 0) {
+          LOGGER.warn("{} Shard(s) did not refresh", response.getFailedShards());
+        }
+        done = target;
+      }
+    }
+  }
 }
@@ -19,7 +19,16 @@
  */
 package org.sonar.server.search;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -27,6 +36,7 @@ import org.sonar.db.DbSession;
 import org.sonar.server.activity.index.ActivityIndexer;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.db.DeprecatedDao;
+import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
 import org.sonar.server.issue.index.IssueIndexer;
 import org.sonar.server.qualityprofile.index.ActiveRuleIndex;
@@ -50,7 +60,7 @@ public class IndexSynchronizer {
   private final Settings settings;
 
   /**
-   * Limitation - {@link org.sonar.server.es.BaseIndexer} are not injected through an array or a collection
+   * Limitation - {@link BaseIndexer} are not injected through an array or a collection
    * because we need {@link org.sonar.server.issue.index.IssueAuthorizationIndexer} to be executed before
    * {@link org.sonar.server.issue.index.IssueIndexer}
    */
@@ -79,23 +89,65 @@ public class IndexSynchronizer {
     }
   }
 
+  /**
+   * Indexes are independent, so they are populated concurrently. The only exception is the index of issues,
+   * which requires issue authorizations to be indexed first.
+   */
   public void execute() {
     if (!settings.getBoolean("sonar.internal.es.disableIndexes")) {
-      LOG.info("Index activities");
-      activityIndexer.setEnabled(true).index();
+      List<Runnable> tasks = new ArrayList<>();
+      tasks.add(new IndexTask("activities", activityIndexer));
+      tasks.add(new IndexTask("issues", issueAuthorizationIndexer, issueIndexer));
+      tasks.add(new IndexTask("tests", testIndexer));
+      tasks.add(new IndexTask("users", userIndexer));
+      tasks.add(new IndexTask("views", viewIndexer));
+      executeConcurrently(tasks);
+    }
+  }
 
-      LOG.info("Index issues");
-      issueAuthorizationIndexer.setEnabled(true).index();
-      issueIndexer.setEnabled(true).index();
+  /**
+   * Fails as soon as a task fails, whatever the order of completion, and then cancels the other tasks
+   */
+  private static void executeConcurrently(List<Runnable> tasks) {
+    ExecutorService executor = Executors.newFixedThreadPool(tasks.size(), new ThreadFactoryBuilder().setNameFormat("IndexSynchronizer-%d").build());
+    CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+    List<Future<Void>> futures = new ArrayList<>();
+    try {
+      for (Runnable task : tasks) {
+        futures.add(completionService.submit(task, null));
+      }
+      for (int i = 0; i < tasks.size(); i++) {
+        completionService.take().get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while indexing", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Fail to index", e.getCause());
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+      executor.shutdownNow();
+    }
+  }
 
-      LOG.info("Index tests");
-      testIndexer.setEnabled(true).index();
+  private static class IndexTask implements Runnable {
+    private final String name;
+    private final BaseIndexer[] indexers;
 
-      LOG.info("Index users");
-      userIndexer.setEnabled(true).index();
+    IndexTask(String name, BaseIndexer... indexers) {
+      this.name = name;
+      this.indexers = indexers;
+    }
 
-      LOG.info("Index views");
-      viewIndexer.setEnabled(true).index();
+    @Override
+    public void run() {
+      LOG.info("Index {}", name);
+      for (BaseIndexer indexer : indexers) {
+        indexer.setEnabled(true);
+        indexer.index();
+      }
     }
   }
 
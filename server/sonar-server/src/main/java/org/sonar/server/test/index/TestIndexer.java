@@ -112,11 +112,11 @@ public class TestIndexer extends BaseIndexer {
 
   public void deleteByProject(String projectUuid) {
     SearchRequestBuilder searchRequest = esClient.prepareSearch(INDEX)
-      .setRouting(projectUuid)
       .setTypes(TYPE)
       .setQuery(QueryBuilders.filteredQuery(
         QueryBuilders.matchAllQuery(),
         FilterBuilders.termFilter(TestIndexDefinition.FIELD_PROJECT_UUID, projectUuid).cache(false)));
-    BulkIndexer.delete(esClient, INDEX, searchRequest);
+    // tests are routed by project uuid
+    BulkIndexer.delete(esClient, INDEX, searchRequest, projectUuid);
   }
 }
@@ -21,7 +21,9 @@ package org.sonar.server.ws;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.net.HttpHeaders;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Locale;
 import java.util.Map;
 import javax.annotation.CheckForNull;
 import javax.servlet.http.HttpServletRequest;
@@ -76,15 +78,32 @@ public class ServletRequest extends ValidatingRequest {
     return value;
   }
 
+  /**
+   * The value is either a file of a multipart request, or the raw body of the request if its content
+   * type is application/octet-stream. The latter does not require to know the size of the value
+   * before sending it (chunked transfer encoding).
+   */
   @Override
   protected InputStream readInputStreamParam(String key) {
     Object file = params.get(key);
     if (file != null && file instanceof RubyFile) {
       return ((RubyFile) file).getInStream();
     }
+    if (isRawBody()) {
+      try {
+        return source.getInputStream();
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to read request body", e);
+      }
+    }
     return null;
   }
 
+  private boolean isRawBody() {
+    String contentType = source.getContentType();
+    return contentType != null && contentType.toLowerCase(Locale.ENGLISH).startsWith(MediaTypes.DEFAULT);
+  }
+
   @Override
   public String toString() {
     StringBuffer url = source.getRequestURL();
@@ -95,9 +114,14 @@ public class ServletRequest extends ValidatingRequest {
     return url.toString();
   }
 
+  @CheckForNull
+  public String getHeader(String name) {
+    return source.getHeader(name);
+  }
+
   @CheckForNull
   private String acceptedContentTypeInResponse() {
-    return source.getHeader(HttpHeaders.ACCEPT);
+    return getHeader(HttpHeaders.ACCEPT);
   }
 
   @CheckForNull
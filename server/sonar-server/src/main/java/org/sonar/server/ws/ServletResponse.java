@@ -67,6 +67,10 @@ public class ServletResponse implements Response {
       return output;
     }
 
+    public byte[] outputAsBytes() {
+      return output.toByteArray();
+    }
+
     public String outputAsString() {
       return new String(output.toByteArray(), StandardCharsets.UTF_8);
     }
@@ -19,9 +19,14 @@
  */
 package org.sonar.server.ws;
 
+import com.google.common.base.Splitter;
+import com.google.common.net.HttpHeaders;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import javax.annotation.Nullable;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
 import org.picocontainer.Startable;
 import org.sonar.api.i18n.I18n;
 import org.sonar.api.server.ServerSide;
@@ -83,6 +88,7 @@ public class WebServiceEngine implements Startable {
       request.setAction(action);
       verifyRequest(action, request);
       action.handler().handle(request, response);
+      handleEntityTag(request, response);
 
     } catch (IllegalArgumentException e) {
       // TODO replace by BadRequestException in Request#mandatoryParam()
@@ -97,6 +103,37 @@ public class WebServiceEngine implements Startable {
     }
   }
 
+  /**
+   * Successful responses of GET requests are tagged with the hash of their content. Clients which cached
+   * a previous response can send its tag in the header If-None-Match. The content is not sent again if it
+   * did not change (HTTP status 304).
+   */
+  private static void handleEntityTag(ValidatingRequest request, ServletResponse response) {
+    ServletResponse.ServletStream stream = response.stream();
+    if (!"GET".equals(request.method()) || stream.httpStatus() != 200 || response.getHeader(HttpHeaders.ETAG) != null) {
+      return;
+    }
+    String entityTag = "\"" + DigestUtils.md5Hex(stream.outputAsBytes()) + "\"";
+    response.setHeader(HttpHeaders.ETAG, entityTag);
+    if (request instanceof ServletRequest && matchesEntityTag(((ServletRequest) request).getHeader(HttpHeaders.IF_NONE_MATCH), entityTag)) {
+      stream.reset();
+      stream.setStatus(304);
+    }
+  }
+
+  private static boolean matchesEntityTag(@Nullable String ifNoneMatch, String entityTag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+      // weak comparison, as proxies may weaken the tags of the responses they compress
+      if ("*".equals(tag) || entityTag.equals(StringUtils.removeStart(tag, "W/"))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private WebService.Action getAction(String controllerPath, String actionKey) {
     String actionKeyWithoutFormatSuffix = actionKey.contains(".") ?
       actionKey.substring(0, actionKey.lastIndexOf('.'))
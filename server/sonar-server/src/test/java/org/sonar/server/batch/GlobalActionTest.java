@@ -39,6 +39,7 @@ import org.sonar.server.tester.UserSessionRule;
 import org.sonar.server.ws.WsTester;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -96,6 +97,19 @@ public class GlobalActionTest {
     request.execute().assertJson(getClass(), "return_global_settings.json");
   }
 
+  @Test
+  public void do_not_return_fingerprints_of_rule_repositories() throws Exception {
+    userSessionRule.setGlobalPermissions(GlobalPermissions.SCAN_EXECUTION);
+
+    when(propertiesDao.selectGlobalProperties(session)).thenReturn(newArrayList(
+      new PropertyDto().setKey("foo").setValue("bar"),
+      new PropertyDto().setKey("sonar.core.rules.fingerprint.squid").setValue("abcde")
+      ));
+
+    String json = tester.newGetRequest("batch", "global").execute().outputAsString();
+    assertThat(json).contains("foo").doesNotContain("sonar.core.rules.fingerprint");
+  }
+
   @Test
   public void return_only_license_settings_without_scan_but_with_preview_permission() throws Exception {
     userSessionRule.setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION);
@@ -0,0 +1,115 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.api.platform.Server;
+import org.sonar.api.utils.System2;
+import org.sonar.api.web.UserRole;
+import org.sonar.batch.protocol.input.BatchInput.FileLineHashes;
+import org.sonar.core.permission.GlobalPermissions;
+import org.sonar.db.DbTester;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTesting;
+import org.sonar.db.source.FileSourceDto;
+import org.sonar.server.component.ComponentFinder;
+import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.ws.WsTester;
+import org.sonar.test.DbTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@Category(DbTests.class)
+public class LineHashesActionTest {
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+
+  @Rule
+  public UserSessionRule userSessionRule = UserSessionRule.standalone();
+
+  WsTester tester;
+
+  ComponentDto project;
+
+  @Before
+  public void before() {
+    db.truncateTables();
+    tester = new WsTester(new BatchWs(new BatchIndex(mock(Server.class)),
+      new LineHashesAction(db.getDbClient(), userSessionRule, new ComponentFinder(db.getDbClient()))));
+
+    project = ComponentTesting.newProjectDto("ABCD").setKey("struts");
+    ComponentDto file1 = ComponentTesting.newFileDto(project, "BCDE").setKey("struts:Action.java");
+    ComponentDto file2 = ComponentTesting.newFileDto(project, "CDEF").setKey("struts:Form.java");
+    db.getDbClient().componentDao().insert(db.getSession(), project, file1, file2);
+    insertLineHashes(file1, "abc\ndef");
+    insertLineHashes(file2, "ghi");
+    db.getSession().commit();
+  }
+
+  @Test
+  public void stream_line_hashes_of_all_files() throws Exception {
+    userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION).addProjectUuidPermissions(UserRole.CODEVIEWER, project.uuid());
+
+    WsTester.TestRequest request = tester.newGetRequest("batch", "line_hashes").setParam("key", "struts");
+
+    InputStream input = new ByteArrayInputStream(request.execute().output());
+    FileLineHashes first = FileLineHashes.parseDelimitedFrom(input);
+    assertThat(first.getFileKey()).isEqualTo("struts:Action.java");
+    assertThat(first.getLineHashes()).isEqualTo("abc\ndef");
+    FileLineHashes second = FileLineHashes.parseDelimitedFrom(input);
+    assertThat(second.getFileKey()).isEqualTo("struts:Form.java");
+    assertThat(second.getLineHashes()).isEqualTo("ghi");
+    assertThat(FileLineHashes.parseDelimitedFrom(input)).isNull();
+  }
+
+  @Test(expected = ForbiddenException.class)
+  public void fail_without_see_source_code_permission_on_project() throws Exception {
+    userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION).addProjectUuidPermissions(UserRole.USER, project.uuid());
+
+    tester.newGetRequest("batch", "line_hashes").setParam("key", "struts").execute();
+  }
+
+  @Test(expected = ForbiddenException.class)
+  public void fail_without_preview_permission() throws Exception {
+    userSessionRule.login("henry").addProjectUuidPermissions(UserRole.CODEVIEWER, project.uuid());
+
+    tester.newGetRequest("batch", "line_hashes").setParam("key", "struts").execute();
+  }
+
+  private void insertLineHashes(ComponentDto file, String lineHashes) {
+    db.getDbClient().fileSourceDao().insert(db.getSession(), new FileSourceDto()
+      .setProjectUuid(project.uuid())
+      .setFileUuid(file.uuid())
+      .setDataType(FileSourceDto.Type.SOURCE)
+      .setLineHashes(lineHashes)
+      .setSrcHash("hash")
+      .setDataHash("hash")
+      .setCreatedAt(1500000000000L)
+      .setUpdatedAt(1500000000000L));
+  }
+}
@@ -35,6 +35,6 @@ public class IndexIssuesStepTest {
 
     underTest.execute();
 
-    verify(issueIndexer).index();
+    verify(issueIndexer).indexAsync();
   }
 }
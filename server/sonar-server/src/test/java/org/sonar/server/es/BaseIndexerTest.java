@@ -0,0 +1,140 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BaseIndexerTest {
+
+  EsClient esClient = mock(EsClient.class);
+  BlockingIndexer underTest = new BlockingIndexer(esClient);
+
+  @After
+  public void tearDown() {
+    underTest.release.countDown();
+    underTest.stop();
+  }
+
+  @Test
+  public void do_nothing_if_disabled() throws Exception {
+    underTest.release.countDown();
+
+    underTest.index();
+    underTest.indexAsync().get();
+
+    assertThat(underTest.runs.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void merge_requests_received_while_a_run_is_queued() throws Exception {
+    when(esClient.getMaxFieldValue(anyString(), anyString(), anyString())).thenReturn(0L);
+    underTest.setEnabled(true);
+
+    Future<?> first = underTest.indexAsync();
+    assertThat(underTest.started.await(10, TimeUnit.SECONDS)).isTrue();
+    // first run is in progress, so these requests are queued and merged
+    Future<?> second = underTest.indexAsync();
+    Future<?> third = underTest.indexAsync();
+    assertThat(second).isSameAs(third).isNotSameAs(first);
+    assertThat(underTest.getIndexingLag()).isGreaterThanOrEqualTo(0L);
+
+    underTest.release.countDown();
+    first.get();
+    third.get();
+
+    assertThat(underTest.runs.get()).isEqualTo(2);
+    assertThat(underTest.getIndexingLag()).isEqualTo(0L);
+  }
+
+  @Test
+  public void index_waits_for_completion() {
+    when(esClient.getMaxFieldValue(anyString(), anyString(), anyString())).thenReturn(0L);
+    underTest.setEnabled(true);
+    underTest.release.countDown();
+
+    underTest.index();
+
+    assertThat(underTest.runs.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void indexing_lag_includes_tasks_in_progress() throws Exception {
+    when(esClient.getMaxFieldValue(anyString(), anyString(), anyString())).thenReturn(0L);
+    underTest.setEnabled(true);
+    final CountDownLatch taskStarted = new CountDownLatch(1);
+    final CountDownLatch taskReleased = new CountDownLatch(1);
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        underTest.index(new BaseIndexer.IndexerTask() {
+          @Override
+          public long index(long lastUpdatedAt) {
+            taskStarted.countDown();
+            Uninterruptibles.awaitUninterruptibly(taskReleased);
+            return 0L;
+          }
+        });
+      }
+    };
+    thread.start();
+
+    assertThat(taskStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    Thread.sleep(10L);
+    assertThat(underTest.getIndexingLag()).isGreaterThan(0L);
+
+    taskReleased.countDown();
+    thread.join();
+    assertThat(underTest.getIndexingLag()).isEqualTo(0L);
+  }
+
+  private static class BlockingIndexer extends BaseIndexer {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    BlockingIndexer(EsClient client) {
+      super(client, 0L, "fakes", "fake", "updatedAt");
+    }
+
+    @Override
+    protected long doIndex(long lastUpdatedAt) {
+      runs.incrementAndGet();
+      started.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      // nothing indexed
+      return 0L;
+    }
+  }
+}
@@ -20,24 +20,46 @@
 package org.sonar.server.es;
 
 import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class BulkIndexerTest {
 
   @Rule
   public EsTester esTester = new EsTester().addDefinitions(new FakeIndexDefinition().setReplicas(1));
 
+  private List<SentBulk> sentBulks = new CopyOnWriteArrayList<>();
+
   @Test
   public void index_nothing() {
     esTester.truncateIndices();
@@ -109,6 +131,29 @@ public class BulkIndexerTest {
     assertThat(count()).isEqualTo(removeFrom);
   }
 
+  @Test
+  public void routed_bulk_delete_on_many_pages() {
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX);
+    indexer.start();
+    for (int i = 0; i < 2_500; i++) {
+      indexer.add(newIndexRequest(i).routing("R1"));
+    }
+    for (int i = 5_000; i < 5_010; i++) {
+      indexer.add(newIndexRequest(i).routing("R2"));
+    }
+    indexer.stop();
+    assertThat(count()).isEqualTo(2_510);
+
+    SearchRequestBuilder req = esTester.client().prepareSearch(FakeIndexDefinition.INDEX)
+      .setTypes(FakeIndexDefinition.TYPE)
+      .setQuery(QueryBuilders.filteredQuery(
+        QueryBuilders.matchAllQuery(),
+        FilterBuilders.rangeFilter(FakeIndexDefinition.INT_FIELD).lt(5_000)));
+    BulkIndexer.delete(esTester.client(), FakeIndexDefinition.INDEX, req, "R1");
+
+    assertThat(count()).isEqualTo(10);
+  }
+
   @Test
   public void disable_refresh() {
     BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX)
@@ -124,6 +169,187 @@ public class BulkIndexerTest {
     assertThat(count()).isEqualTo(2);
   }
 
+  @Test
+  public void count_failed_requests() {
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX);
+    indexer.start();
+    indexer.add(newIndexRequest(42));
+    // not an integer
+    indexer.add(new IndexRequest(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE)
+      .source(ImmutableMap.of(FakeIndexDefinition.INT_FIELD, "foo")));
+    indexer.stop();
+
+    assertThat(count()).isEqualTo(1);
+    assertThat(indexer.getFailures()).isEqualTo(1);
+
+    // failures are reset when indexer is restarted
+    indexer.start();
+    indexer.stop();
+    assertThat(indexer.getFailures()).isEqualTo(0);
+  }
+
+  @Test
+  public void retry_rejected_requests_after_backoff() {
+    EsClient client = scriptedClient(Outcome.REJECTED_ITEMS, Outcome.SUCCESS);
+    BulkIndexer indexer = new BulkIndexer(client, FakeIndexDefinition.INDEX).setDisableRefresh(true).setOrdered(true);
+    indexer.start();
+    indexer.add(newIndexRequest(42));
+    indexer.add(newIndexRequest(78));
+    indexer.stop();
+
+    assertThat(sentBulks).hasSize(2);
+    assertThat(sentBulks.get(1).size).isEqualTo(2);
+    assertThat(sentBulks.get(1).sentAt - sentBulks.get(0).sentAt).isGreaterThanOrEqualTo(100L);
+    assertThat(indexer.getFailures()).isEqualTo(0);
+  }
+
+  @Test
+  public void retry_bulk_rejected_by_overloaded_cluster() {
+    EsClient client = scriptedClient(Outcome.REJECTED_BULK, Outcome.SUCCESS);
+    BulkIndexer indexer = new BulkIndexer(client, FakeIndexDefinition.INDEX).setDisableRefresh(true).setOrdered(true);
+    indexer.start();
+    indexer.add(newIndexRequest(42));
+    indexer.add(newIndexRequest(78));
+    indexer.stop();
+
+    assertThat(sentBulks).hasSize(2);
+    assertThat(sentBulks.get(1).size).isEqualTo(2);
+    assertThat(indexer.getFailures()).isEqualTo(0);
+  }
+
+  @Test
+  public void do_not_retry_rejected_requests_when_not_ordered() {
+    EsClient client = scriptedClient(Outcome.REJECTED_ITEMS, Outcome.SUCCESS);
+    BulkIndexer indexer = new BulkIndexer(client, FakeIndexDefinition.INDEX).setDisableRefresh(true);
+    indexer.start();
+    indexer.add(newIndexRequest(42));
+    indexer.add(newIndexRequest(78));
+    indexer.stop();
+
+    // a retry could overwrite a more recent request on the same document
+    assertThat(sentBulks).hasSize(1);
+    assertThat(indexer.getFailures()).isEqualTo(2);
+  }
+
+  @Test
+  public void give_up_after_max_retries() {
+    EsClient client = scriptedClient(Outcome.REJECTED_ITEMS, Outcome.REJECTED_ITEMS, Outcome.REJECTED_ITEMS, Outcome.REJECTED_ITEMS,
+      Outcome.REJECTED_ITEMS, Outcome.REJECTED_ITEMS);
+    BulkIndexer indexer = new BulkIndexer(client, FakeIndexDefinition.INDEX).setDisableRefresh(true).setOrdered(true);
+    indexer.start();
+    indexer.add(newIndexRequest(42));
+    indexer.stop();
+
+    // initial request and 5 retries
+    assertThat(sentBulks).hasSize(6);
+    assertThat(indexer.getFailures()).isEqualTo(1);
+  }
+
+  @Test
+  public void adapt_size_of_bulk_requests_to_rejections() {
+    EsClient client = scriptedClient(Outcome.REJECTED_ITEMS, Outcome.REJECTED_ITEMS, Outcome.SUCCESS);
+    BulkIndexer indexer = new BulkIndexer(client, FakeIndexDefinition.INDEX).setDisableRefresh(true).setOrdered(true);
+    assertThat(indexer.getFlushByteSize()).isEqualTo(1024L * 1024L);
+    indexer.start();
+    indexer.add(newIndexRequest(42));
+    indexer.stop();
+
+    // divided by 2 on each rejection, then multiplied by 2 on fast response
+    assertThat(sentBulks).hasSize(3);
+    assertThat(indexer.getFlushByteSize()).isEqualTo(512L * 1024L);
+  }
+
+  @Test
+  public void do_not_adapt_fixed_size_of_bulk_requests() {
+    EsClient client = scriptedClient(Outcome.REJECTED_ITEMS, Outcome.SUCCESS);
+    BulkIndexer indexer = new BulkIndexer(client, FakeIndexDefinition.INDEX).setDisableRefresh(true).setFlushByteSize(500L).setOrdered(true);
+    indexer.start();
+    indexer.add(newIndexRequest(42));
+    indexer.stop();
+
+    assertThat(sentBulks).hasSize(2);
+    assertThat(indexer.getFlushByteSize()).isEqualTo(500L);
+  }
+
+  @Test(timeout = 60_000L)
+  public void do_not_block_stop_when_response_can_not_be_processed() {
+    EsClient client = scriptedClient(Outcome.UNEXPECTED_RESPONSE);
+    BulkIndexer indexer = new BulkIndexer(client, FakeIndexDefinition.INDEX).setDisableRefresh(true);
+    indexer.start();
+    indexer.add(newIndexRequest(42));
+    indexer.stop();
+
+    assertThat(sentBulks).hasSize(1);
+  }
+
+  private enum Outcome {
+    SUCCESS, REJECTED_ITEMS, REJECTED_BULK, UNEXPECTED_RESPONSE
+  }
+
+  private static class SentBulk {
+    private final int size;
+    private final long sentAt;
+
+    SentBulk(int size, long sentAt) {
+      this.size = size;
+      this.sentAt = sentAt;
+    }
+  }
+
+  /**
+   * Client that executes bulk requests synchronously, with the given outcomes. Following requests succeed.
+   */
+  private EsClient scriptedClient(Outcome... outcomes) {
+    final Queue<Outcome> remainingOutcomes = new LinkedList<>(Arrays.asList(outcomes));
+    final Client nativeClient = mock(Client.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        BulkRequest request = (BulkRequest) invocation.getArguments()[0];
+        ActionListener<BulkResponse> listener = (ActionListener<BulkResponse>) invocation.getArguments()[1];
+        sentBulks.add(new SentBulk(request.numberOfActions(), System.currentTimeMillis()));
+        Outcome outcome = remainingOutcomes.isEmpty() ? Outcome.SUCCESS : remainingOutcomes.poll();
+        try {
+          respond(outcome, request, listener);
+        } catch (RuntimeException e) {
+          // like Elasticsearch, which only logs the exceptions raised by listeners
+        }
+        return null;
+      }
+    }).when(nativeClient).bulk(any(BulkRequest.class), any(ActionListener.class));
+
+    EsClient client = mock(EsClient.class);
+    when(client.prepareBulk()).thenAnswer(new Answer<BulkRequestBuilder>() {
+      @Override
+      public BulkRequestBuilder answer(InvocationOnMock invocation) {
+        return new BulkRequestBuilder(nativeClient);
+      }
+    });
+    return client;
+  }
+
+  private static void respond(Outcome outcome, BulkRequest request, ActionListener<BulkResponse> listener) {
+    if (outcome == Outcome.REJECTED_BULK) {
+      listener.onFailure(new EsRejectedExecutionException("rejected execution of bulk"));
+    } else if (outcome == Outcome.UNEXPECTED_RESPONSE) {
+      // item does not relate to any request
+      BulkItemResponse unknownItem = new BulkItemResponse(request.numberOfActions(), "index",
+        new IndexResponse(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE, "unknown", 1L, true));
+      listener.onResponse(new BulkResponse(new BulkItemResponse[] {unknownItem}, 1L));
+    } else {
+      BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+      for (int i = 0; i < items.length; i++) {
+        String id = String.valueOf(i);
+        if (outcome == Outcome.REJECTED_ITEMS) {
+          items[i] = new BulkItemResponse(i, "index",
+            new BulkItemResponse.Failure(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE, id, "rejected", RestStatus.TOO_MANY_REQUESTS));
+        } else {
+          items[i] = new BulkItemResponse(i, "index", new IndexResponse(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE, id, 1L, true));
+        }
+      }
+      listener.onResponse(new BulkResponse(items, 1L));
+    }
+  }
 
   private long count() {
     return esTester.countDocuments("fakes", "fake");
@@ -75,6 +75,7 @@ public class IssueTesting {
     doc.setModuleUuidPath("MODULE_1");
     doc.setProjectUuid("PROJECT_1");
     doc.setLine(42);
+    doc.setLocations(null);
     doc.setAttributes(null);
     doc.setStatus(Issue.STATUS_OPEN);
     doc.setResolution(null);
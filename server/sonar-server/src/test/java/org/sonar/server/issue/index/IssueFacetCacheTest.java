@@ -0,0 +1,82 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.issue.index;
+
+import java.util.LinkedHashMap;
+import org.junit.Test;
+import org.sonar.server.es.Facets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class IssueFacetCacheTest {
+
+  IssueFacetCache underTest = new IssueFacetCache();
+
+  @Test
+  public void get_copy_of_cached_facets() {
+    underTest.put("key", underTest.generation(), newFacets());
+
+    Facets facets = underTest.get("key");
+    assertThat(facets.get("severities")).containsOnly(entry("MAJOR", 3L));
+    facets.get("severities").put("MINOR", 0L);
+
+    assertThat(underTest.get("key").get("severities")).containsOnly(entry("MAJOR", 3L));
+    assertThat(underTest.get("other")).isNull();
+    assertThat(underTest.stats().hitCount()).isEqualTo(2L);
+    assertThat(underTest.stats().missCount()).isEqualTo(1L);
+  }
+
+  @Test
+  public void invalidate_drops_facets() {
+    underTest.put("key", underTest.generation(), newFacets());
+
+    underTest.invalidate();
+
+    assertThat(underTest.get("key")).isNull();
+    assertThat(underTest.size()).isEqualTo(0L);
+  }
+
+  @Test
+  public void do_not_cache_facets_computed_before_invalidation() {
+    long generation = underTest.generation();
+    underTest.invalidate();
+
+    underTest.put("key", generation, newFacets());
+
+    assertThat(underTest.get("key")).isNull();
+  }
+
+  @Test
+  public void disabled_cache_does_not_keep_facets() {
+    IssueFacetCache disabled = IssueFacetCache.disabled();
+    disabled.put("key", disabled.generation(), newFacets());
+
+    assertThat(disabled.get("key")).isNull();
+  }
+
+  private static Facets newFacets() {
+    LinkedHashMap<String, Long> severities = new LinkedHashMap<>();
+    severities.put("MAJOR", 3L);
+    LinkedHashMap<String, LinkedHashMap<String, Long>> facets = new LinkedHashMap<>();
+    facets.put("severities", severities);
+    return new Facets(facets);
+  }
+}
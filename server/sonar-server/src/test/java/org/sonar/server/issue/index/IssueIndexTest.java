@@ -71,6 +71,7 @@ public class IssueIndexTest {
 
   IssueIndex index;
 
+  IssueFacetCache facetCache;
   IssueIndexer issueIndexer;
   IssueAuthorizationIndexer issueAuthorizationIndexer;
   ViewIndexer viewIndexer;
@@ -78,14 +79,15 @@ public class IssueIndexTest {
   @Before
   public void setUp() {
     tester.truncateIndices();
-    issueIndexer = new IssueIndexer(null, tester.client());
-    issueAuthorizationIndexer = new IssueAuthorizationIndexer(null, tester.client());
-    viewIndexer = new ViewIndexer(null, tester.client());
+    facetCache = new IssueFacetCache();
+    issueIndexer = new IssueIndexer(null, tester.client(), facetCache);
+    issueAuthorizationIndexer = new IssueAuthorizationIndexer(null, tester.client(), facetCache);
+    viewIndexer = new ViewIndexer(null, tester.client(), facetCache);
     System2 system = mock(System2.class);
     when(system.getDefaultTimeZone()).thenReturn(TimeZone.getTimeZone("+01:00"));
     when(system.now()).thenReturn(System.currentTimeMillis());
 
-    index = new IssueIndex(tester.client(), system, userSessionRule);
+    index = new IssueIndex(tester.client(), system, userSessionRule, facetCache, new Settings());
 
   }
 
@@ -384,6 +386,25 @@ public class IssueIndexTest {
     assertThat(result.getFacets().get("severities")).containsOnly(entry("INFO", 2L), entry("MAJOR", 1L));
   }
 
+  @Test
+  public void facets_are_cached_until_issues_are_indexed() {
+    ComponentDto project = ComponentTesting.newProjectDto();
+    ComponentDto file = ComponentTesting.newFileDto(project);
+    indexIssues(IssueTesting.newDoc("ISSUE1", file).setSeverity(Severity.INFO));
+
+    SearchOptions options = new SearchOptions().addFacets(newArrayList("severities"));
+    assertThat(index.search(IssueQuery.builder(userSessionRule).build(), options).getFacets().get("severities")).containsOnly(entry("INFO", 1L));
+    SearchResult<IssueDoc> result = index.search(IssueQuery.builder(userSessionRule).build(), options);
+    assertThat(result.getFacets().get("severities")).containsOnly(entry("INFO", 1L));
+    assertThat(result.getDocs()).hasSize(1);
+    assertThat(facetCache.stats().hitCount()).isEqualTo(1L);
+
+    indexIssues(IssueTesting.newDoc("ISSUE2", file).setSeverity(Severity.MAJOR));
+
+    assertThat(index.search(IssueQuery.builder(userSessionRule).build(), options).getFacets().get("severities")).containsOnly(entry("INFO", 1L), entry("MAJOR", 1L));
+    assertThat(facetCache.stats().hitCount()).isEqualTo(1L);
+  }
+
   @Test
   public void filter_by_statuses() {
     ComponentDto project = ComponentTesting.newProjectDto();
@@ -1148,6 +1169,43 @@ public class IssueIndexTest {
     assertThat(index.search(IssueQuery.builder(userSessionRule).projectUuids(newArrayList(project3.uuid())).build(), new SearchOptions()).getDocs()).isEmpty();
   }
 
+  @Test
+  public void authorized_issues_when_authorization_is_indexed_before_issues() {
+    ComponentDto project = ComponentTesting.newProjectDto();
+    ComponentDto file = ComponentTesting.newFileDto(project);
+    addIssueAuthorization(project.uuid(), "sonar-users", null);
+    issueIndexer.index(Iterators.singletonIterator(IssueTesting.newDoc("ISSUE1", file)));
+
+    userSessionRule.login().setUserGroups("sonar-users");
+    assertThat(index.search(IssueQuery.builder(userSessionRule).build(), new SearchOptions()).getDocs()).hasSize(1);
+
+    // permissions are changed
+    addIssueAuthorization(project.uuid(), "sonar-admins", null);
+    assertThat(index.search(IssueQuery.builder(userSessionRule).build(), new SearchOptions()).getDocs()).isEmpty();
+    userSessionRule.login().setUserGroups("sonar-admins");
+    assertThat(index.search(IssueQuery.builder(userSessionRule).build(), new SearchOptions()).getDocs()).hasSize(1);
+  }
+
+  @Test
+  public void authorized_issues_with_authorization_join() {
+    Settings settings = new Settings().setProperty(IssueIndex.AUTHORIZATION_JOIN_PROPERTY, true);
+    index = new IssueIndex(tester.client(), System2.INSTANCE, userSessionRule, facetCache, settings);
+    ComponentDto project1 = ComponentTesting.newProjectDto();
+    ComponentDto project2 = ComponentTesting.newProjectDto();
+    indexIssue(IssueTesting.newDoc("ISSUE1", ComponentTesting.newFileDto(project1)), "sonar-users", null);
+    indexIssue(IssueTesting.newDoc("ISSUE2", ComponentTesting.newFileDto(project2)), null, "john");
+
+    userSessionRule.login().setUserGroups("sonar-users");
+    List<IssueDoc> docs = index.search(IssueQuery.builder(userSessionRule).build(), new SearchOptions()).getDocs();
+    assertThat(docs).hasSize(1);
+    assertThat(docs.get(0).key()).isEqualTo("ISSUE1");
+
+    userSessionRule.login("john").setUserGroups();
+    docs = index.search(IssueQuery.builder(userSessionRule).build(), new SearchOptions()).getDocs();
+    assertThat(docs).hasSize(1);
+    assertThat(docs.get(0).key()).isEqualTo("ISSUE2");
+  }
+
   @Test
   public void authorized_issues_on_user() {
     ComponentDto project1 = ComponentTesting.newProjectDto().setKey("project1");
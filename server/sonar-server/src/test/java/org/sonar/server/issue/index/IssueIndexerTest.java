@@ -19,8 +19,18 @@
  */
 package org.sonar.server.issue.index;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.search.SearchHit;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
@@ -31,10 +41,13 @@ import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbTester;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.es.BulkIndexer;
+import org.sonar.server.es.EsClient;
 import org.sonar.server.es.EsTester;
 import org.sonar.test.DbTests;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 @Category(DbTests.class)
 public class IssueIndexerTest {
@@ -97,9 +110,107 @@ public class IssueIndexerTest {
     assertThat(esTester.countDocuments("issues", "issue")).isZero();
   }
 
+  @Test
+  public void resume_interrupted_indexing() {
+    // issues are not stored in the order of their update dates
+    dbTester.prepareDbUnit(getClass(), "resume_interrupted_indexing.xml");
+    IssueIndexer interruptedIndexer = new IssueIndexer(new DbClient(dbTester.database(), dbTester.myBatis()), esTester.client()) {
+      @Override
+      BulkIndexer createBulkIndexer(boolean large) {
+        return new InterruptedBulkIndexer(esTester.client(), 1);
+      }
+    };
+    interruptedIndexer.setEnabled(true);
+
+    try {
+      interruptedIndexer.index();
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(Throwables.getRootCause(e)).hasMessage("Interrupted");
+    }
+    assertThat(esTester.getDocumentFieldValues("issues", "issue", IssueIndexDefinition.FIELD_ISSUE_KEY)).containsOnly("ISSUE_1");
+
+    // as after a server restart
+    createIndexer().index();
+
+    assertThat(esTester.getDocumentFieldValues("issues", "issue", IssueIndexDefinition.FIELD_ISSUE_KEY)).containsOnly("ISSUE_1", "ISSUE_2", "ISSUE_3");
+  }
+
+  @Test
+  public void do_not_index_issues_concurrently_with_authorization() throws Exception {
+    dbTester.prepareDbUnit(getClass(), "index.xml");
+    final List<String> events = new CopyOnWriteArrayList<>();
+    final CountDownLatch authorizationStarted = new CountDownLatch(1);
+    final CountDownLatch releaseAuthorization = new CountDownLatch(1);
+    DbClient dbClient = new DbClient(dbTester.database(), dbTester.myBatis());
+    IssueAuthorizationIndexer authorizationIndexer = new IssueAuthorizationIndexer(dbClient, esTester.client()) {
+      @Override
+      protected long doIndex(long lastUpdatedAt) {
+        events.add("authorization started");
+        authorizationStarted.countDown();
+        Uninterruptibles.awaitUninterruptibly(releaseAuthorization, 10, TimeUnit.SECONDS);
+        IssueAuthorizationDao.Dto authorization = new IssueAuthorizationDao.Dto("THE_PROJECT", System.currentTimeMillis());
+        authorization.addGroup("devs");
+        index(Arrays.asList(authorization));
+        events.add("authorization indexed");
+        return authorization.getUpdatedAt();
+      }
+    };
+    IssueIndexer issueIndexer = new IssueIndexer(dbClient, esTester.client(), IssueFacetCache.disabled(), authorizationIndexer) {
+      @Override
+      protected long doIndex(long lastUpdatedAt) {
+        events.add("issues started");
+        return super.doIndex(lastUpdatedAt);
+      }
+    };
+    authorizationIndexer.setEnabled(true);
+    issueIndexer.setEnabled(true);
+    try {
+      Future<?> authorization = authorizationIndexer.indexAsync();
+      assertThat(authorizationStarted.await(10, TimeUnit.SECONDS)).isTrue();
+      // requested while permissions are being indexed
+      Future<?> issues = issueIndexer.indexAsync();
+      releaseAuthorization.countDown();
+      authorization.get(10, TimeUnit.SECONDS);
+      issues.get(10, TimeUnit.SECONDS);
+    } finally {
+      releaseAuthorization.countDown();
+      issueIndexer.stop();
+      authorizationIndexer.stop();
+    }
+
+    assertThat(events).containsExactly("authorization started", "authorization indexed", "issues started");
+    List<SearchHit> docs = esTester.getDocuments(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE);
+    assertThat(docs).hasSize(1);
+    assertThat((Collection) docs.get(0).getSource().get(IssueIndexDefinition.FIELD_ISSUE_AUTHORIZATION_GROUPS)).containsOnly("devs");
+  }
+
   private IssueIndexer createIndexer() {
     IssueIndexer indexer = new IssueIndexer(new DbClient(dbTester.database(), dbTester.myBatis()), esTester.client());
     indexer.setEnabled(true);
     return indexer;
   }
+
+  /**
+   * Executes the first requests, then fails as if the server was stopped
+   */
+  private static class InterruptedBulkIndexer extends BulkIndexer {
+    private final int executedRequests;
+    private int added = 0;
+
+    InterruptedBulkIndexer(EsClient client, int executedRequests) {
+      super(client, IssueIndexDefinition.INDEX);
+      this.executedRequests = executedRequests;
+    }
+
+    @Override
+    public void add(ActionRequest request) {
+      if (added == executedRequests) {
+        stop();
+        throw new IllegalStateException("Interrupted");
+      }
+      added++;
+      super.add(request);
+    }
+  }
 }
@@ -76,6 +76,7 @@ public class IssueResultSetIteratorTest {
     assertThat(issue.effortToFix()).isEqualTo(2d);
     assertThat(issue.actionPlanKey()).isEqualTo("PLAN1");
     assertThat(issue.attribute("JIRA")).isEqualTo("http://jira.com");
+    assertThat(issue.locations()).isNull();
   }
 
   @Test
@@ -0,0 +1,105 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.issue.ws;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DbTester;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTesting;
+import org.sonar.db.issue.IssueDto;
+import org.sonar.db.rule.RuleTesting;
+import org.sonar.server.issue.ActionService;
+import org.sonar.server.issue.IssueCommentService;
+import org.sonar.server.issue.IssueService;
+import org.sonar.server.issue.IssueTesting;
+import org.sonar.server.issue.index.IssueDoc;
+import org.sonar.test.DbTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@Category(DbTests.class)
+public class SearchResponseLoaderTest {
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+
+  SearchResponseLoader underTest = new SearchResponseLoader(db.getDbClient(), mock(IssueService.class), mock(ActionService.class), mock(IssueCommentService.class));
+
+  @Test
+  public void load_issues_from_index_documents() {
+    ComponentDto project = ComponentTesting.newProjectDto("PROJECT_1");
+    ComponentDto file = ComponentTesting.newFileDto(project, "FILE_1");
+    db.getDbClient().componentDao().insert(db.getSession(), project, file);
+    db.getSession().commit();
+
+    IssueDoc doc = IssueTesting.newDoc("ISSUE_1", file);
+    SearchResponseData result = underTest.load(newCollector("ISSUE_1"), Arrays.asList(doc), null);
+
+    assertThat(result.getIssues()).hasSize(1);
+    IssueDto issue = result.getIssues().get(0);
+    assertThat(issue.getKey()).isEqualTo("ISSUE_1");
+    assertThat(issue.getComponentUuid()).isEqualTo("FILE_1");
+    assertThat(issue.getComponentKey()).isEqualTo(file.key());
+    assertThat(issue.getProjectUuid()).isEqualTo("PROJECT_1");
+    assertThat(issue.getProjectKey()).isEqualTo(project.key());
+    assertThat(issue.getRuleKey()).isEqualTo(RuleTesting.XOO_X1);
+    assertThat(issue.getSeverity()).isEqualTo(Severity.MAJOR);
+    assertThat(issue.isManualSeverity()).isTrue();
+    assertThat(issue.getMessage()).isEqualTo("the message");
+    assertThat(issue.getLine()).isEqualTo(42);
+    assertThat(issue.getDebt()).isEqualTo(10L);
+    assertThat(issue.getAssignee()).isEqualTo("steve");
+    assertThat(issue.getAuthorLogin()).isEqualTo("roger");
+    assertThat(issue.getIssueCreationDate()).isEqualTo(doc.creationDate());
+    assertThat(issue.getIssueUpdateDate()).isEqualTo(doc.updateDate());
+    assertThat(result.getComponentByUuid("FILE_1")).isNotNull();
+    assertThat(result.getComponentByUuid("PROJECT_1")).isNotNull();
+  }
+
+  @Test
+  public void ignore_issues_of_components_missing_from_db() {
+    ComponentDto project = ComponentTesting.newProjectDto("PROJECT_1");
+    ComponentDto file = ComponentTesting.newFileDto(project, "FILE_1");
+    // deleted from db, but index is not up-to-date yet
+    ComponentDto deletedFile = ComponentTesting.newFileDto(project, "FILE_2");
+    ComponentDto deletedProject = ComponentTesting.newProjectDto("PROJECT_2");
+    ComponentDto fileOfDeletedProject = ComponentTesting.newFileDto(deletedProject, "FILE_3");
+    db.getDbClient().componentDao().insert(db.getSession(), project, file, fileOfDeletedProject);
+    db.getSession().commit();
+
+    SearchResponseData result = underTest.load(newCollector("ISSUE_1", "ISSUE_2", "ISSUE_3"), Arrays.asList(
+      IssueTesting.newDoc("ISSUE_1", file),
+      IssueTesting.newDoc("ISSUE_2", deletedFile),
+      IssueTesting.newDoc("ISSUE_3", fileOfDeletedProject)), null);
+
+    assertThat(result.getIssues()).extracting("key").containsExactly("ISSUE_1");
+  }
+
+  private static SearchResponseLoader.Collector newCollector(String... issueKeys) {
+    return new SearchResponseLoader.Collector(EnumSet.noneOf(SearchAdditionalField.class), Arrays.asList(issueKeys));
+  }
+}
@@ -62,6 +62,20 @@ public class PersistentSettingsTest {
     assertThat(settings.getString("in_db")).isEqualTo("bar");
   }
 
+  @Test
+  public void do_not_load_fingerprints_of_rule_repositories_as_settings() {
+    when(dao.selectGlobalProperties()).thenReturn(Arrays.asList(
+      new PropertyDto().setKey("in_db").setValue("bar"),
+      new PropertyDto().setKey("sonar.core.rules.fingerprint.squid").setValue("abcde")
+      ));
+
+    PersistentSettings persistentSettings = new PersistentSettings(dao, settings);
+    persistentSettings.start();
+
+    assertThat(settings.getString("in_db")).isEqualTo("bar");
+    assertThat(settings.hasKey("sonar.core.rules.fingerprint.squid")).isFalse();
+  }
+
   @Test
   public void saveProperty() {
     PersistentSettings persistentSettings = new PersistentSettings(dao, settings);
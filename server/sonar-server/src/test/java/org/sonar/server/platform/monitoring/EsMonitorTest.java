@@ -25,11 +25,16 @@ import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.sonar.api.config.Settings;
+import org.sonar.db.DbClient;
+import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.EsTester;
 import org.sonar.server.es.NewIndex;
+import org.sonar.server.issue.index.IssueFacetCache;
 import org.sonar.server.issue.index.IssueIndexDefinition;
+import org.sonar.server.user.index.UserIndexer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
 
 public class EsMonitorTest {
 
@@ -78,4 +83,23 @@ public class EsMonitorTest {
     assertThat(indexAttributes.get("Shards")).isEqualTo(NewIndex.DEFAULT_NUMBER_OF_SHARDS);
     assertThat(indexAttributes.get("Store Size")).isNotNull();
   }
+
+  @Test
+  public void indexing_lag_attributes() {
+    EsMonitor monitor = new EsMonitor(esTester.client(), new BaseIndexer[] {new UserIndexer(mock(DbClient.class), esTester.client())}, IssueFacetCache.disabled());
+    Map lagAttributes = (Map) monitor.attributes().get("Indexing Lag");
+
+    assertThat(lagAttributes).hasSize(1);
+    assertThat(lagAttributes.get("UserIndexer")).isEqualTo(0L);
+  }
+
+  @Test
+  public void issue_facet_cache_attributes() {
+    EsMonitor monitor = new EsMonitor(esTester.client());
+    Map cacheAttributes = (Map) monitor.attributes().get("Issue Facet Cache");
+
+    assertThat(cacheAttributes.get("Size")).isEqualTo(0L);
+    assertThat(cacheAttributes.get("Hits")).isEqualTo(0L);
+    assertThat(cacheAttributes.get("Misses")).isEqualTo(0L);
+  }
 }
@@ -859,6 +859,49 @@ public class RuleActivatorMediumTest {
     assertThat(result.countFailed()).isEqualTo(0);
   }
 
+  @Test
+  public void bulk_activation_propagates_on_child_profiles_by_batches() {
+    createChildProfiles();
+    int bulkSize = RuleActivator.BULK_BATCH_SIZE + 10;
+    for (int i = 0; i < bulkSize; i++) {
+      db.deprecatedRuleDao().insert(dbSession, RuleTesting.newDto(RuleKey.of("bulk", "r_" + i)).setLanguage("xoo"));
+    }
+    dbSession.commit();
+
+    BulkChangeResult result = ruleActivator.bulkActivate(
+      new RuleQuery().setRepositories(Arrays.asList("bulk")), XOO_P1_KEY, "MINOR");
+
+    dbSession.clearCache();
+    assertThat(result.countSucceeded()).isEqualTo(bulkSize);
+    assertThat(result.countFailed()).isEqualTo(0);
+    assertThat(result.getChanges()).hasSize(3 * bulkSize);
+    assertThat(countActiveRules(XOO_P1_KEY)).isEqualTo(bulkSize);
+    assertThat(countActiveRules(XOO_P2_KEY)).isEqualTo(bulkSize);
+    assertThat(countActiveRules(XOO_P3_KEY)).isEqualTo(bulkSize);
+    verifyHasActiveRule(XOO_P3_KEY, RuleKey.of("bulk", "r_" + (bulkSize - 1)), Severity.MINOR, ActiveRuleDto.INHERITED, Collections.<String, String>emptyMap());
+    assertThat(db.qualityProfileDao().selectByKey(dbSession, XOO_P3_KEY).getRulesUpdatedAt()).isNotNull();
+  }
+
+  @Test
+  public void bulk_activation_of_rule_activations_keeps_child_overrides() {
+    createChildProfiles();
+    activate(new RuleActivation(RuleTesting.XOO_X1).setSeverity(Severity.INFO).setParameter("max", "7"), XOO_P1_KEY);
+    activate(new RuleActivation(RuleTesting.XOO_X1).setSeverity(Severity.BLOCKER).setParameter("max", "8"), XOO_P2_KEY);
+
+    BulkChangeResult result = ruleActivator.bulkActivate(Arrays.asList(
+      new RuleActivation(RuleTesting.XOO_X1).setSeverity(Severity.CRITICAL).setParameter("max", "9"),
+      new RuleActivation(RuleTesting.XOO_X2),
+      new RuleActivation(RuleKey.of("xoo", "unknown"))), XOO_P1_KEY);
+
+    dbSession.clearCache();
+    assertThat(result.countSucceeded()).isEqualTo(2);
+    assertThat(result.countFailed()).isEqualTo(1);
+    verifyHasActiveRule(XOO_P1_KEY, RuleTesting.XOO_X1, Severity.CRITICAL, null, ImmutableMap.of("max", "9"));
+    verifyHasActiveRule(XOO_P2_KEY, RuleTesting.XOO_X1, Severity.BLOCKER, ActiveRuleDto.OVERRIDES, ImmutableMap.of("max", "8"));
+    verifyHasActiveRule(XOO_P3_KEY, RuleTesting.XOO_X1, Severity.BLOCKER, ActiveRuleDto.INHERITED, ImmutableMap.of("max", "8"));
+    verifyHasActiveRule(XOO_P3_KEY, RuleTesting.XOO_X2, Severity.INFO, ActiveRuleDto.INHERITED, Collections.<String, String>emptyMap());
+  }
+
   @Test
   public void bulk_activation_ignores_errors() {
     // 1. bulk activate all the rules, even non xoo-rules and xoo templates
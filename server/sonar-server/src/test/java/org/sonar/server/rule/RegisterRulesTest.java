@@ -35,6 +35,7 @@ import org.sonar.api.utils.DateUtils;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbTester;
 import org.sonar.db.debt.CharacteristicDao;
+import org.sonar.db.property.PropertiesDao;
 import org.sonar.db.qualityprofile.QualityProfileDao;
 import org.sonar.db.rule.RuleDto;
 import org.sonar.db.rule.RuleParamDto;
@@ -64,6 +65,8 @@ public class RegisterRulesTest {
 
   DbClient dbClient;
 
+  String platformVersion = "5.2/900";
+
   @Before
   public void before() {
     system = mock(System2.class);
@@ -71,7 +74,7 @@ public class RegisterRulesTest {
     RuleDao ruleDao = new RuleDao(system);
     ActiveRuleDao activeRuleDao = new ActiveRuleDao(new QualityProfileDao(dbTester.myBatis(), system), ruleDao, system);
     dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), ruleDao, activeRuleDao,
-      new QualityProfileDao(dbTester.myBatis(), system), new CharacteristicDao(dbTester.myBatis()));
+      new QualityProfileDao(dbTester.myBatis(), system), new CharacteristicDao(dbTester.myBatis()), new PropertiesDao(dbTester.myBatis()));
   }
 
   @Test
@@ -192,6 +195,62 @@ public class RegisterRulesTest {
     assertThat(rule2.getUpdatedAt()).isEqualTo(DATE2);
   }
 
+  @Test
+  public void do_not_register_repository_if_definition_did_not_change() {
+    execute(new FakeRepositoryV1());
+    assertThat(dbClient.propertiesDao().selectGlobalProperty(dbTester.getSession(), RegisterRules.FINGERPRINT_PROPERTY_PREFIX + "fake").getValue()).isNotEmpty();
+
+    // rule is changed in db, but definition is the same -> repository is not registered again
+    RuleKey ruleKey1 = RuleKey.of("fake", "rule1");
+    RuleDto rule1 = dbClient.deprecatedRuleDao().getNullableByKey(dbTester.getSession(), ruleKey1);
+    rule1.setName("Changed in db");
+    dbClient.deprecatedRuleDao().update(dbTester.getSession(), rule1);
+    dbTester.getSession().commit();
+
+    when(system.now()).thenReturn(DATE2.getTime());
+    execute(new FakeRepositoryV1());
+
+    rule1 = dbClient.deprecatedRuleDao().getNullableByKey(dbTester.getSession(), ruleKey1);
+    assertThat(rule1.getName()).isEqualTo("Changed in db");
+    assertThat(rule1.getStatus()).isEqualTo(RuleStatus.BETA);
+    RuleDto rule2 = dbClient.deprecatedRuleDao().getNullableByKey(dbTester.getSession(), RuleKey.of("fake", "rule2"));
+    assertThat(rule2.getStatus()).isEqualTo(RuleStatus.READY);
+  }
+
+  @Test
+  public void register_repository_again_after_upgrade_of_platform() {
+    execute(new FakeRepositoryV1());
+    RuleKey ruleKey1 = RuleKey.of("fake", "rule1");
+    RuleDto rule1 = dbClient.deprecatedRuleDao().getNullableByKey(dbTester.getSession(), ruleKey1);
+    rule1.setName("Changed in db");
+    dbClient.deprecatedRuleDao().update(dbTester.getSession(), rule1);
+    dbTester.getSession().commit();
+
+    // same definition, but merged into db by another version of server
+    platformVersion = "5.3/1000";
+    when(system.now()).thenReturn(DATE2.getTime());
+    execute(new FakeRepositoryV1());
+
+    rule1 = dbClient.deprecatedRuleDao().getNullableByKey(dbTester.getSession(), ruleKey1);
+    assertThat(rule1.getName()).isEqualTo("One");
+  }
+
+  @Test
+  public void register_repository_again_when_it_comes_back() {
+    execute(new FakeRepositoryV1());
+
+    // repository is uninstalled -> rules are removed and fingerprint is dropped
+    when(system.now()).thenReturn(DATE2.getTime());
+    execute(new FindbugsRepository());
+    assertThat(dbClient.propertiesDao().selectGlobalProperty(dbTester.getSession(), RegisterRules.FINGERPRINT_PROPERTY_PREFIX + "fake")).isNull();
+    assertThat(dbClient.deprecatedRuleDao().getNullableByKey(dbTester.getSession(), RuleKey.of("fake", "rule1")).getStatus()).isEqualTo(RuleStatus.REMOVED);
+
+    // repository is installed again
+    when(system.now()).thenReturn(DATE3.getTime());
+    execute(new FakeRepositoryV1());
+    assertThat(dbClient.deprecatedRuleDao().getNullableByKey(dbTester.getSession(), RuleKey.of("fake", "rule1")).getStatus()).isEqualTo(RuleStatus.BETA);
+  }
+
   @Test
   public void mass_insert() {
     execute(new BigRepository());
@@ -214,7 +273,7 @@ public class RegisterRulesTest {
     Languages languages = mock(Languages.class);
     when(languages.get("java")).thenReturn(mock(Language.class));
 
-    RegisterRules task = new RegisterRules(loader, ruleActivator, dbClient, languages);
+    RegisterRules task = new RegisterRules(loader, ruleActivator, dbClient, languages, platformVersion);
     task.start();
     // Execute a commit to refresh session state as the task is using its own session
     dbTester.getSession().commit();
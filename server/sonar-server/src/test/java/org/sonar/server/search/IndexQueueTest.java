@@ -0,0 +1,240 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
+import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.core.platform.ComponentContainer;
+import org.sonar.server.search.action.IndexAction;
+import org.sonar.server.search.action.RefreshIndex;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IndexQueueTest {
+
+  SearchClient searchClient = mock(SearchClient.class);
+  ComponentContainer container = mock(ComponentContainer.class);
+  Client nativeClient = mock(Client.class);
+  RefreshRequestBuilder refresh = mock(RefreshRequestBuilder.class);
+
+  // number of requests of the bulks sent to Elasticsearch
+  List<Integer> bulkSizes = new CopyOnWriteArrayList<>();
+  // index of the bulk to be failed
+  int failedBulk = -1;
+
+  IndexQueue underTest = new IndexQueue(searchClient, container);
+
+  @Before
+  public void setUp() {
+    Index indexA = mock(Index.class);
+    when(indexA.getIndexType()).thenReturn("typeA");
+    when(indexA.getIndexName()).thenReturn("indexA");
+    Index indexB = mock(Index.class);
+    when(indexB.getIndexType()).thenReturn("typeB");
+    when(indexB.getIndexName()).thenReturn("indexB");
+    when(container.getComponentsByType(Index.class)).thenReturn(Arrays.asList(indexA, indexB));
+
+    when(searchClient.prepareBulk()).thenAnswer(new Answer<BulkRequestBuilder>() {
+      @Override
+      public BulkRequestBuilder answer(InvocationOnMock invocation) {
+        return new BulkRequestBuilder(nativeClient);
+      }
+    });
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        BulkRequest request = (BulkRequest) invocation.getArguments()[0];
+        ActionListener<BulkResponse> listener = (ActionListener<BulkResponse>) invocation.getArguments()[1];
+        bulkSizes.add(request.numberOfActions());
+        BulkItemResponse[] items = new BulkItemResponse[0];
+        if (bulkSizes.size() - 1 == failedBulk) {
+          items = new BulkItemResponse[] {new BulkItemResponse(0, "index",
+            new BulkItemResponse.Failure("indexA", "typeA", "0", "invalid document", RestStatus.BAD_REQUEST))};
+        }
+        listener.onResponse(new BulkResponse(items, 1L));
+        return null;
+      }
+    }).when(nativeClient).bulk(any(BulkRequest.class), any(ActionListener.class));
+
+    when(searchClient.prepareRefresh(anyString())).thenReturn(refresh);
+    when(refresh.setForce(anyBoolean())).thenReturn(refresh);
+    when(refresh.get()).thenReturn(mock(RefreshResponse.class));
+  }
+
+  @After
+  public void tearDown() {
+    underTest.stop();
+  }
+
+  @Test
+  public void do_nothing_if_no_actions() {
+    underTest.enqueue(Collections.<IndexAction<?>>emptyList());
+
+    verify(searchClient, never()).prepareBulk();
+    verify(searchClient, never()).prepareRefresh(anyString());
+  }
+
+  @Test
+  public void send_requests_by_bulks_of_bulk_size() {
+    underTest.enqueue(newActions("typeA", IndexQueue.BULK_SIZE + 1));
+
+    assertThat(bulkSizes).containsExactly(IndexQueue.BULK_SIZE, 1);
+  }
+
+  @Test
+  public void do_not_split_requests_of_an_action() {
+    underTest.enqueue(Arrays.<IndexAction<?>>asList(
+      new FakeAction("typeA", IndexQueue.BULK_SIZE - 1),
+      new FakeAction("typeA", 2),
+      new FakeAction("typeA", 3)));
+
+    assertThat(bulkSizes).containsExactly(IndexQueue.BULK_SIZE + 1, 3);
+  }
+
+  @Test
+  public void refresh_each_index_once_after_all_bulks() {
+    List<IndexAction<?>> actions = new ArrayList<>();
+    actions.addAll(newActions("typeA", IndexQueue.BULK_SIZE));
+    actions.add(new RefreshIndex("typeA"));
+    actions.addAll(newActions("typeB", IndexQueue.BULK_SIZE));
+    actions.add(new RefreshIndex("typeB"));
+    actions.addAll(newActions("typeA", IndexQueue.BULK_SIZE));
+
+    underTest.enqueue(actions);
+
+    assertThat(bulkSizes).containsExactly(IndexQueue.BULK_SIZE, IndexQueue.BULK_SIZE, IndexQueue.BULK_SIZE);
+    verify(searchClient, times(1)).prepareRefresh("indexA");
+    verify(searchClient, times(1)).prepareRefresh("indexB");
+  }
+
+  @Test
+  public void fail_if_normalization_fails() {
+    List<IndexAction<?>> actions = new ArrayList<>(newActions("typeA", 10));
+    actions.add(new FakeAction("typeA", 1) {
+      @Override
+      public List<ActionRequest> doCall(Index index) {
+        throw new IllegalArgumentException("Invalid document");
+      }
+    });
+
+    try {
+      underTest.enqueue(actions);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Could not execute normalization for stack");
+      assertThat(e.getCause().getCause()).hasMessage("Invalid document");
+    }
+    assertThat(bulkSizes).isEmpty();
+    verify(searchClient, never()).prepareRefresh(anyString());
+  }
+
+  @Test
+  public void stop_at_first_failed_bulk() {
+    failedBulk = 0;
+
+    try {
+      underTest.enqueue(newActions("typeA", 3 * IndexQueue.BULK_SIZE));
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).startsWith("Errors while indexing stack");
+    }
+    // the following bulks are not sent and index is not refreshed
+    assertThat(bulkSizes).containsExactly(IndexQueue.BULK_SIZE);
+    verify(searchClient, never()).prepareRefresh(anyString());
+  }
+
+  @Test
+  public void fail_if_last_bulk_fails() {
+    failedBulk = 1;
+
+    try {
+      underTest.enqueue(newActions("typeA", IndexQueue.BULK_SIZE + 1));
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).startsWith("Errors while indexing stack");
+    }
+    // first bulk is not reverted
+    assertThat(bulkSizes).containsExactly(IndexQueue.BULK_SIZE, 1);
+    verify(searchClient, never()).prepareRefresh(anyString());
+  }
+
+  private static List<IndexAction<?>> newActions(String indexType, int count) {
+    List<IndexAction<?>> actions = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      actions.add(new FakeAction(indexType, 1));
+    }
+    return actions;
+  }
+
+  /**
+   * Action that is normalized into the given number of index requests
+   */
+  private static class FakeAction extends IndexAction<ActionRequest> {
+    private final int requests;
+
+    FakeAction(String indexType, int requests) {
+      super(indexType);
+      this.requests = requests;
+    }
+
+    @Override
+    public String getKey() {
+      return "fake";
+    }
+
+    @Override
+    public List<ActionRequest> doCall(Index index) {
+      List<ActionRequest> result = new ArrayList<>();
+      for (int i = 0; i < requests; i++) {
+        result.add(new IndexRequest(index.getIndexName(), indexType).source("{}"));
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.search;
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.Settings;
+import org.sonar.server.activity.index.ActivityIndexer;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.issue.index.IssueAuthorizationIndexer;
+import org.sonar.server.issue.index.IssueIndexer;
+import org.sonar.server.test.index.TestIndexer;
+import org.sonar.server.user.index.UserIndexer;
+import org.sonar.server.view.index.ViewIndexer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class IndexSynchronizerTest {
+
+  TestIndexer testIndexer = mock(TestIndexer.class);
+  IssueAuthorizationIndexer issueAuthorizationIndexer = mock(IssueAuthorizationIndexer.class);
+  IssueIndexer issueIndexer = mock(IssueIndexer.class);
+  UserIndexer userIndexer = mock(UserIndexer.class);
+  ViewIndexer viewIndexer = mock(ViewIndexer.class);
+  ActivityIndexer activityIndexer = mock(ActivityIndexer.class);
+  Settings settings = new Settings();
+  IndexSynchronizer underTest = new IndexSynchronizer(mock(DbClient.class), mock(IndexClient.class), testIndexer, issueAuthorizationIndexer, issueIndexer,
+    userIndexer, viewIndexer, activityIndexer, settings);
+
+  @Test
+  public void index_all() {
+    underTest.execute();
+
+    verify(activityIndexer).setEnabled(true);
+    verify(activityIndexer).index();
+    verify(testIndexer).index();
+    verify(userIndexer).index();
+    verify(viewIndexer).index();
+    InOrder inOrder = inOrder(issueAuthorizationIndexer, issueIndexer);
+    inOrder.verify(issueAuthorizationIndexer).index();
+    inOrder.verify(issueIndexer).setEnabled(true);
+    inOrder.verify(issueIndexer).index();
+  }
+
+  @Test
+  public void do_not_index_issues_if_authorizations_fail() {
+    doThrow(new IllegalArgumentException("boom")).when(issueAuthorizationIndexer).index();
+
+    try {
+      underTest.execute();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getCause()).hasMessage("boom");
+    }
+    verifyZeroInteractions(issueIndexer);
+  }
+
+  @Test(timeout = 10_000L)
+  public void fail_as_soon_as_an_indexing_fails_and_cancel_the_others() throws Exception {
+    final CountDownLatch activitiesStarted = new CountDownLatch(1);
+    final CountDownLatch activitiesInterrupted = new CountDownLatch(1);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        activitiesStarted.countDown();
+        try {
+          // never ends unless interrupted
+          new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+          activitiesInterrupted.countDown();
+        }
+        return null;
+      }
+    }).when(activityIndexer).index();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws InterruptedException {
+        activitiesStarted.await();
+        throw new IllegalArgumentException("boom");
+      }
+    }).when(userIndexer).index();
+
+    try {
+      underTest.execute();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getCause()).hasMessage("boom");
+    }
+    activitiesInterrupted.await();
+  }
+
+  @Test
+  public void do_nothing_if_indexes_are_disabled() {
+    settings.setProperty("sonar.internal.es.disableIndexes", true);
+
+    underTest.execute();
+
+    verifyZeroInteractions(testIndexer, issueAuthorizationIndexer, issueIndexer, userIndexer, viewIndexer, activityIndexer);
+  }
+}
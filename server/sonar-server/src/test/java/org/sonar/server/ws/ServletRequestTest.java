@@ -23,6 +23,7 @@ package org.sonar.server.ws;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.net.HttpHeaders;
 import java.util.Collections;
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import org.jruby.RubyFile;
 import org.junit.Test;
@@ -30,6 +31,7 @@ import org.sonarqube.ws.MediaTypes;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -105,6 +107,25 @@ public class ServletRequestTest {
     assertThat(request.readInputStreamParam("param2")).isNull();
   }
 
+  @Test
+  public void read_input_stream_from_raw_body() throws Exception {
+    ServletInputStream body = mock(ServletInputStream.class);
+    when(source.getContentType()).thenReturn("application/octet-stream");
+    when(source.getInputStream()).thenReturn(body);
+    ServletRequest request = new ServletRequest(source, Collections.<String, Object>emptyMap());
+
+    assertThat(request.readInputStreamParam("report")).isSameAs(body);
+  }
+
+  @Test
+  public void do_not_read_input_stream_from_form_body() throws Exception {
+    when(source.getContentType()).thenReturn("application/x-www-form-urlencoded");
+    ServletRequest request = new ServletRequest(source, Collections.<String, Object>emptyMap());
+
+    assertThat(request.readInputStreamParam("report")).isNull();
+    verify(source, never()).getInputStream();
+  }
+
   @Test
   public void to_string() {
     when(source.getRequestURL()).thenReturn(new StringBuffer("http:localhost:9000/api/issues"));
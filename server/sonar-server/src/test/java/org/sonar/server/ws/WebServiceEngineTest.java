@@ -22,9 +22,12 @@ package org.sonar.server.ws;
 import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
 import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -255,6 +258,66 @@ public class WebServiceEngineTest {
     assertThat(response.stream().mediaType()).isEqualTo(MediaTypes.JSON);
   }
 
+  @Test
+  public void tag_response_of_get_request_with_content_hash() {
+    ValidatingRequest request = new SimpleRequest("GET");
+    ServletResponse response = new ServletResponse();
+    engine.execute(request, response, "api/system", "health");
+
+    assertThat(response.getHeader("ETag")).isEqualTo("\"" + DigestUtils.md5Hex("good") + "\"");
+    assertThat(response.stream().httpStatus()).isEqualTo(200);
+    assertThat(response.stream().outputAsString()).isEqualTo("good");
+  }
+
+  @Test
+  public void do_not_tag_response_of_post_request() {
+    ValidatingRequest request = new SimpleRequest("POST");
+    ServletResponse response = new ServletResponse();
+    engine.execute(request, response, "api/system", "ping");
+
+    assertThat(response.getHeader("ETag")).isNull();
+  }
+
+  @Test
+  public void do_not_tag_error_response() {
+    ValidatingRequest request = new SimpleRequest("GET");
+    ServletResponse response = new ServletResponse();
+    engine.execute(request, response, "api/system", "fail");
+
+    assertThat(response.getHeader("ETag")).isNull();
+    assertThat(response.stream().httpStatus()).isEqualTo(500);
+  }
+
+  @Test
+  public void do_not_send_content_if_not_modified() {
+    ServletResponse response = new ServletResponse();
+    engine.execute(newServletRequest("\"" + DigestUtils.md5Hex("good") + "\""), response, "api/system", "health");
+
+    assertThat(response.stream().httpStatus()).isEqualTo(304);
+    assertThat(response.stream().outputAsString()).isEmpty();
+    assertThat(response.getHeader("ETag")).isEqualTo("\"" + DigestUtils.md5Hex("good") + "\"");
+  }
+
+  @Test
+  public void match_any_of_the_requested_entity_tags() {
+    ServletResponse response = new ServletResponse();
+    engine.execute(newServletRequest("\"abc\", W/\"" + DigestUtils.md5Hex("good") + "\""), response, "api/system", "health");
+    assertThat(response.stream().httpStatus()).isEqualTo(304);
+
+    response = new ServletResponse();
+    engine.execute(newServletRequest("*"), response, "api/system", "health");
+    assertThat(response.stream().httpStatus()).isEqualTo(304);
+  }
+
+  @Test
+  public void send_content_if_modified() {
+    ServletResponse response = new ServletResponse();
+    engine.execute(newServletRequest("\"" + DigestUtils.md5Hex("bad") + "\""), response, "api/system", "health");
+
+    assertThat(response.stream().httpStatus()).isEqualTo(200);
+    assertThat(response.stream().outputAsString()).isEqualTo("good");
+  }
+
   @Test
   public void should_handle_headers() {
     ServletResponse response = new ServletResponse();
@@ -265,6 +328,14 @@ public class WebServiceEngineTest {
     assertThat(response.getHeader(name)).isEqualTo(value);
   }
 
+  private static ServletRequest newServletRequest(String ifNoneMatch) {
+    HttpServletRequest source = mock(HttpServletRequest.class);
+    when(source.getMethod()).thenReturn("GET");
+    when(source.getRequestURI()).thenReturn("/api/system/health");
+    when(source.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+    return new ServletRequest(source, Collections.<String, Object>emptyMap());
+  }
+
   private static class SimpleRequest extends ValidatingRequest {
     private final String method;
     private Map<String, String> params = Maps.newHashMap();
@@ -47,7 +47,7 @@ class Api::PropertiesController < Api::ApiController
     end
 
     # apply security
-    properties = properties.select{|prop| allowed?(prop.key)}
+    properties = properties.select{|prop| allowed?(prop.key) && !internal?(prop.key)}
 
     respond_to do |format|
       format.json { render :json => jsonp(to_json(properties)) }
@@ -66,7 +66,7 @@ class Api::PropertiesController < Api::ApiController
     else
       prop = Property.by_key(key)
     end
-    unless prop
+    unless prop && !internal?(key)
       # for backward-compatibility with versions <= 2.14 : keep status 200
       message = "Property not found: #{key}"
       return respond_to do |format|
@@ -91,6 +91,7 @@ class Api::PropertiesController < Api::ApiController
   def update
     key = params[:id]
     bad_request('missing key') unless key.present?
+    bad_request('internal property can not be changed') if internal?(key)
     value = params[:value] || request.raw_post
     resource_id_or_key = params[:resource]
     if resource_id_or_key
@@ -112,6 +113,7 @@ class Api::PropertiesController < Api::ApiController
   def destroy
     key = params[:id]
     bad_request('missing key') unless key.present?
+    bad_request('internal property can not be changed') if internal?(key)
     resource_id_or_key = params[:resource]
     if resource_id_or_key
       resource = Project.by_key(resource_id_or_key)
@@ -146,4 +148,9 @@ class Api::PropertiesController < Api::ApiController
     !property_key.end_with?('.secured') || is_admin?
   end
 
+  # fingerprints of rule repositories are server state, not settings
+  def internal?(property_key)
+    property_key.start_with?(Java::OrgSonarServerRule::RegisterRules::FINGERPRINT_PROPERTY_PREFIX)
+  end
+
 end
@@ -44,6 +44,7 @@ import org.sonar.api.batch.BatchSide;
 import org.sonar.api.utils.HttpDownloader;
 import org.sonar.batch.bootstrapper.EnvironmentInformation;
 import org.sonar.core.util.DefaultHttpDownloader;
+import org.sonar.core.util.DefaultHttpDownloader.BaseHttpDownloader.ConditionalResponse;
 
 /**
  * Replace the deprecated org.sonar.batch.ServerMetadata
@@ -125,6 +126,29 @@ public class ServerClient {
     }
   }
 
+  /**
+   * GET request that the server does not answer with a body if the entity tag of the previous response is still valid
+   * @param entityTag entity tag of the previous response, if any
+   * @throws IllegalStateException on I/O error, not limited to the network connection and if HTTP response code > 400
+   * @since 5.3
+   */
+  public ConditionalResponse loadIfNoneMatch(String pathStartingWithSlash, @Nullable String entityTag, @Nullable Integer connectTimeoutMs,
+    @Nullable Integer readTimeoutMs) {
+    URI uri = getURI(pathStartingWithSlash);
+
+    try {
+      if (Strings.isNullOrEmpty(getLogin())) {
+        return downloader.conditionalGet(uri, null, null, entityTag, connectTimeoutMs, readTimeoutMs);
+      } else {
+        return downloader.conditionalGet(uri, getLogin(), getPassword(), entityTag, connectTimeoutMs, readTimeoutMs);
+      }
+    } catch (HttpDownloader.HttpException e) {
+      throw handleHttpException(e);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Unable to request: %s", uri), e);
+    }
+  }
+
   public RuntimeException handleHttpException(HttpDownloader.HttpException he) {
     if (he.getResponseCode() == 401) {
       return MessageException.of(String.format(getMessageWhenNotAuthorized(), CoreProperties.LOGIN, CoreProperties.PASSWORD), he);
@@ -22,14 +22,20 @@ package org.sonar.batch.cache;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.sonar.api.utils.HttpDownloader.HttpException;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.batch.bootstrap.ServerClient;
 import org.sonar.batch.bootstrap.UserProperties;
+import org.sonar.core.util.DefaultHttpDownloader.BaseHttpDownloader.ConditionalResponse;
 import org.sonar.home.cache.PersistentCache;
 
 import static org.sonar.batch.cache.WSLoader.ServerStatus.ACCESSIBLE;
@@ -42,7 +48,7 @@ public class WSLoader {
   private static final String FAIL_MSG = "Server is not accessible and data is not cached";
   private static final int CONNECT_TIMEOUT = 5_000;
   private static final int DEFAULT_READ_TIMEOUT = 60_000;
-  private static final String REQUEST_METHOD = "GET";
+  private static final String ENTITY_TAG_KEY_PREFIX = "etag:";
 
   public enum ServerStatus {
     UNKNOWN, ACCESSIBLE, NOT_ACCESSIBLE;
@@ -57,14 +63,27 @@ public class WSLoader {
   private final PersistentCache cache;
   private final UserProperties userProperties;
   private ServerStatus serverStatus;
+  private final AtomicInteger cacheHits = new AtomicInteger();
+  private final AtomicInteger cacheMisses = new AtomicInteger();
 
   private DataLoader<String> stringServerLoader = new DataLoader<String>() {
     @Override
     public String load(String id) throws IOException {
-      InputStream is = client.load(id, REQUEST_METHOD, true, CONNECT_TIMEOUT, getReadTimeout());
-      String str = IOUtils.toString(is, StandardCharsets.UTF_8);
+      ConditionalResponse response = loadIfModified(id);
+      if (response.isNotModified()) {
+        String cached = cache.getString(id);
+        if (cached != null) {
+          cacheHits.incrementAndGet();
+          return cached;
+        }
+        response = client.loadIfNoneMatch(id, null, CONNECT_TIMEOUT, getReadTimeout());
+      }
+      cacheMisses.incrementAndGet();
+      String str = IOUtils.toString(response.input(), StandardCharsets.UTF_8);
+      byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
       try {
-        cache.put(id, str.getBytes(StandardCharsets.UTF_8));
+        cache.put(id, bytes);
+        putEntityTag(id, response.entityTag(), DigestUtils.md5Hex(bytes));
       } catch (IOException e) {
         throw new IllegalStateException("Error saving to WS cache", e);
       }
@@ -83,9 +102,20 @@ public class WSLoader {
   private DataLoader<InputStream> streamServerLoader = new DataLoader<InputStream>() {
     @Override
     public InputStream load(String id) throws IOException {
-      InputStream is = client.load(id, REQUEST_METHOD, true, CONNECT_TIMEOUT, getReadTimeout());
+      ConditionalResponse response = loadIfModified(id);
+      if (response.isNotModified()) {
+        InputStream cached = cache.getStream(id);
+        if (cached != null) {
+          cacheHits.incrementAndGet();
+          return cached;
+        }
+        response = client.loadIfNoneMatch(id, null, CONNECT_TIMEOUT, getReadTimeout());
+      }
+      cacheMisses.incrementAndGet();
+      DigestInputStream is = new DigestInputStream(response.input(), DigestUtils.getMd5Digest());
       try {
         cache.put(id, is);
+        putEntityTag(id, response.entityTag(), Hex.encodeHexString(is.getMessageDigest().digest()));
       } catch (IOException e) {
         throw new IllegalStateException("Error saving to WS cache", e);
       }
@@ -121,6 +151,47 @@ public class WSLoader {
     this.client = client;
   }
 
+  /**
+   * Requests the server with the entity tag of the cached response, if any. The server does not send the content
+   * again if it did not change since it was cached.
+   */
+  private ConditionalResponse loadIfModified(String id) throws IOException {
+    String entityTag = getEntityTag(id);
+    ConditionalResponse response = client.loadIfNoneMatch(id, entityTag, CONNECT_TIMEOUT, getReadTimeout());
+    if (response.isNotModified()) {
+      LOG.debug("Cached response is up-to-date: {}", id);
+    }
+    return response;
+  }
+
+  /**
+   * Entity tag of the cached response, only if the response is still in cache and was not overwritten
+   * since the entity tag was stored.
+   */
+  @CheckForNull
+  private String getEntityTag(String id) throws IOException {
+    String validator = cache.getString(ENTITY_TAG_KEY_PREFIX + id);
+    if (validator == null) {
+      return null;
+    }
+    int separator = validator.indexOf('\n');
+    if (separator < 0) {
+      return null;
+    }
+    try (InputStream cached = cache.getStream(id)) {
+      if (cached == null || !validator.substring(0, separator).equals(DigestUtils.md5Hex(cached))) {
+        return null;
+      }
+    }
+    return validator.substring(separator + 1);
+  }
+
+  private void putEntityTag(String id, @Nullable String entityTag, String contentHash) throws IOException {
+    if (entityTag != null) {
+      cache.put(ENTITY_TAG_KEY_PREFIX + id, (contentHash + "\n" + entityTag).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
   private int getReadTimeout() {
     return userProperties.properties().containsKey(SONAR_WS_TIMEOUT_PROPS) ? (Integer.parseInt(userProperties.property(SONAR_WS_TIMEOUT_PROPS)) * 1000) : DEFAULT_READ_TIMEOUT;
   }
@@ -155,6 +226,20 @@ public class WSLoader {
     }
   }
 
+  /**
+   * Number of responses served from cache, including the ones that the server confirmed to be up-to-date
+   */
+  public int cacheHits() {
+    return cacheHits.get();
+  }
+
+  /**
+   * Number of responses downloaded from server
+   */
+  public int cacheMisses() {
+    return cacheMisses.get();
+  }
+
   public LoadStrategy getDefaultStrategy() {
     return this.defautLoadStrategy;
   }
@@ -221,6 +306,7 @@ public class WSLoader {
     if (result == null) {
       throw new NotAvailableException("resource not cached");
     }
+    cacheHits.incrementAndGet();
     return new WSLoaderResult<>(result, true);
   }
 
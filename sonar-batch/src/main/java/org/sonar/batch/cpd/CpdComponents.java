@@ -21,6 +21,7 @@ package org.sonar.batch.cpd;
 
 import com.google.common.collect.ImmutableList;
 import java.util.List;
+import org.sonar.batch.cpd.index.CpdBlockStore;
 
 public final class CpdComponents {
 
@@ -31,6 +32,7 @@ public final class CpdComponents {
     return ImmutableList.of(
       CpdSensor.class,
       CpdMappings.class,
+      CpdBlockStore.class,
       JavaCpdEngine.class,
       DefaultCpdEngine.class);
   }
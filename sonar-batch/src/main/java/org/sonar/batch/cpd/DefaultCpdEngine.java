@@ -40,6 +40,7 @@ import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.config.Settings;
+import org.sonar.batch.cpd.index.CpdBlockStore;
 import org.sonar.batch.cpd.index.SonarDuplicationsIndex;
 import org.sonar.batch.index.BatchComponentCache;
 import org.sonar.batch.report.ReportPublisher;
@@ -61,13 +62,16 @@ public class DefaultCpdEngine extends CpdEngine {
   private final Settings settings;
   private final ReportPublisher publisher;
   private final BatchComponentCache batchComponentCache;
+  private final CpdBlockStore blockStore;
 
-  public DefaultCpdEngine(CpdMappings mappings, FileSystem fs, Settings settings, ReportPublisher publisher, BatchComponentCache batchComponentCache) {
+  public DefaultCpdEngine(CpdMappings mappings, FileSystem fs, Settings settings, ReportPublisher publisher, BatchComponentCache batchComponentCache,
+    CpdBlockStore blockStore) {
     this.mappings = mappings;
     this.fs = fs;
     this.settings = settings;
     this.publisher = publisher;
     this.batchComponentCache = batchComponentCache;
+    this.blockStore = blockStore;
   }
 
   @Override
@@ -131,11 +135,19 @@ public class DefaultCpdEngine extends CpdEngine {
   }
 
   private void populateIndex(String languageKey, List<InputFile> sourceFiles, CpdMapping mapping, SonarDuplicationsIndex index) {
-    TokenizerBridge bridge = new TokenizerBridge(mapping.getTokenizer(), fs.encoding().name(), getBlockSize(languageKey));
+    int blockSize = getBlockSize(languageKey);
+    String namespace = blockStore.namespace(languageKey + "-" + blockSize, mapping.getTokenizer().getClass());
+    TokenizerBridge bridge = new TokenizerBridge(mapping.getTokenizer(), fs.encoding().name(), blockSize);
     for (InputFile inputFile : sourceFiles) {
-      LOG.debug("Populating index from {}", inputFile);
-      String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
-      List<Block> blocks = bridge.chunk(resourceEffectiveKey, inputFile.file());
+      List<Block> blocks = blockStore.load(namespace, inputFile);
+      if (blocks == null) {
+        LOG.debug("Populating index from {}", inputFile);
+        String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
+        blocks = bridge.chunk(resourceEffectiveKey, inputFile.file());
+        blockStore.store(namespace, inputFile, blocks);
+      } else {
+        LOG.debug("Populating index from cached blocks of {}", inputFile);
+      }
       index.insert(inputFile, blocks);
     }
   }
@@ -47,6 +47,7 @@ import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.duplication.NewDuplication;
 import org.sonar.api.batch.sensor.duplication.internal.DefaultDuplication;
 import org.sonar.api.config.Settings;
+import org.sonar.batch.cpd.index.CpdBlockStore;
 import org.sonar.batch.cpd.index.SonarDuplicationsIndex;
 import org.sonar.batch.index.BatchComponentCache;
 import org.sonar.batch.report.ReportPublisher;
@@ -67,6 +68,7 @@ public class JavaCpdEngine extends CpdEngine {
   private static final Logger LOG = LoggerFactory.getLogger(JavaCpdEngine.class);
 
   private static final int BLOCK_SIZE = 10;
+  private static final String BLOCK_STORE_NAMESPACE = "java-engine-" + BLOCK_SIZE;
 
   /**
    * Limit of time to analyse one file (in seconds).
@@ -80,12 +82,14 @@ public class JavaCpdEngine extends CpdEngine {
   private final Settings settings;
   private final ReportPublisher publisher;
   private final BatchComponentCache batchComponentCache;
+  private final CpdBlockStore blockStore;
 
-  public JavaCpdEngine(FileSystem fs, Settings settings, ReportPublisher publisher, BatchComponentCache batchComponentCache) {
+  public JavaCpdEngine(FileSystem fs, Settings settings, ReportPublisher publisher, BatchComponentCache batchComponentCache, CpdBlockStore blockStore) {
     this.fs = fs;
     this.settings = settings;
     this.publisher = publisher;
     this.batchComponentCache = batchComponentCache;
+    this.blockStore = blockStore;
   }
 
   @Override
@@ -116,7 +120,14 @@ public class JavaCpdEngine extends CpdEngine {
     StatementChunker statementChunker = JavaStatementBuilder.build();
     BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
 
+    String namespace = blockStore.namespace(BLOCK_STORE_NAMESPACE, JavaTokenProducer.class);
     for (InputFile inputFile : sourceFiles) {
+      List<Block> cachedBlocks = blockStore.load(namespace, inputFile);
+      if (cachedBlocks != null) {
+        LOG.debug("Populating index from cached blocks of {}", inputFile);
+        index.insert(inputFile, cachedBlocks);
+        continue;
+      }
       LOG.debug("Populating index from {}", inputFile);
       String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
 
@@ -133,6 +144,7 @@ public class JavaCpdEngine extends CpdEngine {
       }
 
       List<Block> blocks = blockChunker.chunk(resourceEffectiveKey, statements);
+      blockStore.store(namespace, inputFile, blocks);
       index.insert(inputFile, blocks);
     }
 
@@ -0,0 +1,182 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.cpd.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.BatchSide;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.config.Settings;
+import org.sonar.core.platform.PluginInfo;
+import org.sonar.core.platform.PluginRepository;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.home.cache.PersistentCache;
+
+/**
+ * Keeps the CPD blocks of each file in the project persistent cache, so that files that did not change since
+ * previous analysis don't have to be tokenized and chunked again.
+ * Entries are keyed by file key and by a namespace identifying the chunking configuration (engine, language,
+ * block size and version of the plugin providing the tokenizer). The content hash of the file is stored with
+ * its blocks, so that the entry of a file is replaced when it changes.
+ */
+@BatchSide
+public class CpdBlockStore {
+
+  public static final String ENABLED_PROPERTY = "sonar.cpd.incremental";
+
+  private static final Logger LOG = LoggerFactory.getLogger(CpdBlockStore.class);
+  private static final String KEY_PREFIX = "cpd/";
+
+  private final PersistentCache cache;
+  private final Settings settings;
+  private final PluginRepository pluginRepository;
+  private final Map<ClassLoader, String> versionsByClassLoader = new ConcurrentHashMap<>();
+
+  public CpdBlockStore(PersistentCache cache, Settings settings, PluginRepository pluginRepository) {
+    this.cache = cache;
+    this.settings = settings;
+    this.pluginRepository = pluginRepository;
+  }
+
+  /**
+   * Namespace of the blocks chunked with the given configuration by the given tokenizer. It includes the version
+   * of the plugin providing the tokenizer, or the version of the batch for built-in tokenizers, so that blocks
+   * chunked by a previous version are not reused after an upgrade.
+   */
+  public String namespace(String chunking, Class<?> tokenizerClass) {
+    ClassLoader classLoader = tokenizerClass.getClassLoader();
+    String version = versionsByClassLoader.get(classLoader);
+    if (version == null) {
+      version = versionOf(tokenizerClass);
+      versionsByClassLoader.put(classLoader, version);
+    }
+    return chunking + "-" + version;
+  }
+
+  private String versionOf(Class<?> tokenizerClass) {
+    for (PluginInfo pluginInfo : pluginRepository.getPluginInfos()) {
+      if (pluginRepository.getPluginInstance(pluginInfo.getKey()).getClass().getClassLoader() == tokenizerClass.getClassLoader()) {
+        return pluginInfo.getKey() + "-" + pluginInfo.getVersion() + "-" + pluginInfo.getImplementationBuild();
+      }
+    }
+    return "sonar-" + CpdBlockStore.class.getPackage().getImplementationVersion();
+  }
+
+  public boolean isEnabled() {
+    return settings.getBoolean(ENABLED_PROPERTY);
+  }
+
+  /**
+   * Blocks previously stored for the given file, or {@code null} if the file changed since previous analysis
+   * or if nothing is stored for it.
+   */
+  @CheckForNull
+  public List<Block> load(String namespace, InputFile inputFile) {
+    if (!isEnabled() || inputFile.status() != InputFile.Status.SAME) {
+      return null;
+    }
+    DefaultInputFile defaultInputFile = (DefaultInputFile) inputFile;
+    try {
+      byte[] bytes = cache.get(key(namespace, defaultInputFile));
+      if (bytes == null) {
+        return null;
+      }
+      return decode(defaultInputFile.key(), defaultInputFile.hash(), bytes);
+    } catch (IOException e) {
+      LOG.debug("Unable to read CPD blocks of " + inputFile + " from cache", e);
+      return null;
+    }
+  }
+
+  public void store(String namespace, InputFile inputFile, Collection<Block> blocks) {
+    if (!isEnabled()) {
+      return;
+    }
+    DefaultInputFile defaultInputFile = (DefaultInputFile) inputFile;
+    try {
+      // replaces the blocks of previous version of file
+      cache.put(key(namespace, defaultInputFile), encode(defaultInputFile.hash(), blocks));
+    } catch (IOException e) {
+      LOG.debug("Unable to write CPD blocks of " + inputFile + " to cache", e);
+    }
+  }
+
+  private static String key(String namespace, DefaultInputFile inputFile) {
+    return KEY_PREFIX + namespace + "/" + inputFile.key();
+  }
+
+  static byte[] encode(String fileHash, Collection<Block> blocks) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeUTF(fileHash);
+      out.writeInt(blocks.size());
+      for (Block block : blocks) {
+        byte[] hash = block.getBlockHash().getBytes();
+        out.writeInt(hash.length);
+        out.write(hash);
+        out.writeInt(block.getIndexInFile());
+        out.writeInt(block.getStartLine());
+        out.writeInt(block.getEndLine());
+        out.writeInt(block.getStartUnit());
+        out.writeInt(block.getEndUnit());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @return {@code null} if blocks were stored for another version of the file
+   */
+  @CheckForNull
+  static List<Block> decode(String resourceId, String fileHash, byte[] bytes) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      if (!fileHash.equals(in.readUTF())) {
+        return null;
+      }
+      int size = in.readInt();
+      List<Block> blocks = new ArrayList<>(size);
+      Block.Builder builder = Block.builder().setResourceId(resourceId);
+      for (int i = 0; i < size; i++) {
+        byte[] hash = new byte[in.readInt()];
+        in.readFully(hash);
+        blocks.add(builder
+          .setBlockHash(new ByteArray(hash))
+          .setIndexInFile(in.readInt())
+          .setLines(in.readInt(), in.readInt())
+          .setUnit(in.readInt(), in.readInt())
+          .build());
+      }
+      return blocks;
+    }
+  }
+}
@@ -23,6 +23,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
@@ -30,12 +31,15 @@ import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.fs.InputComponent;
 import org.sonar.api.resources.Resource;
 
+/**
+ * Thread-safe, so that modules can be scanned concurrently.
+ */
 @BatchSide
 public class BatchComponentCache {
   // components by key
-  private final Map<String, BatchComponent> components = Maps.newLinkedHashMap();
+  private final Map<String, BatchComponent> components = Collections.synchronizedMap(Maps.<String, BatchComponent>newLinkedHashMap());
 
-  private BatchComponent root;
+  private volatile BatchComponent root;
 
   @CheckForNull
   public BatchComponent get(String componentKey) {
@@ -50,7 +54,7 @@ public class BatchComponentCache {
     return components.get(inputComponent.key());
   }
 
-  public BatchComponent add(Resource resource, @Nullable Resource parentResource) {
+  public synchronized BatchComponent add(Resource resource, @Nullable Resource parentResource) {
     String componentKey = resource.getEffectiveKey();
     Preconditions.checkState(!Strings.isNullOrEmpty(componentKey), "Missing resource effective key");
     BatchComponent parent = parentResource != null ? get(parentResource.getEffectiveKey()) : null;
@@ -19,10 +19,14 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Sets;
 import com.persistit.Exchange;
 import com.persistit.Key;
 import com.persistit.KeyFilter;
+import com.persistit.Persistit;
+import com.persistit.Value;
+import com.persistit.Volume;
 import com.persistit.exception.PersistitException;
 import org.apache.commons.lang.builder.ToStringBuilder;
 
@@ -30,44 +34,98 @@ import javax.annotation.CheckForNull;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
- * This cache is not thread-safe, due to direct usage of {@link com.persistit.Exchange}
+ * This cache is thread-safe. A {@link com.persistit.Exchange}, which is not thread-safe, is allocated for each thread
+ * that accesses the cache. The underlying Persistit tree supports concurrent accesses.
+ * </p>
+ * <p>
+ * Iterables returned by this cache are lazy. Each iterator must be consumed by a single thread.
  * </p>
  */
 public class Cache<V> {
 
   private final String name;
-  private final Exchange exchange;
-
-  Cache(String name, Exchange exchange) {
+  private final Persistit persistit;
+  private final Volume volume;
+  private final Queue<Exchange> allocatedExchanges = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<ThreadExchange> exchanges = new ThreadLocal<>();
+  // incremented on release, so that threads don't reuse the exchanges they allocated before
+  private final AtomicInteger generation = new AtomicInteger();
+
+  Cache(String name, Persistit persistit, Volume volume) {
     this.name = name;
-    this.exchange = exchange;
+    this.persistit = persistit;
+    this.volume = volume;
+    // fail fast if the tree can't be created
+    exchange();
+  }
+
+  @VisibleForTesting
+  Exchange exchange() {
+    int currentGeneration = generation.get();
+    ThreadExchange threadExchange = exchanges.get();
+    if (threadExchange == null || threadExchange.generation != currentGeneration) {
+      Exchange exchange;
+      try {
+        exchange = persistit.getExchange(volume, name, true);
+        exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
+      } catch (PersistitException e) {
+        throw new IllegalStateException("Fail to create cache: " + name, e);
+      }
+      allocatedExchanges.add(exchange);
+      threadExchange = new ThreadExchange(exchange, currentGeneration);
+      exchanges.set(threadExchange);
+    }
+    return threadExchange.exchange;
+  }
+
+  /**
+   * Releases the exchanges allocated by all threads. The cache must not be used afterwards. The exchanges
+   * still referenced by other threads are invalidated, so they are never used again.
+   */
+  void release() {
+    generation.incrementAndGet();
+    Exchange exchange = allocatedExchanges.poll();
+    while (exchange != null) {
+      persistit.releaseExchange(exchange);
+      exchange = allocatedExchanges.poll();
+    }
+    exchanges.remove();
+  }
+
+  private static class ThreadExchange {
+    private final Exchange exchange;
+    private final int generation;
+
+    ThreadExchange(Exchange exchange, int generation) {
+      this.exchange = exchange;
+      this.generation = generation;
+    }
   }
 
   public Cache<V> put(Object key, V value) {
-    resetKey(key);
-    return doPut(value);
+    return doPut(resetKey(key), value);
   }
 
   public Cache<V> put(Object firstKey, Object secondKey, V value) {
-    resetKey(firstKey, secondKey);
-    return doPut(value);
+    return doPut(resetKey(firstKey, secondKey), value);
   }
 
   public Cache<V> put(Object firstKey, Object secondKey, Object thirdKey, V value) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doPut(value);
+    return doPut(resetKey(firstKey, secondKey, thirdKey), value);
   }
 
   public Cache<V> put(Object[] key, V value) {
-    resetKey(key);
-    return doPut(value);
+    return doPut(resetKey(key), value);
   }
 
-  private Cache<V> doPut(V value) {
+  private Cache<V> doPut(Exchange exchange, V value) {
     try {
       exchange.getValue().put(value);
       exchange.store();
@@ -81,8 +139,7 @@ public class Cache<V> {
    * Returns the value object associated with keys, or null if not found.
    */
   public V get(Object key) {
-    resetKey(key);
-    return doGet();
+    return doGet(resetKey(key));
   }
 
   /**
@@ -90,8 +147,7 @@ public class Cache<V> {
    */
   @CheckForNull
   public V get(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doGet();
+    return doGet(resetKey(firstKey, secondKey));
   }
 
   /**
@@ -99,8 +155,7 @@ public class Cache<V> {
    */
   @CheckForNull
   public V get(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doGet();
+    return doGet(resetKey(firstKey, secondKey, thirdKey));
   }
 
   /**
@@ -108,13 +163,12 @@ public class Cache<V> {
    */
   @CheckForNull
   public V get(Object[] key) {
-    resetKey(key);
-    return doGet();
+    return doGet(resetKey(key));
   }
 
   @SuppressWarnings("unchecked")
   @CheckForNull
-  private V doGet() {
+  private V doGet(Exchange exchange) {
     try {
       exchange.fetch();
       if (!exchange.getValue().isDefined()) {
@@ -128,26 +182,22 @@ public class Cache<V> {
   }
 
   public boolean containsKey(Object key) {
-    resetKey(key);
-    return doContainsKey();
+    return doContainsKey(resetKey(key));
   }
 
   public boolean containsKey(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doContainsKey();
+    return doContainsKey(resetKey(firstKey, secondKey));
   }
 
   public boolean containsKey(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doContainsKey();
+    return doContainsKey(resetKey(firstKey, secondKey, thirdKey));
   }
 
   public boolean containsKey(Object[] key) {
-    resetKey(key);
-    return doContainsKey();
+    return doContainsKey(resetKey(key));
   }
 
-  private boolean doContainsKey() {
+  private boolean doContainsKey(Exchange exchange) {
     try {
       exchange.fetch();
       return exchange.isValueDefined();
@@ -158,26 +208,22 @@ public class Cache<V> {
   }
 
   public boolean remove(Object key) {
-    resetKey(key);
-    return doRemove();
+    return doRemove(resetKey(key));
   }
 
   public boolean remove(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doRemove();
+    return doRemove(resetKey(firstKey, secondKey));
   }
 
   public boolean remove(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doRemove();
+    return doRemove(resetKey(firstKey, secondKey, thirdKey));
   }
 
   public boolean remove(Object[] key) {
-    resetKey(key);
-    return doRemove();
+    return doRemove(resetKey(key));
   }
 
-  private boolean doRemove() {
+  private boolean doRemove(Exchange exchange) {
     try {
       return exchange.remove();
     } catch (Exception e) {
@@ -192,26 +238,22 @@ public class Cache<V> {
    * @param group The group name.
    */
   public Cache<V> clear(Object key) {
-    resetKey(key);
-    return doClear();
+    return doClear(resetKey(key));
   }
 
   public Cache<V> clear(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doClear();
+    return doClear(resetKey(firstKey, secondKey));
   }
 
   public Cache<V> clear(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doClear();
+    return doClear(resetKey(firstKey, secondKey, thirdKey));
   }
 
   public Cache<V> clear(Object[] key) {
-    resetKey(key);
-    return doClear();
+    return doClear(resetKey(key));
   }
 
-  private Cache<V> doClear() {
+  private Cache<V> doClear(Exchange exchange) {
     try {
       Key to = new Key(exchange.getKey());
       to.append(Key.AFTER);
@@ -227,6 +269,7 @@ public class Cache<V> {
    */
   public void clear() {
     try {
+      Exchange exchange = exchange();
       exchange.clear();
       exchange.removeAll();
     } catch (Exception e) {
@@ -236,7 +279,7 @@ public class Cache<V> {
 
   /**
    * Returns the set of cache keys associated with this group.
-   * TODO implement a lazy-loading equivalent with Iterator/Iterable
+   * See {@link #keys(Object)} for a lazy-loading equivalent.
    *
    * @param group The group.
    * @return The set of cache keys for this group.
@@ -245,6 +288,7 @@ public class Cache<V> {
   public Set keySet(Object key) {
     try {
       Set<Object> keys = Sets.newLinkedHashSet();
+      Exchange exchange = exchange();
       exchange.clear();
       Exchange iteratorExchange = new Exchange(exchange);
       iteratorExchange.append(key);
@@ -262,6 +306,7 @@ public class Cache<V> {
   public Set keySet(Object firstKey, Object secondKey) {
     try {
       Set<Object> keys = Sets.newLinkedHashSet();
+      Exchange exchange = exchange();
       exchange.clear();
       Exchange iteratorExchange = new Exchange(exchange);
       iteratorExchange.append(firstKey);
@@ -284,6 +329,7 @@ public class Cache<V> {
   public Set<Object> keySet() {
     try {
       Set<Object> keys = Sets.newLinkedHashSet();
+      Exchange exchange = exchange();
       exchange.clear();
       Exchange iteratorExchange = new Exchange(exchange);
       iteratorExchange.append(Key.BEFORE);
@@ -300,51 +346,80 @@ public class Cache<V> {
    * Lazy-loading values for given keys
    */
   public Iterable<V> values(Object firstKey, Object secondKey) {
-    return new ValueIterable<>(exchange, firstKey, secondKey);
+    return new ValueIterable<>(this, firstKey, secondKey);
   }
 
   /**
    * Lazy-loading values for a given key
    */
   public Iterable<V> values(Object firstKey) {
-    return new ValueIterable<>(exchange, firstKey);
+    return new ValueIterable<>(this, firstKey);
   }
 
   /**
    * Lazy-loading values
    */
   public Iterable<V> values() {
-    return new ValueIterable<>(exchange);
+    return new ValueIterable<>(this);
   }
 
   public Iterable<Entry<V>> entries() {
-    return new EntryIterable<>(exchange);
+    return new EntryIterable<>(this);
   }
 
   public Iterable<Entry<V>> entries(Object firstKey) {
-    return new EntryIterable<>(exchange, firstKey);
+    return new EntryIterable<>(this, firstKey);
   }
 
-  private void resetKey(Object key) {
+  /**
+   * Lazy-loading keys of this cache. Contrary to {@link #keySet()}, keys are not loaded in memory.
+   */
+  public Iterable<Object> keys() {
+    return new KeyIterable(this);
+  }
+
+  /**
+   * Lazy-loading keys associated with this group. Contrary to {@link #keySet(Object)}, keys are not loaded in memory.
+   */
+  public Iterable<Object> keys(Object firstKey) {
+    return new KeyIterable(this, firstKey);
+  }
+
+  /**
+   * Lazy-loading keys associated with these groups. Contrary to {@link #keySet(Object, Object)}, keys are not loaded in memory.
+   */
+  public Iterable<Object> keys(Object firstKey, Object secondKey) {
+    return new KeyIterable(this, firstKey, secondKey);
+  }
+
+  private Exchange resetKey(Object key) {
+    Exchange exchange = exchange();
     exchange.clear();
     exchange.append(key);
+    return exchange;
   }
 
-  private void resetKey(Object first, Object second) {
+  private Exchange resetKey(Object first, Object second) {
+    Exchange exchange = exchange();
     exchange.clear();
     exchange.append(first).append(second);
+    return exchange;
   }
 
-  private void resetKey(Object first, Object second, Object third) {
+  private Exchange resetKey(Object first, Object second, Object third) {
+    Exchange exchange = exchange();
     exchange.clear();
     exchange.append(first).append(second).append(third);
+    return exchange;
   }
 
-  private void resetKey(Object[] keys) {
+  private Exchange resetKey(Object[] keys) {
+    Exchange exchange = exchange();
     exchange.clear();
     for (Object o : keys) {
       exchange.append(o);
     }
+    return exchange;
   }
 
   //
@@ -352,16 +427,17 @@ public class Cache<V> {
   //
 
   private static class ValueIterable<T> implements Iterable<T> {
-    private final Exchange originExchange;
+    private final Cache<?> cache;
     private final Object[] keys;
 
-    private ValueIterable(Exchange originExchange, Object... keys) {
-      this.originExchange = originExchange;
+    private ValueIterable(Cache<?> cache, Object... keys) {
+      this.cache = cache;
       this.keys = keys;
     }
 
     @Override
     public Iterator<T> iterator() {
+      Exchange originExchange = cache.exchange();
       originExchange.clear();
       KeyFilter filter = new KeyFilter();
       for (Object key : keys) {
@@ -413,16 +489,17 @@ public class Cache<V> {
   }
 
   private static class EntryIterable<T> implements Iterable<Entry<T>> {
-    private final Exchange originExchange;
+    private final Cache<?> cache;
     private final Object[] keys;
 
-    private EntryIterable(Exchange originExchange, Object... keys) {
-      this.originExchange = originExchange;
+    private EntryIterable(Cache<?> cache, Object... keys) {
+      this.cache = cache;
       this.keys = keys;
     }
 
     @Override
     public Iterator<Entry<T>> iterator() {
+      Exchange originExchange = cache.exchange();
       originExchange.clear();
       KeyFilter filter = new KeyFilter();
       for (Object key : keys) {
@@ -479,6 +556,68 @@ public class Cache<V> {
     }
   }
 
+  private static class KeyIterable implements Iterable<Object> {
+    private final Cache<?> cache;
+    private final Object[] keys;
+
+    private KeyIterable(Cache<?> cache, Object... keys) {
+      this.cache = cache;
+      this.keys = keys;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+      Exchange originExchange = cache.exchange();
+      originExchange.clear();
+      Exchange iteratorExchange = new Exchange(originExchange);
+      for (Object key : keys) {
+        iteratorExchange.append(key);
+      }
+      iteratorExchange.append(Key.BEFORE);
+      return new KeyIterator(iteratorExchange);
+    }
+  }
+
+  private static class KeyIterator implements Iterator<Object> {
+    private final Exchange exchange;
+    private Object nextKey;
+
+    private KeyIterator(Exchange exchange) {
+      this.exchange = exchange;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (nextKey != null) {
+        return true;
+      }
+      try {
+        if (exchange.next(false)) {
+          nextKey = exchange.getKey().indexTo(-1).decode();
+          return true;
+        }
+        return false;
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public Object next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Object key = nextKey;
+      nextKey = null;
+      return key;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+
   public static class Entry<V> {
     private final Object[] key;
     private final V value;
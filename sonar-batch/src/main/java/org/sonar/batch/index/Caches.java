@@ -22,11 +22,8 @@ package org.sonar.batch.index;
 import com.google.common.collect.Maps;
 
 import java.util.Map;
-import java.util.Map.Entry;
 
 import com.google.common.base.Preconditions;
-import com.persistit.Exchange;
-import com.persistit.Value;
 import com.persistit.encoding.CoderManager;
 import com.persistit.Persistit;
 import com.persistit.encoding.ValueCoder;
@@ -37,7 +34,7 @@ import org.sonar.api.batch.BatchSide;
 
 @BatchSide
 public class Caches implements Startable {
-  private final Map<String, Exchange> cacheMap = Maps.newHashMap();
+  private final Map<String, Cache<?>> cacheMap = Maps.newHashMap();
   private Persistit persistit;
   private Volume volume;
 
@@ -65,24 +62,18 @@ public class Caches implements Startable {
     cm.registerValueCoder(clazz, coder);
   }
 
-  public <V> Cache<V> createCache(String cacheName) {
+  public synchronized <V> Cache<V> createCache(String cacheName) {
     Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
     Preconditions.checkState(!cacheMap.containsKey(cacheName), "Cache is already created: " + cacheName);
-    try {
-      Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Cache<V> cache = new Cache<>(cacheName, exchange);
-      cacheMap.put(cacheName, exchange);
-      return cache;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to create cache: " + cacheName, e);
-    }
+    Cache<V> cache = new Cache<>(cacheName, persistit, volume);
+    cacheMap.put(cacheName, cache);
+    return cache;
   }
 
   @Override
-  public void stop() {
-    for (Entry<String, Exchange> e : cacheMap.entrySet()) {
-      persistit.releaseExchange(e.getValue());
+  public synchronized void stop() {
+    for (Cache<?> cache : cacheMap.values()) {
+      cache.release();
     }
 
     cacheMap.clear();
@@ -24,6 +24,7 @@ import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -62,10 +63,11 @@ public class DefaultIndex extends SonarIndex {
   private final MeasureCache measureCache;
   private final PathResolver pathResolver;
   private final DefaultProjectTree projectTree;
-  // caches
-  private DefaultSensorStorage sensorStorage;
-  private Project currentProject;
-  private Map<Resource, Bucket> buckets = Maps.newLinkedHashMap();
+  // module being scanned by the current thread, as modules can be scanned concurrently. Inherited by the threads
+  // created during the scan of a module, for example to execute its sensors concurrently.
+  private final ThreadLocal<Project> currentProjectOfThread = new InheritableThreadLocal<>();
+  private final ThreadLocal<DefaultSensorStorage> sensorStorageOfThread = new InheritableThreadLocal<>();
+  private final Map<Resource, Bucket> buckets = Collections.synchronizedMap(Maps.<Resource, Bucket>newLinkedHashMap());
 
   public DefaultIndex(BatchComponentCache componentCache, DefaultProjectTree projectTree, MeasureCache measureCache, PathResolver pathResolver) {
     this.componentCache = componentCache;
@@ -86,7 +88,7 @@ public class DefaultIndex extends SonarIndex {
     addBucket(rootProject, bucket);
     BatchComponent component = componentCache.add(rootProject, null);
     component.setInputComponent(new DefaultInputModule(rootProject.getEffectiveKey()));
-    currentProject = rootProject;
+    currentProjectOfThread.set(rootProject);
 
     for (Project module : rootProject.getModules()) {
       addModule(rootProject, module);
@@ -111,30 +113,67 @@ public class DefaultIndex extends SonarIndex {
 
   @Override
   public Project getProject() {
-    return currentProject;
+    Project project = currentProjectOfThread.get();
+    if (project == null) {
+      throw new IllegalStateException("No module is scanned by thread " + Thread.currentThread().getName());
+    }
+    return project;
+  }
+
+  private DefaultSensorStorage sensorStorage() {
+    DefaultSensorStorage storage = sensorStorageOfThread.get();
+    if (storage == null) {
+      throw new IllegalStateException("No module is scanned by thread " + Thread.currentThread().getName());
+    }
+    return storage;
   }
 
+  /**
+   * Binds the module to the current thread
+   */
   public void setCurrentProject(Project project, DefaultSensorStorage sensorStorage) {
-    this.currentProject = project;
+    this.currentProjectOfThread.set(project);
 
     // the following components depend on the current module, so they need to be reloaded.
-    this.sensorStorage = sensorStorage;
+    this.sensorStorageOfThread.set(sensorStorage);
+  }
+
+  /**
+   * Unbinds the module from the current thread
+   */
+  public void unbindCurrentProject() {
+    this.currentProjectOfThread.remove();
+    this.sensorStorageOfThread.remove();
   }
 
   /**
-   * Keep only project stuff
+   * Keep only project stuff. Only the resources of the current module are removed, as other modules
+   * may be scanned concurrently.
    */
   public void clear() {
-    Iterator<Map.Entry<Resource, Bucket>> it = buckets.entrySet().iterator();
-    while (it.hasNext()) {
-      Map.Entry<Resource, Bucket> entry = it.next();
-      Resource resource = entry.getKey();
-      if (!ResourceUtils.isSet(resource)) {
-        entry.getValue().clear();
-        it.remove();
+    Project module = getProject();
+    synchronized (buckets) {
+      Iterator<Map.Entry<Resource, Bucket>> it = buckets.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<Resource, Bucket> entry = it.next();
+        Resource resource = entry.getKey();
+        if (!ResourceUtils.isSet(resource) && belongsTo(entry.getValue(), module)) {
+          entry.getValue().clear();
+          it.remove();
+        }
       }
+    }
+  }
 
+  private static boolean belongsTo(Bucket bucket, @Nullable Project module) {
+    Bucket parent = bucket.getParent();
+    while (parent != null) {
+      if (ResourceUtils.isSet(parent.getResource())) {
+        return module == null || module.equals(parent.getResource());
+      }
+      parent = parent.getParent();
     }
+    return true;
   }
 
   @CheckForNull
@@ -171,7 +210,7 @@ public class DefaultIndex extends SonarIndex {
   public Measure addMeasure(Resource resource, Measure measure) {
     Bucket bucket = getBucket(resource);
     if (bucket != null) {
-      return sensorStorage.saveMeasure(resource, measure);
+      return sensorStorage().saveMeasure(resource, measure);
     }
     return measure;
   }
@@ -191,7 +230,7 @@ public class DefaultIndex extends SonarIndex {
     Resource resource = getResource(reference);
     if (resource instanceof File) {
       File file = (File) resource;
-      Project module = currentProject;
+      Project module = getProject();
       ProjectDefinition def = projectTree.getProjectDefinition(module);
       try {
         return FileUtils.readFileToString(new java.io.File(def.getBaseDir(), file.getPath()));
@@ -261,7 +300,7 @@ public class DefaultIndex extends SonarIndex {
     return bucket != null;
   }
 
-  private Bucket doIndex(Resource resource, @Nullable Resource parentReference) {
+  private synchronized Bucket doIndex(Resource resource, @Nullable Resource parentReference) {
     Bucket bucket = getBucket(resource);
     if (bucket != null) {
       return bucket;
@@ -272,7 +311,8 @@ public class DefaultIndex extends SonarIndex {
       return null;
     }
 
-    Resource parent = (Resource) ObjectUtils.defaultIfNull(parentReference, currentProject);
+    Project module = getProject();
+    Resource parent = (Resource) ObjectUtils.defaultIfNull(parentReference, module);
 
     Bucket parentBucket = getBucket(parent);
     if (parentBucket == null && parent != null) {
@@ -283,7 +323,7 @@ public class DefaultIndex extends SonarIndex {
     if (ResourceUtils.isProject(resource) || /* For technical projects */ResourceUtils.isRootProject(resource)) {
       resource.setEffectiveKey(resource.getKey());
     } else {
-      resource.setEffectiveKey(ComponentKeys.createEffectiveKey(currentProject, resource));
+      resource.setEffectiveKey(ComponentKeys.createEffectiveKey(module, resource));
     }
     bucket = new Bucket(resource).setParent(parentBucket);
     addBucket(resource, bucket);
@@ -48,10 +48,6 @@ public class ModuleIssues {
   private final IssueFilters filters;
   private final ReportPublisher reportPublisher;
   private final BatchComponentCache componentCache;
-  private final BatchReport.Issue.Builder builder = BatchReport.Issue.newBuilder();
-  private final Builder locationBuilder = IssueLocation.newBuilder();
-  private final org.sonar.batch.protocol.output.BatchReport.TextRange.Builder textRangeBuilder = org.sonar.batch.protocol.output.BatchReport.TextRange.newBuilder();
-  private final BatchReport.Flow.Builder flowBuilder = BatchReport.Flow.newBuilder();
 
   public ModuleIssues(ActiveRules activeRules, Rules rules, IssueFilters filters, ReportPublisher reportPublisher, BatchComponentCache componentCache) {
     this.activeRules = activeRules;
@@ -61,6 +57,9 @@ public class ModuleIssues {
     this.componentCache = componentCache;
   }
 
+  /**
+   * Can be called concurrently by the sensors executed concurrently on the module.
+   */
   public boolean initAndAddIssue(Issue issue) {
     InputComponent inputComponent = issue.primaryLocation().inputComponent();
     BatchComponent component = componentCache.get(inputComponent);
@@ -76,8 +75,9 @@ public class ModuleIssues {
     org.sonar.api.batch.rule.Severity overriddenSeverity = issue.overriddenSeverity();
     Severity severity = overriddenSeverity != null ? Severity.valueOf(overriddenSeverity.name()) : Severity.valueOf(activeRule.severity());
 
-    builder.clear();
-    locationBuilder.clear();
+    // builders are not shared, as sensors can be executed concurrently
+    BatchReport.Issue.Builder builder = BatchReport.Issue.newBuilder();
+    Builder locationBuilder = IssueLocation.newBuilder();
     // non-null fields
     builder.setSeverity(severity);
     builder.setRuleRepository(issue.ruleKey().repository());
@@ -95,7 +95,7 @@ public class ModuleIssues {
     if (effortToFix != null) {
       builder.setEffortToFix(effortToFix);
     }
-    applyFlows(issue);
+    applyFlows(builder, issue);
     BatchReport.Issue rawIssue = builder.build();
 
     if (filters.accept(inputComponent.key(), rawIssue)) {
@@ -105,7 +105,9 @@ public class ModuleIssues {
     return false;
   }
 
-  private void applyFlows(Issue issue) {
+  private void applyFlows(BatchReport.Issue.Builder builder, Issue issue) {
+    BatchReport.Flow.Builder flowBuilder = BatchReport.Flow.newBuilder();
+    Builder locationBuilder = IssueLocation.newBuilder();
     for (Flow flow : issue.flows()) {
       if (!flow.locations().isEmpty()) {
         flowBuilder.clear();
@@ -127,8 +129,8 @@ public class ModuleIssues {
     }
   }
 
-  private org.sonar.batch.protocol.output.BatchReport.TextRange toProtobufTextRange(TextRange primaryTextRange) {
-    textRangeBuilder.clear();
+  private static org.sonar.batch.protocol.output.BatchReport.TextRange toProtobufTextRange(TextRange primaryTextRange) {
+    org.sonar.batch.protocol.output.BatchReport.TextRange.Builder textRangeBuilder = org.sonar.batch.protocol.output.BatchReport.TextRange.newBuilder();
     textRangeBuilder.setStartLine(primaryTextRange.start().line());
     textRangeBuilder.setStartOffset(primaryTextRange.start().lineOffset());
     textRangeBuilder.setEndLine(primaryTextRange.end().line());
@@ -148,7 +150,10 @@ public class ModuleIssues {
     return rule;
   }
 
-  public void write(BatchComponent component, BatchReport.Issue rawIssue) {
+  /**
+   * Synchronized, so that issues appended concurrently to the same file are not interleaved
+   */
+  public synchronized void write(BatchComponent component, BatchReport.Issue rawIssue) {
     reportPublisher.getWriter().appendComponentIssue(component.batchId(), rawIssue);
   }
 
@@ -24,6 +24,7 @@ import com.google.common.collect.Lists;
 import org.apache.commons.lang.StringUtils;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.config.Settings;
+import org.sonar.api.utils.internal.WildcardPatternSet;
 
 import java.util.List;
 
@@ -36,6 +37,8 @@ public abstract class AbstractPatternInitializer {
 
   private List<IssuePattern> multicriteriaPatterns;
 
+  private WildcardPatternSet multicriteriaResourcePatterns;
+
   protected AbstractPatternInitializer(Settings settings) {
     this.settings = settings;
     initPatterns();
@@ -49,6 +52,13 @@ public abstract class AbstractPatternInitializer {
     return multicriteriaPatterns;
   }
 
+  /**
+   * Resource patterns of {@link #getMulticriteriaPatterns()}, in the same order
+   */
+  protected WildcardPatternSet getMulticriteriaResourcePatterns() {
+    return multicriteriaResourcePatterns;
+  }
+
   public boolean hasConfiguredPatterns() {
     return hasMulticriteriaPatterns();
   }
@@ -63,6 +73,7 @@ public abstract class AbstractPatternInitializer {
   protected final void initPatterns() {
     // Patterns Multicriteria
     multicriteriaPatterns = Lists.newArrayList();
+    List<String> resourcePatterns = Lists.newArrayList();
     String patternConf = StringUtils.defaultIfBlank(settings.getString(getMulticriteriaConfigurationKey()), "");
     for (String id : StringUtils.split(patternConf, ',')) {
       String propPrefix = getMulticriteriaConfigurationKey() + "." + id + ".";
@@ -74,7 +85,9 @@ public abstract class AbstractPatternInitializer {
       IssuePattern pattern = new IssuePattern(firstNonNull(resourceKeyPattern, "*"), firstNonNull(ruleKeyPattern, "*"));
       PatternDecoder.decodeRangeOfLines(pattern, firstNonNull(lineRange, "*"));
       multicriteriaPatterns.add(pattern);
+      resourcePatterns.add(pattern.getResourcePattern().toString());
     }
+    multicriteriaResourcePatterns = WildcardPatternSet.create(resourcePatterns, "/");
   }
 
   protected abstract String getMulticriteriaConfigurationKey();
@@ -26,6 +26,7 @@ import org.apache.commons.lang.StringUtils;
 import org.sonar.api.config.Settings;
 import org.sonar.core.config.IssueExclusionProperties;
 
+import java.util.BitSet;
 import java.util.List;
 
 import static com.google.common.base.Strings.nullToEmpty;
@@ -53,10 +54,12 @@ public class IssueExclusionPatternInitializer extends AbstractPatternInitializer
 
   @Override
   public void initializePatternsForPath(String relativePath, String componentKey) {
-    for (IssuePattern pattern : getMulticriteriaPatterns()) {
-      if (pattern.matchResource(relativePath)) {
-        getPatternMatcher().addPatternForComponent(componentKey, pattern);
-      }
+    if (relativePath == null || !hasMulticriteriaPatterns()) {
+      return;
+    }
+    BitSet matchingPatterns = getMulticriteriaResourcePatterns().match(relativePath);
+    for (int i = matchingPatterns.nextSetBit(0); i >= 0; i = matchingPatterns.nextSetBit(i + 1)) {
+      getPatternMatcher().addPatternForComponent(componentKey, getMulticriteriaPatterns().get(i));
     }
   }
 
@@ -22,138 +22,248 @@ package org.sonar.batch.issue.ignore.scanner;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import org.apache.commons.io.FileUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import javax.annotation.CheckForNull;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.BatchSide;
+import org.sonar.api.batch.fs.internal.FileMetadata;
+import org.sonar.api.batch.fs.internal.FileMetadata.CharHandler;
 import org.sonar.batch.issue.ignore.pattern.IssueExclusionPatternInitializer;
 import org.sonar.batch.issue.ignore.pattern.IssuePattern;
 import org.sonar.batch.issue.ignore.pattern.LineRange;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.List;
-import java.util.Set;
-
+/**
+ * Applies the "allfile" and "block" regexps to the lines of files. Files are scanned either while their
+ * metadata is computed (see {@link #createCharHandler(String)}), so that they are read only once,
+ * or when {@link #scan(String, File, Charset)} is called.
+ */
 @BatchSide
 public class IssueExclusionsRegexpScanner {
 
   private static final Logger LOG = LoggerFactory.getLogger(IssueExclusionsRegexpScanner.class);
 
-  private IssueExclusionPatternInitializer exclusionPatternInitializer;
-  private List<java.util.regex.Pattern> allFilePatterns;
-  private List<DoubleRegexpMatcher> blockMatchers;
+  private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]|\\\\k<");
+
+  private final IssueExclusionPatternInitializer exclusionPatternInitializer;
+  private final List<Pattern> allFilePatterns;
+  // all the allfile patterns in a single regexp, null if none
+  private final Pattern allFilePattern;
+  private final List<DoubleRegexpMatcher> blockMatchers;
 
-  // fields to be reset at every new scan
-  private DoubleRegexpMatcher currentMatcher;
-  private int fileLength;
-  private List<LineExclusion> lineExclusions;
-  private LineExclusion currentLineExclusion;
+  // results of files already scanned during indexing, by component key
+  private final Map<String, RegexpHandler> scannedFiles = new ConcurrentHashMap<>();
 
   public IssueExclusionsRegexpScanner(IssueExclusionPatternInitializer patternsInitializer) {
     this.exclusionPatternInitializer = patternsInitializer;
 
-    lineExclusions = Lists.newArrayList();
     allFilePatterns = Lists.newArrayList();
     blockMatchers = Lists.newArrayList();
 
     for (IssuePattern pattern : patternsInitializer.getAllFilePatterns()) {
-      allFilePatterns.add(java.util.regex.Pattern.compile(pattern.getAllFileRegexp()));
+      allFilePatterns.add(Pattern.compile(pattern.getAllFileRegexp()));
     }
     for (IssuePattern pattern : patternsInitializer.getBlockPatterns()) {
       blockMatchers.add(new DoubleRegexpMatcher(
-        java.util.regex.Pattern.compile(pattern.getBeginBlockRegexp()),
-        java.util.regex.Pattern.compile(pattern.getEndBlockRegexp())));
+        Pattern.compile(pattern.getBeginBlockRegexp()),
+        Pattern.compile(pattern.getEndBlockRegexp())));
     }
+    allFilePattern = combine(allFilePatterns);
+  }
 
-    init();
+  /**
+   * Alternation of all the patterns, so that each line is evaluated once. Patterns using back references
+   * can't be combined, as groups are renumbered in the alternation.
+   */
+  @CheckForNull
+  private static Pattern combine(List<Pattern> patterns) {
+    if (patterns.isEmpty()) {
+      return null;
+    }
+    if (patterns.size() == 1) {
+      return patterns.get(0);
+    }
+    StringBuilder sb = new StringBuilder();
+    for (Pattern pattern : patterns) {
+      if (BACK_REFERENCE.matcher(pattern.pattern()).find()) {
+        return null;
+      }
+      if (sb.length() > 0) {
+        sb.append('|');
+      }
+      sb.append("(?:").append(pattern.pattern()).append(')');
+    }
+    return Pattern.compile(sb.toString());
   }
 
-  private void init() {
-    currentMatcher = null;
-    fileLength = 0;
-    lineExclusions.clear();
-    currentLineExclusion = null;
+  /**
+   * Handler to be given to {@link FileMetadata} when reading the file. Its result is used by the next call to
+   * {@link #scan(String, File, Charset)} on the same component instead of reading the file again.
+   *
+   * @return null if there are no regexps to apply
+   */
+  @CheckForNull
+  public CharHandler createCharHandler(final String componentKey) {
+    if (allFilePatterns.isEmpty() && blockMatchers.isEmpty()) {
+      return null;
+    }
+    return new RegexpHandler() {
+      @Override
+      protected void eof() {
+        super.eof();
+        scannedFiles.put(componentKey, this);
+      }
+    };
   }
 
   public void scan(String resource, File file, Charset sourcesEncoding) throws IOException {
     LOG.debug("Scanning {}", resource);
-    init();
 
-    List<String> lines = FileUtils.readLines(file, sourcesEncoding.name());
-    int lineIndex = 0;
-    for (String line : lines) {
+    RegexpHandler handler = scannedFiles.remove(resource);
+    if (handler == null) {
+      handler = new RegexpHandler();
+      FileMetadata.readFile(file, sourcesEncoding, handler);
+    }
+
+    if (handler.excludedByPattern != null) {
+      exclusionPatternInitializer.getPatternMatcher().addPatternToExcludeResource(resource);
+      LOG.debug("- Exclusion pattern '{}': every violation in this file will be ignored.", handler.excludedByPattern);
+    } else if (!handler.lineExclusions.isEmpty()) {
+      Set<LineRange> lineRanges = handler.lineRanges();
+      LOG.debug("- Line exclusions found: {}", lineRanges);
+      exclusionPatternInitializer.getPatternMatcher().addPatternToExcludeLines(resource, lineRanges);
+    }
+  }
+
+  private class RegexpHandler extends CharHandler {
+    private StringBuilder line = new StringBuilder();
+    private int lineIndex = 0;
+    private int fileLength;
+    private Pattern excludedByPattern;
+    private DoubleRegexpMatcher currentMatcher;
+    private final List<LineExclusion> lineExclusions = Lists.newArrayList();
+    private LineExclusion currentLineExclusion;
+
+    @Override
+    protected void handleIgnoreEoL(char c) {
+      if (excludedByPattern == null) {
+        line.append(c);
+      }
+    }
+
+    @Override
+    protected void newLine() {
       lineIndex++;
-      if (line.trim().length() == 0) {
-        continue;
+      if (excludedByPattern == null) {
+        checkLine();
+        line.setLength(0);
+      }
+    }
+
+    @Override
+    protected void eof() {
+      if (line.length() > 0) {
+        // last line without end of line
+        newLine();
+      }
+      // release buffer, result may be kept until scan() is called
+      line = null;
+      if (excludedByPattern != null) {
+        return;
+      }
+      if (currentMatcher != null && !currentMatcher.hasSecondPattern()) {
+        // this will happen when there is a start block regexp but no end block regexp
+        endExclusion(lineIndex + 1);
+      }
+      fileLength = lineIndex;
+    }
+
+    private void checkLine() {
+      if (isBlank(line)) {
+        return;
       }
 
       // first check the single regexp patterns that can be used to totally exclude a file
-      for (java.util.regex.Pattern pattern : allFilePatterns) {
-        if (pattern.matcher(line).find()) {
-          exclusionPatternInitializer.getPatternMatcher().addPatternToExcludeResource(resource);
-          // nothing more to do on this file
-          LOG.debug("- Exclusion pattern '{}': every violation in this file will be ignored.", pattern);
-          return;
-        }
+      Pattern matchingPattern = matchingAllFilePattern(line);
+      if (matchingPattern != null) {
+        // nothing more to do on this file
+        excludedByPattern = matchingPattern;
+        return;
       }
 
       // then check the double regexps if we're still here
       checkDoubleRegexps(line, lineIndex);
     }
 
-    if (currentMatcher != null && !currentMatcher.hasSecondPattern()) {
-      // this will happen when there is a start block regexp but no end block regexp
-      endExclusion(lineIndex + 1);
+    private void checkDoubleRegexps(CharSequence line, int lineIndex) {
+      if (currentMatcher == null) {
+        for (DoubleRegexpMatcher matcher : blockMatchers) {
+          if (matcher.matchesFirstPattern(line)) {
+            startExclusion(lineIndex);
+            currentMatcher = matcher;
+            break;
+          }
+        }
+      } else {
+        if (currentMatcher.matchesSecondPattern(line)) {
+          endExclusion(lineIndex);
+          currentMatcher = null;
+        }
+      }
     }
 
-    // now create the new line-based pattern for this file if there are exclusions
-    fileLength = lineIndex;
-    if (!lineExclusions.isEmpty()) {
-      Set<LineRange> lineRanges = convertLineExclusionsToLineRanges();
-      LOG.debug("- Line exclusions found: {}", lineRanges);
-      exclusionPatternInitializer.getPatternMatcher().addPatternToExcludeLines(resource, lineRanges);
+    private void startExclusion(int lineIndex) {
+      currentLineExclusion = new LineExclusion(lineIndex);
+      lineExclusions.add(currentLineExclusion);
     }
-  }
 
-  private Set<LineRange> convertLineExclusionsToLineRanges() {
-    Set<LineRange> lineRanges = Sets.newHashSet();
-    for (LineExclusion lineExclusion : lineExclusions) {
-      lineRanges.add(lineExclusion.toLineRange());
+    private void endExclusion(int lineIndex) {
+      currentLineExclusion.setEnd(lineIndex);
+      currentLineExclusion = null;
     }
-    return lineRanges;
-  }
 
-  private void checkDoubleRegexps(String line, int lineIndex) {
-    if (currentMatcher == null) {
-      for (DoubleRegexpMatcher matcher : blockMatchers) {
-        if (matcher.matchesFirstPattern(line)) {
-          startExclusion(lineIndex);
-          currentMatcher = matcher;
-          break;
-        }
-      }
-    } else {
-      if (currentMatcher.matchesSecondPattern(line)) {
-        endExclusion(lineIndex);
-        currentMatcher = null;
+    private Set<LineRange> lineRanges() {
+      Set<LineRange> lineRanges = Sets.newHashSet();
+      for (LineExclusion lineExclusion : lineExclusions) {
+        lineRanges.add(lineExclusion.toLineRange(fileLength));
       }
+      return lineRanges;
     }
   }
 
-  private void startExclusion(int lineIndex) {
-    currentLineExclusion = new LineExclusion(lineIndex);
-    lineExclusions.add(currentLineExclusion);
+  @CheckForNull
+  private Pattern matchingAllFilePattern(CharSequence line) {
+    if (allFilePattern != null && !allFilePattern.matcher(line).find()) {
+      return null;
+    }
+    // find the pattern that matched, or evaluate them one by one if they can't be combined
+    for (Pattern pattern : allFilePatterns) {
+      if (pattern.matcher(line).find()) {
+        return pattern;
+      }
+    }
+    return null;
   }
 
-  private void endExclusion(int lineIndex) {
-    currentLineExclusion.setEnd(lineIndex);
-    currentLineExclusion = null;
+  private static boolean isBlank(CharSequence line) {
+    // same as String#trim()
+    for (int i = 0; i < line.length(); i++) {
+      if (line.charAt(i) > ' ') {
+        return false;
+      }
+    }
+    return true;
   }
 
-  private class LineExclusion {
+  private static class LineExclusion {
 
     private int start;
     private int end;
@@ -167,7 +277,7 @@ public class IssueExclusionsRegexpScanner {
       this.end = end;
     }
 
-    public LineRange toLineRange() {
+    public LineRange toLineRange(int fileLength) {
       return new LineRange(start, end == -1 ? fileLength : end);
     }
 
@@ -175,19 +285,19 @@ public class IssueExclusionsRegexpScanner {
 
   private static class DoubleRegexpMatcher {
 
-    private java.util.regex.Pattern firstPattern;
-    private java.util.regex.Pattern secondPattern;
+    private Pattern firstPattern;
+    private Pattern secondPattern;
 
-    DoubleRegexpMatcher(java.util.regex.Pattern firstPattern, java.util.regex.Pattern secondPattern) {
+    DoubleRegexpMatcher(Pattern firstPattern, Pattern secondPattern) {
       this.firstPattern = firstPattern;
       this.secondPattern = secondPattern;
     }
 
-    boolean matchesFirstPattern(String line) {
+    boolean matchesFirstPattern(CharSequence line) {
       return firstPattern.matcher(line).find();
     }
 
-    boolean matchesSecondPattern(String line) {
+    boolean matchesSecondPattern(CharSequence line) {
       return hasSecondPattern() && secondPattern.matcher(line).find();
     }
 
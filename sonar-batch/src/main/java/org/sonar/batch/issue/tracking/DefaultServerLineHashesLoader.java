@@ -19,36 +19,97 @@
  */
 package org.sonar.batch.issue.tracking;
 
-import org.sonar.batch.cache.WSLoader.LoadStrategy;
-
-import org.sonar.batch.cache.WSLoaderResult;
-import org.sonar.batch.cache.WSLoader;
-import org.apache.commons.lang.mutable.MutableBoolean;
-
-import javax.annotation.Nullable;
-
-import org.sonar.batch.util.BatchUtils;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterators;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.mutable.MutableBoolean;
+import org.sonar.api.batch.bootstrap.ProjectKey;
+import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.utils.log.Profiler;
+import org.sonar.batch.cache.WSLoader;
+import org.sonar.batch.cache.WSLoader.LoadStrategy;
+import org.sonar.batch.cache.WSLoaderResult;
+import org.sonar.batch.protocol.input.BatchInput.FileLineHashes;
+import org.sonar.batch.util.BatchUtils;
 
+/**
+ * Line hashes of all the files of the project are downloaded in a single request the first time they are needed.
+ * Files missing from this response, or servers that do not support it, fall back to one request per file.
+ */
 public class DefaultServerLineHashesLoader implements ServerLineHashesLoader {
 
+  private static final Logger LOG = Loggers.get(DefaultServerLineHashesLoader.class);
+
   private final WSLoader wsLoader;
+  private final ProjectKey projectKey;
+  private Map<String, String> projectLineHashes;
+  private boolean projectLineHashesFromCache;
 
-  public DefaultServerLineHashesLoader(WSLoader wsLoader) {
+  public DefaultServerLineHashesLoader(WSLoader wsLoader, ProjectKey projectKey) {
     this.wsLoader = wsLoader;
+    this.projectKey = projectKey;
   }
 
   @Override
   public String[] getLineHashes(String fileKey, @Nullable MutableBoolean fromCache) {
-    String hashesFromWs = loadHashesFromWs(fileKey, fromCache);
-    return Iterators.toArray(Splitter.on('\n').split(hashesFromWs).iterator(), String.class);
+    String hashes = loadedHashes(fileKey, fromCache);
+    if (hashes == null) {
+      hashes = loadHashesFromWs(fileKey, fromCache);
+    }
+    return Iterators.toArray(Splitter.on('\n').split(hashes).iterator(), String.class);
+  }
+
+  @CheckForNull
+  private String loadedHashes(String fileKey, @Nullable MutableBoolean fromCache) {
+    Map<String, String> hashesByFile = projectLineHashes();
+    // hashes of a file are requested only once, so they can be released
+    String hashes = hashesByFile.remove(fileKey);
+    if (hashes != null && fromCache != null) {
+      fromCache.setValue(projectLineHashesFromCache);
+    }
+    return hashes;
+  }
+
+  private synchronized Map<String, String> projectLineHashes() {
+    if (projectLineHashes == null) {
+      projectLineHashes = new ConcurrentHashMap<>();
+      Profiler profiler = Profiler.createIfDebug(LOG).startDebug("Load line hashes of project");
+      try {
+        WSLoaderResult<InputStream> result = wsLoader.loadStream("/batch/line_hashes?key=" + BatchUtils.encodeForUrl(projectKey.get()));
+        projectLineHashesFromCache = result.isFromCache();
+        parse(result.get(), projectLineHashes);
+      } catch (RuntimeException e) {
+        LOG.debug("Unable to load line hashes of project, they will be loaded file by file", e);
+        projectLineHashes.clear();
+      }
+      profiler.stopDebug();
+    }
+    return projectLineHashes;
+  }
+
+  private static void parse(InputStream is, Map<String, String> hashesByFile) {
+    try {
+      FileLineHashes fileHashes = FileLineHashes.parseDelimitedFrom(is);
+      while (fileHashes != null) {
+        hashesByFile.put(fileHashes.getFileKey(), fileHashes.getLineHashes());
+        fileHashes = FileLineHashes.parseDelimitedFrom(is);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to parse line hashes", e);
+    } finally {
+      IOUtils.closeQuietly(is);
+    }
   }
 
   private String loadHashesFromWs(String fileKey, @Nullable MutableBoolean fromCache) {
-    Profiler profiler = Profiler.createIfDebug(Loggers.get(getClass()))
+    Profiler profiler = Profiler.createIfDebug(LOG)
       .addContext("file", fileKey)
       .startDebug("Load line hashes");
     WSLoaderResult<String> result = wsLoader.loadString("/api/sources/hash?key=" + BatchUtils.encodeForUrl(fileKey), LoadStrategy.CACHE_FIRST);
@@ -19,6 +19,7 @@
  */
 package org.sonar.batch.issue.tracking;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.sonar.batch.util.ProgressReport;
 import org.sonar.batch.issue.IssueTransformer;
 import org.sonar.api.batch.BatchSide;
@@ -33,14 +34,23 @@ import org.sonar.core.util.CloseableIterator;
 
 import javax.annotation.Nullable;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 @BatchSide
 public class IssueTransition {
+  private static final int PENDING_COMPONENTS_PER_THREAD = 4;
+
   private final IssueCache issueCache;
   private final BatchComponentCache componentCache;
   private final ReportPublisher reportPublisher;
@@ -66,7 +76,7 @@ public class IssueTransition {
       localIssueTracking.init();
     }
 
-    BatchReportReader reader = new BatchReportReader(reportPublisher.getReportDir());
+    final BatchReportReader reader = new BatchReportReader(reportPublisher.getReportDir());
     int nbComponents = componentCache.all().size();
 
     if (nbComponents == 0) {
@@ -77,18 +87,63 @@ public class IssueTransition {
     progressReport.start("Performing issue tracking");
     int count = 0;
 
+    // components are tracked concurrently, but results are stored in the order of components, so that
+    // the content of issue cache does not depend on scheduling. The number of pending results is bounded.
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    int maxPending = threads * PENDING_COMPONENTS_PER_THREAD;
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("IssueTracking-%d").setDaemon(true).build());
+    Deque<Future<List<TrackedIssue>>> pending = new ArrayDeque<>();
     try {
-      for (BatchComponent component : componentCache.all()) {
-        trackIssues(reader, component);
+      for (final BatchComponent component : componentCache.all()) {
+        pending.add(executorService.submit(new Callable<List<TrackedIssue>>() {
+          @Override
+          public List<TrackedIssue> call() {
+            return track(reader, component);
+          }
+        }));
+        if (pending.size() >= maxPending) {
+          save(pending.poll());
+          count++;
+          progressReport.message(count + "/" + nbComponents + " components tracked");
+        }
+      }
+      while (!pending.isEmpty()) {
+        save(pending.poll());
         count++;
         progressReport.message(count + "/" + nbComponents + " components tracked");
       }
     } finally {
+      executorService.shutdownNow();
       progressReport.stop(count + "/" + nbComponents + " components tracked");
     }
   }
 
+  private void save(Future<List<TrackedIssue>> trackedIssues) {
+    try {
+      save(trackedIssues.get());
+    } catch (ExecutionException e) {
+      // Unwrap ExecutionException
+      throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void save(List<TrackedIssue> trackedIssues) {
+    for (TrackedIssue issue : trackedIssues) {
+      issueCache.put(issue);
+    }
+  }
+
   public void trackIssues(BatchReportReader reader, BatchComponent component) {
+    save(track(reader, component));
+  }
+
+  /**
+   * Can be called concurrently for different components
+   */
+  private List<TrackedIssue> track(BatchReportReader reader, BatchComponent component) {
     // raw issues = all the issues created by rule engines during this module scan and not excluded by filters
     List<BatchReport.Issue> rawIssues = new LinkedList<>();
     try (CloseableIterator<BatchReport.Issue> it = reader.readComponentIssues(component.batchId())) {
@@ -99,16 +154,10 @@ public class IssueTransition {
       throw new IllegalStateException("Can't read issues for " + component.key(), e);
     }
 
-    List<TrackedIssue> trackedIssues;
     if (localIssueTracking != null) {
-      trackedIssues = localIssueTracking.trackIssues(component, rawIssues, analysisDate);
-    } else {
-      trackedIssues = doTransition(rawIssues, component);
-    }
-
-    for (TrackedIssue issue : trackedIssues) {
-      issueCache.put(issue);
+      return localIssueTracking.trackIssues(component, rawIssues, analysisDate);
     }
+    return doTransition(rawIssues, component);
   }
 
   private static List<TrackedIssue> doTransition(List<BatchReport.Issue> rawIssues, BatchComponent component) {
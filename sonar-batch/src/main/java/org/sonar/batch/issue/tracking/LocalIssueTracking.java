@@ -41,25 +41,25 @@ import javax.annotation.Nullable;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.rule.ActiveRule;
-import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.resources.ResourceUtils;
 import org.sonar.batch.index.BatchComponent;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.repository.ProjectRepositories;
+import org.sonar.batch.rule.LanguageScopedActiveRules;
 
 @BatchSide
 public class LocalIssueTracking {
   private final Tracker<TrackedIssue, ServerIssueFromWs> tracker;
   private final ServerLineHashesLoader lastLineHashes;
-  private final ActiveRules activeRules;
+  private final LanguageScopedActiveRules activeRules;
   private final ServerIssueRepository serverIssueRepository;
   private final DefaultAnalysisMode mode;
 
   private boolean hasServerAnalysis;
 
   public LocalIssueTracking(Tracker<TrackedIssue, ServerIssueFromWs> tracker, ServerLineHashesLoader lastLineHashes,
-    ActiveRules activeRules, ServerIssueRepository serverIssueRepository, ProjectRepositories projectRepositories, DefaultAnalysisMode mode) {
+    LanguageScopedActiveRules activeRules, ServerIssueRepository serverIssueRepository, ProjectRepositories projectRepositories, DefaultAnalysisMode mode) {
     this.tracker = tracker;
     this.lastLineHashes = lastLineHashes;
     this.serverIssueRepository = serverIssueRepository;
@@ -74,6 +74,9 @@ public class LocalIssueTracking {
     }
   }
 
+  /**
+   * Called concurrently for different components, once {@link #init()} is done
+   */
   public List<TrackedIssue> trackIssues(BatchComponent component, Collection<BatchReport.Issue> reportIssues, Date analysisDate) {
     List<TrackedIssue> trackedIssues = new LinkedList<>();
     if (hasServerAnalysis) {
@@ -146,7 +149,7 @@ public class LocalIssueTracking {
       org.sonar.batch.protocol.input.BatchInput.ServerIssue unmatchedPreviousIssue = serverIssue.getDto();
       TrackedIssue unmatched = IssueTransformer.toTrackedIssue(unmatchedPreviousIssue);
 
-      ActiveRule activeRule = activeRules.find(unmatched.getRuleKey());
+      ActiveRule activeRule = activeRules.ofAllLanguages().find(unmatched.getRuleKey());
       unmatched.setNew(false);
 
       if (activeRule == null) {
@@ -233,7 +236,7 @@ public class LocalIssueTracking {
   }
 
   private void updateUnmatchedIssue(TrackedIssue issue, boolean forceEndOfLife) {
-    ActiveRule activeRule = activeRules.find(issue.getRuleKey());
+    ActiveRule activeRule = activeRules.ofAllLanguages().find(issue.getRuleKey());
     issue.setNew(false);
 
     boolean manualIssue = issue.getRuleKey().isManual();
@@ -20,6 +20,10 @@
 package org.sonar.batch.issue.tracking;
 
 import com.google.common.base.Function;
+import com.google.protobuf.ByteString;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import javax.annotation.Nullable;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.InstantiationStrategy;
@@ -35,12 +39,17 @@ import org.sonar.batch.repository.ServerIssuesLoader;
 import org.sonar.batch.scan.ImmutableProjectReactor;
 import org.sonar.core.component.ComponentKeys;
 
+/**
+ * Issues of the last server analysis, loaded once and then read concurrently by issue tracking. They are stored
+ * on disk, as there can be millions of them, in a {@link Cache} which supports concurrent reads.
+ */
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 @BatchSide
 public class ServerIssueRepository {
 
   private static final Logger LOG = Loggers.get(ServerIssueRepository.class);
   private static final String LOG_MSG = "Load server issues";
+  private static final int MISSING_COMPONENT_ID = 0;
 
   private final Caches caches;
   private Cache<ServerIssue> issuesCache;
@@ -63,30 +72,54 @@ public class ServerIssueRepository {
     profiler.stopInfo(fromCache);
   }
 
+  /**
+   * Issues of the component, sorted by key
+   */
   public Iterable<ServerIssue> byComponent(BatchComponent component) {
-    return issuesCache.values(component.batchId());
+    return values(component.batchId());
+  }
+
+  private Iterable<ServerIssue> values(int batchId) {
+    if (issuesCache == null) {
+      return Collections.emptyList();
+    }
+    return issuesCache.values(batchId);
   }
 
   private class SaveIssueConsumer implements Function<ServerIssue, Void> {
+    // components are resolved once, from the raw bytes of module keys and paths, so that these fields
+    // are not decoded for each issue
+    private final Map<ByteString, Map<ByteString, Integer>> batchIdsByPathByModule = new HashMap<>();
 
     @Override
     public Void apply(@Nullable ServerIssue issue) {
       if (issue == null) {
         return null;
       }
-      String componentKey = ComponentKeys.createEffectiveKey(issue.getModuleKey(), issue.hasPath() ? issue.getPath() : null);
-      BatchComponent r = resourceCache.get(componentKey);
-      if (r == null) {
-        // Deleted resource
-        issuesCache.put(0, issue.getKey(), issue);
-      } else {
-        issuesCache.put(r.batchId(), issue.getKey(), issue);
-      }
+      issuesCache.put(batchId(issue), issue.getKey(), issue);
       return null;
     }
+
+    private int batchId(ServerIssue issue) {
+      Map<ByteString, Integer> batchIdsByPath = batchIdsByPathByModule.get(issue.getModuleKeyBytes());
+      if (batchIdsByPath == null) {
+        batchIdsByPath = new HashMap<>();
+        batchIdsByPathByModule.put(issue.getModuleKeyBytes(), batchIdsByPath);
+      }
+      ByteString path = issue.hasPath() ? issue.getPathBytes() : ByteString.EMPTY;
+      Integer batchId = batchIdsByPath.get(path);
+      if (batchId == null) {
+        String componentKey = ComponentKeys.createEffectiveKey(issue.getModuleKey(), issue.hasPath() ? issue.getPath() : null);
+        BatchComponent r = resourceCache.get(componentKey);
+        // Deleted resource if not found
+        batchId = r == null ? MISSING_COMPONENT_ID : r.batchId();
+        batchIdsByPath.put(path, batchId);
+      }
+      return batchId;
+    }
   }
-  
+
   public Iterable<ServerIssue> issuesOnMissingComponents() {
-    return issuesCache.values(0);
+    return values(MISSING_COMPONENT_ID);
   }
 }
@@ -80,6 +80,15 @@ public final class PhaseExecutor {
    * Executed on each module
    */
   public void execute(Project module) {
+    index(module);
+    analyse(module);
+  }
+
+  /**
+   * First phases of the scan of a module, up to the indexing of its filesystem. Components get their ref when
+   * indexed, so when modules are scanned concurrently this part is still executed on one module after another.
+   */
+  public void index(Project module) {
     pi.execute(module);
 
     eventBus.fireEvent(new ProjectAnalysisEvent(module, true));
@@ -88,7 +97,12 @@ public final class PhaseExecutor {
 
     // Index and lock the filesystem
     indexFs();
+  }
 
+  /**
+   * Phases following {@link #index(Project)}
+   */
+  public void analyse(Project module) {
     // Log detected languages and their profiles after FS is indexed and languages detected
     profileVerifier.execute();
 
@@ -19,9 +19,12 @@
  */
 package org.sonar.batch.phases;
 
-
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import org.sonar.batch.util.BatchUtils;
 import org.apache.commons.lang.StringUtils;
+import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.events.SensorExecutionHandler;
 import org.sonar.api.batch.events.SensorsPhaseHandler;
 import org.sonar.api.utils.log.Logger;
@@ -32,7 +35,8 @@ public class PhasesTimeProfiler implements SensorExecutionHandler, SensorsPhaseH
 
   private static final Logger LOG = Loggers.get(PhasesTimeProfiler.class);
 
-  private Profiler profiler = Profiler.create(LOG);
+  // by sensor, as sensors of different modules, or thread-safe sensors of a module, can be executed concurrently
+  private final Map<Sensor, Profiler> profilers = Collections.synchronizedMap(new IdentityHashMap<Sensor, Profiler>());
 
   @Override
   public void onSensorsPhase(SensorsPhaseEvent event) {
@@ -44,9 +48,14 @@ public class PhasesTimeProfiler implements SensorExecutionHandler, SensorsPhaseH
   @Override
   public void onSensorExecution(SensorExecutionEvent event) {
     if (event.isStart()) {
+      Profiler profiler = Profiler.create(LOG);
+      profilers.put(event.getSensor(), profiler);
       profiler.startInfo("Sensor " + BatchUtils.describe(event.getSensor()));
     } else {
-      profiler.stopInfo();
+      Profiler profiler = profilers.remove(event.getSensor());
+      if (profiler != null) {
+        profiler.stopInfo();
+      }
     }
   }
 
@@ -20,34 +20,57 @@
 package org.sonar.batch.phases;
 
 import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.sensor.ThreadSafeSensor;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 import org.sonar.batch.bootstrap.BatchExtensionDictionnary;
 import org.sonar.batch.events.EventBus;
-
-import java.util.Collection;
+import org.sonar.batch.sensor.SensorWrapper;
 
 @BatchSide
 public class SensorsExecutor {
 
+  /**
+   * Number of threads used to execute the {@link ThreadSafeSensor}s. Sensors are executed
+   * one after another when lower than 2.
+   */
+  public static final String THREADS_PROPERTY = "sonar.sensors.threads";
+
   private EventBus eventBus;
   private Project module;
   private BatchExtensionDictionnary selector;
+  private Settings settings;
 
-  public SensorsExecutor(BatchExtensionDictionnary selector, Project project, EventBus eventBus) {
+  public SensorsExecutor(BatchExtensionDictionnary selector, Project project, EventBus eventBus, Settings settings) {
     this.selector = selector;
     this.eventBus = eventBus;
     this.module = project;
+    this.settings = settings;
   }
 
   public void execute(SensorContext context) {
     Collection<Sensor> sensors = selector.select(Sensor.class, module, true, null);
     eventBus.fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), true));
 
-    for (Sensor sensor : sensors) {
-      executeSensor(context, sensor);
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads > 1) {
+      executeConcurrently(context, sensors, threads);
+    } else {
+      for (Sensor sensor : sensors) {
+        executeSensor(context, sensor);
+      }
     }
 
     eventBus.fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), false));
@@ -58,4 +81,121 @@ public class SensorsExecutor {
     sensor.analyse(module, context);
     eventBus.fireEvent(new SensorExecutionEvent(sensor, false));
   }
+
+  /**
+   * Consecutive thread-safe sensors are executed concurrently, as soon as the sensors they depend on are done.
+   * Other sensors, including all the deprecated ones, are executed alone once all the previous sensors are done.
+   */
+  private void executeConcurrently(SensorContext context, Collection<Sensor> sensors, int threads) {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Sensor> threadSafeSensors = new ArrayList<>();
+      for (Sensor sensor : sensors) {
+        if (isThreadSafe(sensor)) {
+          threadSafeSensors.add(sensor);
+        } else {
+          submitAndWait(executor, context, threadSafeSensors);
+          threadSafeSensors.clear();
+          executeSensor(context, sensor);
+        }
+      }
+      submitAndWait(executor, context, threadSafeSensors);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void submitAndWait(ExecutorService executor, SensorContext context, List<Sensor> threadSafeSensors) {
+    Map<Sensor, Future<?>> futures = new LinkedHashMap<>();
+    // dependencies are always submitted first, so that the tasks waiting for them can't starve the pool
+    for (Sensor sensor : sortByDependencies(threadSafeSensors)) {
+      List<Future<?>> dependencies = new ArrayList<>();
+      for (Map.Entry<Sensor, Future<?>> submitted : futures.entrySet()) {
+        if (dependsOn(sensor, submitted.getKey())) {
+          dependencies.add(submitted.getValue());
+        }
+      }
+      futures.put(sensor, executor.submit(new SensorTask(context, sensor, dependencies)));
+    }
+    for (Future<?> future : futures.values()) {
+      waitFor(future);
+    }
+  }
+
+  /**
+   * Stable sort, so that the order of the dictionnary is kept when there are no declared dependencies. Cycles are ignored.
+   */
+  private static List<Sensor> sortByDependencies(List<Sensor> sensors) {
+    List<Sensor> remaining = new ArrayList<>(sensors);
+    List<Sensor> sorted = new ArrayList<>(sensors.size());
+    while (!remaining.isEmpty()) {
+      Sensor next = remaining.get(0);
+      for (Sensor candidate : remaining) {
+        if (!dependsOnAny(candidate, remaining)) {
+          next = candidate;
+          break;
+        }
+      }
+      remaining.remove(next);
+      sorted.add(next);
+    }
+    return sorted;
+  }
+
+  private static boolean dependsOnAny(Sensor sensor, List<Sensor> others) {
+    for (Sensor other : others) {
+      if (other != sensor && dependsOn(sensor, other)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean dependsOn(Sensor sensor, Sensor other) {
+    Object otherSensor = other instanceof SensorWrapper ? ((SensorWrapper) other).wrappedSensor() : other;
+    for (Class<?> dependency : ((ThreadSafeSensor) ((SensorWrapper) sensor).wrappedSensor()).dependsOnSensors()) {
+      if (dependency.isInstance(otherSensor)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isThreadSafe(Sensor sensor) {
+    return sensor instanceof SensorWrapper && ((SensorWrapper) sensor).wrappedSensor() instanceof ThreadSafeSensor;
+  }
+
+  private static void waitFor(Future<?> future) {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while executing sensors", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Fail to execute sensor", e.getCause());
+    }
+  }
+
+  private class SensorTask implements Runnable {
+    private final SensorContext context;
+    private final Sensor sensor;
+    private final List<Future<?>> dependencies;
+
+    SensorTask(SensorContext context, Sensor sensor, List<Future<?>> dependencies) {
+      this.context = context;
+      this.sensor = sensor;
+      this.dependencies = dependencies;
+    }
+
+    @Override
+    public void run() {
+      for (Future<?> dependency : dependencies) {
+        waitFor(dependency);
+      }
+      executeSensor(context, sensor);
+    }
+  }
 }
@@ -29,18 +29,28 @@ import java.util.Map;
 import javax.annotation.Nullable;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.TimeUtils;
+import org.sonar.api.utils.text.JsonWriter;
 
 public abstract class AbstractTimeProfiling {
 
   private final long startTime;
+  private final long startCpuTime;
+  private final long startAllocatedBytes;
+  private final long startThreadId;
 
   private long totalTime;
+  private long cpuTime;
+  private long allocatedBytes;
+  private boolean resourceUsageMeasured = true;
 
   private System2 system;
 
   public AbstractTimeProfiling(System2 system) {
     this.system = system;
     this.startTime = system.now();
+    this.startCpuTime = ThreadUsage.cpuTime();
+    this.startAllocatedBytes = ThreadUsage.allocatedBytes();
+    this.startThreadId = Thread.currentThread().getId();
   }
 
   protected System2 system() {
@@ -51,8 +61,19 @@ public abstract class AbstractTimeProfiling {
     return startTime;
   }
 
+  /**
+   * CPU time and allocated bytes are the ones of the thread that both created and stopped this profiling.
+   * They are not measured when this profiling is stopped by another thread.
+   */
   public void stop() {
     this.totalTime = system.now() - startTime;
+    if (Thread.currentThread().getId() == startThreadId) {
+      setResourceUsage(ThreadUsage.cpuTime() - startCpuTime, ThreadUsage.allocatedBytes() - startAllocatedBytes);
+    } else {
+      this.cpuTime = 0L;
+      this.allocatedBytes = 0L;
+      this.resourceUsageMeasured = false;
+    }
   }
 
   public long totalTime() {
@@ -67,8 +88,66 @@ public abstract class AbstractTimeProfiling {
     this.totalTime = totalTime;
   }
 
+  public void setResourceUsage(long cpuTime, long allocatedBytes) {
+    this.cpuTime = cpuTime;
+    this.allocatedBytes = allocatedBytes;
+    this.resourceUsageMeasured = true;
+  }
+
+  /**
+   * Replaces the resource usage by the sum of the ones of the given parts, which may have been executed by
+   * other threads than this profiling. It is measured only if it is measured for all the parts.
+   */
+  protected void sumResourceUsage(Iterable<? extends AbstractTimeProfiling> parts) {
+    long cpuTimeSum = 0L;
+    long allocatedBytesSum = 0L;
+    boolean measured = true;
+    for (AbstractTimeProfiling part : parts) {
+      cpuTimeSum += part.cpuTime();
+      allocatedBytesSum += part.allocatedBytes();
+      measured &= part.isResourceUsageMeasured();
+    }
+    this.cpuTime = cpuTimeSum;
+    this.allocatedBytes = allocatedBytesSum;
+    this.resourceUsageMeasured = measured;
+  }
+
+  /**
+   * CPU time in nanoseconds
+   */
+  public long cpuTime() {
+    return cpuTime;
+  }
+
+  public long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * False if CPU time and allocated bytes are unknown, for example because the profiling was started and stopped
+   * by different threads
+   */
+  public boolean isResourceUsageMeasured() {
+    return resourceUsageMeasured;
+  }
+
   protected void add(AbstractTimeProfiling other) {
     this.setTotalTime(this.totalTime() + other.totalTime());
+    this.cpuTime += other.cpuTime();
+    this.allocatedBytes += other.allocatedBytes();
+    this.resourceUsageMeasured &= other.isResourceUsageMeasured();
+  }
+
+  /**
+   * CPU time and allocated bytes are omitted when they are not measured
+   */
+  protected void writeMetrics(JsonWriter json) {
+    json.prop("totalTimeMs", totalTime);
+    if (resourceUsageMeasured) {
+      json
+        .prop("cpuTimeMs", cpuTime / 1_000_000L)
+        .prop("allocatedBytes", allocatedBytes);
+    }
   }
 
   static <G extends AbstractTimeProfiling> Map<Object, G> sortByDescendingTotalTime(Map<?, G> unsorted) {
@@ -20,6 +20,7 @@
 package org.sonar.batch.profiling;
 
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.text.JsonWriter;
 
 public class ItemProfiling extends AbstractTimeProfiling {
 
@@ -34,4 +35,10 @@ public class ItemProfiling extends AbstractTimeProfiling {
     return itemName;
   }
 
+  public void writeJson(JsonWriter json) {
+    json.beginObject().prop("name", itemName);
+    writeMetrics(json);
+    json.endObject();
+  }
+
 }
@@ -19,6 +19,7 @@
  */
 package org.sonar.batch.profiling;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -28,6 +29,7 @@ import java.util.Properties;
 import javax.annotation.Nullable;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.text.JsonWriter;
 
 public class ModuleProfiling extends AbstractTimeProfiling {
 
@@ -47,6 +49,18 @@ public class ModuleProfiling extends AbstractTimeProfiling {
     return null;
   }
 
+  /**
+   * Indexing and analysis of a module, as well as the items of its phases, may be executed by different threads,
+   * so the resource usage of a module is the sum of the ones of its phases and steps.
+   */
+  @Override
+  public void stop() {
+    super.stop();
+    if (!profilingPerPhase.isEmpty() || !profilingPerBatchStep.isEmpty()) {
+      sumResourceUsage(Iterables.<AbstractTimeProfiling>concat(profilingPerPhase.values(), profilingPerBatchStep.values()));
+    }
+  }
+
   public PhaseProfiling getProfilingPerPhase(Phase phase) {
     return profilingPerPhase.get(phase);
   }
@@ -86,6 +100,25 @@ public class ModuleProfiling extends AbstractTimeProfiling {
     }
   }
 
+  /**
+   * Writes the fields of the module profiling into the current JSON object
+   */
+  public void writeJson(JsonWriter json) {
+    writeMetrics(json);
+    json.name("phases").beginArray();
+    for (Phase phase : Phase.values()) {
+      if (profilingPerPhase.containsKey(phase)) {
+        getProfilingPerPhase(phase).writeJson(json);
+      }
+    }
+    json.endArray();
+    json.name("steps").beginArray();
+    for (ItemProfiling stepProfiling : profilingPerBatchStep.values()) {
+      stepProfiling.writeJson(json);
+    }
+    json.endArray();
+  }
+
   public void merge(ModuleProfiling other) {
     super.add(other);
     for (Entry<Phase, PhaseProfiling> entry : other.profilingPerPhase.entrySet()) {
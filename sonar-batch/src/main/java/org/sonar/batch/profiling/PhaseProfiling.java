@@ -24,6 +24,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.text.JsonWriter;
 
 public class PhaseProfiling extends AbstractTimeProfiling {
 
@@ -44,6 +45,18 @@ public class PhaseProfiling extends AbstractTimeProfiling {
     return phase;
   }
 
+  /**
+   * Items, like sensors, may be executed by other threads than the phase, so the resource usage of a phase
+   * having items is the sum of the ones of its items.
+   */
+  @Override
+  public void stop() {
+    super.stop();
+    if (hasItems()) {
+      sumResourceUsage(profilingPerItem.values());
+    }
+  }
+
   public boolean hasItems() {
     return !profilingPerItem.isEmpty();
   }
@@ -82,6 +95,16 @@ public class PhaseProfiling extends AbstractTimeProfiling {
     }
   }
 
+  public void writeJson(JsonWriter json) {
+    json.beginObject().prop("phase", phase.toString());
+    writeMetrics(json);
+    json.name("items").beginArray();
+    for (ItemProfiling itemProfiling : sortByDescendingTotalTime(profilingPerItem).values()) {
+      itemProfiling.writeJson(json);
+    }
+    json.endArray().endObject();
+  }
+
   /**
    * Try to use toString if it is not the default {@link Object#toString()}. Else use {@link Class#getSimpleName()}
    * @param o
@@ -23,6 +23,9 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -46,8 +49,11 @@ import org.sonar.api.batch.events.SensorsPhaseHandler;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.TimeUtils;
+import org.sonar.api.utils.text.JsonWriter;
 import org.sonar.batch.bootstrap.GlobalProperties;
+import org.sonar.batch.cache.WSLoader;
 import org.sonar.batch.events.BatchStepHandler;
+import org.sonar.batch.index.DefaultIndex;
 import org.sonar.batch.util.BatchUtils;
 
 import static org.sonar.batch.profiling.AbstractTimeProfiling.sortByDescendingTotalTime;
@@ -60,16 +66,20 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   private static final int TEXT_RIGHT_PAD = 60;
   private static final int TIME_LEFT_PAD = 10;
 
-  @VisibleForTesting
-  ModuleProfiling currentModuleProfiling;
-
   @VisibleForTesting
   ModuleProfiling totalProfiling;
 
-  private Map<Project, ModuleProfiling> modulesProfilings = new HashMap<>();
-  private DecoratorsProfiler decoratorsProfiler;
+  // Modules can be scanned concurrently, so profilings are kept by module and events are handled
+  // while holding the lock of the profiler.
+  private final Map<Project, ModuleProfiling> profilingsInProgress = new HashMap<>();
+  private final Map<Project, DecoratorsProfiler> decoratorsProfilers = new HashMap<>();
+
+  @VisibleForTesting
+  final Map<Project, ModuleProfiling> modulesProfilings = new HashMap<>();
 
   private final System2 system;
+  private final WSLoader wsLoader;
+  private final DefaultIndex index;
   private final File out;
 
   static void println(String msg) {
@@ -85,36 +95,57 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
     println(sb.toString());
   }
 
-  public PhasesSumUpTimeProfiler(System2 system, GlobalProperties bootstrapProps) {
+  public PhasesSumUpTimeProfiler(System2 system, GlobalProperties bootstrapProps, WSLoader wsLoader, DefaultIndex index) {
     String workingDirPath = StringUtils.defaultIfBlank(bootstrapProps.property(CoreProperties.WORKING_DIRECTORY), CoreProperties.WORKING_DIRECTORY_DEFAULT_VALUE);
     File workingDir = new File(workingDirPath).getAbsoluteFile();
     this.out = new File(workingDir, "profiling");
     this.out.mkdirs();
     this.totalProfiling = new ModuleProfiling(null, system);
     this.system = system;
+    this.wsLoader = wsLoader;
+    this.index = index;
+  }
+
+  /**
+   * Profiling of the module scanned by the current thread
+   */
+  private ModuleProfiling currentModuleProfiling() {
+    Project module = index.getProject();
+    ModuleProfiling profiling = profilingsInProgress.get(module);
+    if (profiling == null) {
+      throw new IllegalStateException("Analysis of module " + module.getKey() + " is not started");
+    }
+    return profiling;
+  }
+
+  private DecoratorsProfiler currentDecoratorsProfiler() {
+    return decoratorsProfilers.get(index.getProject());
   }
 
   @Override
-  public void onProjectAnalysis(ProjectAnalysisEvent event) {
+  public synchronized void onProjectAnalysis(ProjectAnalysisEvent event) {
     Project module = event.getProject();
     if (event.isStart()) {
-      decoratorsProfiler = new DecoratorsProfiler();
-      currentModuleProfiling = new ModuleProfiling(module, system);
+      decoratorsProfilers.put(module, new DecoratorsProfiler());
+      profilingsInProgress.put(module, new ModuleProfiling(module, system));
     } else {
-      currentModuleProfiling.stop();
-      modulesProfilings.put(module, currentModuleProfiling);
-      long moduleTotalTime = currentModuleProfiling.totalTime();
+      decoratorsProfilers.remove(module);
+      ModuleProfiling moduleProfiling = profilingsInProgress.remove(module);
+      moduleProfiling.stop();
+      modulesProfilings.put(module, moduleProfiling);
+      long moduleTotalTime = moduleProfiling.totalTime();
       println("");
       println(" -------- Profiling of module " + module.getName() + ": " + TimeUtils.formatDuration(moduleTotalTime) + " --------");
       println("");
       Properties props = new Properties();
-      currentModuleProfiling.dump(props);
+      moduleProfiling.dump(props);
       println("");
       println(" -------- End of profiling of module " + module.getName() + " --------");
       println("");
-      String fileName = module.getKey() + "-profiler.properties";
-      dumpToFile(props, BatchUtils.cleanKeyForFilename(fileName));
-      totalProfiling.merge(currentModuleProfiling);
+      String fileName = BatchUtils.cleanKeyForFilename(module.getKey() + "-profiler");
+      dumpToFile(props, fileName + ".properties");
+      dumpToJsonFile(module.getKey(), moduleProfiling, module.isRoot(), fileName + ".json");
+      totalProfiling.merge(moduleProfiling);
       if (module.isRoot() && !module.getModules().isEmpty()) {
         dumpTotalExecutionSummary();
       }
@@ -138,8 +169,9 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
     println("");
     println(" ======== End of profiling of total execution ========");
     println("");
-    String fileName = "total-execution-profiler.properties";
-    dumpToFile(props, fileName);
+    String fileName = "total-execution-profiler";
+    dumpToFile(props, fileName + ".properties");
+    dumpToJsonFile(null, totalProfiling, true, fileName + ".json");
   }
 
   private void dumpToFile(Properties props, String fileName) {
@@ -152,18 +184,45 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
     }
   }
 
+  /**
+   * Machine-readable version of the profiling, including CPU time and allocated bytes. Web service calls
+   * are done for the whole analysis, so they are reported only with the root module and the total execution.
+   */
+  private void dumpToJsonFile(@Nullable String moduleKey, ModuleProfiling profiling, boolean withWebServices, String fileName) {
+    File file = new File(out, fileName);
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+      writeJson(moduleKey, profiling, withWebServices, writer);
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to store profiler output: " + file, e);
+    }
+  }
+
+  @VisibleForTesting
+  void writeJson(@Nullable String moduleKey, ModuleProfiling profiling, boolean withWebServices, Writer writer) {
+    JsonWriter json = JsonWriter.of(writer);
+    json.beginObject().prop("module", moduleKey);
+    profiling.writeJson(json);
+    if (withWebServices) {
+      json.name("wsCache").beginObject()
+        .prop("hits", wsLoader.cacheHits())
+        .prop("misses", wsLoader.cacheMisses())
+        .endObject();
+    }
+    json.endObject().close();
+  }
+
   @Override
-  public void onSensorsPhase(SensorsPhaseEvent event) {
+  public synchronized void onSensorsPhase(SensorsPhaseEvent event) {
     if (event.isStart()) {
-      currentModuleProfiling.addPhaseProfiling(Phase.SENSOR);
+      currentModuleProfiling().addPhaseProfiling(Phase.SENSOR);
     } else {
-      currentModuleProfiling.getProfilingPerPhase(Phase.SENSOR).stop();
+      currentModuleProfiling().getProfilingPerPhase(Phase.SENSOR).stop();
     }
   }
 
   @Override
-  public void onSensorExecution(SensorExecutionEvent event) {
-    PhaseProfiling profiling = currentModuleProfiling.getProfilingPerPhase(Phase.SENSOR);
+  public synchronized void onSensorExecution(SensorExecutionEvent event) {
+    PhaseProfiling profiling = currentModuleProfiling().getProfilingPerPhase(Phase.SENSOR);
     if (event.isStart()) {
       profiling.newItemProfiling(event.getSensor());
     } else {
@@ -172,43 +231,45 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   }
 
   @Override
-  public void onDecoratorExecution(DecoratorExecutionEvent event) {
-    PhaseProfiling profiling = currentModuleProfiling.getProfilingPerPhase(Phase.DECORATOR);
+  public synchronized void onDecoratorExecution(DecoratorExecutionEvent event) {
+    PhaseProfiling profiling = currentModuleProfiling().getProfilingPerPhase(Phase.DECORATOR);
     if (event.isStart()) {
       if (profiling.getProfilingPerItem(event.getDecorator()) == null) {
         profiling.newItemProfiling(event.getDecorator());
       }
-      decoratorsProfiler.start(event.getDecorator());
+      currentDecoratorsProfiler().start(event.getDecorator());
     } else {
-      decoratorsProfiler.stop();
+      currentDecoratorsProfiler().stop();
     }
   }
 
   @Override
-  public void onDecoratorsPhase(DecoratorsPhaseEvent event) {
+  public synchronized void onDecoratorsPhase(DecoratorsPhaseEvent event) {
     if (event.isStart()) {
-      currentModuleProfiling.addPhaseProfiling(Phase.DECORATOR);
+      currentModuleProfiling().addPhaseProfiling(Phase.DECORATOR);
     } else {
+      DecoratorsProfiler decoratorsProfiler = currentDecoratorsProfiler();
       for (Decorator decorator : decoratorsProfiler.getDurations().keySet()) {
-        currentModuleProfiling.getProfilingPerPhase(Phase.DECORATOR)
-          .getProfilingPerItem(decorator).setTotalTime(decoratorsProfiler.getDurations().get(decorator));
+        ItemProfiling itemProfiling = currentModuleProfiling().getProfilingPerPhase(Phase.DECORATOR).getProfilingPerItem(decorator);
+        itemProfiling.setTotalTime(decoratorsProfiler.getDurations().get(decorator));
+        itemProfiling.setResourceUsage(decoratorsProfiler.getCpuTimes().get(decorator), decoratorsProfiler.getAllocations().get(decorator));
       }
-      currentModuleProfiling.getProfilingPerPhase(Phase.DECORATOR).stop();
+      currentModuleProfiling().getProfilingPerPhase(Phase.DECORATOR).stop();
     }
   }
 
   @Override
-  public void onPostJobsPhase(PostJobsPhaseEvent event) {
+  public synchronized void onPostJobsPhase(PostJobsPhaseEvent event) {
     if (event.isStart()) {
-      currentModuleProfiling.addPhaseProfiling(Phase.POSTJOB);
+      currentModuleProfiling().addPhaseProfiling(Phase.POSTJOB);
     } else {
-      currentModuleProfiling.getProfilingPerPhase(Phase.POSTJOB).stop();
+      currentModuleProfiling().getProfilingPerPhase(Phase.POSTJOB).stop();
     }
   }
 
   @Override
-  public void onPostJobExecution(PostJobExecutionEvent event) {
-    PhaseProfiling profiling = currentModuleProfiling.getProfilingPerPhase(Phase.POSTJOB);
+  public synchronized void onPostJobExecution(PostJobExecutionEvent event) {
+    PhaseProfiling profiling = currentModuleProfiling().getProfilingPerPhase(Phase.POSTJOB);
     if (event.isStart()) {
       profiling.newItemProfiling(event.getPostJob());
     } else {
@@ -217,17 +278,17 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   }
 
   @Override
-  public void onInitializersPhase(InitializersPhaseEvent event) {
+  public synchronized void onInitializersPhase(InitializersPhaseEvent event) {
     if (event.isStart()) {
-      currentModuleProfiling.addPhaseProfiling(Phase.INIT);
+      currentModuleProfiling().addPhaseProfiling(Phase.INIT);
     } else {
-      currentModuleProfiling.getProfilingPerPhase(Phase.INIT).stop();
+      currentModuleProfiling().getProfilingPerPhase(Phase.INIT).stop();
     }
   }
 
   @Override
-  public void onInitializerExecution(InitializerExecutionEvent event) {
-    PhaseProfiling profiling = currentModuleProfiling.getProfilingPerPhase(Phase.INIT);
+  public synchronized void onInitializerExecution(InitializerExecutionEvent event) {
+    PhaseProfiling profiling = currentModuleProfiling().getProfilingPerPhase(Phase.INIT);
     if (event.isStart()) {
       profiling.newItemProfiling(event.getInitializer());
     } else {
@@ -236,18 +297,22 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   }
 
   @Override
-  public void onBatchStep(BatchStepEvent event) {
+  public synchronized void onBatchStep(BatchStepEvent event) {
     if (event.isStart()) {
-      currentModuleProfiling.addBatchStepProfiling(event.stepName());
+      currentModuleProfiling().addBatchStepProfiling(event.stepName());
     } else {
-      currentModuleProfiling.getProfilingPerBatchStep(event.stepName()).stop();
+      currentModuleProfiling().getProfilingPerBatchStep(event.stepName()).stop();
     }
   }
 
   class DecoratorsProfiler {
     private List<Decorator> decorators = Lists.newArrayList();
     private Map<Decorator, Long> durations = new IdentityHashMap<>();
+    private Map<Decorator, Long> cpuTimes = new IdentityHashMap<>();
+    private Map<Decorator, Long> allocations = new IdentityHashMap<>();
     private long startTime;
+    private long startCpuTime;
+    private long startAllocatedBytes;
     private Decorator currentDecorator;
 
     DecoratorsProfiler() {
@@ -255,24 +320,35 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
 
     void start(Decorator decorator) {
       this.startTime = system.now();
+      this.startCpuTime = ThreadUsage.cpuTime();
+      this.startAllocatedBytes = ThreadUsage.allocatedBytes();
       this.currentDecorator = decorator;
     }
 
     void stop() {
-      final Long cumulatedDuration;
-      if (durations.containsKey(currentDecorator)) {
-        cumulatedDuration = durations.get(currentDecorator);
-      } else {
+      if (!durations.containsKey(currentDecorator)) {
         decorators.add(currentDecorator);
-        cumulatedDuration = 0L;
+        durations.put(currentDecorator, 0L);
+        cpuTimes.put(currentDecorator, 0L);
+        allocations.put(currentDecorator, 0L);
       }
-      durations.put(currentDecorator, cumulatedDuration + (system.now() - startTime));
+      durations.put(currentDecorator, durations.get(currentDecorator) + (system.now() - startTime));
+      cpuTimes.put(currentDecorator, cpuTimes.get(currentDecorator) + (ThreadUsage.cpuTime() - startCpuTime));
+      allocations.put(currentDecorator, allocations.get(currentDecorator) + (ThreadUsage.allocatedBytes() - startAllocatedBytes));
     }
 
     public Map<Decorator, Long> getDurations() {
       return durations;
     }
 
+    public Map<Decorator, Long> getCpuTimes() {
+      return cpuTimes;
+    }
+
+    public Map<Decorator, Long> getAllocations() {
+      return allocations;
+    }
+
   }
 
 }
@@ -0,0 +1,84 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import javax.annotation.CheckForNull;
+
+/**
+ * Resources consumed by the current thread. Values are 0 when the JVM is not able to measure them.
+ */
+class ThreadUsage {
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  /**
+   * {@code com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}, which is not available on all JVMs,
+   * or null if allocations can't be measured
+   */
+  @CheckForNull
+  private static final Method GET_ALLOCATED_BYTES = allocatedBytesMethod();
+
+  private ThreadUsage() {
+    // only static methods
+  }
+
+  /**
+   * CPU time of the current thread, in nanoseconds
+   */
+  static long cpuTime() {
+    if (THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()) {
+      return THREADS.getCurrentThreadCpuTime();
+    }
+    return 0L;
+  }
+
+  /**
+   * Bytes allocated on heap by the current thread since it started
+   */
+  static long allocatedBytes() {
+    if (GET_ALLOCATED_BYTES == null) {
+      return 0L;
+    }
+    try {
+      return (Long) GET_ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread().getId());
+    } catch (Exception e) {
+      return 0L;
+    }
+  }
+
+  @CheckForNull
+  private static Method allocatedBytesMethod() {
+    try {
+      Class<?> extendedBean = Class.forName("com.sun.management.ThreadMXBean");
+      if (!extendedBean.isInstance(THREADS)
+        || !(Boolean) extendedBean.getMethod("isThreadAllocatedMemorySupported").invoke(THREADS)
+        || !(Boolean) extendedBean.getMethod("isThreadAllocatedMemoryEnabled").invoke(THREADS)) {
+        return null;
+      }
+      return extendedBean.getMethod("getThreadAllocatedBytes", long.class);
+    } catch (Exception | LinkageError e) {
+      return null;
+    }
+  }
+
+}
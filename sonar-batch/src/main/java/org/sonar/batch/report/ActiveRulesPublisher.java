@@ -24,22 +24,22 @@ import com.google.common.collect.FluentIterable;
 import java.util.Map;
 import javax.annotation.Nonnull;
 import org.sonar.api.batch.rule.ActiveRule;
-import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.batch.protocol.Constants;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.rule.LanguageScopedActiveRules;
 
 public class ActiveRulesPublisher implements ReportPublisherStep {
 
-  private final ActiveRules activeRules;
+  private final LanguageScopedActiveRules activeRules;
 
-  public ActiveRulesPublisher(ActiveRules activeRules) {
+  public ActiveRulesPublisher(LanguageScopedActiveRules activeRules) {
     this.activeRules = activeRules;
   }
 
   @Override
   public void publish(BatchReportWriter writer) {
-    Iterable<BatchReport.ActiveRule> activeRuleMessages = FluentIterable.from(activeRules.findAll()).transform(new ToMessage());
+    Iterable<BatchReport.ActiveRule> activeRuleMessages = FluentIterable.from(activeRules.ofAllLanguages().findAll()).transform(new ToMessage());
     writer.writeActiveRules(activeRuleMessages);
   }
 
@@ -0,0 +1,142 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.report;
+
+import com.google.common.io.CountingOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.sonar.api.utils.ZipUtils;
+
+/**
+ * Compresses the report directory in a background thread. The zip is read from {@link #input()} while it is
+ * being written, without any temporary file.
+ */
+class ReportCompression {
+
+  private static final int PIPE_SIZE = 256 * 1024;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File reportDir;
+  private final InputStream input;
+  private final CountingOutputStream counter;
+  private final Thread thread;
+  private volatile boolean stopped = false;
+  private volatile Exception failure;
+
+  ReportCompression(File reportDir) {
+    this.reportDir = reportDir;
+    try {
+      PipedInputStream pipe = new PipedInputStream(PIPE_SIZE);
+      this.counter = new CountingOutputStream(new PipedOutputStream(pipe));
+      this.input = new CompressedInput(pipe);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to prepare batch report", e);
+    }
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        compress();
+      }
+    }, "Report compression");
+    this.thread.setDaemon(true);
+  }
+
+  private void compress() {
+    OutputStream output = new BufferedOutputStream(counter, BUFFER_SIZE);
+    try {
+      ZipUtils.zipDir(reportDir, output);
+    } catch (Exception e) {
+      if (!stopped) {
+        failure = e;
+      }
+    } finally {
+      // on failure, the reader gets an error instead of the end of stream, so that
+      // a truncated report can't be submitted
+      IOUtils.closeQuietly(output);
+    }
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  InputStream input() {
+    return input;
+  }
+
+  /**
+   * Size in bytes of the zip written so far
+   */
+  long zipSize() {
+    return counter.getCount();
+  }
+
+  /**
+   * Interrupts compression if the zip is not fully read, and waits for the end of the background thread
+   */
+  void stop() {
+    stopped = true;
+    IOUtils.closeQuietly(input);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private class CompressedInput extends FilterInputStream {
+    CompressedInput(InputStream pipe) {
+      super(pipe);
+    }
+
+    @Override
+    public int read() throws IOException {
+      return checkEndOfStream(super.read());
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return checkEndOfStream(super.read(b, off, len));
+    }
+
+    private int checkEndOfStream(int read) throws IOException {
+      if (read < 0 && failure != null) {
+        throw new IOException("Unable to compress batch report", failure);
+      }
+      return read;
+    }
+  }
+
+  /**
+   * @throws IllegalStateException if the report could not be compressed
+   */
+  void checkSuccess() {
+    if (failure != null) {
+      throw new IllegalStateException("Unable to compress batch report", failure);
+    }
+  }
+}
@@ -59,6 +59,8 @@ public class ReportPublisher implements Startable {
   public static final String KEEP_REPORT_PROP_KEY = "sonar.batch.keepReport";
   public static final String VERBOSE_KEY = "sonar.verbose";
   public static final String DUMP_REPORT_PROP_KEY = "sonar.batch.dumpReportDir";
+  private static final String REPORT_CONTENT_TYPE = "application/octet-stream";
+  private static final int UPLOAD_CHUNK_SIZE = 64 * 1024;
 
   private final ServerClient serverClient;
   private final Server server;
@@ -113,27 +115,29 @@ public class ReportPublisher implements Startable {
     // If this is a issues mode analysis then we should not upload reports
     String taskId = null;
     if (!analysisMode.isIssues()) {
-      File report = prepareReport();
+      generateReport();
       if (!analysisMode.isMediumTest()) {
-        taskId = sendOrDumpReport(report);
+        taskId = sendOrDumpReport();
       }
     }
     logSuccess(LoggerFactory.getLogger(getClass()), taskId);
   }
 
-  private File prepareReport() {
+  private void generateReport() {
+    long startTime = System.currentTimeMillis();
+    for (ReportPublisherStep publisher : publishers) {
+      publisher.publish(writer);
+    }
+    long stopTime = System.currentTimeMillis();
+    LOG.info("Analysis reports generated in " + (stopTime - startTime) + "ms, dir size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(reportDir)));
+  }
+
+  private File zipReport() {
     try {
       long startTime = System.currentTimeMillis();
-      for (ReportPublisherStep publisher : publishers) {
-        publisher.publish(writer);
-      }
-      long stopTime = System.currentTimeMillis();
-      LOG.info("Analysis reports generated in " + (stopTime - startTime) + "ms, dir size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(reportDir)));
-
-      startTime = System.currentTimeMillis();
       File reportZip = temp.newFile("batch-report", ".zip");
       ZipUtils.zipDir(reportDir, reportZip);
-      stopTime = System.currentTimeMillis();
+      long stopTime = System.currentTimeMillis();
       LOG.info("Analysis reports compressed in " + (stopTime - startTime) + "ms, zip size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(reportZip)));
       return reportZip;
     } catch (IOException e) {
@@ -143,7 +147,7 @@ public class ReportPublisher implements Startable {
 
   @CheckForNull
   @VisibleForTesting
-  String sendOrDumpReport(File report) {
+  String sendOrDumpReport() {
     ProjectDefinition projectDefinition = projectReactor.getRoot();
     String effectiveKey = projectDefinition.getKeyWithBranch();
     String relativeUrl = String.format("/api/ce/submit?projectKey=%s&projectName=%s&projectBranch=%s",
@@ -151,14 +155,18 @@ public class ReportPublisher implements Startable {
 
     String dumpDirLocation = settings.getString(DUMP_REPORT_PROP_KEY);
     if (dumpDirLocation == null) {
-      return uploadMultiPartReport(report, relativeUrl);
+      return uploadReport(relativeUrl);
     } else {
-      dumpReport(dumpDirLocation, effectiveKey, relativeUrl, report);
+      dumpReport(dumpDirLocation, effectiveKey, relativeUrl, zipReport());
       return null;
     }
   }
 
-  private String uploadMultiPartReport(File report, String relativeUrl) {
+  /**
+   * The report directory is compressed on the fly by a background thread and sent as the chunked body
+   * of the request, so that no temporary zip file is written and upload starts with compression.
+   */
+  private String uploadReport(String relativeUrl) {
     LOG.debug("Publish results");
     long startTime = System.currentTimeMillis();
     URL url;
@@ -172,7 +180,22 @@ public class ReportPublisher implements Startable {
     request.trustAllHosts();
     request.header("User-Agent", format("SonarQube %s", server.getVersion()));
     request.basic(serverClient.getLogin(), serverClient.getPassword());
-    request.part("report", null, "application/octet-stream", report);
+    request.chunk(UPLOAD_CHUNK_SIZE);
+    request.contentType(REPORT_CONTENT_TYPE);
+
+    ReportCompression compression = new ReportCompression(reportDir);
+    compression.start();
+    try {
+      request.send(compression.input());
+    } catch (HttpRequest.HttpRequestException e) {
+      // upload is interrupted if compression fails
+      request.disconnect();
+      compression.stop();
+      compression.checkSuccess();
+      throw e;
+    }
+    compression.stop();
+
     if (!request.ok()) {
       int responseCode = request.code();
       if (responseCode == 401) {
@@ -185,7 +208,8 @@ public class ReportPublisher implements Startable {
       throw new IllegalStateException(format("Fail to execute request [code=%s, url=%s]: %s", responseCode, url, request.body()));
     }
     long stopTime = System.currentTimeMillis();
-    LOG.info("Analysis reports sent to server in " + (stopTime - startTime) + "ms");
+    LOG.info("Analysis reports compressed and sent to server in " + (stopTime - startTime) + "ms, zip size="
+      + FileUtils.byteCountToDisplaySize(compression.zipSize()));
     String responseStr = request.body();
     SubmitResponse response = new Gson().fromJson(responseStr, SubmitResponse.class);
     return response.getTaskId();
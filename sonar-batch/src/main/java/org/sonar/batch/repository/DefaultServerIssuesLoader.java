@@ -20,6 +20,7 @@
 package org.sonar.batch.repository;
 
 import com.google.common.base.Function;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import org.apache.commons.io.IOUtils;
@@ -43,7 +44,9 @@ public class DefaultServerIssuesLoader implements ServerIssuesLoader {
     return result.isFromCache();
   }
 
-  private static void parseIssues(InputStream is, Function<ServerIssue, Void> consumer) {
+  private static void parseIssues(InputStream input, Function<ServerIssue, Void> consumer) {
+    // size of each issue is read byte per byte, that must not be a system call
+    InputStream is = new BufferedInputStream(input);
     try {
       ServerIssue previousIssue = ServerIssue.parseDelimitedFrom(is);
       while (previousIssue != null) {
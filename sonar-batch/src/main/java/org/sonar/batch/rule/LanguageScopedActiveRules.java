@@ -0,0 +1,212 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.rule;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import org.apache.commons.lang.mutable.MutableBoolean;
+import org.sonar.api.batch.BatchSide;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.batch.rule.internal.NewActiveRule;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.api.utils.log.Profiler;
+import org.sonar.batch.scan.filesystem.InputPathCache;
+
+/**
+ * Active rules of the Quality profiles used by the project, downloaded per language when needed.
+ * <ul>
+ *   <li>{@link #ofDetectedLanguages()} is the view of sensors. The rules of a profile are downloaded once a file of
+ *   its language has been indexed, or when they are requested with {@link ActiveRules#findByLanguage(String)}, so
+ *   the view grows while modules are indexed.</li>
+ *   <li>{@link #ofAllLanguages()} contains the rules of all the profiles. It is used by the analysis report and by
+ *   issue tracking, which would otherwise consider issues of the other languages as raised by removed rules.</li>
+ * </ul>
+ * <p/>
+ * Thread-safe. Loaded rules are published as immutable snapshots, so lookups don't lock once the languages they need
+ * are loaded.
+ */
+@BatchSide
+public class LanguageScopedActiveRules {
+
+  private static final Logger LOG = Loggers.get(LanguageScopedActiveRules.class);
+
+  private final ActiveRulesLoader loader;
+  private final ModuleQProfiles qProfiles;
+  private final InputPathCache inputPathCache;
+  private final ActiveRules detectedLanguagesView = new DetectedLanguagesView();
+
+  // guarded by this
+  private final Set<String> loadedLanguages = new HashSet<>();
+  private final Map<RuleKey, LoadedActiveRule> loadedRulesByKey = new LinkedHashMap<>();
+
+  private volatile Snapshot snapshot = new Snapshot(Collections.<String>emptySet(), new ActiveRulesBuilder().build(), 0, false);
+
+  public LanguageScopedActiveRules(ActiveRulesLoader loader, ModuleQProfiles qProfiles, InputPathCache inputPathCache) {
+    this.loader = loader;
+    this.qProfiles = qProfiles;
+    this.inputPathCache = inputPathCache;
+  }
+
+  /**
+   * Rules of the languages of the files indexed so far
+   */
+  public ActiveRules ofDetectedLanguages() {
+    return detectedLanguagesView;
+  }
+
+  /**
+   * Rules of all the Quality profiles of the project, whatever the languages of its files
+   */
+  public ActiveRules ofAllLanguages() {
+    Snapshot current = snapshot;
+    if (current.allLanguages) {
+      return current.rules;
+    }
+    Set<String> languages = new HashSet<>();
+    for (QProfile qProfile : qProfiles.findAll()) {
+      languages.add(qProfile.getLanguage());
+    }
+    return load(languages, 0, true).rules;
+  }
+
+  private ActiveRules detectedLanguages() {
+    Snapshot current = snapshot;
+    // languages are never removed from the cache, so comparing sizes is enough to detect new ones
+    if (current.allLanguages || current.detectedLanguages == inputPathCache.languages().size()) {
+      return current.rules;
+    }
+    Set<String> detected = ImmutableSet.copyOf(inputPathCache.languages());
+    return load(detected, detected.size(), false).rules;
+  }
+
+  private ActiveRules language(String language) {
+    Snapshot current = snapshot;
+    if (current.allLanguages || current.languages.contains(language)) {
+      return current.rules;
+    }
+    return load(Collections.singleton(language), 0, false).rules;
+  }
+
+  private synchronized Snapshot load(Collection<String> languages, int detectedLanguages, boolean allLanguages) {
+    boolean changed = false;
+    for (String language : languages) {
+      if (loadedLanguages.add(language)) {
+        QProfile qProfile = qProfiles.findByLanguage(language);
+        if (qProfile != null) {
+          load(qProfile);
+          changed = true;
+        }
+      }
+    }
+    Snapshot current = snapshot;
+    ActiveRules rules = changed ? transform(loadedRulesByKey.values()) : current.rules;
+    snapshot = new Snapshot(ImmutableSet.copyOf(loadedLanguages), rules, Math.max(current.detectedLanguages, detectedLanguages),
+      current.allLanguages || allLanguages);
+    return snapshot;
+  }
+
+  private void load(QProfile qProfile) {
+    Profiler profiler = Profiler.create(LOG).startInfo("Load active rules of " + qProfile.getLanguage());
+    MutableBoolean fromCache = new MutableBoolean();
+    for (LoadedActiveRule r : loader.load(qProfile.getKey(), fromCache)) {
+      if (!loadedRulesByKey.containsKey(r.getRuleKey())) {
+        loadedRulesByKey.put(r.getRuleKey(), r);
+      }
+    }
+    profiler.stopInfo(fromCache.booleanValue());
+  }
+
+  private static ActiveRules transform(Collection<LoadedActiveRule> loadedRules) {
+    ActiveRulesBuilder builder = new ActiveRulesBuilder();
+
+    for (LoadedActiveRule activeRule : loadedRules) {
+      NewActiveRule newActiveRule = builder.create(activeRule.getRuleKey());
+      newActiveRule.setName(activeRule.getName());
+      newActiveRule.setSeverity(activeRule.getSeverity());
+      newActiveRule.setLanguage(activeRule.getLanguage());
+      newActiveRule.setInternalKey(activeRule.getInternalKey());
+      newActiveRule.setTemplateRuleKey(activeRule.getTemplateRuleKey());
+
+      // load parameters
+      if (activeRule.getParams() != null) {
+        for (Map.Entry<String, String> params : activeRule.getParams().entrySet()) {
+          newActiveRule.setParam(params.getKey(), params.getValue());
+        }
+      }
+
+      newActiveRule.activate();
+    }
+    return builder.build();
+  }
+
+  private static class Snapshot {
+    private final Set<String> languages;
+    private final ActiveRules rules;
+    // number of detected languages which are loaded
+    private final int detectedLanguages;
+    private final boolean allLanguages;
+
+    Snapshot(Set<String> languages, ActiveRules rules, int detectedLanguages, boolean allLanguages) {
+      this.languages = languages;
+      this.rules = rules;
+      this.detectedLanguages = detectedLanguages;
+      this.allLanguages = allLanguages;
+    }
+  }
+
+  private class DetectedLanguagesView implements ActiveRules {
+    @Override
+    @CheckForNull
+    public ActiveRule find(RuleKey ruleKey) {
+      return detectedLanguages().find(ruleKey);
+    }
+
+    @Override
+    public Collection<ActiveRule> findAll() {
+      return detectedLanguages().findAll();
+    }
+
+    @Override
+    public Collection<ActiveRule> findByRepository(String repository) {
+      return detectedLanguages().findByRepository(repository);
+    }
+
+    @Override
+    public Collection<ActiveRule> findByLanguage(String language) {
+      return language(language).findByLanguage(language);
+    }
+
+    @Override
+    @CheckForNull
+    public ActiveRule findByInternalKey(String repository, String internalKey) {
+      return detectedLanguages().findByInternalKey(repository, internalKey);
+    }
+  }
+}
@@ -39,14 +39,15 @@ public class RulesProfileProvider extends ProviderAdapter {
 
   private RulesProfile singleton = null;
 
-  public RulesProfile provide(ModuleQProfiles qProfiles, ActiveRules activeRules, Settings settings) {
+  public RulesProfile provide(ModuleQProfiles qProfiles, LanguageScopedActiveRules activeRules, Settings settings) {
     if (singleton == null) {
       String lang = settings.getString(CoreProperties.PROJECT_LANGUAGE_PROPERTY);
       if (StringUtils.isNotBlank(lang)) {
         // Backward-compatibility with single-language modules
-        singleton = loadSingleLanguageProfile(qProfiles, activeRules, lang);
+        singleton = loadSingleLanguageProfile(qProfiles, activeRules.ofDetectedLanguages(), lang);
       } else {
-        singleton = loadProfiles(qProfiles, activeRules);
+        // the deprecated profile is created before files are indexed, so it contains the rules of all languages
+        singleton = loadProfiles(qProfiles, activeRules.ofAllLanguages());
       }
     }
     return singleton;
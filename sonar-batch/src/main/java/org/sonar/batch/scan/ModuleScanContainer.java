@@ -79,10 +79,20 @@ import org.sonar.core.platform.ComponentContainer;
 public class ModuleScanContainer extends ComponentContainer {
   private static final Logger LOG = LoggerFactory.getLogger(ModuleScanContainer.class);
   private final Project module;
+  private final boolean indexOnly;
 
   public ModuleScanContainer(ProjectScanContainer parent, Project module) {
+    this(parent, module, false);
+  }
+
+  /**
+   * @param indexOnly if true, starting the container executes the phases up to the indexing of the module filesystem only.
+   * The other phases are executed by {@link #analyse()}, possibly on another thread.
+   */
+  ModuleScanContainer(ProjectScanContainer parent, Project module, boolean indexOnly) {
     super(parent);
     this.module = module;
+    this.indexOnly = indexOnly;
   }
 
   @Override
@@ -179,13 +189,31 @@ public class ModuleScanContainer extends ComponentContainer {
 
   @Override
   protected void doAfterStart() {
-    DefaultIndex index = getComponentByType(DefaultIndex.class);
-    index.setCurrentProject(module, getComponentByType(DefaultSensorStorage.class));
+    bindModuleToCurrentThread();
+    getComponentByType(PhaseExecutor.class).index(module);
+    if (!indexOnly) {
+      doAnalyse();
+    }
+  }
 
-    getComponentByType(PhaseExecutor.class).execute(module);
+  /**
+   * Executes the phases following the indexing of a container started with indexOnly
+   */
+  void analyse() {
+    bindModuleToCurrentThread();
+    doAnalyse();
+  }
+
+  private void doAnalyse() {
+    getComponentByType(PhaseExecutor.class).analyse(module);
 
     // Free memory since module settings are no more used
     module.setSettings(null);
   }
 
+  private void bindModuleToCurrentThread() {
+    DefaultIndex index = getComponentByType(DefaultIndex.class);
+    index.setCurrentProject(module, getComponentByType(DefaultSensorStorage.class));
+  }
+
 }
@@ -0,0 +1,185 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.sonar.api.resources.Project;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Scans modules of a multi-module project on a bounded pool of threads.
+ * <p/>
+ * Components get their ref when they are indexed, so the filesystems of the modules are indexed by the current
+ * thread, in the order of the sequential scan. That keeps the refs of the analysis report independent of thread scheduling.
+ * The other phases are executed concurrently. A module is analysed once all its sub-modules are analysed, so that
+ * aggregators still run after their children. Modules that are ready at the same time are submitted in the same order
+ * as the sequential scan.
+ * <p/>
+ * Containers stay started between indexing and analysis, so indexing does not run ahead of analysis by more than
+ * {@link #maxIndexedModules()} modules. As sub-modules are indexed before their parent, the oldest of the indexed
+ * modules is always ready to be analysed, so waiting for an analysis to complete can not deadlock.
+ */
+class ParallelModuleScanner {
+
+  static final String THREADS_PROPERTY = "sonar.modules.threads";
+
+  private static final Logger LOG = Loggers.get(ParallelModuleScanner.class);
+
+  private final ProjectScanContainer container;
+  private final int threads;
+
+  ParallelModuleScanner(ProjectScanContainer container, int threads) {
+    this.container = container;
+    this.threads = threads;
+  }
+
+  /**
+   * Maximum number of modules that are indexed but not analysed yet, including the modules being analysed.
+   * Some modules are indexed in advance so that threads don't wait for the indexing of the next module.
+   */
+  int maxIndexedModules() {
+    return 2 * threads;
+  }
+
+  void scan(Project rootProject) {
+    List<Project> modules = Lists.newArrayList();
+    collect(rootProject, modules);
+    LOG.info("Scan {} modules with {} threads", modules.size(), threads);
+
+    // started containers of the modules not analysed yet. They are stopped by the task analysing them.
+    ConcurrentMap<Project, ModuleScanContainer> indexedModules = Maps.newConcurrentMap();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      new Scan(modules, indexedModules, new ExecutorCompletionService<Project>(executor)).execute();
+    } finally {
+      executor.shutdownNow();
+      for (Project module : modules) {
+        ModuleScanContainer notAnalysed = indexedModules.remove(module);
+        if (notAnalysed != null) {
+          notAnalysed.stopComponents(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Modules in the order of the sequential scan: children first.
+   */
+  private static void collect(Project module, List<Project> modules) {
+    for (Project subModule : module.getModules()) {
+      collect(subModule, modules);
+    }
+    modules.add(module);
+  }
+
+  private class Scan {
+    private final List<Project> modules;
+    private final ConcurrentMap<Project, ModuleScanContainer> indexedModules;
+    private final CompletionService<Project> completion;
+    // number of sub-modules not analysed yet, by module
+    private final Map<Project, Integer> pendingChildren = Maps.newHashMap();
+    private int indexed = 0;
+    private int analysed = 0;
+
+    Scan(List<Project> modules, ConcurrentMap<Project, ModuleScanContainer> indexedModules, CompletionService<Project> completion) {
+      this.modules = modules;
+      this.indexedModules = indexedModules;
+      this.completion = completion;
+      for (Project module : modules) {
+        pendingChildren.put(module, module.getModules().size());
+      }
+    }
+
+    void execute() {
+      for (Project module : modules) {
+        while (indexed - analysed >= maxIndexedModules()) {
+          onAnalysed(waitForNext());
+        }
+        indexedModules.put(module, container.index(module));
+        indexed++;
+        if (pendingChildren.get(module) == 0) {
+          submit(module);
+        }
+      }
+      while (analysed < modules.size()) {
+        onAnalysed(waitForNext());
+      }
+    }
+
+    private void onAnalysed(Project module) {
+      analysed++;
+      Project parent = module.getParent();
+      if (parent != null) {
+        int pending = pendingChildren.get(parent) - 1;
+        pendingChildren.put(parent, pending);
+        // parent is indexed after its sub-modules, so it may not be indexed yet
+        if (pending == 0 && indexedModules.containsKey(parent)) {
+          submit(parent);
+        }
+      }
+    }
+
+    private void submit(final Project module) {
+      completion.submit(new Callable<Project>() {
+        @Override
+        public Project call() {
+          ModuleScanContainer moduleContainer = indexedModules.remove(module);
+          if (moduleContainer == null) {
+            throw new IllegalStateException("Module is not indexed: " + module.getKey());
+          }
+          try {
+            container.analyse(moduleContainer);
+          } finally {
+            // threads of the pool are reused for other modules
+            container.unbindModuleFromCurrentThread();
+          }
+          return module;
+        }
+      });
+    }
+
+    private Project waitForNext() {
+      try {
+        Future<Project> future = completion.take();
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while scanning modules", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException("Fail to scan module", e.getCause());
+      }
+    }
+  }
+}
@@ -55,6 +55,7 @@ import org.sonar.batch.issue.tracking.LocalIssueTracking;
 import org.sonar.batch.issue.tracking.ServerIssueRepository;
 import org.sonar.batch.issue.tracking.ServerLineHashesLoader;
 import org.sonar.batch.mediumtest.ScanTaskObservers;
+import org.sonar.batch.phases.PhaseExecutor;
 import org.sonar.batch.phases.PhasesTimeProfiler;
 import org.sonar.batch.profiling.PhasesSumUpTimeProfiler;
 import org.sonar.batch.report.ActiveRulesPublisher;
@@ -82,6 +83,7 @@ import org.sonar.batch.rule.ActiveRulesLoader;
 import org.sonar.batch.rule.ActiveRulesProvider;
 import org.sonar.batch.rule.DefaultActiveRulesLoader;
 import org.sonar.batch.rule.DefaultRulesLoader;
+import org.sonar.batch.rule.LanguageScopedActiveRules;
 import org.sonar.batch.rule.RulesLoader;
 import org.sonar.batch.rule.RulesProvider;
 import org.sonar.batch.scan.filesystem.InputPathCache;
@@ -155,6 +157,7 @@ public class ProjectScanContainer extends ComponentContainer {
       PathResolver.class,
 
       // rules
+      LanguageScopedActiveRules.class,
       new ActiveRulesProvider(),
       new QualityProfileProvider(),
 
@@ -231,7 +234,12 @@ public class ProjectScanContainer extends ComponentContainer {
     analysisMode.printMode();
     LOG.debug("Start recursive analysis of project modules");
     DefaultProjectTree tree = getComponentByType(DefaultProjectTree.class);
-    scanRecursively(tree.getRootProject());
+    int threads = getComponentByType(Settings.class).getInt(ParallelModuleScanner.THREADS_PROPERTY);
+    if (threads > 1 && !tree.getRootProject().getModules().isEmpty()) {
+      new ParallelModuleScanner(this, threads).scan(tree.getRootProject());
+    } else {
+      scanRecursively(tree.getRootProject());
+    }
     if (analysisMode.isMediumTest()) {
       getComponentByType(ScanTaskObservers.class).notifyEndOfScanTask();
     }
@@ -249,6 +257,44 @@ public class ProjectScanContainer extends ComponentContainer {
     new ModuleScanContainer(this, module).execute();
   }
 
+  /**
+   * First part of {@link #scan(Project)}, see {@link PhaseExecutor#index(Project)}. The returned container
+   * is started and must be given to {@link #analyse(ModuleScanContainer)}.
+   */
+  @VisibleForTesting
+  ModuleScanContainer index(Project module) {
+    ModuleScanContainer moduleContainer = new ModuleScanContainer(this, module, true);
+    boolean threw = true;
+    try {
+      moduleContainer.startComponents();
+      threw = false;
+    } finally {
+      if (threw) {
+        moduleContainer.stopComponents(true);
+      }
+    }
+    return moduleContainer;
+  }
+
+  @VisibleForTesting
+  void analyse(ModuleScanContainer moduleContainer) {
+    boolean threw = true;
+    try {
+      moduleContainer.analyse();
+      threw = false;
+    } finally {
+      moduleContainer.stopComponents(threw);
+    }
+  }
+
+  /**
+   * Removes the binding done by {@link #index(Project)} or {@link #analyse(ModuleScanContainer)}, so that threads reused for
+   * other tasks don't keep a reference to the module.
+   */
+  void unbindModuleFromCurrentThread() {
+    getComponentByType(DefaultIndex.class).unbindCurrentProject();
+  }
+
   static class BatchExtensionFilter implements ExtensionMatcher {
     @Override
     public boolean accept(Object extension) {
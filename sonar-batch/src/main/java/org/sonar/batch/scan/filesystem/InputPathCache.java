@@ -19,8 +19,15 @@
  */
 package org.sonar.batch.scan.filesystem;
 
-import com.google.common.collect.Table;
-import com.google.common.collect.TreeBasedTable;
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.fs.InputDir;
 import org.sonar.api.batch.fs.InputFile;
@@ -30,12 +37,15 @@ import javax.annotation.CheckForNull;
 /**
  * Cache of all files and dirs. This cache is shared amongst all project modules. Inclusion and
  * exclusion patterns are already applied.
+ * <p/>
+ * It is thread-safe, so that modules can be scanned concurrently. Files and dirs are sorted by module key and relative path.
  */
 @BatchSide
 public class InputPathCache {
 
-  private final Table<String, String, InputFile> inputFileCache = TreeBasedTable.create();
-  private final Table<String, String, InputDir> inputDirCache = TreeBasedTable.create();
+  private final PathTable<InputFile> inputFileCache = new PathTable<>();
+  private final PathTable<InputDir> inputDirCache = new PathTable<>();
+  private final Set<String> languages = new CopyOnWriteArraySet<>();
 
   public Iterable<InputFile> allFiles() {
     return inputFileCache.values();
@@ -45,6 +55,14 @@ public class InputPathCache {
     return inputDirCache.values();
   }
 
+  /**
+   * Languages of the files indexed so far, in all modules. Languages of removed files are kept, so the size
+   * of the set only grows.
+   */
+  public Set<String> languages() {
+    return Collections.unmodifiableSet(languages);
+  }
+
   public Iterable<InputFile> filesByModule(String moduleKey) {
     return inputFileCache.row(moduleKey).values();
   }
@@ -60,33 +78,62 @@ public class InputPathCache {
   }
 
   public InputPathCache remove(String moduleKey, InputFile inputFile) {
-    inputFileCache.remove(moduleKey, inputFile.relativePath());
+    inputFileCache.row(moduleKey).remove(inputFile.relativePath());
     return this;
   }
 
   public InputPathCache remove(String moduleKey, InputDir inputDir) {
-    inputDirCache.remove(moduleKey, inputDir.relativePath());
+    inputDirCache.row(moduleKey).remove(inputDir.relativePath());
     return this;
   }
 
   public InputPathCache put(String moduleKey, InputFile inputFile) {
-    inputFileCache.put(moduleKey, inputFile.relativePath(), inputFile);
+    inputFileCache.row(moduleKey).put(inputFile.relativePath(), inputFile);
+    String language = inputFile.language();
+    if (language != null) {
+      languages.add(language);
+    }
     return this;
   }
 
   public InputPathCache put(String moduleKey, InputDir inputDir) {
-    inputDirCache.put(moduleKey, inputDir.relativePath(), inputDir);
+    inputDirCache.row(moduleKey).put(inputDir.relativePath(), inputDir);
     return this;
   }
 
   @CheckForNull
   public InputFile getFile(String moduleKey, String relativePath) {
-    return inputFileCache.get(moduleKey, relativePath);
+    return inputFileCache.row(moduleKey).get(relativePath);
   }
 
   @CheckForNull
   public InputDir getDir(String moduleKey, String relativePath) {
-    return inputDirCache.get(moduleKey, relativePath);
+    return inputDirCache.row(moduleKey).get(relativePath);
+  }
+
+  private static class PathTable<V> {
+    private final ConcurrentNavigableMap<String, ConcurrentMap<String, V>> rows = new ConcurrentSkipListMap<>();
+
+    ConcurrentMap<String, V> row(String moduleKey) {
+      ConcurrentMap<String, V> row = rows.get(moduleKey);
+      if (row == null) {
+        ConcurrentMap<String, V> newRow = new ConcurrentSkipListMap<>();
+        row = rows.putIfAbsent(moduleKey, newRow);
+        if (row == null) {
+          row = newRow;
+        }
+      }
+      return row;
+    }
+
+    Iterable<V> values() {
+      return Iterables.concat(Iterables.transform(rows.values(), new Function<Map<String, V>, Iterable<V>>() {
+        @Override
+        public Iterable<V> apply(Map<String, V> row) {
+          return Collections.unmodifiableCollection(row.values());
+        }
+      }));
+    }
   }
 
 }
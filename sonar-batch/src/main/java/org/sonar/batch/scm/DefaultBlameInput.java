@@ -27,10 +27,12 @@ class DefaultBlameInput implements BlameInput {
 
   private FileSystem fs;
   private Iterable<InputFile> filesToBlame;
+  private int parallelism;
 
-  DefaultBlameInput(FileSystem fs, Iterable<InputFile> filesToBlame) {
+  DefaultBlameInput(FileSystem fs, Iterable<InputFile> filesToBlame, int parallelism) {
     this.fs = fs;
     this.filesToBlame = filesToBlame;
+    this.parallelism = parallelism;
   }
 
   @Override
@@ -43,4 +45,9 @@ class DefaultBlameInput implements BlameInput {
     return filesToBlame;
   }
 
+  @Override
+  public int parallelism() {
+    return parallelism;
+  }
+
 }
@@ -21,12 +21,17 @@ package org.sonar.batch.scm;
 
 import com.google.common.base.Preconditions;
 import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 import org.apache.commons.lang.StringUtils;
@@ -49,29 +54,48 @@ class DefaultBlameOutput implements BlameOutput {
   private static final Pattern NON_ASCII_CHARS = Pattern.compile("[^\\x00-\\x7F]");
   private static final Pattern ACCENT_CODES = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
 
+  private static final long SLOW_FILE_THRESHOLD_MS = 1_000L;
+  private static final int SLOWEST_FILES = 10;
+
   private final BatchReportWriter writer;
   private final BatchComponentCache componentCache;
-  private final Set<InputFile> allFilesToBlame = new HashSet<>();
-  private ProgressReport progressReport;
-  private int count;
-  private int total;
+  private final Set<InputFile> allFilesToBlame = Collections.newSetFromMap(new ConcurrentHashMap<InputFile, Boolean>());
+  private final ProgressReport progressReport;
+  private final AtomicInteger count = new AtomicInteger();
+  private final int total;
+  private final long startTime;
+  // time spent by the scanner to process results, in nanoseconds
+  private final AtomicLong processingTime = new AtomicLong();
+  private final PriorityQueue<FileDuration> slowestFiles = new PriorityQueue<>();
 
   DefaultBlameOutput(BatchReportWriter writer, BatchComponentCache componentCache, List<InputFile> filesToBlame) {
     this.writer = writer;
     this.componentCache = componentCache;
     this.allFilesToBlame.addAll(filesToBlame);
-    count = 0;
     total = filesToBlame.size();
+    startTime = System.currentTimeMillis();
     progressReport = new ProgressReport("Report about progress of SCM blame", TimeUnit.SECONDS.toMillis(10));
     progressReport.start(total + " files to be analyzed");
   }
 
+  /**
+   * Can be called concurrently by the threads of the provider. Only the bookkeeping of files
+   * is shared between threads.
+   */
   @Override
-  public synchronized void blameResult(InputFile file, List<BlameLine> lines) {
+  public void blameResult(InputFile file, List<BlameLine> lines) {
     Preconditions.checkNotNull(file);
     Preconditions.checkNotNull(lines);
     Preconditions.checkArgument(allFilesToBlame.contains(file), "It was not expected to blame file " + file.relativePath());
+    long start = System.nanoTime();
+    try {
+      processResult(file, lines);
+    } finally {
+      recordDuration(file, System.nanoTime() - start);
+    }
+  }
 
+  private void processResult(InputFile file, List<BlameLine> lines) {
     if (lines.size() != file.lines()) {
       LOG.debug("Ignoring blame result since provider returned " + lines.size() + " blame lines but file " + file.relativePath() + " has " + file.lines() + " lines");
       return;
@@ -93,9 +117,23 @@ class DefaultBlameOutput implements BlameOutput {
       scmBuilder.addChangesetIndexByLine(changesetId);
     }
     writer.writeComponentChangesets(scmBuilder.build());
-    allFilesToBlame.remove(file);
-    count++;
-    progressReport.message(count + "/" + total + " files analyzed");
+    if (allFilesToBlame.remove(file)) {
+      progressReport.message(count.incrementAndGet() + "/" + total + " files analyzed");
+    }
+  }
+
+  /**
+   * Only the processing of results by the scanner is timed. The time spent by the provider on a file is unknown,
+   * as providers can blame several files at once, or concurrently.
+   */
+  private void recordDuration(InputFile file, long durationNs) {
+    processingTime.addAndGet(durationNs);
+    synchronized (slowestFiles) {
+      slowestFiles.add(new FileDuration(file, TimeUnit.NANOSECONDS.toMillis(durationNs)));
+      if (slowestFiles.size() > SLOWEST_FILES) {
+        slowestFiles.poll();
+      }
+    }
   }
 
   private static void validateLine(BlameLine line) {
@@ -133,7 +171,8 @@ class DefaultBlameOutput implements BlameOutput {
   }
   
   public void finish() {
-    progressReport.stop(count + "/" + total + " files analyzed");
+    progressReport.stop(count.get() + "/" + total + " files analyzed");
+    logSlowestFiles();
     if (!allFilesToBlame.isEmpty()) {
       LOG.warn("Missing blame information for the following files:");
       for (InputFile f : allFilesToBlame) {
@@ -142,4 +181,36 @@ class DefaultBlameOutput implements BlameOutput {
       LOG.warn("This may lead to missing/broken features in SonarQube");
     }
   }
+
+  private void logSlowestFiles() {
+    LOG.debug("Blame took {}ms, including {}ms to process the results of provider", System.currentTimeMillis() - startTime,
+      TimeUnit.NANOSECONDS.toMillis(processingTime.get()));
+    List<FileDuration> durations;
+    synchronized (slowestFiles) {
+      durations = new ArrayList<>(slowestFiles);
+    }
+    Collections.sort(durations, Collections.reverseOrder());
+    for (FileDuration duration : durations) {
+      if (duration.durationMs >= SLOW_FILE_THRESHOLD_MS) {
+        LOG.info("Slow processing of blame result of " + duration.file.relativePath() + ": " + duration.durationMs + "ms");
+      } else if (LOG.isDebugEnabled()) {
+        LOG.debug("Processing of blame result of " + duration.file.relativePath() + ": " + duration.durationMs + "ms");
+      }
+    }
+  }
+
+  private static class FileDuration implements Comparable<FileDuration> {
+    private final InputFile file;
+    private final long durationMs;
+
+    FileDuration(InputFile file, long durationMs) {
+      this.file = file;
+      this.durationMs = durationMs;
+    }
+
+    @Override
+    public int compareTo(FileDuration o) {
+      return Long.compare(durationMs, o.durationMs);
+    }
+  }
 }
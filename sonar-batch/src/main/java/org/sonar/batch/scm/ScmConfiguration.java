@@ -46,6 +46,15 @@ import org.sonar.batch.scan.ImmutableProjectReactor;
     module = false,
     project = false,
     global = false,
+    category = CoreProperties.CATEGORY_SCM),
+  @Property(
+    key = ScmConfiguration.THREADS_KEY,
+    type = PropertyType.INTEGER,
+    name = "Number of threads of SCM blame",
+    description = "Maximum number of files blamed concurrently by the SCM provider, if it supports it. By default the number of available processors.",
+    module = false,
+    project = false,
+    global = false,
     category = CoreProperties.CATEGORY_SCM)
 })
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
@@ -54,6 +63,7 @@ public final class ScmConfiguration implements Startable {
   private static final Logger LOG = Loggers.get(ScmConfiguration.class);
 
   public static final String FORCE_RELOAD_KEY = "sonar.scm.forceReloadAll";
+  public static final String THREADS_KEY = "sonar.scm.threads";
 
   private final ImmutableProjectReactor projectReactor;
   private final Settings settings;
@@ -146,6 +156,14 @@ public final class ScmConfiguration implements Startable {
     return settings.getBoolean(FORCE_RELOAD_KEY);
   }
 
+  /**
+   * Maximum number of files to blame concurrently, always greater than 0
+   */
+  public int threads() {
+    int threads = settings.getInt(THREADS_KEY);
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
   @Override
   public void stop() {
     // Nothing to do
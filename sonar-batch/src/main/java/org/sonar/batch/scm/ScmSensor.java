@@ -19,7 +19,7 @@
  */
 package org.sonar.batch.scm;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.lang.StringUtils;
 import org.sonar.api.CoreProperties;
@@ -79,9 +79,11 @@ public final class ScmSensor implements Sensor {
     if (!filesToBlame.isEmpty()) {
       String key = configuration.provider().key();
       LOG.info("SCM provider for this project is: " + key);
+      int parallelism = Math.min(configuration.threads(), filesToBlame.size());
+      LOG.debug("Files can be blamed by {} thread(s)", parallelism);
       DefaultBlameOutput output = new DefaultBlameOutput(publishReportJob.getWriter(), resourceCache, filesToBlame);
       try {
-        configuration.provider().blameCommand().blame(new DefaultBlameInput(fs, filesToBlame), output);
+        configuration.provider().blameCommand().blame(new DefaultBlameInput(fs, filesToBlame, parallelism), output);
       } finally {
         output.finish();
       }
@@ -92,7 +94,7 @@ public final class ScmSensor implements Sensor {
     if (configuration.forceReloadAll()) {
       LOG.warn("Forced reloading of SCM data for all files.");
     }
-    List<InputFile> filesToBlame = new LinkedList<>();
+    List<InputFile> filesToBlame = new ArrayList<>();
     for (InputFile f : fs.inputFiles(fs.predicates().all())) {
       if (configuration.forceReloadAll() || f.status() != Status.SAME) {
         addIfNotEmpty(filesToBlame, f);
@@ -26,9 +26,8 @@ import javax.annotation.CheckForNull;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.utils.KeyValueFormat;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableList.Builder;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -42,8 +41,10 @@ import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.Metric;
+import org.sonar.api.resources.Directory;
+import org.sonar.api.resources.File;
 import org.sonar.api.resources.Resource;
-import org.sonar.api.utils.WildcardPattern;
+import org.sonar.api.utils.internal.WildcardPatternSet;
 
 public class CoverageExclusions {
 
@@ -52,7 +53,7 @@ public class CoverageExclusions {
   private final Settings settings;
   private final Set<Metric> coverageMetrics;
   private final Set<Metric> byLineMetrics;
-  private Collection<WildcardPattern> resourcePatterns;
+  private WildcardPatternSet resourcePatterns;
 
   private final FileSystem fs;
 
@@ -182,28 +183,31 @@ public class CoverageExclusions {
   }
 
   public boolean hasMatchingPattern(Resource resource) {
+    if (resourcePatterns.isEmpty()) {
+      return false;
+    }
+    if (resource instanceof File || resource instanceof Directory) {
+      // same as Resource#matchFilePattern(String), but all the patterns are applied at once
+      return resourcePatterns.matchAny(resource.getKey());
+    }
     boolean found = false;
-    Iterator<WildcardPattern> iterator = resourcePatterns.iterator();
+    Iterator<String> iterator = resourcePatterns.patterns().iterator();
     while (!found && iterator.hasNext()) {
-      found = resource.matchFilePattern(iterator.next().toString());
+      found = resource.matchFilePattern(iterator.next());
     }
     return found;
   }
 
   @VisibleForTesting
   final void initPatterns() {
-    Builder<WildcardPattern> builder = ImmutableList.builder();
-    for (String pattern : settings.getStringArray(CoreProperties.PROJECT_COVERAGE_EXCLUSIONS_PROPERTY)) {
-      builder.add(WildcardPattern.create(pattern));
-    }
-    resourcePatterns = builder.build();
-    log("Excluded sources for coverage: ", resourcePatterns);
+    resourcePatterns = WildcardPatternSet.create(Arrays.asList(settings.getStringArray(CoreProperties.PROJECT_COVERAGE_EXCLUSIONS_PROPERTY)), Directory.SEPARATOR);
+    log("Excluded sources for coverage: ", resourcePatterns.patterns());
   }
 
-  private static void log(String title, Collection<WildcardPattern> patterns) {
+  private static void log(String title, Collection<String> patterns) {
     if (!patterns.isEmpty()) {
       LOG.info(title);
-      for (WildcardPattern pattern : patterns) {
+      for (String pattern : patterns) {
         LOG.info("  " + pattern);
       }
     }
@@ -25,12 +25,14 @@ import java.io.File;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.batch.bootstrapper.EnvironmentInformation;
+import org.sonar.core.util.DefaultHttpDownloader.BaseHttpDownloader.ConditionalResponse;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -74,6 +76,24 @@ public class ServerClientTest {
     assertThat(newServerClient().downloadString("/<foo>")).isEqualTo("this is the content");
   }
 
+  @Test
+  public void should_request_url_with_entity_tag() throws Exception {
+    startServer(null, "this is the content");
+    ConditionalResponse response = newServerClient().loadIfNoneMatch("/foo", "\"abc\"", null, null);
+
+    // server does not support entity tags
+    assertThat(response.isNotModified()).isFalse();
+    assertThat(response.entityTag()).isNull();
+    assertThat(IOUtils.toString(response.input(), StandardCharsets.UTF_8)).isEqualTo("this is the content");
+  }
+
+  @Test
+  public void should_fail_conditional_request_if_error() throws Exception {
+    startServer(500, null);
+    thrown.expectMessage("Fail to execute request [code=500, url=http://localhost:" + server.getPort() + "/foo]");
+    newServerClient().loadIfNoneMatch("/foo", null, null, null);
+  }
+
   @Test
   public void should_download_file() throws Exception {
     startServer(null, "this is the content");
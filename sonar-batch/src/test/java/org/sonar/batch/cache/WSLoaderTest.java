@@ -23,6 +23,8 @@ import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -39,15 +41,17 @@ import org.sonar.api.utils.HttpDownloader;
 import org.sonar.batch.bootstrap.ServerClient;
 import org.sonar.batch.bootstrap.UserProperties;
 import org.sonar.batch.cache.WSLoader.LoadStrategy;
+import org.sonar.core.util.DefaultHttpDownloader.BaseHttpDownloader.ConditionalResponse;
 import org.sonar.home.cache.PersistentCache;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
-import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -57,6 +61,8 @@ public class WSLoaderTest {
   private final static String ID = "dummy";
   private final static String cacheValue = "cache";
   private final static String serverValue = "server";
+  private final static String ENTITY_TAG_KEY = "etag:" + ID;
+  private final static String ETAG = "\"abc\"";
 
   @Mock
   private ServerClient client;
@@ -69,7 +75,7 @@ public class WSLoaderTest {
   @Before
   public void setUp() throws IOException {
     MockitoAnnotations.initMocks(this);
-    when(client.load(anyString(), anyString(), anyBoolean(), anyInt(), anyInt())).thenReturn(IOUtils.toInputStream(serverValue));
+    when(client.loadIfNoneMatch(anyString(), anyString(), anyInt(), anyInt())).thenReturn(new ConditionalResponse(IOUtils.toInputStream(serverValue), null));
     when(cache.getString(ID)).thenReturn(cacheValue);
     when(client.getURI(anyString())).thenAnswer(new Answer<URI>() {
       @Override
@@ -90,6 +96,8 @@ public class WSLoaderTest {
 
     assertUsedServer(1);
     assertUsedCache(2);
+    assertThat(loader.cacheHits()).isEqualTo(2);
+    assertThat(loader.cacheMisses()).isEqualTo(0);
   }
 
   @Test
@@ -109,15 +117,16 @@ public class WSLoaderTest {
     InputStream is1 = mock(InputStream.class);
     InputStream is2 = mock(InputStream.class);
 
-    when(client.load(anyString(), anyString(), anyBoolean(), anyInt(), anyInt())).thenReturn(is1);
+    when(client.loadIfNoneMatch(anyString(), anyString(), anyInt(), anyInt())).thenReturn(new ConditionalResponse(is1, null));
     when(cache.getStream(ID)).thenReturn(is2);
 
     WSLoader loader = new WSLoader(LoadStrategy.SERVER_FIRST, cache, client, props);
     WSLoaderResult<InputStream> result = loader.loadStream(ID);
     assertThat(result.get()).isEqualTo(is2);
 
-    verify(client).load(anyString(), anyString(), anyBoolean(), anyInt(), anyInt());
-    verify(cache).put(ID, is1);
+    verify(client).loadIfNoneMatch(anyString(), anyString(), anyInt(), anyInt());
+    verify(cache).getString(ENTITY_TAG_KEY);
+    verify(cache).put(eq(ID), any(InputStream.class));
     verify(cache).getStream(ID);
 
     verifyNoMoreInteractions(cache, client);
@@ -128,7 +137,7 @@ public class WSLoaderTest {
     WSLoader loader = new WSLoader(LoadStrategy.SERVER_FIRST, cache, client, props);
     loader.loadStream(ID);
 
-    verify(client).load(anyString(), anyString(), anyBoolean(), anyInt(), eq(60_000));
+    verify(client).loadIfNoneMatch(anyString(), anyString(), anyInt(), eq(60_000));
 
     verifyNoMoreInteractions(client);
   }
@@ -140,7 +149,7 @@ public class WSLoaderTest {
     WSLoader loader = new WSLoader(LoadStrategy.SERVER_FIRST, cache, client, props);
     loader.loadStream(ID);
 
-    verify(client).load(anyString(), anyString(), anyBoolean(), anyInt(), eq(20_000));
+    verify(client).loadIfNoneMatch(anyString(), anyString(), anyInt(), eq(20_000));
 
     verifyNoMoreInteractions(client);
   }
@@ -154,7 +163,7 @@ public class WSLoaderTest {
 
     InOrder inOrder = Mockito.inOrder(client, cache);
     inOrder.verify(cache).getString(ID);
-    inOrder.verify(client).load(eq(ID), anyString(), anyBoolean(), anyInt(), anyInt());
+    inOrder.verify(client).loadIfNoneMatch(eq(ID), anyString(), anyInt(), anyInt());
   }
 
   @Test
@@ -165,7 +174,7 @@ public class WSLoaderTest {
     assertResult(loader.loadString(ID), cacheValue, true);
 
     InOrder inOrder = Mockito.inOrder(client, cache);
-    inOrder.verify(client).load(eq(ID), anyString(), anyBoolean(), anyInt(), anyInt());
+    inOrder.verify(client).loadIfNoneMatch(eq(ID), anyString(), anyInt(), anyInt());
     inOrder.verify(cache).getString(ID);
   }
 
@@ -176,6 +185,68 @@ public class WSLoaderTest {
     verify(cache).put(ID, serverValue.getBytes());
   }
 
+  @Test
+  public void store_entity_tag_of_server_response() throws IOException {
+    when(client.loadIfNoneMatch(anyString(), anyString(), anyInt(), anyInt())).thenReturn(new ConditionalResponse(IOUtils.toInputStream(serverValue), ETAG));
+    WSLoader loader = new WSLoader(LoadStrategy.SERVER_FIRST, cache, client, props);
+
+    assertResult(loader.loadString(ID), serverValue, false);
+
+    verify(cache).put(ID, serverValue.getBytes());
+    verify(cache).put(ENTITY_TAG_KEY, (DigestUtils.md5Hex(serverValue) + "\n" + ETAG).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void reuse_cached_string_if_not_modified() throws IOException {
+    turnCacheUpToDate();
+    WSLoader loader = new WSLoader(LoadStrategy.SERVER_FIRST, cache, client, props);
+
+    // validated by server, so not considered as loaded from cache
+    assertResult(loader.loadString(ID), cacheValue, false);
+
+    verify(client).loadIfNoneMatch(ID, ETAG, 5_000, 60_000);
+    verify(cache, never()).put(anyString(), any(byte[].class));
+    assertThat(loader.cacheHits()).isEqualTo(1);
+    assertThat(loader.cacheMisses()).isEqualTo(0);
+  }
+
+  @Test
+  public void reuse_cached_stream_if_not_modified() throws IOException {
+    turnCacheUpToDate();
+    WSLoader loader = new WSLoader(LoadStrategy.SERVER_FIRST, cache, client, props);
+
+    assertResult(loader.loadStream(ID), cacheValue.getBytes(), false);
+
+    verify(client).loadIfNoneMatch(ID, ETAG, 5_000, 60_000);
+    verify(cache, never()).put(anyString(), any(InputStream.class));
+  }
+
+  @Test
+  public void do_not_send_entity_tag_if_cached_response_was_overwritten() throws IOException {
+    when(cache.getString(ENTITY_TAG_KEY)).thenReturn(DigestUtils.md5Hex("other") + "\n" + ETAG);
+    when(cache.getStream(ID)).thenReturn(IOUtils.toInputStream(cacheValue));
+    WSLoader loader = new WSLoader(LoadStrategy.SERVER_FIRST, cache, client, props);
+
+    assertResult(loader.loadString(ID), serverValue, false);
+
+    verify(client).loadIfNoneMatch(ID, null, 5_000, 60_000);
+  }
+
+  @Test
+  public void reload_if_not_modified_but_evicted_from_cache() throws IOException {
+    turnCacheUpToDate();
+    when(cache.getString(ID)).thenReturn(null);
+    when(client.loadIfNoneMatch(ID, null, 5_000, 60_000)).thenReturn(new ConditionalResponse(IOUtils.toInputStream(serverValue), null));
+    WSLoader loader = new WSLoader(LoadStrategy.SERVER_FIRST, cache, client, props);
+
+    assertResult(loader.loadString(ID), serverValue, false);
+
+    verify(client).loadIfNoneMatch(ID, ETAG, 5_000, 60_000);
+    verify(client).loadIfNoneMatch(ID, null, 5_000, 60_000);
+    assertThat(loader.cacheHits()).isEqualTo(0);
+    assertThat(loader.cacheMisses()).isEqualTo(1);
+  }
+
   @Test
   public void test_throw_cache_exception_fallback() throws IOException {
     turnServerOffline();
@@ -212,7 +283,7 @@ public class WSLoaderTest {
     HttpDownloader.HttpException httpException = mock(HttpDownloader.HttpException.class);
     IllegalStateException wrapperException = new IllegalStateException(httpException);
 
-    when(client.load(anyString(), anyString(), anyBoolean(), anyInt(), anyInt())).thenThrow(wrapperException);
+    when(client.loadIfNoneMatch(anyString(), anyString(), anyInt(), anyInt())).thenThrow(wrapperException);
 
     WSLoader loader = new WSLoader(LoadStrategy.SERVER_FIRST, cache, client, props);
 
@@ -221,6 +292,7 @@ public class WSLoaderTest {
       fail("IllegalStateException expected");
     } catch (IllegalStateException e) {
       // cache should not be used
+      verify(cache).getString(ENTITY_TAG_KEY);
       verifyNoMoreInteractions(cache);
     }
   }
@@ -265,6 +337,7 @@ public class WSLoaderTest {
     assertResult(loader.loadString(ID), serverValue, false);
 
     // should not fetch from cache
+    verify(cache).getString(ENTITY_TAG_KEY);
     verify(cache).put(ID, serverValue.getBytes());
     verifyNoMoreInteractions(cache);
   }
@@ -287,7 +360,7 @@ public class WSLoaderTest {
   }
 
   private void assertUsedServer(int times) {
-    verify(client, times(times)).load(anyString(), anyString(), anyBoolean(), anyInt(), anyInt());
+    verify(client, times(times)).loadIfNoneMatch(anyString(), anyString(), anyInt(), anyInt());
   }
 
   private void assertResult(WSLoaderResult<InputStream> result, byte[] expected, boolean fromCache) throws IOException {
@@ -304,7 +377,18 @@ public class WSLoaderTest {
   }
 
   private void turnServerOffline() {
-    when(client.load(anyString(), anyString(), anyBoolean(), anyInt(), anyInt())).thenThrow(new IllegalStateException());
+    when(client.loadIfNoneMatch(anyString(), anyString(), anyInt(), anyInt())).thenThrow(new IllegalStateException());
+  }
+
+  private void turnCacheUpToDate() throws IOException {
+    when(cache.getString(ENTITY_TAG_KEY)).thenReturn(DigestUtils.md5Hex(cacheValue) + "\n" + ETAG);
+    when(cache.getStream(ID)).thenAnswer(new Answer<InputStream>() {
+      @Override
+      public InputStream answer(InvocationOnMock invocation) throws Throwable {
+        return IOUtils.toInputStream(cacheValue);
+      }
+    });
+    when(client.loadIfNoneMatch(ID, ETAG, 5_000, 60_000)).thenReturn(new ConditionalResponse(null, ETAG));
   }
 
   private void turnCacheEmpty() throws IOException {
@@ -43,8 +43,8 @@ public class CpdSensorTest {
 
   @Before
   public void setUp() throws IOException {
-    sonarEngine = new JavaCpdEngine(null, null, null, null);
-    sonarBridgeEngine = new DefaultCpdEngine(new CpdMappings(), null, null, null, null);
+    sonarEngine = new JavaCpdEngine(null, null, null, null, null);
+    sonarBridgeEngine = new DefaultCpdEngine(new CpdMappings(), null, null, null, null, null);
     settings = new Settings(new PropertyDefinitions(CpdComponents.class));
 
     DefaultFileSystem fs = new DefaultFileSystem(temp.newFolder().toPath());
@@ -39,7 +39,7 @@ public class DefaultCpdEngineTest {
   @Before
   public void init() {
     settings = new Settings();
-    engine = new DefaultCpdEngine(null, null, settings, null, null);
+    engine = new DefaultCpdEngine(null, null, settings, null, null, null);
   }
 
   @Test
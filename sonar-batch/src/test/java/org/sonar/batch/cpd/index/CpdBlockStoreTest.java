@@ -0,0 +1,158 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.cpd.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.SonarPlugin;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.config.Settings;
+import org.sonar.batch.bootstrap.Slf4jLogger;
+import org.sonar.core.platform.PluginInfo;
+import org.sonar.core.platform.PluginRepository;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.home.cache.PersistentCache;
+import org.sonar.home.cache.PersistentCacheBuilder;
+import org.sonar.updatecenter.common.Version;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CpdBlockStoreTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Settings settings;
+  private PersistentCache cache;
+  private PluginRepository pluginRepository = mock(PluginRepository.class);
+  private CpdBlockStore store;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = new PersistentCacheBuilder(new Slf4jLogger())
+      .setSonarHome(temp.newFolder().toPath())
+      .setAreaForProject("http://localhost:9000", "5.3", "foo")
+      .build();
+    settings = new Settings();
+    settings.setProperty(CpdBlockStore.ENABLED_PROPERTY, true);
+    store = new CpdBlockStore(cache, settings, pluginRepository);
+  }
+
+  @Test
+  public void reload_blocks_of_unchanged_file() {
+    DefaultInputFile file = file("abc", InputFile.Status.CHANGED);
+    store.store("java-10", file, Arrays.asList(block(0, 1, 10), block(1, 2, 11)));
+
+    file.setStatus(InputFile.Status.SAME);
+    List<Block> blocks = store.load("java-10", file);
+
+    assertThat(blocks).containsExactly(block(0, 1, 10), block(1, 2, 11));
+    assertThat(blocks.get(1).getResourceId()).isEqualTo("foo:src/Foo.java");
+    assertThat(blocks.get(1).getStartUnit()).isEqualTo(2);
+    assertThat(blocks.get(1).getEndUnit()).isEqualTo(21);
+  }
+
+  @Test
+  public void ignore_stored_blocks_of_changed_file() {
+    DefaultInputFile file = file("abc", InputFile.Status.CHANGED);
+    store.store("java-10", file, Arrays.asList(block(0, 1, 10)));
+
+    assertThat(store.load("java-10", file)).isNull();
+  }
+
+  @Test
+  public void entries_are_scoped_by_namespace_and_hash() {
+    store.store("java-10", file("abc", InputFile.Status.SAME), Arrays.asList(block(0, 1, 10)));
+
+    assertThat(store.load("java-20", file("abc", InputFile.Status.SAME))).isNull();
+    assertThat(store.load("java-10", file("def", InputFile.Status.SAME))).isNull();
+    assertThat(store.load("java-10", file("abc", InputFile.Status.SAME))).hasSize(1);
+  }
+
+  @Test
+  public void replace_blocks_of_previous_version_of_file() throws Exception {
+    store.store("java-10", file("abc", InputFile.Status.CHANGED), Arrays.asList(block(0, 1, 10)));
+    int entries = cache.getDirectory().toFile().list().length;
+    store.store("java-10", file("def", InputFile.Status.CHANGED), Arrays.asList(block(0, 1, 10), block(1, 2, 11)));
+
+    assertThat(store.load("java-10", file("abc", InputFile.Status.SAME))).isNull();
+    assertThat(store.load("java-10", file("def", InputFile.Status.SAME))).hasSize(2);
+    // cache does not grow
+    assertThat(cache.getDirectory().toFile().list()).hasSize(entries);
+  }
+
+  @Test
+  public void namespace_includes_version_of_plugin_providing_tokenizer() {
+    PluginInfo pluginInfo = new PluginInfo("foo").setVersion(Version.create("1.2"));
+    when(pluginRepository.getPluginInfos()).thenReturn(Arrays.asList(pluginInfo));
+    when(pluginRepository.getPluginInstance("foo")).thenReturn(new FakePlugin());
+
+    assertThat(store.namespace("foo-10", FakeTokenizer.class)).startsWith("foo-10-foo-1.2");
+  }
+
+  @Test
+  public void namespace_of_built_in_tokenizer() {
+    when(pluginRepository.getPluginInfos()).thenReturn(Collections.<PluginInfo>emptyList());
+
+    assertThat(store.namespace("java-engine-10", String.class)).startsWith("java-engine-10-sonar-");
+  }
+
+  private static class FakePlugin extends SonarPlugin {
+    @Override
+    public List getExtensions() {
+      return Collections.emptyList();
+    }
+  }
+
+  private static class FakeTokenizer {
+  }
+
+  @Test
+  public void disabled_by_default() {
+    settings.removeProperty(CpdBlockStore.ENABLED_PROPERTY);
+    DefaultInputFile file = file("abc", InputFile.Status.SAME);
+    store.store("java-10", file, Arrays.asList(block(0, 1, 10)));
+
+    assertThat(store.load("java-10", file)).isNull();
+  }
+
+  private static DefaultInputFile file(String hash, InputFile.Status status) {
+    return new DefaultInputFile("foo", "src/Foo.java").setHash(hash).setStatus(status);
+  }
+
+  private static Block block(int index, int startLine, int endLine) {
+    return Block.builder()
+      .setResourceId("foo:src/Foo.java")
+      .setBlockHash(new ByteArray(index * 31L + 7))
+      .setIndexInFile(index)
+      .setLines(startLine, endLine)
+      .setUnit(startLine * 2, endLine * 2 - 1)
+      .build();
+  }
+}
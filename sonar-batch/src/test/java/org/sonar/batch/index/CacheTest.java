@@ -20,6 +20,13 @@
 package org.sonar.batch.index;
 
 import com.google.common.collect.Iterables;
+import com.persistit.Exchange;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Test;
 import org.sonar.batch.index.Cache.Entry;
 
@@ -247,4 +254,71 @@ public class CacheTest extends AbstractCachesTest {
     cache.clear("foo", "bar", "baz");
     cache.clear();
   }
+
+  @Test
+  public void lazy_keys() {
+    Cache<String> cache = caches.createCache("places");
+    cache.put("europe", "france", "paris", "eiffel tower");
+    cache.put("europe", "france", "annecy", "lake");
+    cache.put("europe", "italy", "rome", "colosseum");
+    cache.put("asia", "china", "pekin", "great wall");
+
+    assertThat(cache.keys()).containsExactly("asia", "europe");
+    assertThat(cache.keys("europe")).containsExactly("france", "italy");
+    assertThat(cache.keys("europe", "france")).containsExactly("annecy", "paris");
+    assertThat(cache.keys("america")).isEmpty();
+  }
+
+  @Test
+  public void do_not_reuse_exchanges_released_by_another_thread() throws Exception {
+    final Cache<String> cache = caches.createCache("released");
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Callable<Exchange> getExchange = new Callable<Exchange>() {
+        @Override
+        public Exchange call() {
+          return cache.exchange();
+        }
+      };
+      Exchange beforeRelease = executor.submit(getExchange).get();
+      assertThat(executor.submit(getExchange).get()).isSameAs(beforeRelease);
+
+      cache.release();
+
+      assertThat(executor.submit(getExchange).get()).isNotSameAs(beforeRelease);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void concurrent_accesses() throws Exception {
+    final Cache<String> cache = caches.createCache("concurrent");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        final String thread = "t" + t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int i = 0; i < 1000; i++) {
+              cache.put(thread, i, thread + "-" + i);
+              assertThat(cache.get(thread, i)).isEqualTo(thread + "-" + i);
+            }
+            assertThat(cache.values(thread)).hasSize(1000);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(cache.keySet()).containsOnly("t0", "t1", "t2", "t3");
+    assertThat(cache.values()).hasSize(4000);
+  }
 }
@@ -20,9 +20,11 @@
 package org.sonar.batch.index;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.measures.Measure;
@@ -49,6 +51,9 @@ public class DefaultIndexTest {
   @org.junit.Rule
   public TemporaryFolder temp = new TemporaryFolder();
 
+  @org.junit.Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   DefaultIndex index = null;
   Rule rule;
   RuleFinder ruleFinder;
@@ -85,6 +90,47 @@ public class DefaultIndexTest {
     index.doStart(project);
   }
 
+  @Test
+  public void bind_modules_to_threads() throws Exception {
+    final DefaultSensorStorage storageOfB = mock(DefaultSensorStorage.class);
+    final AtomicReference<Project> projectOfThread = new AtomicReference<>();
+    index.setCurrentProject(moduleA, mock(DefaultSensorStorage.class));
+
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        index.setCurrentProject(moduleB, storageOfB);
+        projectOfThread.set(index.getProject());
+      }
+    };
+    thread.start();
+    thread.join();
+
+    assertThat(projectOfThread.get()).isEqualTo(moduleB);
+    assertThat(index.getProject()).isEqualTo(moduleA);
+  }
+
+  @Test
+  public void fail_if_no_module_is_bound_to_thread() {
+    DefaultIndex notStarted = new DefaultIndex(new BatchComponentCache(), mock(DefaultProjectTree.class), mock(MeasureCache.class), new PathResolver());
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("No module is scanned by thread");
+
+    notStarted.getProject();
+  }
+
+  @Test
+  public void unbind_module_from_thread() {
+    index.setCurrentProject(moduleA, mock(DefaultSensorStorage.class));
+    index.unbindCurrentProject();
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("No module is scanned by thread");
+
+    index.getProject();
+  }
+
   @Test
   public void shouldIndexParentOfDeprecatedFiles() {
     File file = File.create("src/org/foo/Bar.java", null, false);
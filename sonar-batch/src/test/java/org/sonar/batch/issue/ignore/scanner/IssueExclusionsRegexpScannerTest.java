@@ -26,6 +26,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.sonar.api.batch.fs.internal.FileMetadata;
 import org.sonar.batch.issue.ignore.pattern.IssueExclusionPatternInitializer;
 import org.sonar.batch.issue.ignore.pattern.IssuePattern;
 import org.sonar.batch.issue.ignore.pattern.LineRange;
@@ -33,9 +34,12 @@ import org.sonar.batch.issue.ignore.pattern.PatternMatcher;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Set;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -166,4 +170,39 @@ public class IssueExclusionsRegexpScannerTest {
     verifyNoMoreInteractions(patternsInitializer);
   }
 
+  @Test
+  public void shouldReuseResultOfFileReadDuringIndexing() throws Exception {
+    File file = new File(Resources.getResource(
+      "org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/file-with-double-regexp.txt").toURI());
+    FileMetadata.readFile(file, UTF_8, regexpScanner.createCharHandler(javaFile));
+
+    // file is not read again
+    regexpScanner.scan(javaFile, new File("unknown"), UTF_8);
+
+    Set<LineRange> lineRanges = Sets.newHashSet();
+    lineRanges.add(new LineRange(21, 25));
+    verify(patternMatcher, times(1)).addPatternToExcludeLines(javaFile, lineRanges);
+  }
+
+  @Test
+  public void shouldCombineAllFilePatterns() throws Exception {
+    IssuePattern otherAllFilePattern = mock(IssuePattern.class);
+    when(otherAllFilePattern.getAllFileRegexp()).thenReturn("@(?i)generated");
+    when(patternsInitializer.getAllFilePatterns()).thenReturn(Arrays.asList(otherAllFilePattern, allFilePattern));
+    regexpScanner = new IssueExclusionsRegexpScanner(patternsInitializer);
+
+    regexpScanner.scan(javaFile, new File(Resources.getResource(
+      "org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/file-with-single-regexp.txt").toURI()), UTF_8);
+
+    verify(patternMatcher, times(1)).addPatternToExcludeResource(javaFile);
+  }
+
+  @Test
+  public void shouldNotCreateHandlerWithoutRegexps() {
+    when(patternsInitializer.getAllFilePatterns()).thenReturn(Collections.<IssuePattern>emptyList());
+    when(patternsInitializer.getBlockPatterns()).thenReturn(Collections.<IssuePattern>emptyList());
+
+    assertThat(new IssueExclusionsRegexpScanner(patternsInitializer).createCharHandler(javaFile)).isNull();
+  }
+
 }
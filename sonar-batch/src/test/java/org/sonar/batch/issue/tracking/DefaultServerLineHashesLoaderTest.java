@@ -19,24 +19,29 @@
  */
 package org.sonar.batch.issue.tracking;
 
-import org.sonar.batch.cache.WSLoader.LoadStrategy;
-import org.sonar.batch.cache.WSLoaderResult;
-import org.sonar.batch.cache.WSLoader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
 import org.apache.commons.lang.mutable.MutableBoolean;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.sonar.api.batch.bootstrap.ProjectKey;
 import org.sonar.api.utils.HttpDownloader;
-
-import java.net.URI;
-import java.net.URISyntaxException;
-
-import static org.mockito.Matchers.any;
+import org.sonar.batch.cache.WSLoader;
+import org.sonar.batch.cache.WSLoader.LoadStrategy;
+import org.sonar.batch.cache.WSLoaderResult;
+import org.sonar.batch.protocol.input.BatchInput.FileLineHashes;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -45,16 +50,21 @@ public class DefaultServerLineHashesLoaderTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  WSLoader wsLoader = mock(WSLoader.class);
+  ProjectKey projectKey = mock(ProjectKey.class);
+
   @Before
   public void before() {
+    when(projectKey.get()).thenReturn("myproject");
+    // servers without bulk download
+    when(wsLoader.loadStream(anyString())).thenThrow(new HttpDownloader.HttpException(URI.create(""), 404));
   }
 
   @Test
   public void should_download_source_from_ws_if_preview_mode() {
-    WSLoader wsLoader = mock(WSLoader.class);
     when(wsLoader.loadString(anyString(), any(LoadStrategy.class))).thenReturn(new WSLoaderResult<>("ae12\n\n43fb", true));
 
-    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(wsLoader);
+    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(wsLoader, projectKey);
 
     String[] hashes = lastSnapshots.getLineHashes("myproject:org/foo/Bar.c", null);
     assertThat(hashes).containsOnly("ae12", "", "43fb");
@@ -63,27 +73,50 @@ public class DefaultServerLineHashesLoaderTest {
 
   @Test
   public void should_download_source_with_space_from_ws_if_preview_mode() {
-    WSLoader server = mock(WSLoader.class);
-    when(server.loadString(anyString(), any(LoadStrategy.class))).thenReturn(new WSLoaderResult<>("ae12\n\n43fb", true));
+    when(wsLoader.loadString(anyString(), any(LoadStrategy.class))).thenReturn(new WSLoaderResult<>("ae12\n\n43fb", true));
 
-    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(server);
+    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(wsLoader, projectKey);
 
     MutableBoolean fromCache = new MutableBoolean();
     String[] hashes = lastSnapshots.getLineHashes("myproject:org/foo/Foo Bar.c", fromCache);
     assertThat(fromCache.booleanValue()).isTrue();
     assertThat(hashes).containsOnly("ae12", "", "43fb");
-    verify(server).loadString("/api/sources/hash?key=myproject%3Aorg%2Ffoo%2FFoo+Bar.c", LoadStrategy.CACHE_FIRST);
+    verify(wsLoader).loadString("/api/sources/hash?key=myproject%3Aorg%2Ffoo%2FFoo+Bar.c", LoadStrategy.CACHE_FIRST);
   }
 
   @Test
   public void should_fail_to_download_source_from_ws() throws URISyntaxException {
-    WSLoader server = mock(WSLoader.class);
-    when(server.loadString(anyString(), any(LoadStrategy.class))).thenThrow(new HttpDownloader.HttpException(new URI(""), 500));
+    when(wsLoader.loadString(anyString(), any(LoadStrategy.class))).thenThrow(new HttpDownloader.HttpException(new URI(""), 500));
 
-    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(server);
+    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(wsLoader, projectKey);
 
     thrown.expect(HttpDownloader.HttpException.class);
     lastSnapshots.getLineHashes("foo", null);
   }
 
+  @Test
+  public void should_download_line_hashes_of_all_files_at_once() throws IOException {
+    wsLoader = mock(WSLoader.class);
+    when(wsLoader.loadStream("/batch/line_hashes?key=myproject")).thenReturn(new WSLoaderResult<>(lineHashes("myproject:Bar.c", "ae12\n43fb"), false));
+    when(wsLoader.loadString(anyString(), any(LoadStrategy.class))).thenReturn(new WSLoaderResult<>("12ab", true));
+
+    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(wsLoader, projectKey);
+
+    MutableBoolean fromCache = new MutableBoolean(true);
+    assertThat(lastSnapshots.getLineHashes("myproject:Bar.c", fromCache)).containsExactly("ae12", "43fb");
+    assertThat(fromCache.booleanValue()).isFalse();
+    verify(wsLoader, never()).loadString(anyString(), any(LoadStrategy.class));
+
+    // file unknown in bulk response
+    assertThat(lastSnapshots.getLineHashes("myproject:Foo.c", fromCache)).containsExactly("12ab");
+    verify(wsLoader).loadString("/api/sources/hash?key=myproject%3AFoo.c", LoadStrategy.CACHE_FIRST);
+    verify(wsLoader).loadStream(anyString());
+  }
+
+  private static InputStream lineHashes(String fileKey, String hashes) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    FileLineHashes.newBuilder().setFileKey(fileKey).setLineHashes(hashes).build().writeDelimitedTo(output);
+    return new ByteArrayInputStream(output.toByteArray());
+  }
+
 }
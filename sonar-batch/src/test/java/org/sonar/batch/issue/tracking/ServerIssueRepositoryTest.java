@@ -0,0 +1,107 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.issue.tracking;
+
+import com.google.common.base.Function;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.batch.index.AbstractCachesTest;
+import org.sonar.batch.index.BatchComponent;
+import org.sonar.batch.index.BatchComponentCache;
+import org.sonar.batch.protocol.input.BatchInput.ServerIssue;
+import org.sonar.batch.repository.ServerIssuesLoader;
+import org.sonar.batch.scan.ImmutableProjectReactor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ServerIssueRepositoryTest extends AbstractCachesTest {
+
+  private ServerIssuesLoader loader = mock(ServerIssuesLoader.class);
+  private ImmutableProjectReactor reactor = mock(ImmutableProjectReactor.class);
+  private BatchComponentCache componentCache = mock(BatchComponentCache.class);
+  private BatchComponent file = mock(BatchComponent.class);
+  private ServerIssueRepository repository;
+
+  @Before
+  public void setUp() {
+    repository = new ServerIssueRepository(caches, loader, reactor, componentCache);
+    when(reactor.getRoot()).thenReturn(ProjectDefinition.create().setKey("struts"));
+    when(file.batchId()).thenReturn(2);
+    when(componentCache.get("struts:src/Foo.java")).thenReturn(file);
+  }
+
+  @Test
+  public void group_issues_by_component_sorted_by_key() {
+    loadIssues(
+      issue("b", "src/Foo.java"),
+      issue("c", "src/Deleted.java"),
+      issue("a", "src/Foo.java"));
+
+    assertThat(repository.byComponent(file)).extracting("key").containsExactly("a", "b");
+    assertThat(repository.issuesOnMissingComponents()).extracting("key").containsExactly("c");
+  }
+
+  @Test
+  public void resolve_component_once_per_file() {
+    loadIssues(
+      issue("a", "src/Foo.java"),
+      issue("b", "src/Foo.java"),
+      issue("c", "src/Deleted.java"),
+      issue("d", "src/Deleted.java"));
+
+    assertThat(repository.byComponent(file)).hasSize(2);
+    assertThat(repository.issuesOnMissingComponents()).hasSize(2);
+    verify(componentCache, times(1)).get("struts:src/Foo.java");
+    verify(componentCache, times(1)).get("struts:src/Deleted.java");
+  }
+
+  @Test
+  public void no_issues_if_not_loaded() {
+    assertThat(repository.byComponent(file)).isEmpty();
+    assertThat(repository.issuesOnMissingComponents()).isEmpty();
+  }
+
+  private void loadIssues(final ServerIssue... issues) {
+    when(loader.load(eq("struts"), any(Function.class))).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) {
+        Function<ServerIssue, Void> consumer = (Function<ServerIssue, Void>) invocation.getArguments()[1];
+        for (ServerIssue issue : issues) {
+          consumer.apply(issue);
+        }
+        return false;
+      }
+    });
+    repository.load();
+  }
+
+  private static ServerIssue issue(String key, String path) {
+    return ServerIssue.newBuilder().setKey(key).setModuleKey("struts").setPath(path).build();
+  }
+}
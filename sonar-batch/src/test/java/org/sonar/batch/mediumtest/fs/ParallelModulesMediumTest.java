@@ -0,0 +1,101 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.mediumtest.fs;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.batch.mediumtest.BatchMediumTester;
+import org.sonar.batch.mediumtest.TaskResult;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.xoo.XooPlugin;
+import org.sonar.xoo.rule.XooRulesDefinition;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelModulesMediumTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  public BatchMediumTester tester = BatchMediumTester.builder()
+    .registerPlugin("xoo", new XooPlugin())
+    .addDefaultQProfile("xoo", "Sonar Way")
+    .addRules(new XooRulesDefinition())
+    .addActiveRule("xoo", "OneIssuePerLine", null, "One issue per line", "MAJOR", "OneIssuePerLine.internal", "xoo")
+    .build();
+
+  @Before
+  public void prepare() {
+    tester.start();
+  }
+
+  @After
+  public void stop() {
+    tester.stop();
+  }
+
+  @Test
+  public void report_of_parallel_scan_is_the_same_as_sequential_scan() throws Exception {
+    ReportContent sequential = scan("1");
+    ReportContent parallel = scan("3");
+
+    assertThat(sequential.components).hasSize(15);
+    assertThat(sequential.issues).hasSize(4);
+    assertThat(parallel.components).isEqualTo(sequential.components);
+    assertThat(parallel.measures).isEqualTo(sequential.measures);
+    assertThat(parallel.issues).isEqualTo(sequential.issues);
+  }
+
+  private ReportContent scan(String moduleThreads) throws Exception {
+    File projectDir = new File(ParallelModulesMediumTest.class.getResource("/mediumtest/xoo/multi-modules-sample").toURI());
+    File tmpDir = temp.newFolder();
+    FileUtils.copyDirectory(projectDir, tmpDir);
+
+    TaskResult result = tester
+      .newScanTask(new File(tmpDir, "sonar-project.properties"))
+      .property("sonar.modules.threads", moduleThreads)
+      .start();
+
+    ReportContent content = new ReportContent();
+    content.measures.putAll(result.allMeasures());
+    for (String componentKey : content.measures.keySet()) {
+      content.components.put(componentKey, result.getReportComponent(componentKey));
+    }
+    for (InputFile inputFile : result.inputFiles()) {
+      content.issues.put(inputFile.relativePath(), result.issuesFor(inputFile));
+    }
+    return content;
+  }
+
+  private static class ReportContent {
+    private final Map<String, BatchReport.Component> components = new HashMap<>();
+    private final Map<String, List<BatchReport.Measure>> measures = new HashMap<>();
+    private final Map<String, List<BatchReport.Issue>> issues = new HashMap<>();
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.phases;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.batch.Sensor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.sensor.SensorDescriptor;
+import org.sonar.api.batch.sensor.ThreadSafeSensor;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.batch.bootstrap.BatchExtensionDictionnary;
+import org.sonar.batch.events.BatchEvent;
+import org.sonar.batch.events.EventBus;
+import org.sonar.batch.sensor.SensorOptimizer;
+import org.sonar.batch.sensor.SensorWrapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SensorsExecutorTest {
+
+  private Project project = new Project("project");
+  private BatchExtensionDictionnary selector = mock(BatchExtensionDictionnary.class);
+  private SensorContext context = mock(SensorContext.class);
+  private Settings settings = new Settings();
+  private EventBus eventBus = mock(EventBus.class);
+  private List<String> executed = new CopyOnWriteArrayList<>();
+  private SensorsExecutor executor;
+
+  @Before
+  public void setUp() {
+    executor = new SensorsExecutor(selector, project, eventBus, settings);
+  }
+
+  @Test
+  public void execute_sensors_one_after_another_by_default() {
+    select(wrap(new SlowSensor()), new DeprecatedSensor(), wrap(new FastSensor()));
+
+    executor.execute(context);
+
+    assertThat(executed).containsExactly("slow", "deprecated", "fast");
+  }
+
+  @Test
+  public void execute_thread_safe_sensors_concurrently() {
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 4);
+    // each sensor waits for the other one to be started
+    CountDownLatch started = new CountDownLatch(2);
+    select(wrap(new RendezVousSensor("first", started)), wrap(new RendezVousSensor("second", started)));
+
+    executor.execute(context);
+
+    assertThat(executed).containsOnly("first", "second");
+  }
+
+  @Test
+  public void fire_execution_events_of_concurrent_sensors() {
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 4);
+    SensorWrapper slow = wrap(new SlowSensor());
+    SensorWrapper fast = wrap(new FastSensor());
+    select(slow, fast);
+
+    executor.execute(context);
+
+    ArgumentCaptor<BatchEvent> events = ArgumentCaptor.forClass(BatchEvent.class);
+    verify(eventBus, times(6)).fireEvent(events.capture());
+    List<String> executionEvents = new ArrayList<>();
+    for (BatchEvent event : events.getAllValues()) {
+      if (event instanceof SensorExecutionEvent) {
+        SensorExecutionEvent executionEvent = (SensorExecutionEvent) event;
+        executionEvents.add((executionEvent.isStart() ? "start " : "end ") + (executionEvent.getSensor() == slow ? "slow" : "fast"));
+      }
+    }
+    assertThat(executionEvents).containsOnly("start slow", "end slow", "start fast", "end fast");
+    assertThat(executionEvents.indexOf("end slow")).isGreaterThan(executionEvents.indexOf("start slow"));
+    assertThat(executionEvents.indexOf("end fast")).isGreaterThan(executionEvents.indexOf("start fast"));
+  }
+
+  @Test
+  public void honor_declared_dependencies() {
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 4);
+    select(wrap(new DependentSensor()), wrap(new SlowSensor()), wrap(new FastSensor()));
+
+    executor.execute(context);
+
+    assertThat(executed).containsOnly("fast", "slow", "dependent");
+    assertThat(executed.indexOf("dependent")).isGreaterThan(executed.indexOf("slow"));
+  }
+
+  @Test
+  public void deprecated_sensors_are_executed_alone() {
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 4);
+    select(wrap(new SlowSensor()), new DeprecatedSensor(), wrap(new FastSensor()));
+
+    executor.execute(context);
+
+    assertThat(executed).containsExactly("slow", "deprecated", "fast");
+  }
+
+  @Test
+  public void sensors_not_declared_thread_safe_are_executed_alone() {
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 4);
+    select(wrap(new SlowSensor()), wrap(new NotThreadSafeSensor()), wrap(new FastSensor()));
+
+    executor.execute(context);
+
+    assertThat(executed).containsExactly("slow", "not thread-safe", "fast");
+  }
+
+  private void select(Sensor... sensors) {
+    when(selector.select(Sensor.class, project, true, null)).thenReturn(Arrays.asList(sensors));
+  }
+
+  private static SensorWrapper wrap(org.sonar.api.batch.sensor.Sensor sensor) {
+    return new SensorWrapper(sensor, mock(org.sonar.api.batch.sensor.SensorContext.class), mock(SensorOptimizer.class));
+  }
+
+  private abstract class RecordingSensor implements ThreadSafeSensor {
+    private final String name;
+    private final long sleepMs;
+
+    RecordingSensor(String name, long sleepMs) {
+      this.name = name;
+      this.sleepMs = sleepMs;
+    }
+
+    @Override
+    public void describe(SensorDescriptor descriptor) {
+      descriptor.name(name);
+    }
+
+    @Override
+    public Class<?>[] dependsOnSensors() {
+      return new Class<?>[0];
+    }
+
+    @Override
+    public void execute(org.sonar.api.batch.sensor.SensorContext context) {
+      try {
+        Thread.sleep(sleepMs);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      executed.add(name);
+    }
+  }
+
+  private class RendezVousSensor extends RecordingSensor {
+    private final CountDownLatch started;
+
+    RendezVousSensor(String name, CountDownLatch started) {
+      super(name, 0);
+      this.started = started;
+    }
+
+    @Override
+    public void execute(org.sonar.api.batch.sensor.SensorContext context) {
+      started.countDown();
+      try {
+        if (!started.await(10, TimeUnit.SECONDS)) {
+          throw new IllegalStateException("Sensors are not executed concurrently");
+        }
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      super.execute(context);
+    }
+  }
+
+  private class SlowSensor extends RecordingSensor {
+    SlowSensor() {
+      super("slow", 500);
+    }
+  }
+
+  private class FastSensor extends RecordingSensor {
+    FastSensor() {
+      super("fast", 0);
+    }
+  }
+
+  private class DependentSensor extends RecordingSensor {
+    DependentSensor() {
+      super("dependent", 0);
+    }
+
+    @Override
+    public Class<?>[] dependsOnSensors() {
+      return new Class<?>[] {SlowSensor.class};
+    }
+  }
+
+  private class NotThreadSafeSensor implements org.sonar.api.batch.sensor.Sensor {
+    @Override
+    public void describe(SensorDescriptor descriptor) {
+      descriptor.name("not thread-safe");
+    }
+
+    @Override
+    public void execute(org.sonar.api.batch.sensor.SensorContext context) {
+      executed.add("not thread-safe");
+    }
+  }
+
+  private class DeprecatedSensor implements Sensor {
+    @Override
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+
+    @Override
+    public void analyse(Project module, SensorContext context) {
+      executed.add("deprecated");
+    }
+  }
+}
@@ -20,10 +20,14 @@
 package org.sonar.batch.profiling;
 
 import com.google.common.collect.Maps;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -48,10 +52,14 @@ import org.sonar.api.batch.events.SensorsPhaseHandler;
 import org.sonar.api.batch.events.SensorsPhaseHandler.SensorsPhaseEvent;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.text.JsonWriter;
 import org.sonar.batch.bootstrap.GlobalProperties;
+import org.sonar.batch.cache.WSLoader;
 import org.sonar.batch.events.BatchStepEvent;
+import org.sonar.batch.index.DefaultIndex;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
@@ -61,14 +69,20 @@ public class PhasesSumUpTimeProfilerTest {
   public TemporaryFolder temp = new TemporaryFolder();
 
   private MockedSystem clock;
+  private WSLoader wsLoader;
+  private DefaultIndex index;
+  private File workDir;
   private PhasesSumUpTimeProfiler profiler;
 
   @Before
   public void prepare() throws Exception {
     clock = new MockedSystem();
     Map<String, String> props = Maps.newHashMap();
-    props.put(CoreProperties.WORKING_DIRECTORY, temp.newFolder().getAbsolutePath());
-    profiler = new PhasesSumUpTimeProfiler(clock, new GlobalProperties(props));
+    workDir = temp.newFolder();
+    props.put(CoreProperties.WORKING_DIRECTORY, workDir.getAbsolutePath());
+    wsLoader = mock(WSLoader.class);
+    index = mock(DefaultIndex.class);
+    profiler = new PhasesSumUpTimeProfiler(clock, new GlobalProperties(props), wsLoader, index);
   }
 
   @Test
@@ -79,10 +93,11 @@ public class PhasesSumUpTimeProfilerTest {
 
     fakeAnalysis(profiler, project);
 
-    assertThat(profiler.currentModuleProfiling.getProfilingPerPhase(Phase.INIT).getProfilingPerItem(new FakeInitializer()).totalTime()).isEqualTo(7L);
-    assertThat(profiler.currentModuleProfiling.getProfilingPerPhase(Phase.SENSOR).getProfilingPerItem(new FakeSensor()).totalTime()).isEqualTo(10L);
-    assertThat(profiler.currentModuleProfiling.getProfilingPerPhase(Phase.POSTJOB).getProfilingPerItem(new FakePostJob()).totalTime()).isEqualTo(30L);
-    assertThat(profiler.currentModuleProfiling.getProfilingPerBatchStep("Free memory").totalTime()).isEqualTo(9L);
+    ModuleProfiling moduleProfiling = profiler.modulesProfilings.get(project);
+    assertThat(moduleProfiling.getProfilingPerPhase(Phase.INIT).getProfilingPerItem(new FakeInitializer()).totalTime()).isEqualTo(7L);
+    assertThat(moduleProfiling.getProfilingPerPhase(Phase.SENSOR).getProfilingPerItem(new FakeSensor()).totalTime()).isEqualTo(10L);
+    assertThat(moduleProfiling.getProfilingPerPhase(Phase.POSTJOB).getProfilingPerItem(new FakePostJob()).totalTime()).isEqualTo(30L);
+    assertThat(moduleProfiling.getProfilingPerBatchStep("Free memory").totalTime()).isEqualTo(9L);
   }
 
   @Test
@@ -96,15 +111,122 @@ public class PhasesSumUpTimeProfilerTest {
     fakeAnalysis(profiler, moduleB);
     fakeAnalysis(profiler, project);
 
-    assertThat(profiler.currentModuleProfiling.getProfilingPerPhase(Phase.INIT).getProfilingPerItem(new FakeInitializer()).totalTime()).isEqualTo(7L);
-    assertThat(profiler.currentModuleProfiling.getProfilingPerPhase(Phase.SENSOR).getProfilingPerItem(new FakeSensor()).totalTime()).isEqualTo(10L);
-    assertThat(profiler.currentModuleProfiling.getProfilingPerPhase(Phase.POSTJOB).getProfilingPerItem(new FakePostJob()).totalTime()).isEqualTo(30L);
+    ModuleProfiling moduleProfiling = profiler.modulesProfilings.get(project);
+    assertThat(moduleProfiling.getProfilingPerPhase(Phase.INIT).getProfilingPerItem(new FakeInitializer()).totalTime()).isEqualTo(7L);
+    assertThat(moduleProfiling.getProfilingPerPhase(Phase.SENSOR).getProfilingPerItem(new FakeSensor()).totalTime()).isEqualTo(10L);
+    assertThat(moduleProfiling.getProfilingPerPhase(Phase.POSTJOB).getProfilingPerItem(new FakePostJob()).totalTime()).isEqualTo(30L);
 
     assertThat(profiler.totalProfiling.getProfilingPerPhase(Phase.INIT).getProfilingPerItem(new FakeInitializer()).totalTime()).isEqualTo(21L);
     assertThat(profiler.totalProfiling.getProfilingPerPhase(Phase.SENSOR).getProfilingPerItem(new FakeSensor()).totalTime()).isEqualTo(30L);
     assertThat(profiler.totalProfiling.getProfilingPerPhase(Phase.POSTJOB).getProfilingPerItem(new FakePostJob()).totalTime()).isEqualTo(90L);
   }
 
+  @Test
+  public void profile_modules_analysed_concurrently() {
+    Project moduleA = spy(new Project("moduleA"));
+    when(moduleA.isRoot()).thenReturn(false);
+    Project moduleB = spy(new Project("moduleB"));
+    when(moduleB.isRoot()).thenReturn(false);
+    Sensor sensor = new FakeSensor();
+
+    profiler.onProjectAnalysis(projectEvent(moduleA, true));
+    profiler.onProjectAnalysis(projectEvent(moduleB, true));
+    when(index.getProject()).thenReturn(moduleA);
+    profiler.onSensorsPhase(sensorsEvent(true));
+    profiler.onSensorExecution(sensorEvent(sensor, true));
+    when(index.getProject()).thenReturn(moduleB);
+    profiler.onSensorsPhase(sensorsEvent(true));
+    profiler.onSensorExecution(sensorEvent(sensor, true));
+    clock.sleep(10);
+    profiler.onSensorExecution(sensorEvent(sensor, false));
+    profiler.onSensorsPhase(sensorsEvent(false));
+    clock.sleep(5);
+    when(index.getProject()).thenReturn(moduleA);
+    profiler.onSensorExecution(sensorEvent(sensor, false));
+    profiler.onSensorsPhase(sensorsEvent(false));
+    profiler.onProjectAnalysis(projectEvent(moduleB, false));
+    profiler.onProjectAnalysis(projectEvent(moduleA, false));
+
+    assertThat(profiler.modulesProfilings.get(moduleA).getProfilingPerPhase(Phase.SENSOR).getProfilingPerItem(sensor).totalTime()).isEqualTo(15L);
+    assertThat(profiler.modulesProfilings.get(moduleB).getProfilingPerPhase(Phase.SENSOR).getProfilingPerItem(sensor).totalTime()).isEqualTo(10L);
+    assertThat(profiler.totalProfiling.getProfilingPerPhase(Phase.SENSOR).getProfilingPerItem(sensor).totalTime()).isEqualTo(25L);
+  }
+
+  @Test
+  public void dump_json_profiling() throws Exception {
+    final Project project = mockProject("my:project", true);
+    when(project.getModules()).thenReturn(Collections.<Project>emptyList());
+    when(wsLoader.cacheHits()).thenReturn(3);
+    when(wsLoader.cacheMisses()).thenReturn(2);
+
+    fakeAnalysis(profiler, project);
+
+    String json = FileUtils.readFileToString(new File(workDir, "profiling/myProject-profiler.json"), StandardCharsets.UTF_8);
+    assertThat(json).startsWith("{\"module\":\"myProject\"");
+    assertThat(json).contains("{\"phase\":\"Sensors\",\"totalTimeMs\":10,");
+    assertThat(json).contains("{\"name\":\"FakeSensor\",\"totalTimeMs\":10,");
+    assertThat(json).contains("{\"name\":\"Free memory\",\"totalTimeMs\":9,");
+    assertThat(json).contains("\"wsCache\":{\"hits\":3,\"misses\":2}");
+  }
+
+  @Test
+  public void web_services_are_not_reported_by_sub_modules() {
+    final Project module = mockProject("moduleA", false);
+
+    fakeAnalysis(profiler, module);
+
+    StringWriter writer = new StringWriter();
+    profiler.writeJson("moduleA", profiler.modulesProfilings.get(module), false, writer);
+    assertThat(writer.toString()).contains("\"phases\":[").doesNotContain("wsCache");
+  }
+
+  @Test
+  public void resource_usage_of_phase_is_the_sum_of_the_ones_of_its_items() {
+    PhaseProfiling phase = PhaseProfiling.create(clock, Phase.SENSOR);
+    phase.newItemProfiling("sensorA");
+    phase.newItemProfiling("sensorB");
+    phase.getProfilingPerItem("sensorA").setResourceUsage(3_000_000L, 100L);
+    phase.getProfilingPerItem("sensorB").setResourceUsage(2_000_000L, 200L);
+
+    phase.stop();
+
+    assertThat(phase.isResourceUsageMeasured()).isTrue();
+    assertThat(phase.cpuTime()).isEqualTo(5_000_000L);
+    assertThat(phase.allocatedBytes()).isEqualTo(300L);
+  }
+
+  @Test
+  public void resource_usage_is_not_measured_when_stopped_by_another_thread() throws Exception {
+    final ItemProfiling step = new ItemProfiling(clock, "step");
+    final ModuleProfiling module = new ModuleProfiling(null, clock);
+    module.addPhaseProfiling(Phase.SENSOR);
+    module.getProfilingPerPhase(Phase.SENSOR).newItemProfiling("sensor");
+    module.getProfilingPerPhase(Phase.SENSOR).getProfilingPerItem("sensor").setResourceUsage(1_000_000L, 10L);
+
+    Thread otherThread = new Thread() {
+      @Override
+      public void run() {
+        step.stop();
+        module.getProfilingPerPhase(Phase.SENSOR).stop();
+        module.stop();
+      }
+    };
+    otherThread.start();
+    otherThread.join();
+
+    assertThat(step.isResourceUsageMeasured()).isFalse();
+    StringWriter writer = new StringWriter();
+    JsonWriter json = JsonWriter.of(writer);
+    step.writeJson(json);
+    json.close();
+    assertThat(writer.toString()).isEqualTo("{\"name\":\"step\",\"totalTimeMs\":0}");
+
+    // module and phase are measured from their items
+    assertThat(module.isResourceUsageMeasured()).isTrue();
+    assertThat(module.cpuTime()).isEqualTo(1_000_000L);
+    assertThat(module.allocatedBytes()).isEqualTo(10L);
+  }
+
   @Test
   public void testDisplayTimings() {
     AbstractTimeProfiling profiling = new AbstractTimeProfiling(System2.INSTANCE) {
@@ -144,6 +266,7 @@ public class PhasesSumUpTimeProfilerTest {
   }
 
   private void fakeAnalysis(PhasesSumUpTimeProfiler profiler, final Project module) {
+    when(index.getProject()).thenReturn(module);
     // Start of moduleA
     profiler.onProjectAnalysis(projectEvent(module, true));
     initializerPhase(profiler);
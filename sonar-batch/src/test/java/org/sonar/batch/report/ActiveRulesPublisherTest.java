@@ -34,9 +34,12 @@ import org.sonar.batch.protocol.Constants;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.rule.LanguageScopedActiveRules;
 import org.sonar.core.util.CloseableIterator;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class ActiveRulesPublisherTest {
 
@@ -51,7 +54,10 @@ public class ActiveRulesPublisherTest {
     NewActiveRule ar = new ActiveRulesBuilder().create(RuleKey.of("java", "S001")).setSeverity("BLOCKER").setParam("p1", "v1");
     ActiveRules activeRules = new DefaultActiveRules(Arrays.asList(ar));
 
-    ActiveRulesPublisher underTest = new ActiveRulesPublisher(activeRules);
+    LanguageScopedActiveRules languageScopedActiveRules = mock(LanguageScopedActiveRules.class);
+    when(languageScopedActiveRules.ofAllLanguages()).thenReturn(activeRules);
+
+    ActiveRulesPublisher underTest = new ActiveRulesPublisher(languageScopedActiveRules);
     underTest.publish(writer);
 
     BatchReportReader reader = new BatchReportReader(outputDir);
@@ -0,0 +1,103 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.ZipUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ReportCompressionTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void compress_report_while_it_is_read() throws Exception {
+    File reportDir = temp.newFolder();
+    FileUtils.write(new File(reportDir, "metadata.pb"), "metadata");
+    FileUtils.write(new File(reportDir, "component-1.pb"), "component");
+
+    ReportCompression compression = new ReportCompression(reportDir);
+    compression.start();
+    File unzipDir = temp.newFolder();
+    try (InputStream input = compression.input()) {
+      ZipUtils.unzip(input, unzipDir);
+    }
+    compression.stop();
+    compression.checkSuccess();
+
+    assertThat(FileUtils.readFileToString(new File(unzipDir, "metadata.pb"))).isEqualTo("metadata");
+    assertThat(FileUtils.readFileToString(new File(unzipDir, "component-1.pb"))).isEqualTo("component");
+    assertThat(compression.zipSize()).isGreaterThan(0L);
+  }
+
+  @Test
+  public void reader_fails_if_compression_fails() throws Exception {
+    File missingDir = new File(temp.getRoot(), "missing");
+
+    ReportCompression compression = new ReportCompression(missingDir);
+    compression.start();
+    try {
+      IOUtils.toByteArray(compression.input());
+      fail();
+    } catch (IOException e) {
+      assertThat(e).hasMessage("Unable to compress batch report");
+    }
+    compression.stop();
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Unable to compress batch report");
+    compression.checkSuccess();
+  }
+
+  @Test
+  public void stop_interrupts_compression_if_input_is_not_read() throws Exception {
+    File reportDir = temp.newFolder();
+    FileUtils.writeByteArrayToFile(new File(reportDir, "big.pb"), randomBytes(2 * 1024 * 1024));
+
+    ReportCompression compression = new ReportCompression(reportDir);
+    compression.start();
+    compression.input().read();
+    compression.stop();
+
+    // failure caused by stop is not reported
+    compression.checkSuccess();
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+    new Random(0L).nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -27,8 +27,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.rule.RuleKey;
+import org.sonar.batch.scan.filesystem.InputPathCache;
 import org.sonarqube.ws.QualityProfiles.SearchWsResponse.QualityProfile;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -40,6 +42,7 @@ import static org.mockito.Mockito.when;
 
 public class ActiveRulesProviderTest {
   private ActiveRulesProvider provider;
+  private InputPathCache inputPathCache = new InputPathCache();
 
   @Mock
   private DefaultActiveRulesLoader loader;
@@ -65,7 +68,8 @@ public class ActiveRulesProviderTest {
     when(loader.load(eq("qp3"), any(MutableBoolean.class))).thenReturn(qp3Rules);
 
     ModuleQProfiles profiles = mockProfiles("qp1", "qp2", "qp3");
-    ActiveRules activeRules = provider.provide(loader, profiles);
+    indexFiles("qp1", "qp2", "qp3");
+    ActiveRules activeRules = provider.provide(new LanguageScopedActiveRules(loader, profiles, inputPathCache));
 
     assertThat(activeRules.findAll()).hasSize(3);
     assertThat(activeRules.findAll()).extracting("ruleKey").containsOnly(
@@ -77,6 +81,70 @@ public class ActiveRulesProviderTest {
     verifyNoMoreInteractions(loader);
   }
 
+  @Test
+  public void load_only_rules_of_detected_languages() {
+    LoadedActiveRule r1 = mockRule("rule1");
+    LoadedActiveRule r2 = mockRule("rule2");
+    when(loader.load(eq("qp1"), any(MutableBoolean.class))).thenReturn(ImmutableList.of(r1));
+    when(loader.load(eq("qp2"), any(MutableBoolean.class))).thenReturn(ImmutableList.of(r2));
+
+    ActiveRules activeRules = provider.provide(new LanguageScopedActiveRules(loader, mockProfiles("qp1", "qp2", "qp3"), inputPathCache));
+    verifyNoMoreInteractions(loader);
+    assertThat(activeRules.findAll()).isEmpty();
+
+    indexFiles("qp1", "unknown");
+    assertThat(activeRules.findAll()).extracting("ruleKey").containsOnly(RuleKey.of("rule1", "rule1"));
+    assertThat(activeRules.find(RuleKey.of("rule1", "rule1"))).isNotNull();
+    assertThat(activeRules.find(RuleKey.of("rule2", "rule2"))).isNull();
+
+    indexFiles("qp2");
+    assertThat(activeRules.findByRepository("rule2")).hasSize(1);
+    assertThat(activeRules.findAll()).hasSize(2);
+
+    verify(loader).load(eq("qp1"), any(MutableBoolean.class));
+    verify(loader).load(eq("qp2"), any(MutableBoolean.class));
+    verifyNoMoreInteractions(loader);
+  }
+
+  @Test
+  public void load_rules_of_requested_language() {
+    when(loader.load(eq("qp1"), any(MutableBoolean.class))).thenReturn(ImmutableList.of(mockRule("rule1")));
+
+    ActiveRules activeRules = provider.provide(new LanguageScopedActiveRules(loader, mockProfiles("qp1", "qp2"), inputPathCache));
+
+    assertThat(activeRules.findByLanguage("qp1")).extracting("ruleKey").containsOnly(RuleKey.of("rule1", "rule1"));
+    verify(loader).load(eq("qp1"), any(MutableBoolean.class));
+    verifyNoMoreInteractions(loader);
+  }
+
+  @Test
+  public void rules_of_all_languages_are_loaded_for_report_and_issue_tracking() {
+    when(loader.load(eq("qp1"), any(MutableBoolean.class))).thenReturn(ImmutableList.of(mockRule("rule1")));
+    when(loader.load(eq("qp2"), any(MutableBoolean.class))).thenReturn(ImmutableList.of(mockRule("rule2")));
+    LanguageScopedActiveRules languageScopedActiveRules = new LanguageScopedActiveRules(loader, mockProfiles("qp1", "qp2"), inputPathCache);
+    ActiveRules activeRules = provider.provide(languageScopedActiveRules);
+
+    indexFiles("qp1");
+    assertThat(activeRules.findAll()).hasSize(1);
+
+    assertThat(languageScopedActiveRules.ofAllLanguages().findAll()).extracting("ruleKey").containsOnly(
+      RuleKey.of("rule1", "rule1"), RuleKey.of("rule2", "rule2"));
+    assertThat(languageScopedActiveRules.ofAllLanguages().find(RuleKey.of("rule2", "rule2"))).isNotNull();
+    indexFiles("qp2");
+    assertThat(activeRules.findAll()).hasSize(2);
+
+    // each profile is loaded once
+    verify(loader).load(eq("qp1"), any(MutableBoolean.class));
+    verify(loader).load(eq("qp2"), any(MutableBoolean.class));
+    verifyNoMoreInteractions(loader);
+  }
+
+  private void indexFiles(String... languages) {
+    for (String language : languages) {
+      inputPathCache.put("foo", new DefaultInputFile("foo", "src/Foo." + language).setLanguage(language));
+    }
+  }
+
   private static ModuleQProfiles mockProfiles(String... keys) {
     List<QualityProfile> profiles = new LinkedList<>();
 
@@ -92,6 +160,7 @@ public class ActiveRulesProviderTest {
     LoadedActiveRule r = new LoadedActiveRule();
     r.setName(name);
     r.setRuleKey(RuleKey.of(name, name));
+    r.setLanguage(name.replace("rule", "qp"));
     return r;
   }
 }
@@ -35,14 +35,16 @@ public class RulesProfileProviderTest {
 
   ModuleQProfiles qProfiles = mock(ModuleQProfiles.class);
   Settings settings = new Settings();
+  LanguageScopedActiveRules activeRules = mock(LanguageScopedActiveRules.class);
   RulesProfileProvider provider = new RulesProfileProvider();
 
   @Test
   public void merge_profiles() {
     QProfile qProfile = new QProfile().setKey("java-sw").setName("Sonar way").setLanguage("java");
     when(qProfiles.findAll()).thenReturn(Arrays.asList(qProfile));
+    when(activeRules.ofAllLanguages()).thenReturn(new ActiveRulesBuilder().build());
 
-    RulesProfile profile = provider.provide(qProfiles, new ActiveRulesBuilder().build(), settings);
+    RulesProfile profile = provider.provide(qProfiles, activeRules, settings);
 
     // merge of all profiles
     assertThat(profile).isNotNull().isInstanceOf(RulesProfileWrapper.class);
@@ -63,8 +65,9 @@ public class RulesProfileProviderTest {
 
     QProfile qProfile = new QProfile().setKey("java-sw").setName("Sonar way").setLanguage("java");
     when(qProfiles.findByLanguage("java")).thenReturn(qProfile);
+    when(activeRules.ofDetectedLanguages()).thenReturn(new ActiveRulesBuilder().build());
 
-    RulesProfile profile = provider.provide(qProfiles, new ActiveRulesBuilder().build(), settings);
+    RulesProfile profile = provider.provide(qProfiles, activeRules, settings);
 
     // no merge, directly the old hibernate profile
     assertThat(profile).isNotNull();
@@ -79,7 +82,9 @@ public class RulesProfileProviderTest {
     ActiveRulesBuilder activeRulesBuilder = new ActiveRulesBuilder();
     activeRulesBuilder.create(RuleKey.of("java", "S001")).setTemplateRuleKey("T001").setLanguage("java").activate();
 
-    RulesProfile profile = provider.provide(qProfiles, activeRulesBuilder.build(), settings);
+    when(activeRules.ofAllLanguages()).thenReturn(activeRulesBuilder.build());
+
+    RulesProfile profile = provider.provide(qProfiles, activeRules, settings);
 
     assertThat(profile.getActiveRule("java", "S001").getRule().getTemplate().getKey()).isEqualTo("T001");
   }
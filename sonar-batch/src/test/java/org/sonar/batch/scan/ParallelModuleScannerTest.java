@@ -0,0 +1,202 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentMatcher;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.resources.Project;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ParallelModuleScannerTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private ProjectScanContainer container = mock(ProjectScanContainer.class);
+  private Map<ModuleScanContainer, String> moduleContainers = new ConcurrentHashMap<>();
+  private List<String> steps = new CopyOnWriteArrayList<>();
+
+  @Test
+  public void index_modules_in_scan_order_and_analyse_children_before_parents() {
+    Project root = new Project("root");
+    Project a = new Project("a").setParent(root);
+    new Project("a1").setParent(a);
+    new Project("a2").setParent(a);
+    new Project("b").setParent(root);
+    recordSteps();
+
+    new ParallelModuleScanner(container, 3).scan(root);
+
+    assertThat(steps).hasSize(10);
+    assertThat(stepsStartingWith("index ")).containsExactly("index a1", "index a2", "index a", "index b", "index root");
+    assertThat(stepsStartingWith("analyse ")).containsOnly("analyse root", "analyse a", "analyse a1", "analyse a2", "analyse b");
+    assertThat(steps.indexOf("analyse a")).isGreaterThan(steps.indexOf("analyse a1")).isGreaterThan(steps.indexOf("analyse a2"));
+    assertThat(steps.indexOf("analyse a1")).isGreaterThan(steps.indexOf("index a1"));
+    assertThat(steps.indexOf("analyse a")).isGreaterThan(steps.indexOf("index a"));
+    assertThat(steps.get(9)).isEqualTo("analyse root");
+  }
+
+  @Test
+  public void bound_number_of_modules_indexed_but_not_analysed() {
+    Project root = new Project("root");
+    for (int i = 0; i < 10; i++) {
+      new Project("m" + i).setParent(root);
+    }
+    recordSteps();
+
+    ParallelModuleScanner scanner = new ParallelModuleScanner(container, 1);
+    scanner.scan(root);
+
+    assertThat(steps).hasSize(22);
+    int indexedNotAnalysed = 0;
+    for (String step : steps) {
+      indexedNotAnalysed += step.startsWith("index ") ? 1 : -1;
+      assertThat(indexedNotAnalysed).isLessThanOrEqualTo(scanner.maxIndexedModules());
+    }
+  }
+
+  @Test
+  public void unbind_module_from_thread_of_pool() {
+    Project root = new Project("root");
+    Project a = new Project("a").setParent(root);
+    recordSteps();
+    doThrow(new IllegalStateException("boom")).when(container).analyse(argThat(isContainerOf("a")));
+
+    try {
+      new ParallelModuleScanner(container, 2).scan(root);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("boom");
+    }
+
+    verify(container).unbindModuleFromCurrentThread();
+  }
+
+  @Test
+  public void propagate_failure_of_module() {
+    Project root = new Project("root");
+    Project a = new Project("a").setParent(root);
+    recordSteps();
+    doThrow(new IllegalStateException("boom")).when(container).analyse(argThat(isContainerOf("a")));
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("boom");
+
+    new ParallelModuleScanner(container, 2).scan(root);
+  }
+
+  @Test
+  public void stop_modules_not_analysed_when_indexing_fails() {
+    Project root = new Project("root");
+    Project a = new Project("a").setParent(root);
+    new Project("a1").setParent(a);
+    Project b = new Project("b").setParent(root);
+    recordSteps();
+    final CountDownLatch neverReleased = new CountDownLatch(1);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws InterruptedException {
+        // module "a" can not be analysed before the failure
+        neverReleased.await();
+        return null;
+      }
+    }).when(container).analyse(argThat(isContainerOf("a1")));
+    doThrow(new IllegalStateException("boom")).when(container).index(b);
+
+    try {
+      new ParallelModuleScanner(container, 2).scan(root);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("boom");
+    }
+
+    assertThat(stepsStartingWith("index ")).containsExactly("index a1", "index a");
+    ModuleScanContainer containerOfA = containerOf("a");
+    verify(containerOfA).stopComponents(true);
+    verify(container, never()).analyse(containerOfA);
+  }
+
+  private List<String> stepsStartingWith(String prefix) {
+    List<String> result = new ArrayList<>();
+    for (String step : steps) {
+      if (step.startsWith(prefix)) {
+        result.add(step);
+      }
+    }
+    return result;
+  }
+
+  private ModuleScanContainer containerOf(String moduleKey) {
+    for (Map.Entry<ModuleScanContainer, String> entry : moduleContainers.entrySet()) {
+      if (moduleKey.equals(entry.getValue())) {
+        return entry.getKey();
+      }
+    }
+    throw new IllegalStateException("Not indexed: " + moduleKey);
+  }
+
+  private void recordSteps() {
+    doAnswer(new Answer<ModuleScanContainer>() {
+      @Override
+      public ModuleScanContainer answer(InvocationOnMock invocation) {
+        String key = ((Project) invocation.getArguments()[0]).getKey();
+        ModuleScanContainer moduleContainer = mock(ModuleScanContainer.class);
+        moduleContainers.put(moduleContainer, key);
+        steps.add("index " + key);
+        return moduleContainer;
+      }
+    }).when(container).index(any(Project.class));
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        steps.add("analyse " + moduleContainers.get(invocation.getArguments()[0]));
+        return null;
+      }
+    }).when(container).analyse(any(ModuleScanContainer.class));
+  }
+
+  private ArgumentMatcher<ModuleScanContainer> isContainerOf(final String moduleKey) {
+    return new ArgumentMatcher<ModuleScanContainer>() {
+      @Override
+      public boolean matches(Object item) {
+        return item != null && moduleKey.equals(moduleContainers.get(item));
+      }
+    };
+  }
+}
@@ -29,9 +29,11 @@ import org.sonar.api.batch.fs.internal.FileMetadata;
 import org.sonar.api.config.Settings;
 import org.sonar.api.scan.filesystem.PathResolver;
 import org.sonar.api.utils.PathUtils;
+import org.sonar.batch.issue.ignore.scanner.IssueExclusionsRegexpScanner;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
@@ -46,6 +48,7 @@ public class InputFileBuilderTest {
   LanguageDetection langDetection = mock(LanguageDetection.class);
   StatusDetection statusDetection = mock(StatusDetection.class);
   DefaultModuleFileSystem fs = mock(DefaultModuleFileSystem.class);
+  IssueExclusionsRegexpScanner exclusionsScanner = mock(IssueExclusionsRegexpScanner.class);
 
   @Test
   public void complete_input_file() throws Exception {
@@ -65,7 +68,7 @@ public class InputFileBuilderTest {
       .thenReturn(InputFile.Status.ADDED);
 
     InputFileBuilder builder = new InputFileBuilder("struts", new PathResolver(),
-      langDetection, statusDetection, fs, new Settings(), new FileMetadata());
+      langDetection, statusDetection, fs, new Settings(), new FileMetadata(), exclusionsScanner);
     DefaultInputFile inputFile = builder.create(srcFile);
     builder.completeAndComputeMetadata(inputFile, InputFile.Type.MAIN);
 
@@ -78,6 +81,30 @@ public class InputFileBuilderTest {
     assertThat(inputFile.lines()).isEqualTo(1);
   }
 
+  @Test
+  public void feed_issue_exclusions_scanner_while_reading_metadata() throws Exception {
+    File basedir = temp.newFolder();
+    File srcFile = new File(basedir, "src/main/java/foo/Bar.java");
+    FileUtils.write(srcFile, "first line\nsecond line");
+    when(fs.baseDir()).thenReturn(basedir);
+    when(fs.encoding()).thenReturn(StandardCharsets.UTF_8);
+    when(langDetection.language(any(InputFile.class))).thenReturn("java");
+    final AtomicInteger lines = new AtomicInteger();
+    when(exclusionsScanner.createCharHandler("struts:src/main/java/foo/Bar.java")).thenReturn(new FileMetadata.CharHandler() {
+      @Override
+      protected void newLine() {
+        lines.incrementAndGet();
+      }
+    });
+
+    InputFileBuilder builder = new InputFileBuilder("struts", new PathResolver(),
+      langDetection, statusDetection, fs, new Settings(), new FileMetadata(), exclusionsScanner);
+    DefaultInputFile inputFile = builder.completeAndComputeMetadata(builder.create(srcFile), InputFile.Type.MAIN);
+
+    assertThat(inputFile.lines()).isEqualTo(2);
+    assertThat(lines.get()).isEqualTo(1);
+  }
+
   @Test
   public void return_null_if_file_outside_basedir() throws Exception {
     // file system
@@ -88,7 +115,7 @@ public class InputFileBuilderTest {
     when(fs.baseDir()).thenReturn(basedir);
 
     InputFileBuilder builder = new InputFileBuilder("struts", new PathResolver(),
-      langDetection, statusDetection, fs, new Settings(), new FileMetadata());
+      langDetection, statusDetection, fs, new Settings(), new FileMetadata(), exclusionsScanner);
     DefaultInputFile inputFile = builder.create(srcFile);
 
     assertThat(inputFile).isNull();
@@ -108,7 +135,7 @@ public class InputFileBuilderTest {
     when(langDetection.language(any(InputFile.class))).thenReturn(null);
 
     InputFileBuilder builder = new InputFileBuilder("struts", new PathResolver(),
-      langDetection, statusDetection, fs, new Settings(), new FileMetadata());
+      langDetection, statusDetection, fs, new Settings(), new FileMetadata(), exclusionsScanner);
     DefaultInputFile inputFile = builder.create(srcFile);
     inputFile = builder.completeAndComputeMetadata(inputFile, InputFile.Type.MAIN);
 
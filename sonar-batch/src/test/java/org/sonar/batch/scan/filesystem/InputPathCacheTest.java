@@ -66,6 +66,7 @@ public class InputPathCacheTest {
     assertThat(cache.filesByModule("struts")).hasSize(1);
     assertThat(cache.filesByModule("struts-core")).hasSize(1);
     assertThat(cache.allFiles()).hasSize(2);
+    assertThat(cache.languages()).containsOnly("bla");
     for (InputPath inputPath : cache.allFiles()) {
       assertThat(inputPath.relativePath()).startsWith("src/main/java/");
     }
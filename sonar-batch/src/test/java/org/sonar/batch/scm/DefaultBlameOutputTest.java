@@ -19,6 +19,7 @@
  */
 package org.sonar.batch.scm;
 
+import org.assertj.core.api.Condition;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -27,15 +28,27 @@ import org.sonar.api.batch.fs.InputComponent;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.scm.BlameLine;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.batch.index.BatchComponent;
 import org.sonar.batch.index.BatchComponentCache;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.BatchReportWriter;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DefaultBlameOutputTest {
@@ -43,6 +56,9 @@ public class DefaultBlameOutputTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public LogTester logTester = new LogTester();
+
   private BatchComponentCache componentCache;
 
   @Before
@@ -71,6 +87,58 @@ public class DefaultBlameOutputTest {
       .blameResult(file, Arrays.asList(new BlameLine().revision("1").author("guy")));
   }
 
+  @Test
+  public void accept_results_from_concurrent_threads() throws Exception {
+    final List<InputFile> files = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      files.add(new DefaultInputFile("foo", "src/main/java/Foo" + i + ".java").setLines(1));
+    }
+    BatchReportWriter writer = mock(BatchReportWriter.class);
+    final DefaultBlameOutput output = new DefaultBlameOutput(writer, componentCache, files);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (final InputFile file : files) {
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          output.blameResult(file, Arrays.asList(new BlameLine().revision("1").date(new Date()).author("guy")));
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    output.finish();
+
+    verify(writer, times(100)).writeComponentChangesets(any(BatchReport.Changesets.class));
+    assertThat(logTester.logs(LoggerLevel.WARN)).isEmpty();
+  }
+
+  @Test
+  public void log_time_spent_to_process_results() {
+    logTester.setLevel(LoggerLevel.DEBUG);
+    InputFile file = new DefaultInputFile("foo", "src/main/java/Foo.java").setLines(1);
+    DefaultBlameOutput output = new DefaultBlameOutput(mock(BatchReportWriter.class), componentCache, Arrays.asList(file));
+
+    output.blameResult(file, Arrays.asList(new BlameLine().revision("1").date(new Date()).author("guy")));
+    output.finish();
+
+    List<String> logs = logTester.logs(LoggerLevel.DEBUG);
+    assertThat(logs).haveExactly(1, startingWith("Blame took "));
+    assertThat(logs).haveExactly(1, startingWith("Processing of blame result of src/main/java/Foo.java: "));
+  }
+
+  @Test
+  public void warn_about_files_without_blame() {
+    InputFile file = new DefaultInputFile("foo", "src/main/java/Foo.java").setLines(1);
+
+    new DefaultBlameOutput(null, componentCache, Arrays.asList(file)).finish();
+
+    assertThat(logTester.logs(LoggerLevel.WARN)).contains("Missing blame information for the following files:");
+  }
+
   @Test
   public void shouldFailIfNullDate() {
     InputFile file = new DefaultInputFile("foo", "src/main/java/Foo.java").setLines(1);
@@ -93,4 +161,12 @@ public class DefaultBlameOutputTest {
       .blameResult(file, Arrays.asList(new BlameLine().date(new Date()).author("guy")));
   }
 
+  private static Condition<String> startingWith(final String prefix) {
+    return new Condition<String>() {
+      @Override
+      public boolean matches(String value) {
+        return value.startsWith(prefix);
+      }
+    };
+  }
 }
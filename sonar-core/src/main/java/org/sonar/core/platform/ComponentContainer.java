@@ -100,8 +100,10 @@ public class ComponentContainer implements ContainerPopulator.Container {
    */
   protected ComponentContainer(ComponentContainer parent) {
     this.parent = parent;
-    this.pico = parent.pico.makeChildContainer();
-    this.parent.child = this;
+    synchronized (parent) {
+      this.pico = parent.pico.makeChildContainer();
+      this.parent.child = this;
+    }
     this.propertyDefinitions = parent.propertyDefinitions;
     this.componentKeys = new ComponentKeys();
     addSingleton(this);
@@ -170,7 +172,7 @@ public class ComponentContainer implements ContainerPopulator.Container {
     } finally {
       removeChild();
       if (parent != null) {
-        parent.removeChild();
+        parent.removeChild(this);
       }
     }
     return this;
@@ -270,7 +272,7 @@ public class ComponentContainer implements ContainerPopulator.Container {
     return pico.getComponents(tClass);
   }
 
-  public ComponentContainer removeChild() {
+  public synchronized ComponentContainer removeChild() {
     if (child != null) {
       pico.removeChildContainer(child.pico);
       child = null;
@@ -278,6 +280,18 @@ public class ComponentContainer implements ContainerPopulator.Container {
     return this;
   }
 
+  /**
+   * Removes the given child container. Contrary to {@link #removeChild()}, it supports
+   * containers having several children executed concurrently.
+   */
+  public synchronized ComponentContainer removeChild(ComponentContainer childToBeRemoved) {
+    pico.removeChildContainer(childToBeRemoved.pico);
+    if (child == childToBeRemoved) {
+      child = null;
+    }
+    return this;
+  }
+
   public ComponentContainer createChild() {
     return new ComponentContainer(this);
   }
@@ -45,6 +45,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import org.apache.commons.codec.binary.Base64;
@@ -282,7 +283,29 @@ public class DefaultHttpDownloader extends HttpDownloader {
       @Nullable Integer readTimeoutMillis) {
       int read = readTimeoutMillis != null ? readTimeoutMillis : TIMEOUT_MILLISECONDS;
       int connect = connectTimeoutMillis != null ? connectTimeoutMillis : TIMEOUT_MILLISECONDS;
-      return new HttpInputSupplier(uri, requestMethod, userAgent, login, password, connect, read);
+      return new HttpInputSupplier(uri, requestMethod, userAgent, login, password, connect, read, null);
+    }
+
+    /**
+     * GET request which is validated by the server against the entity tag of a previously downloaded response.
+     * The body is not downloaded again if the server answers that it did not change (HTTP 304).
+     *
+     * @param ifNoneMatch entity tag of the previous response, or null to unconditionally download the resource
+     * @throws IOException any I/O error, not limited to the network connection
+     * @throws HttpException if HTTP response code > 400
+     * @since 5.3
+     */
+    public ConditionalResponse conditionalGet(URI uri, @Nullable String login, @Nullable String password, @Nullable String ifNoneMatch,
+      @Nullable Integer connectTimeoutMillis, @Nullable Integer readTimeoutMillis) throws IOException {
+      int read = readTimeoutMillis != null ? readTimeoutMillis : TIMEOUT_MILLISECONDS;
+      int connect = connectTimeoutMillis != null ? connectTimeoutMillis : TIMEOUT_MILLISECONDS;
+      HttpInputSupplier supplier = new HttpInputSupplier(uri, GET, userAgent, login, password, connect, read, ifNoneMatch);
+      InputStream input = supplier.getInput();
+      if (supplier.responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+        IOUtils.closeQuietly(input);
+        return new ConditionalResponse(null, ifNoneMatch);
+      }
+      return new ConditionalResponse(input, supplier.responseEntityTag);
     }
 
     private static class HttpInputSupplier implements InputSupplier<InputStream> {
@@ -293,8 +316,12 @@ public class DefaultHttpDownloader extends HttpDownloader {
       private final int connectTimeoutMillis;
       private final int readTimeoutMillis;
       private final String requestMethod;
+      private final String ifNoneMatch;
+      private int responseCode;
+      private String responseEntityTag;
 
-      HttpInputSupplier(URI uri, String requestMethod, String userAgent, String login, String password, int connectTimeoutMillis, int readTimeoutMillis) {
+      HttpInputSupplier(URI uri, String requestMethod, String userAgent, String login, String password, int connectTimeoutMillis, int readTimeoutMillis,
+        @Nullable String ifNoneMatch) {
         this.uri = uri;
         this.requestMethod = requestMethod;
         this.userAgent = userAgent;
@@ -302,6 +329,7 @@ public class DefaultHttpDownloader extends HttpDownloader {
         this.password = password;
         this.readTimeoutMillis = readTimeoutMillis;
         this.connectTimeoutMillis = connectTimeoutMillis;
+        this.ifNoneMatch = ifNoneMatch;
       }
 
       /**
@@ -326,6 +354,9 @@ public class DefaultHttpDownloader extends HttpDownloader {
         connection.setUseCaches(true);
         connection.setInstanceFollowRedirects(true);
         connection.setRequestProperty("User-Agent", userAgent);
+        if (ifNoneMatch != null) {
+          connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
 
         // establish connection, get response headers
         connection.connect();
@@ -333,7 +364,8 @@ public class DefaultHttpDownloader extends HttpDownloader {
         // obtain the encoding returned by the server
         String encoding = connection.getContentEncoding();
 
-        int responseCode = connection.getResponseCode();
+        responseCode = connection.getResponseCode();
+        responseEntityTag = connection.getHeaderField("ETag");
         if (responseCode >= 400) {
           InputStream errorResponse = null;
           try {
@@ -351,7 +383,10 @@ public class DefaultHttpDownloader extends HttpDownloader {
 
         InputStream resultingInputStream;
         // create the appropriate stream wrapper based on the encoding type
-        if (encoding != null && "gzip".equalsIgnoreCase(encoding)) {
+        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+          // no body, whatever the declared encoding
+          resultingInputStream = connection.getInputStream();
+        } else if (encoding != null && "gzip".equalsIgnoreCase(encoding)) {
           resultingInputStream = new GZIPInputStream(connection.getInputStream());
         } else {
           resultingInputStream = connection.getInputStream();
@@ -360,6 +395,43 @@ public class DefaultHttpDownloader extends HttpDownloader {
       }
     }
 
+    /**
+     * Response of {@link #conditionalGet(URI, String, String, String, Integer, Integer)}
+     * @since 5.3
+     */
+    public static class ConditionalResponse {
+      private final InputStream input;
+      private final String entityTag;
+
+      public ConditionalResponse(@Nullable InputStream input, @Nullable String entityTag) {
+        this.input = input;
+        this.entityTag = entityTag;
+      }
+
+      /**
+       * True if the server confirmed that the previously downloaded response is still up-to-date
+       */
+      public boolean isNotModified() {
+        return input == null;
+      }
+
+      /**
+       * Body of the response, null if {@link #isNotModified()}
+       */
+      @CheckForNull
+      public InputStream input() {
+        return input;
+      }
+
+      /**
+       * Entity tag returned by the server, null if the server does not support it
+       */
+      @CheckForNull
+      public String entityTag() {
+        return entityTag;
+      }
+    }
+
     private static class ProxyAuthenticator extends Authenticator {
       private final PasswordAuthentication auth;
 
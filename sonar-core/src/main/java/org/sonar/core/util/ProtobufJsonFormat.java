@@ -24,8 +24,8 @@ import com.google.protobuf.MapEntry;
 import com.google.protobuf.Message;
 import java.io.StringWriter;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.sonar.api.utils.text.JsonWriter;
 
 /**
@@ -132,7 +132,8 @@ public class ProtobufJsonFormat {
   }
 
   static class MessageType {
-    private static final Map<Class<? extends Message>, MessageType> TYPES_BY_CLASS = new HashMap<>();
+    // shared by the threads of web services
+    private static final Map<Class<? extends Message>, MessageType> TYPES_BY_CLASS = new ConcurrentHashMap<>();
 
     private final Descriptors.FieldDescriptor[] fieldDescriptors;
     private final boolean doesWrapRepeated;
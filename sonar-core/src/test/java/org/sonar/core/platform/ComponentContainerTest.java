@@ -137,6 +137,23 @@ public class ComponentContainerTest {
     assertThat(parent.getChild()).isNull();
   }
 
+  @Test
+  public void remove_one_of_several_children() {
+    ComponentContainer parent = new ComponentContainer();
+    parent.startComponents();
+
+    ComponentContainer child1 = parent.createChild();
+    ComponentContainer child2 = parent.createChild();
+    assertThat(parent.getChild()).isSameAs(child2);
+
+    child1.startComponents();
+    child1.stopComponents();
+    assertThat(parent.getChild()).isSameAs(child2);
+
+    parent.removeChild(child2);
+    assertThat(parent.getChild()).isNull();
+  }
+
   @Test
   public void shouldForwardStartAndStopToDescendants() {
     ComponentContainer grandParent = new ComponentContainer();
@@ -31,9 +31,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Properties;
 import java.util.zip.GZIPOutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.junit.AfterClass;
@@ -88,7 +90,15 @@ public class DefaultHttpDownloaderTest {
                 throw new IllegalStateException(e);
               }
             }
-            if (req.getPath().getPath().contains("/gzip/")) {
+            if (req.getPath().getPath().contains("/etag/")) {
+              resp.set("ETag", "\"v1\"");
+              if ("\"v1\"".equals(req.getValue("If-None-Match"))) {
+                resp.setCode(304);
+              } else {
+                resp.getPrintStream().append("ETag response");
+              }
+            }
+            else if (req.getPath().getPath().contains("/gzip/")) {
               if (!"gzip".equals(req.getValue("Accept-Encoding"))) {
                 throw new IllegalStateException("Should accept gzip");
               }
@@ -160,6 +170,31 @@ public class DefaultHttpDownloaderTest {
     assertThat(text).isEqualTo("GZIP response");
   }
 
+  @Test
+  public void conditional_get_downloads_body_and_entity_tag() throws Exception {
+    DefaultHttpDownloader.BaseHttpDownloader downloader = new DefaultHttpDownloader.BaseHttpDownloader(Collections.<String, String>emptyMap(), null);
+
+    DefaultHttpDownloader.BaseHttpDownloader.ConditionalResponse response = downloader.conditionalGet(new URI(baseUrl + "/etag/"), null, null, null, null, null);
+
+    assertThat(response.isNotModified()).isFalse();
+    assertThat(response.entityTag()).isEqualTo("\"v1\"");
+    assertThat(IOUtils.toString(response.input(), StandardCharsets.UTF_8)).isEqualTo("ETag response");
+  }
+
+  @Test
+  public void conditional_get_does_not_download_body_if_not_modified() throws Exception {
+    DefaultHttpDownloader.BaseHttpDownloader downloader = new DefaultHttpDownloader.BaseHttpDownloader(Collections.<String, String>emptyMap(), null);
+
+    DefaultHttpDownloader.BaseHttpDownloader.ConditionalResponse response = downloader.conditionalGet(new URI(baseUrl + "/etag/"), null, null, "\"v1\"", null, null);
+    assertThat(response.isNotModified()).isTrue();
+    assertThat(response.input()).isNull();
+    assertThat(response.entityTag()).isEqualTo("\"v1\"");
+
+    response = downloader.conditionalGet(new URI(baseUrl + "/etag/"), null, null, "\"v0\"", null, null);
+    assertThat(response.isNotModified()).isFalse();
+    assertThat(IOUtils.toString(response.input(), StandardCharsets.UTF_8)).isEqualTo("ETag response");
+  }
+
   @Test
   public void readStringWithDefaultTimeout() throws URISyntaxException {
     String text = new DefaultHttpDownloader(new Settings()).readString(new URI(baseUrl + "/timeout/"), StandardCharsets.UTF_8);
@@ -74,6 +74,14 @@ public class RuleDao implements Dao {
     return mapper(session).selectAll();
   }
 
+  /**
+   * Select the parameters of rules by rule ids. Returns an empty list
+   * if the list of {@code ruleIds} is empty, without any db round trip.
+   */
+  public List<RuleParamDto> selectRuleParamsByRuleIds(DbSession session, List<Integer> ruleIds) {
+    return executeLargeInputs(ruleIds, new RuleIdToParamDto(mapper(session)));
+  }
+
   public void insert(DbSession session, RuleDto dto) {
     mapper(session).insert(dto);
   }
@@ -95,4 +103,17 @@ public class RuleDao implements Dao {
     }
   }
 
+  private static class RuleIdToParamDto implements Function<List<Integer>, List<RuleParamDto>> {
+    private final RuleMapper mapper;
+
+    private RuleIdToParamDto(RuleMapper mapper) {
+      this.mapper = mapper;
+    }
+
+    @Override
+    public List<RuleParamDto> apply(@Nonnull List<Integer> partitionOfIds) {
+      return mapper.selectParamsByRuleIds(partitionOfIds);
+    }
+  }
+
 }
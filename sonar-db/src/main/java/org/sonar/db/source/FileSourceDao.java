@@ -29,6 +29,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.io.IOUtils;
 import org.sonar.db.Dao;
@@ -103,6 +104,33 @@ public class FileSourceDao implements Dao {
     }
   }
 
+  /**
+   * Streams the line hashes of all the files of a project, ordered by file key.
+   */
+  public void readLineHashesOfProject(DbSession dbSession, String projectUuid, Function<FileLineHashes, Void> function) {
+    PreparedStatement pstmt = null;
+    ResultSet rs = null;
+    try {
+      // rows are scrolled, so that the hashes of all the files are not loaded in memory
+      pstmt = mybatis.newScrollingSelectStatement(dbSession, "SELECT p.kee, fs.line_hashes FROM file_sources fs " +
+        "INNER JOIN projects p ON p.uuid=fs.file_uuid " +
+        "WHERE fs.project_uuid=? AND fs.data_type=? AND p.enabled=? ORDER BY p.kee");
+      pstmt.setString(1, projectUuid);
+      pstmt.setString(2, Type.SOURCE);
+      pstmt.setBoolean(3, true);
+      rs = pstmt.executeQuery();
+      while (rs.next()) {
+        function.apply(new FileLineHashes(rs.getString(1), rs.getString(2)));
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to read FILE_SOURCES.LINE_HASHES of project " + projectUuid, e);
+    } finally {
+      // the connection belongs to the session
+      DbUtils.closeQuietly(rs);
+      DbUtils.closeQuietly(pstmt);
+    }
+  }
+
   public void insert(FileSourceDto dto) {
     DbSession session = mybatis.openSession(false);
     try {
@@ -138,4 +166,26 @@ public class FileSourceDao implements Dao {
   private FileSourceMapper mapper(DbSession session) {
     return session.getMapper(FileSourceMapper.class);
   }
+
+  public static class FileLineHashes {
+    private final String fileKey;
+    private final String lineHashes;
+
+    FileLineHashes(String fileKey, @Nullable String lineHashes) {
+      this.fileKey = fileKey;
+      this.lineHashes = lineHashes;
+    }
+
+    public String fileKey() {
+      return fileKey;
+    }
+
+    /**
+     * Hashes of lines, separated by '\n'
+     */
+    @CheckForNull
+    public String lineHashes() {
+      return lineHashes;
+    }
+  }
 }
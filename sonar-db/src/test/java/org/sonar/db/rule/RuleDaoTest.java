@@ -103,6 +103,19 @@ public class RuleDaoTest {
     assertThat(rules.get(0).getId()).isEqualTo(1);
   }
 
+  @Test
+  public void selectRuleParamsByRuleIds() {
+    dbTester.prepareDbUnit(getClass(), "selectRuleParamsByRuleIds.xml");
+
+    assertThat(underTest.selectRuleParamsByRuleIds(dbTester.getSession(), Collections.<Integer>emptyList())).isEmpty();
+    assertThat(underTest.selectRuleParamsByRuleIds(dbTester.getSession(), asList(999))).isEmpty();
+
+    List<RuleParamDto> params = underTest.selectRuleParamsByRuleIds(dbTester.getSession(), asList(1, 2));
+    assertThat(params).hasSize(2);
+    assertThat(params).extracting("ruleId").containsOnly(1);
+    assertThat(params).extracting("name").containsOnly("max", "format");
+  }
+
   @Test
   public void selectEnabledAndNonManual() {
     dbTester.prepareDbUnit(getClass(), "selectEnabledAndNonManual.xml");
@@ -23,6 +23,8 @@ package org.sonar.db.source;
 import com.google.common.base.Function;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
@@ -91,6 +93,22 @@ public class FileSourceDaoTest {
     assertThat(fn.result).isNull();
   }
 
+  @Test
+  public void select_line_hashes_of_project() {
+    dbTester.prepareDbUnit(getClass(), "select_line_hashes_of_project.xml");
+
+    final List<String> result = new ArrayList<>();
+    underTest.readLineHashesOfProject(dbTester.getSession(), "PRJ_UUID", new Function<FileSourceDao.FileLineHashes, Void>() {
+      @Override
+      public Void apply(FileSourceDao.FileLineHashes input) {
+        result.add(input.fileKey() + "=" + input.lineHashes());
+        return null;
+      }
+    });
+
+    assertThat(result).containsExactly("prj:src/Bar.java=JKL", "prj:src/Foo.java=ABC\\nDEF\\nGHI");
+  }
+
   @Test
   public void insert() {
     dbTester.prepareDbUnit(getClass(), "shared.xml");
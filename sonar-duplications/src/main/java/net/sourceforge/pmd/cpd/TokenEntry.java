@@ -31,6 +31,7 @@ import java.util.Map;
  */
 public class TokenEntry implements Comparable<TokenEntry> {
 
+  // guarded by itself, as files can be tokenized by several threads, for example when modules are scanned concurrently
   private static final Map<String, Integer> TOKENS = new HashMap<>();
   private static int tokenCount = 0;
 
@@ -61,15 +62,17 @@ public class TokenEntry implements Comparable<TokenEntry> {
    * @param beginLine number of line
    */
   public TokenEntry(String image, String tokenSrcID, int beginLine) {
-    Integer i = TOKENS.get(image);
-    if (i == null) {
-      i = TOKENS.size() + 1;
-      TOKENS.put(image, i);
+    synchronized (TOKENS) {
+      Integer i = TOKENS.get(image);
+      if (i == null) {
+        i = TOKENS.size() + 1;
+        TOKENS.put(image, i);
+      }
+      this.identifier = i.intValue();
+      this.index = tokenCount++;
     }
-    this.identifier = i.intValue();
     this.tokenSrcID = tokenSrcID;
     this.beginLine = beginLine;
-    this.index = tokenCount++;
     this.value = image;
   }
 
@@ -86,13 +89,17 @@ public class TokenEntry implements Comparable<TokenEntry> {
    * End-of-file token.
    */
   public static TokenEntry getEOF() {
-    tokenCount++;
+    synchronized (TOKENS) {
+      tokenCount++;
+    }
     return EOF;
   }
 
   public static void clearImages() {
-    TOKENS.clear();
-    tokenCount = 0;
+    synchronized (TOKENS) {
+      TOKENS.clear();
+      tokenCount = 0;
+    }
   }
 
   public String getTokenSrcID() {
@@ -24,24 +24,45 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
-import static java.nio.file.StandardOpenOption.CREATE;
-import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
-import static java.nio.file.StandardOpenOption.WRITE;
-
+/**
+ * Cache of values stored in files, one file per entry, that can be shared by several threads and processes.
+ * <p>
+ * Entries are written to a temporary file which is then atomically moved to its final location, so
+ * readers always see complete values and never need to lock. The directory lock is only used by
+ * {@link #clear()} and {@link #clean()}, so that several processes don't clean up the same directory
+ * at the same time.
+ * </p>
+ * <p>
+ * Cleaning checks every entry, which is slow on directories with many entries, so {@link #clean()} does nothing when
+ * the directory was cleaned less than one hour ago, or when it is being cleaned by another process.
+ * </p>
+ */
 public class PersistentCache {
   private static final char[] hexArray = "0123456789ABCDEF".toCharArray();
   private static final Charset ENCODING = StandardCharsets.UTF_8;
   private static final String DIGEST_ALGO = "MD5";
+  static final String TEMP_FILE_PREFIX = ".tmp_";
+  // temporary files older than this were left by interrupted writes
+  private static final long TEMP_FILE_EXPIRATION_MS = TimeUnit.HOURS.toMillis(1);
+  // touched at the end of each cleaning
+  static final String LAST_CLEAN_FILE_NAME = ".sonar_last_clean";
+  private static final long CLEAN_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
 
   private final PersistentCacheInvalidation invalidation;
   private final Logger logger;
@@ -58,7 +79,7 @@ public class PersistentCache {
     logger.debug("cache: " + dir);
   }
 
-  public synchronized void reconfigure() {
+  public void reconfigure() {
     try {
       Files.createDirectories(dir);
     } catch (IOException e) {
@@ -71,7 +92,7 @@ public class PersistentCache {
   }
 
   @CheckForNull
-  public synchronized String getString(@Nonnull String obj) throws IOException {
+  public String getString(@Nonnull String obj) throws IOException {
     byte[] cached = get(obj);
 
     if (cached == null) {
@@ -82,61 +103,50 @@ public class PersistentCache {
   }
 
   @CheckForNull
-  public synchronized InputStream getStream(@Nonnull String obj) throws IOException {
+  public InputStream getStream(@Nonnull String obj) throws IOException {
     String key = getKey(obj);
 
-    try {
-      lock();
-      Path path = getCacheCopy(key);
-      if (path == null) {
-        return null;
-      }
-      return new DeleteFileOnCloseInputStream(new FileInputStream(path.toFile()), path);
-
-    } finally {
-      unlock();
+    Path path = getCacheCopy(key);
+    if (path == null) {
+      return null;
     }
+    return new DeleteFileOnCloseInputStream(new FileInputStream(path.toFile()), path);
   }
 
   @CheckForNull
-  public synchronized byte[] get(@Nonnull String obj) throws IOException {
+  public byte[] get(@Nonnull String obj) throws IOException {
     String key = getKey(obj);
 
-    try {
-      lock();
-
-      byte[] cached = getCache(key);
-
-      if (cached != null) {
-        logger.debug("cache hit for " + obj + " -> " + key);
-        return cached;
-      }
+    byte[] cached = getCache(key);
 
-      logger.debug("cache miss for " + obj + " -> " + key);
-    } finally {
-      unlock();
+    if (cached != null) {
+      logger.debug("cache hit for " + obj + " -> " + key);
+      return cached;
     }
 
+    logger.debug("cache miss for " + obj + " -> " + key);
     return null;
   }
 
-  public synchronized void put(@Nonnull String obj, @Nonnull InputStream stream) throws IOException {
+  public void put(@Nonnull String obj, @Nonnull InputStream stream) throws IOException {
     String key = getKey(obj);
+    Path temp = createTempEntry();
     try {
-      lock();
-      putCache(key, stream);
+      Files.copy(stream, temp, StandardCopyOption.REPLACE_EXISTING);
+      commitEntry(temp, key);
     } finally {
-      unlock();
+      Files.deleteIfExists(temp);
     }
   }
 
-  public synchronized void put(@Nonnull String obj, @Nonnull byte[] value) throws IOException {
+  public void put(@Nonnull String obj, @Nonnull byte[] value) throws IOException {
     String key = getKey(obj);
+    Path temp = createTempEntry();
     try {
-      lock();
-      putCache(key, value);
+      Files.write(temp, value);
+      commitEntry(temp, key);
     } finally {
-      unlock();
+      Files.deleteIfExists(temp);
     }
   }
 
@@ -157,12 +167,22 @@ public class PersistentCache {
 
   /**
    * Deletes cache entries that are no longer valid according to the default expiration time period.
+   * Does nothing if the directory was cleaned recently or is being cleaned by another process, as invalid
+   * entries are anyway never returned.
    */
   public synchronized void clean() {
+    if (isCleanedRecently()) {
+      logger.debug("cache: cleaned less than " + TimeUnit.MILLISECONDS.toMinutes(CLEAN_INTERVAL_MS) + " minutes ago");
+      return;
+    }
+    if (!lock.tryLock()) {
+      logger.debug("cache: being cleaned by another process");
+      return;
+    }
     logger.info("cache: cleaning");
     try {
-      lock();
       deleteCacheEntries(new DirectoryCleanFilter());
+      touchLastClean();
     } catch (IOException e) {
       logger.error("Error cleaning cache", e);
     } finally {
@@ -170,6 +190,24 @@ public class PersistentCache {
     }
   }
 
+  private boolean isCleanedRecently() {
+    try {
+      long lastClean = Files.getLastModifiedTime(dir.resolve(LAST_CLEAN_FILE_NAME)).toMillis();
+      return System.currentTimeMillis() - lastClean < CLEAN_INTERVAL_MS;
+    } catch (IOException e) {
+      // never cleaned
+      return false;
+    }
+  }
+
+  private void touchLastClean() throws IOException {
+    Path lastClean = dir.resolve(LAST_CLEAN_FILE_NAME);
+    if (!Files.exists(lastClean)) {
+      Files.createFile(lastClean);
+    }
+    Files.setLastModifiedTime(lastClean, FileTime.fromMillis(System.currentTimeMillis()));
+  }
+
   private void lock() throws IOException {
     lock.lock();
   }
@@ -193,7 +231,7 @@ public class PersistentCache {
     try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, filter)) {
       for (Path p : stream) {
         try {
-          Files.delete(p);
+          Files.deleteIfExists(p);
         } catch (Exception e) {
           logger.error("Error deleting " + p, e);
         }
@@ -211,24 +249,52 @@ public class PersistentCache {
   private class DirectoryCleanFilter implements DirectoryStream.Filter<Path> {
     @Override
     public boolean accept(Path entry) throws IOException {
-      if (lock.getFileLockName().equals(entry.getFileName().toString())) {
+      String fileName = entry.getFileName().toString();
+      if (lock.getFileLockName().equals(fileName) || LAST_CLEAN_FILE_NAME.equals(fileName)) {
+        return false;
+      }
+      try {
+        if (fileName.startsWith(TEMP_FILE_PREFIX)) {
+          return System.currentTimeMillis() - Files.getLastModifiedTime(entry).toMillis() > TEMP_FILE_EXPIRATION_MS;
+        }
+        return invalidation.test(entry);
+      } catch (NoSuchFileException e) {
+        // deleted or replaced meanwhile
         return false;
       }
-
-      return invalidation.test(entry);
     }
   }
 
-  private void putCache(String key, byte[] value) throws IOException {
-    Path cachePath = getCacheEntryPath(key);
-    Files.write(cachePath, value, CREATE, WRITE, TRUNCATE_EXISTING);
+  /**
+   * Unlike {@link Files#createTempFile(Path, String, String, java.nio.file.attribute.FileAttribute[])}, which restricts
+   * permissions to the owner, the file gets the default permissions, so that the cache can be shared between users.
+   */
+  private Path createTempEntry() throws IOException {
+    while (true) {
+      try {
+        return Files.createFile(dir.resolve(TEMP_FILE_PREFIX + UUID.randomUUID().toString()));
+      } catch (FileAlreadyExistsException e) {
+        // try another name
+      }
+    }
   }
 
-  private void putCache(String key, InputStream stream) throws IOException {
+  /**
+   * Replaces the entry, if any, by the temporary file. Concurrent readers either get the previous or the new value.
+   */
+  private void commitEntry(Path temp, String key) throws IOException {
     Path cachePath = getCacheEntryPath(key);
-    Files.copy(stream, cachePath, StandardCopyOption.REPLACE_EXISTING);
+    try {
+      Files.move(temp, cachePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, cachePath, StandardCopyOption.REPLACE_EXISTING);
+    } catch (NoSuchFileException e) {
+      // cache was cleared meanwhile
+      logger.debug("cache: entry not stored " + key);
+    }
   }
 
+  @CheckForNull
   private byte[] getCache(String key) throws IOException {
     Path cachePath = getCacheEntryPath(key);
 
@@ -236,9 +302,15 @@ public class PersistentCache {
       return null;
     }
 
-    return Files.readAllBytes(cachePath);
+    try {
+      return Files.readAllBytes(cachePath);
+    } catch (NoSuchFileException e) {
+      // deleted meanwhile
+      return null;
+    }
   }
 
+  @CheckForNull
   private Path getCacheCopy(String key) throws IOException {
     Path cachePath = getCacheEntryPath(key);
 
@@ -247,7 +319,13 @@ public class PersistentCache {
     }
 
     Path temp = Files.createTempFile("sonar_cache", null);
-    Files.copy(cachePath, temp, StandardCopyOption.REPLACE_EXISTING);
+    try {
+      Files.copy(cachePath, temp, StandardCopyOption.REPLACE_EXISTING);
+    } catch (NoSuchFileException e) {
+      // deleted meanwhile
+      Files.deleteIfExists(temp);
+      return null;
+    }
     return temp;
   }
 
@@ -256,9 +334,14 @@ public class PersistentCache {
       return false;
     }
 
-    if (invalidation.test(cacheEntryPath)) {
-      logger.debug("cache: evicting entry");
-      Files.delete(cacheEntryPath);
+    try {
+      if (invalidation.test(cacheEntryPath)) {
+        logger.debug("cache: evicting entry");
+        Files.deleteIfExists(cacheEntryPath);
+        return false;
+      }
+    } catch (NoSuchFileException e) {
+      // deleted meanwhile
       return false;
     }
 
@@ -21,17 +21,30 @@ package org.sonar.home.cache;
 
 import org.apache.commons.io.IOUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Matchers.any;
 
 import static org.mockito.Mockito.when;
-import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
@@ -39,6 +52,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.mock;
 
 public class PersistentCacheTest {
@@ -57,6 +71,7 @@ public class PersistentCacheTest {
     when(invalidation.test(any(Path.class))).thenReturn(false);
     lock = mock(DirectoryLock.class);
     when(lock.getFileLockName()).thenReturn("lock");
+    when(lock.tryLock()).thenReturn(true);
     cache = new PersistentCache(tmp.getRoot().toPath(), invalidation, mock(Logger.class), lock);
   }
 
@@ -132,6 +147,129 @@ public class PersistentCacheTest {
     assertCacheHit(false);
   }
 
+  @Test
+  public void reads_and_writes_do_not_lock() throws Exception {
+    cache.put(URI, VALUE.getBytes(StandardCharsets.UTF_8));
+    cache.put("id", new ByteArrayInputStream("test".getBytes(StandardCharsets.UTF_8)));
+    assertCacheHit(true);
+    IOUtils.toString(cache.getStream("id"));
+
+    verify(lock, never()).lock();
+    verify(lock, never()).unlock();
+  }
+
+  @Test
+  public void clean_and_clear_lock_directory() {
+    cache.clean();
+    cache.clear();
+
+    verify(lock).tryLock();
+    verify(lock).lock();
+    verify(lock, times(2)).unlock();
+  }
+
+  @Test
+  public void do_not_clean_directory_cleaned_recently() throws Exception {
+    cache.put(URI, VALUE.getBytes(StandardCharsets.UTF_8));
+    cache.clean();
+    when(invalidation.test(any(Path.class))).thenReturn(true);
+
+    cache.clean();
+
+    verify(lock).tryLock();
+    assertThat(cache.getDirectory().resolve(PersistentCache.LAST_CLEAN_FILE_NAME)).exists();
+    // the expired entry is kept on disk, but it's not returned anymore
+    assertThat(cache.getDirectory().toFile().list()).hasSize(2);
+    assertCacheHit(false);
+  }
+
+  @Test
+  public void clean_again_after_one_hour() throws Exception {
+    cache.clean();
+    Path lastClean = cache.getDirectory().resolve(PersistentCache.LAST_CLEAN_FILE_NAME);
+    Files.setLastModifiedTime(lastClean, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+
+    cache.clean();
+
+    verify(lock, times(2)).tryLock();
+  }
+
+  @Test
+  public void do_not_clean_directory_cleaned_by_another_process() throws Exception {
+    when(lock.tryLock()).thenReturn(false);
+    cache.put(URI, VALUE.getBytes(StandardCharsets.UTF_8));
+    when(invalidation.test(any(Path.class))).thenReturn(true);
+
+    cache.clean();
+
+    verify(invalidation, never()).test(any(Path.class));
+    verify(lock, never()).unlock();
+    assertThat(cache.getDirectory().resolve(PersistentCache.LAST_CLEAN_FILE_NAME)).doesNotExist();
+  }
+
+  @Test
+  public void entries_get_default_permissions() throws Exception {
+    Path reference = Files.createFile(tmp.getRoot().toPath().resolve("reference"));
+    assumeTrue(Files.getFileStore(reference).supportsFileAttributeView(PosixFileAttributeView.class));
+
+    cache.put(URI, VALUE.getBytes(StandardCharsets.UTF_8));
+    cache.put("id", new ByteArrayInputStream("test".getBytes(StandardCharsets.UTF_8)));
+
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(cache.getDirectory(), "[0-9A-F]*")) {
+      for (Path entry : entries) {
+        assertThat(Files.getPosixFilePermissions(entry)).isEqualTo(Files.getPosixFilePermissions(reference));
+      }
+    }
+  }
+
+  @Test
+  public void clean_deletes_temp_files_of_interrupted_writes() throws Exception {
+    Path oldTemp = Files.createTempFile(cache.getDirectory(), PersistentCache.TEMP_FILE_PREFIX, null);
+    Files.setLastModifiedTime(oldTemp, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+    Path recentTemp = Files.createTempFile(cache.getDirectory(), PersistentCache.TEMP_FILE_PREFIX, null);
+
+    cache.clean();
+
+    assertThat(oldTemp).doesNotExist();
+    assertThat(recentTemp).exists();
+  }
+
+  @Test
+  public void concurrent_reads_and_writes() throws Exception {
+    char[] chars = new char[100_000];
+    Arrays.fill(chars, 'a');
+    final String value1 = new String(chars);
+    Arrays.fill(chars, 'b');
+    final String value2 = new String(chars);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        final boolean writer = i % 2 == 0;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < 50; j++) {
+              if (writer) {
+                cache.put(URI, (j % 2 == 0 ? value1 : value2).getBytes(StandardCharsets.UTF_8));
+              } else {
+                String read = cache.getString(URI);
+                // never a partially written value
+                assertThat(read == null || read.equals(value1) || read.equals(value2)).isTrue();
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private void assertCacheHit(boolean hit) throws Exception {
     assertCacheHit(cache, hit);
   }
@@ -139,7 +277,6 @@ public class PersistentCacheTest {
   private void assertCacheHit(PersistentCache pCache, boolean hit) throws Exception {
     String expected = hit ? VALUE : null;
     assertThat(pCache.getString(URI)).isEqualTo(expected);
-    verify(lock, atLeast(1)).unlock();
   }
 
 }
@@ -267,10 +267,23 @@ public class FileMetadata {
    * Maximum performance is needed.
    */
   public Metadata readMetadata(File file, Charset encoding) {
+    return readMetadata(file, encoding, new CharHandler[0]);
+  }
+
+  /**
+   * Same as {@link #readMetadata(File, Charset)}, with additional handlers fed during the same read of the file.
+   * @since 5.3
+   */
+  public Metadata readMetadata(File file, Charset encoding, CharHandler... otherHandlers) {
     LineCounter lineCounter = new LineCounter(file, encoding);
     FileHashComputer fileHashComputer = new FileHashComputer(file);
     LineOffsetCounter lineOffsetCounter = new LineOffsetCounter();
-    readFile(file, encoding, lineCounter, fileHashComputer, lineOffsetCounter);
+    CharHandler[] handlers = new CharHandler[3 + otherHandlers.length];
+    handlers[0] = lineCounter;
+    handlers[1] = fileHashComputer;
+    handlers[2] = lineOffsetCounter;
+    System.arraycopy(otherHandlers, 0, handlers, 3, otherHandlers.length);
+    readFile(file, encoding, handlers);
     return new Metadata(lineCounter.lines(), lineCounter.nonBlankLines(), fileHashComputer.getHash(), lineOffsetCounter.getOriginalLineOffsets(),
       lineOffsetCounter.getLastValidOffset());
   }
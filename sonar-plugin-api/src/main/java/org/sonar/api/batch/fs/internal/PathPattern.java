@@ -19,6 +19,7 @@
  */
 package org.sonar.api.batch.fs.internal;
 
+import javax.annotation.Nullable;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.sonar.api.batch.fs.InputFile;
@@ -36,6 +37,8 @@ public abstract class PathPattern {
 
   public abstract boolean match(InputFile inputFile, boolean caseSensitiveFileExtension);
 
+  abstract boolean isAbsolute();
+
   public static PathPattern create(String s) {
     String trimmed = StringUtils.trim(s);
     if (StringUtils.startsWithIgnoreCase(trimmed, "file:")) {
@@ -64,17 +67,15 @@ public abstract class PathPattern {
 
     @Override
     public boolean match(InputFile inputFile, boolean caseSensitiveFileExtension) {
-      String path = inputFile.absolutePath();
-      if (!caseSensitiveFileExtension) {
-        String extension = sanitizeExtension(FilenameUtils.getExtension(inputFile.file().getName()));
-        if (StringUtils.isNotBlank(extension)) {
-          path = StringUtils.removeEndIgnoreCase(path, extension);
-          path = path + extension;
-        }
-      }
+      String path = pathToMatch(inputFile.absolutePath(), inputFile, caseSensitiveFileExtension);
       return pattern.match(path);
     }
 
+    @Override
+    boolean isAbsolute() {
+      return true;
+    }
+
     @Override
     public String toString() {
       return "file:" + pattern.toString();
@@ -96,23 +97,33 @@ public abstract class PathPattern {
 
     @Override
     public boolean match(InputFile inputFile, boolean caseSensitiveFileExtension) {
-      String path = inputFile.relativePath();
-      if (!caseSensitiveFileExtension) {
-        String extension = sanitizeExtension(FilenameUtils.getExtension(inputFile.file().getName()));
-        if (StringUtils.isNotBlank(extension)) {
-          path = StringUtils.removeEndIgnoreCase(path, extension);
-          path = path + extension;
-        }
-      }
+      String path = pathToMatch(inputFile.relativePath(), inputFile, caseSensitiveFileExtension);
       return path != null && pattern.match(path);
     }
 
+    @Override
+    boolean isAbsolute() {
+      return false;
+    }
+
     @Override
     public String toString() {
       return pattern.toString();
     }
   }
 
+  static String pathToMatch(@Nullable String path, InputFile inputFile, boolean caseSensitiveFileExtension) {
+    String result = path;
+    if (!caseSensitiveFileExtension) {
+      String extension = sanitizeExtension(FilenameUtils.getExtension(inputFile.file().getName()));
+      if (StringUtils.isNotBlank(extension)) {
+        result = StringUtils.removeEndIgnoreCase(result, extension);
+        result = result + extension;
+      }
+    }
+    return result;
+  }
+
   static String sanitizeExtension(String suffix) {
     return StringUtils.lowerCase(StringUtils.removeStart(suffix, "."));
   }
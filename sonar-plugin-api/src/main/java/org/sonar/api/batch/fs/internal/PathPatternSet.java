@@ -0,0 +1,100 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.batch.fs.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.internal.WildcardPatternSet;
+
+/**
+ * Equivalent of an array of {@link PathPattern}, but each path of file is read only once
+ * whatever the number of patterns.
+ *
+ * @since 5.3
+ */
+public class PathPatternSet {
+
+  private final PathPattern[] patterns;
+  private final WildcardPatternSet relativePatterns;
+  private final WildcardPatternSet absolutePatterns;
+
+  private PathPatternSet(PathPattern[] patterns) {
+    this.patterns = patterns;
+    List<String> relatives = new ArrayList<>();
+    List<String> absolutes = new ArrayList<>();
+    for (PathPattern pattern : patterns) {
+      if (pattern.isAbsolute()) {
+        absolutes.add(pattern.pattern.toString());
+      } else {
+        relatives.add(pattern.pattern.toString());
+      }
+    }
+    this.relativePatterns = WildcardPatternSet.create(relatives, "/");
+    this.absolutePatterns = WildcardPatternSet.create(absolutes, "/");
+  }
+
+  public static PathPatternSet create(PathPattern[] patterns) {
+    return new PathPatternSet(patterns);
+  }
+
+  public static PathPatternSet create(String[] patterns) {
+    return new PathPatternSet(PathPattern.create(patterns));
+  }
+
+  public PathPattern[] patterns() {
+    return patterns;
+  }
+
+  public boolean isEmpty() {
+    return patterns.length == 0;
+  }
+
+  /**
+   * Returns true if at least one of the patterns matches the file
+   * @see PathPattern#match(InputFile)
+   */
+  public boolean matchAny(InputFile inputFile) {
+    return matchAny(inputFile, true);
+  }
+
+  /**
+   * @see PathPattern#match(InputFile, boolean)
+   */
+  public boolean matchAny(InputFile inputFile, boolean caseSensitiveFileExtension) {
+    if (!relativePatterns.isEmpty()) {
+      String path = PathPattern.pathToMatch(inputFile.relativePath(), inputFile, caseSensitiveFileExtension);
+      if (path != null && relativePatterns.matchAny(path)) {
+        return true;
+      }
+    }
+    if (!absolutePatterns.isEmpty()) {
+      String path = PathPattern.pathToMatch(inputFile.absolutePath(), inputFile, caseSensitiveFileExtension);
+      return absolutePatterns.matchAny(path);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(patterns);
+  }
+}
@@ -36,7 +36,8 @@ public abstract class BlameCommand {
 
   /**
    * Compute blame of the provided files. 
-   * Computation can be done in parallel if this is more efficient.
+   * Computation can be done in parallel if this is more efficient, for example by sharding the files
+   * among {@link BlameInput#parallelism()} workers which all report to the same {@link BlameOutput}.
    * If there is an error that prevent to blame a file then an exception should be raised. If 
    * one file is new or contains local modifications then an exception should be raised.
    * @see BlameOutput#blameResult(InputFile, List)
@@ -58,6 +59,14 @@ public abstract class BlameCommand {
      */
     Iterable<InputFile> filesToBlame();
 
+    /**
+     * Hint about the maximum number of files to blame concurrently, as configured with the property
+     * <code>sonar.scm.threads</code>. It is always greater than 0. Providers that do not compute blame
+     * in parallel can ignore it.
+     * @since 5.3
+     */
+    int parallelism();
+
   }
 
   /**
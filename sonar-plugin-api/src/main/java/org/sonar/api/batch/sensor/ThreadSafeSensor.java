@@ -0,0 +1,58 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.batch.sensor;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A {@link Sensor} that can be executed concurrently with the other thread-safe sensors of the same module,
+ * when the property <code>sonar.sensors.threads</code> is greater than 1. Other sensors are always executed alone.
+ * <p>
+ * The following operations are safe to be called concurrently:
+ * <ul>
+ * <li>read methods of {@link org.sonar.api.batch.fs.FileSystem}, {@link org.sonar.api.batch.fs.InputFile},
+ * {@link org.sonar.api.config.Settings} and {@link org.sonar.api.batch.rule.ActiveRules}, as they don't change
+ * once sensors are executed</li>
+ * <li>the creation of data with {@link SensorContext}, for example {@link SensorContext#newIssue()}, and its
+ * storage with <code>save()</code>. Each created object must be used by a single thread.</li>
+ * </ul>
+ * The following operations are not safe:
+ * <ul>
+ * <li>adding files to the {@link org.sonar.api.batch.fs.FileSystem}</li>
+ * <li>saving the same data several times on a component, for example the same measure, the highlighting or the
+ * symbol table of a file, from different sensors. The sensor that needs the data of another one declares it with
+ * {@link #dependsOnSensors()}.</li>
+ * <li>the deprecated APIs, like {@link org.sonar.api.batch.SensorContext}, which are not available to this kind
+ * of sensor anyway</li>
+ * </ul>
+ * The shared state of the sensor itself, if any, must be thread-safe.
+ * @since 5.3
+ */
+@Beta
+public interface ThreadSafeSensor extends Sensor {
+
+  /**
+   * Sensors whose outputs are required by this sensor. When sensors are executed concurrently, this sensor is
+   * executed only once the given sensors are done. Sensors that are not executed on the module are ignored.
+   * @return the classes or interfaces of the sensors, or an empty array
+   */
+  Class<?>[] dependsOnSensors();
+
+}
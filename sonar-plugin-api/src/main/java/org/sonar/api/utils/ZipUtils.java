@@ -165,6 +165,18 @@ public final class ZipUtils {
     }
   }
 
+  /**
+   * Compress the content of a directory into a stream, for example to send it over the network
+   * without creating a temporary file. The stream is not closed.
+   *
+   * @since 5.3
+   */
+  public static void zipDir(File dir, OutputStream zip) throws IOException {
+    ZipOutputStream zout = new ZipOutputStream(zip);
+    doZipDir(dir, zout);
+    zout.finish();
+  }
+
   private static void doZip(String entryName, InputStream in, ZipOutputStream out) throws IOException {
     ZipEntry entry = new ZipEntry(entryName);
     out.putNextEntry(entry);
@@ -0,0 +1,315 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.utils.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.utils.WildcardPattern;
+
+/**
+ * Set of Ant-style patterns compiled into a single automaton, so that a value is read only once to know
+ * which patterns it matches, whatever the number of patterns.
+ * <p>
+ * Matching is strictly equivalent to {@link WildcardPattern#match(String)} applied to each pattern.
+ * The deterministic automaton is built lazily while values are matched. This class is thread-safe.
+ * </p>
+ *
+ * @since 5.3
+ */
+public class WildcardPatternSet {
+
+  /**
+   * Upper bound of the number of cached states of the deterministic automaton. When reached,
+   * new states are computed on the fly.
+   */
+  private static final int MAX_CACHED_STATES = 10_000;
+
+  private static final int LITERAL = 0;
+  // any character excluding directory separator
+  private static final int ONE = 1;
+  // zero or more characters excluding directory separator
+  private static final int STAR = 2;
+  // zero or more characters, including directory separator
+  private static final int ANY_STAR = 3;
+  // optional group of the next two states, used for "**/"
+  private static final int SKIP_TWO = 4;
+  private static final int ACCEPT = 5;
+
+  private final List<String> patterns;
+  private final int separator;
+  private final int[] kinds;
+  private final int[] literals;
+  // index of pattern for accepting states, else -1
+  private final int[] acceptedPatterns;
+  private final ConcurrentMap<BitSet, State> states = new ConcurrentHashMap<>();
+  private final State initialState;
+
+  private WildcardPatternSet(Collection<String> patterns, String directorySeparator) {
+    if (directorySeparator.length() != 1) {
+      throw new IllegalArgumentException("Directory separator must be a single character: " + directorySeparator);
+    }
+    this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+    this.separator = directorySeparator.charAt(0);
+
+    IntList kindList = new IntList();
+    IntList literalList = new IntList();
+    IntList acceptList = new IntList();
+    BitSet initial = new BitSet();
+    for (int i = 0; i < this.patterns.size(); i++) {
+      initial.set(kindList.size());
+      compile(this.patterns.get(i), kindList, literalList);
+      while (acceptList.size() < kindList.size()) {
+        acceptList.add(-1);
+      }
+      kindList.add(ACCEPT);
+      literalList.add(0);
+      acceptList.add(i);
+    }
+    this.kinds = kindList.toArray();
+    this.literals = literalList.toArray();
+    this.acceptedPatterns = acceptList.toArray();
+    this.initialState = intern(closure(initial));
+  }
+
+  /**
+   * Creates a set of patterns with "/" as a directory separator.
+   */
+  public static WildcardPatternSet create(String... patterns) {
+    return create(Arrays.asList(patterns), "/");
+  }
+
+  /**
+   * @see WildcardPattern#create(String, String)
+   */
+  public static WildcardPatternSet create(Collection<String> patterns, String directorySeparator) {
+    return new WildcardPatternSet(patterns, directorySeparator);
+  }
+
+  public List<String> patterns() {
+    return patterns;
+  }
+
+  public boolean isEmpty() {
+    return patterns.isEmpty();
+  }
+
+  /**
+   * Returns true if specified value matches at least one of the patterns.
+   */
+  public boolean matchAny(String value) {
+    return !run(value).matches.isEmpty();
+  }
+
+  /**
+   * Indexes, in {@link #patterns()}, of the patterns matching the specified value
+   */
+  public BitSet match(String value) {
+    return (BitSet) run(value).matches.clone();
+  }
+
+  private State run(String value) {
+    String normalized = StringUtils.removeEnd(StringUtils.removeStart(value, "/"), "/");
+    State state = initialState;
+    int i = 0;
+    while (i < normalized.length() && !state.isDead()) {
+      int c = normalized.codePointAt(i);
+      state = state.next(c);
+      i += Character.charCount(c);
+    }
+    return state;
+  }
+
+  /**
+   * Same translation than {@code WildcardPattern#toRegexp(String, String)}, but to states of automaton
+   */
+  private void compile(String pattern, IntList kindList, IntList literalList) {
+    int i = pattern.startsWith("/") || pattern.startsWith("\\") ? 1 : 0;
+    while (i < pattern.length()) {
+      int c = pattern.codePointAt(i);
+      if (c == '*') {
+        if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+          if (i + 2 < pattern.length() && isSlash(pattern.charAt(i + 2))) {
+            // zero or more directories
+            add(kindList, literalList, SKIP_TWO, 0);
+            add(kindList, literalList, ANY_STAR, 0);
+            add(kindList, literalList, LITERAL, separator);
+            i += 2;
+          } else {
+            add(kindList, literalList, ANY_STAR, 0);
+            i += 1;
+          }
+        } else {
+          add(kindList, literalList, STAR, 0);
+        }
+      } else if (c == '?') {
+        add(kindList, literalList, ONE, 0);
+      } else if (isSlash(c)) {
+        add(kindList, literalList, LITERAL, separator);
+      } else {
+        add(kindList, literalList, LITERAL, c);
+      }
+      i += Character.charCount(c);
+    }
+  }
+
+  private static void add(IntList kindList, IntList literalList, int kind, int literal) {
+    kindList.add(kind);
+    literalList.add(literal);
+  }
+
+  private static boolean isSlash(int c) {
+    return c == '/' || c == '\\';
+  }
+
+  /**
+   * Characters not matched by "." in a {@link java.util.regex.Pattern} without flags
+   */
+  private static boolean isLineTerminator(int c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private BitSet closure(BitSet positions) {
+    BitSet result = new BitSet();
+    for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+      addClosure(p, result);
+    }
+    return result;
+  }
+
+  private void addClosure(int position, BitSet result) {
+    if (result.get(position)) {
+      return;
+    }
+    result.set(position);
+    int kind = kinds[position];
+    if (kind == STAR || kind == ANY_STAR) {
+      addClosure(position + 1, result);
+    } else if (kind == SKIP_TWO) {
+      addClosure(position + 1, result);
+      addClosure(position + 3, result);
+    }
+  }
+
+  private BitSet step(BitSet positions, int c) {
+    BitSet next = new BitSet();
+    for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+      switch (kinds[p]) {
+        case LITERAL:
+          if (literals[p] == c) {
+            addClosure(p + 1, next);
+          }
+          break;
+        case ONE:
+          if (c != separator) {
+            addClosure(p + 1, next);
+          }
+          break;
+        case STAR:
+          if (c != separator) {
+            addClosure(p, next);
+          }
+          break;
+        case ANY_STAR:
+          if (!isLineTerminator(c)) {
+            addClosure(p, next);
+          }
+          break;
+        default:
+          // no transition
+          break;
+      }
+    }
+    return next;
+  }
+
+  private State intern(BitSet positions) {
+    State state = states.get(positions);
+    if (state == null) {
+      state = new State(positions);
+      if (states.size() < MAX_CACHED_STATES) {
+        State previous = states.putIfAbsent(positions, state);
+        if (previous != null) {
+          state = previous;
+        }
+        state.cached = true;
+      }
+    }
+    return state;
+  }
+
+  private class State {
+    private final BitSet positions;
+    private final BitSet matches = new BitSet();
+    private final ConcurrentMap<Integer, State> transitions = new ConcurrentHashMap<>();
+    private volatile boolean cached = false;
+
+    State(BitSet positions) {
+      this.positions = positions;
+      for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+        if (acceptedPatterns[p] >= 0) {
+          matches.set(acceptedPatterns[p]);
+        }
+      }
+    }
+
+    boolean isDead() {
+      return positions.isEmpty();
+    }
+
+    State next(int c) {
+      State next = transitions.get(c);
+      if (next == null) {
+        next = intern(step(positions, c));
+        if (cached && next.cached) {
+          transitions.put(c, next);
+        }
+      }
+      return next;
+    }
+  }
+
+  private static class IntList {
+    private int[] values = new int[16];
+    private int size = 0;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size] = value;
+      size++;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.batch.fs.internal;
+
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PathPatternSetTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void match_relative_and_absolute_paths() throws Exception {
+    PathPatternSet set = PathPatternSet.create(new String[] {"**/*Foo.java", "file:**/src/test/**"});
+    assertThat(set.patterns()).hasSize(2);
+    assertThat(set.isEmpty()).isFalse();
+
+    Path moduleBaseDir = temp.newFolder().toPath();
+    InputFile inputFile = new DefaultInputFile("ABCDE", "src/main/java/org/MyFoo.java").setModuleBaseDir(moduleBaseDir);
+    assertThat(set.matchAny(inputFile)).isTrue();
+
+    inputFile = new DefaultInputFile("ABCDE", "src/test/java/org/Other.java").setModuleBaseDir(moduleBaseDir);
+    assertThat(set.matchAny(inputFile)).isTrue();
+
+    inputFile = new DefaultInputFile("ABCDE", "src/main/java/org/Other.java").setModuleBaseDir(moduleBaseDir);
+    assertThat(set.matchAny(inputFile)).isFalse();
+  }
+
+  @Test
+  public void match_insensitive_file_extension() throws Exception {
+    PathPatternSet set = PathPatternSet.create(new String[] {"**/*Foo.java"});
+
+    Path moduleBaseDir = temp.newFolder().toPath();
+    InputFile inputFile = new DefaultInputFile("ABCDE", "src/main/java/org/MyFoo.JAVA").setModuleBaseDir(moduleBaseDir);
+    assertThat(set.matchAny(inputFile)).isFalse();
+    assertThat(set.matchAny(inputFile, false)).isTrue();
+  }
+
+  @Test
+  public void empty_set_matches_nothing() {
+    PathPatternSet set = PathPatternSet.create(new String[0]);
+
+    assertThat(set.isEmpty()).isTrue();
+    assertThat(set.matchAny(new DefaultInputFile("ABCDE", "src/main/java/org/MyFoo.java"))).isFalse();
+  }
+}
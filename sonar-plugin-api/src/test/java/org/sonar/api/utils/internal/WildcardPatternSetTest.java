@@ -0,0 +1,112 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.utils.internal;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Test;
+import org.sonar.api.utils.WildcardPattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WildcardPatternSetTest {
+
+  @Test
+  public void match_any() {
+    WildcardPatternSet set = WildcardPatternSet.create("org/T?st.java", "org/**/*.jsp", "**/*Dao.java");
+
+    assertThat(set.matchAny("org/Test.java")).isTrue();
+    assertThat(set.matchAny("org/foo/bar.jsp")).isTrue();
+    assertThat(set.matchAny("/src/org/FooDao.java/")).isTrue();
+    assertThat(set.matchAny("org/foo/Test.java")).isFalse();
+    assertThat(set.matchAny("FooDao.jav")).isFalse();
+  }
+
+  @Test
+  public void return_indexes_of_matching_patterns() {
+    WildcardPatternSet set = WildcardPatternSet.create("**/*.java", "org/**", "*.java", "org/Foo.*");
+
+    assertThat(set.match("org/Foo.java")).isEqualTo(bits(0, 1, 3));
+    assertThat(set.match("Foo.java")).isEqualTo(bits(0, 2));
+    assertThat(set.match("org/Foo.js")).isEqualTo(bits(1, 3));
+    assertThat(set.match("Foo.js").isEmpty()).isTrue();
+  }
+
+  @Test
+  public void empty_set() {
+    WildcardPatternSet set = WildcardPatternSet.create(Collections.<String>emptyList(), "/");
+
+    assertThat(set.isEmpty()).isTrue();
+    assertThat(set.matchAny("org/Foo.java")).isFalse();
+    assertThat(set.matchAny("")).isFalse();
+  }
+
+  @Test
+  public void custom_directory_separator() {
+    WildcardPatternSet set = WildcardPatternSet.create(Arrays.asList("org/sonar/**/Foo", "*/foo/*"), ".");
+
+    assertThat(set.match("org.sonar.commons.sub.Foo")).isEqualTo(bits(0));
+    assertThat(set.match("org.foo.Bar")).isEqualTo(bits(1));
+    assertThat(set.matchAny("org.foo.bar.Hello")).isFalse();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_directory_separator_has_several_characters() {
+    WildcardPatternSet.create(Arrays.asList("**/*.java"), "::");
+  }
+
+  @Test
+  public void same_matching_as_wildcard_pattern() {
+    Random random = new Random(1L);
+    for (int i = 0; i < 2_000; i++) {
+      String[] patterns = new String[1 + random.nextInt(4)];
+      for (int p = 0; p < patterns.length; p++) {
+        patterns[p] = randomString(random, "ab/\\*?.$", 7);
+      }
+      WildcardPatternSet set = WildcardPatternSet.create(patterns);
+      for (int v = 0; v < 20; v++) {
+        String value = randomString(random, "ab/.$", 9);
+        BitSet matches = set.match(value);
+        for (int p = 0; p < patterns.length; p++) {
+          assertThat(matches.get(p)).as(patterns[p] + " on " + value).isEqualTo(WildcardPattern.create(patterns[p]).match(value));
+        }
+      }
+    }
+  }
+
+  private static BitSet bits(int... indexes) {
+    BitSet bits = new BitSet();
+    for (int index : indexes) {
+      bits.set(index);
+    }
+    return bits;
+  }
+
+  private static String randomString(Random random, String alphabet, int maxLength) {
+    StringBuilder sb = new StringBuilder();
+    int length = random.nextInt(maxLength);
+    for (int i = 0; i < length; i++) {
+      sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return sb.toString();
+  }
+}